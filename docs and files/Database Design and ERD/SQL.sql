@@ -120,7 +120,54 @@ CREATE TABLE disburse_fund_record
     FOREIGN KEY (shelter_id) REFERENCES shelter (shelter_id) ON DELETE CASCADE ON UPDATE CASCADE
 );
 
+/* SHELTER OCCUPANCY YEAR COUNT TABLE */
+CREATE TABLE shelter_occupancy_year_count
+(
+    shelter_id   INT,
+    year         INT,
+    /* The number of occupancy records of the shelter in the year, kept in step with every declaration so the yearly limit is checked without counting the records. */
+    record_count INT NOT NULL DEFAULT 0,
+    PRIMARY KEY (shelter_id, year),
+    FOREIGN KEY (shelter_id) REFERENCES shelter (shelter_id) ON DELETE CASCADE ON UPDATE CASCADE
+);
+
+/* DISBURSE FUND DAILY TABLE */
+CREATE TABLE disburse_fund_daily
+(
+    shelter_id INT,
+    date       DATE,
+    /* The funds disbursed to the shelter on the day, kept in step with every disbursement. */
+    funds      BIGINT NOT NULL DEFAULT 0,
+    PRIMARY KEY (shelter_id, date),
+    FOREIGN KEY (shelter_id) REFERENCES shelter (shelter_id) ON DELETE CASCADE ON UPDATE CASCADE
+);
+
+/* DISBURSE FUND MONTHLY TABLE */
+CREATE TABLE disburse_fund_monthly
+(
+    shelter_id INT,
+    /* The first day of the month. */
+    month      DATE,
+    funds      BIGINT NOT NULL DEFAULT 0,
+    PRIMARY KEY (shelter_id, month),
+    FOREIGN KEY (shelter_id) REFERENCES shelter (shelter_id) ON DELETE CASCADE ON UPDATE CASCADE
+);
+
+/* WRITE WATERMARK TABLE */
+CREATE TABLE write_watermark
+(
+    /* The kind of data written: DONATIONS, DISBURSEMENTS, OCCUPANCY, DONORS or SHELTERS. */
+    source     VARCHAR(32),
+    /* The run of the process that wrote, or 'retired' for the runs folded together. */
+    writer     VARCHAR(64),
+    /* The number of writes, counted in the transaction of each write. */
+    version    BIGINT    NOT NULL DEFAULT 0,
+    updated_on TIMESTAMP NOT NULL DEFAULT CURRENT_TIMESTAMP ON UPDATE CURRENT_TIMESTAMP,
+    PRIMARY KEY (source, writer)
+);
+
 /* Inserting the manager to the system */
 INSERT INTO staff (name, is_volunteer, manager_id)
 VALUES ('Manager A', FALSE, NULL);
 
+/* Indexes and constraints added after this baseline are applied as versioned migrations by SchemaMigrator when the application starts, and recorded in the schema_version table. The year count, disbursement rollup and write watermark tables above, which every declaration and disbursement keeps in step, are created here as well so a fresh database works before its first migration; the migrations that introduce them leave existing tables in place. */
@@ -0,0 +1,437 @@
+import java.io.IOException;
+import java.sql.Connection;
+import java.sql.Date;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.time.LocalDate;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Queue;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+/**
+ * BedAvailabilityService keeps a real-time count of the free beds of every shelter, seeded from its
+ * capacity and latest occupancy declaration, and hands out {@link BedReservation}s against it.
+ * Each shelter's free beds and outstanding reservations are packed into one atomic word changed by
+ * compare-and-set, so reserving, releasing and checking in never take a lock, and a reservation is
+ * only granted if it fits in the beds left: no shelter is ever oversubscribed.
+ *
+ * <p>Reservations expire after "bedAvailability.reservationTtlSeconds". They all live equally
+ * long, so they expire in the order they were taken, and a daemon sweeper returns them from the
+ * head of a queue every "bedAvailability.sweepMillis". A client who checks in takes the bed until
+ * the next occupancy declaration, which counts them and replaces the shelter's free beds. The
+ * declarations published by the {@link OccupancyFeed} are applied as they are written, and the
+ * sweeper reloads every shelter from the database every "bedAvailability.reconcileSeconds" to pick
+ * up declarations written by other processes.
+ */
+public class BedAvailabilityService implements OccupancyListener {
+  private static final Logger logger = Logger.getLogger("homelesssupport.bedavailability");
+
+  private static final BedAvailabilityService INSTANCE = new BedAvailabilityService();
+
+  /* Keyed by lower-case name, as the shelter table compares names case-insensitively */
+  private final Map<String, ShelterBeds> shelters = new ConcurrentHashMap<>();
+  private final Queue<BedReservation> expiryQueue = new ConcurrentLinkedQueue<>();
+  private volatile long reservationTtlNanos;
+  private long sweepMillis;
+  private long reconcileNanos;
+  private Thread sweeper;
+  private volatile boolean started = false;
+
+  private BedAvailabilityService() {}
+
+  /**
+   * Returns the service shared by the whole process.
+   *
+   * @return The bed availability service.
+   */
+  public static BedAvailabilityService getInstance() {
+    return INSTANCE;
+  }
+
+  /**
+   * Checks if the service is counting beds.
+   *
+   * @return True once the service has been started.
+   */
+  public boolean isStarted() {
+    return started;
+  }
+
+  /**
+   * Loads every shelter, subscribes to the feed and starts the sweeper.
+   *
+   * @throws SQLException If there is an issue with the SQL operations.
+   * @throws IOException If there is an issue with input/output operations.
+   * @throws ClassNotFoundException If the required class is not found during database operations.
+   */
+  public synchronized void start() throws SQLException, IOException, ClassNotFoundException {
+    if (started) {
+      return;
+    }
+    reservationTtlNanos =
+        TimeUnit.SECONDS.toNanos(
+            ConfigurationManager.getLong("bedAvailability.reservationTtlSeconds", 900));
+    sweepMillis = Math.max(1, ConfigurationManager.getLong("bedAvailability.sweepMillis", 1000));
+    reconcileNanos =
+        TimeUnit.SECONDS.toNanos(
+            ConfigurationManager.getLong("bedAvailability.reconcileSeconds", 300));
+
+    reconcile(true);
+    OccupancyFeed.getInstance().register(this);
+    started = true;
+    sweeper = new Thread(this::sweepLoop, "bed-availability-sweeper");
+    sweeper.setDaemon(true);
+    sweeper.start();
+  }
+
+  /** Unsubscribes from the feed and stops the sweeper; outstanding reservations stay counted. */
+  public synchronized void stop() {
+    if (!started) {
+      return;
+    }
+    started = false;
+    OccupancyFeed.getInstance().unregister(this);
+    sweeper.interrupt();
+    sweeper = null;
+  }
+
+  /**
+   * Reloads every shelter from the database if the service is started, after the tables have been
+   * replaced underneath it.
+   *
+   * @throws SQLException If there is an issue with the SQL operations.
+   * @throws IOException If there is an issue with input/output operations.
+   * @throws ClassNotFoundException If the required class is not found during database operations.
+   */
+  public void reload() throws SQLException, IOException, ClassNotFoundException {
+    if (started) {
+      reconcile(true);
+    }
+  }
+
+  /**
+   * Reserves beds at a shelter if they are free.
+   *
+   * @param shelterName Name of the shelter.
+   * @param beds Number of beds to hold.
+   * @return The reservation, or null if the shelter is unknown or has fewer free beds.
+   */
+  public BedReservation reserve(String shelterName, int beds) {
+    if (!started || beds <= 0) {
+      return null;
+    }
+    ShelterBeds shelter = shelters.get(keyOf(shelterName));
+    if (shelter == null || !shelter.tryReserve(beds)) {
+      return null;
+    }
+    BedReservation reservation =
+        new BedReservation(shelter, beds, System.nanoTime() + reservationTtlNanos);
+    expiryQueue.add(reservation);
+    return reservation;
+  }
+
+  /**
+   * Gives the beds of a reservation back to its shelter.
+   *
+   * @param reservation The reservation.
+   * @return True if the reservation was still active and its beds were freed.
+   */
+  public boolean release(BedReservation reservation) {
+    return settle(reservation, BedReservation.RELEASED);
+  }
+
+  /**
+   * Turns a reservation into occupied beds, which stay taken until the next occupancy declaration
+   * of the shelter.
+   *
+   * @param reservation The reservation.
+   * @return True if the reservation was still active; false if it had expired or already ended.
+   */
+  public boolean checkIn(BedReservation reservation) {
+    if (reservation.isPastExpiry(System.nanoTime())) {
+      settle(reservation, BedReservation.EXPIRED);
+      return false;
+    }
+    return settle(reservation, BedReservation.CHECKED_IN);
+  }
+
+  /**
+   * Returns the beds of a shelter that can be reserved right now.
+   *
+   * @param shelterName Name of the shelter.
+   * @return The free beds, or null if the shelter is unknown.
+   */
+  public Integer getAvailableBeds(String shelterName) {
+    ShelterBeds shelter = shelters.get(keyOf(shelterName));
+    return shelter == null ? null : shelter.available();
+  }
+
+  /**
+   * Returns the beds of every shelter that can be reserved right now.
+   *
+   * @return Shelter name mapped to its free beds.
+   */
+  public Map<String, Integer> getAvailableBeds() {
+    Map<String, Integer> available = new HashMap<>();
+    for (ShelterBeds shelter : shelters.values()) {
+      available.put(shelter.getName(), shelter.available());
+    }
+    return available;
+  }
+
+  @Override
+  public void occupancyDeclared(String shelterName, LocalDate date, int occupancy) {
+    ShelterBeds shelter = shelters.get(keyOf(shelterName));
+    if (shelter != null) {
+      shelter.declare(date, occupancy);
+    }
+  }
+
+  @Override
+  public void shelterDefined(String shelterName, int maxCapacity) {
+    shelters
+        .computeIfAbsent(keyOf(shelterName), key -> new ShelterBeds(shelterName))
+        .redefine(shelterName, maxCapacity);
+  }
+
+  /**
+   * Ends an active reservation once; the first of check-in, release and expiry wins.
+   *
+   * @param reservation The reservation.
+   * @param outcome How it ends.
+   * @return True if this call ended it.
+   */
+  private boolean settle(BedReservation reservation, int outcome) {
+    if (!reservation.status.compareAndSet(BedReservation.ACTIVE, outcome)) {
+      return false;
+    }
+    reservation.shelter.settle(reservation.getBeds(), outcome == BedReservation.CHECKED_IN);
+    return true;
+  }
+
+  /** Expires reservations and reconciles with the database until the service is stopped. */
+  private void sweepLoop() {
+    long lastReconcile = System.nanoTime();
+    while (started) {
+      try {
+        Thread.sleep(sweepMillis);
+      } catch (InterruptedException interruptedException) {
+        return;
+      }
+      sweepExpired();
+      if (reconcileNanos > 0 && System.nanoTime() - lastReconcile >= reconcileNanos) {
+        try {
+          reconcile(false);
+        } catch (SQLException | IOException | ClassNotFoundException exception) {
+          logger.log(Level.WARNING, "Bed availability reconciliation failed", exception);
+        }
+        lastReconcile = System.nanoTime();
+      }
+    }
+  }
+
+  /** Expires the reservations at the head of the queue whose time is up. */
+  private void sweepExpired() {
+    long now = System.nanoTime();
+    BedReservation head;
+    while ((head = expiryQueue.peek()) != null) {
+      if (head.status.get() == BedReservation.ACTIVE && !head.isPastExpiry(now)) {
+        return;
+      }
+      expiryQueue.poll();
+      settle(head, BedReservation.EXPIRED);
+    }
+  }
+
+  /**
+   * Brings the capacity and latest declaration of every shelter up to date with the database.
+   * Outstanding reservations stay counted either way.
+   *
+   * @param replace True to take the database as it is and drop the shelters that are gone, after
+   *     the tables have been replaced; false to only apply newer declarations and new capacities,
+   *     so the beds checked in since the latest declaration stay taken.
+   * @throws SQLException If there is an issue with the SQL operations.
+   * @throws IOException If there is an issue with input/output operations.
+   * @throws ClassNotFoundException If the required class is not found during database operations.
+   */
+  private void reconcile(boolean replace) throws SQLException, IOException, ClassNotFoundException {
+    Connection connection = null;
+    Set<String> seen = new HashSet<>();
+
+    try {
+      connection = DatabaseManager.getConnection();
+
+      PreparedStatement latestOccupancies =
+          connection.prepareStatement(
+              """
+                  SELECT s.name, s.capacity, sor.date, sor.occupancy
+                  FROM shelter s
+                  LEFT JOIN shelter_occupancy_record sor ON sor.shelter_id = s.shelter_id
+                    AND sor.date = (SELECT MAX(date) FROM shelter_occupancy_record WHERE shelter_id = s.shelter_id)""");
+      ResultSet latestOccupanciesResultSet = latestOccupancies.executeQuery();
+      while (latestOccupanciesResultSet.next()) {
+        String name = latestOccupanciesResultSet.getString("name");
+        Date latestDate = latestOccupanciesResultSet.getDate("date");
+        String key = keyOf(name);
+        seen.add(key);
+        shelters
+            .computeIfAbsent(key, k -> new ShelterBeds(name))
+            .reset(
+                name,
+                latestOccupanciesResultSet.getInt("capacity"),
+                latestDate == null ? null : latestDate.toLocalDate(),
+                latestDate == null ? 0 : latestOccupanciesResultSet.getInt("occupancy"),
+                replace);
+      }
+    } catch (SQLException sqlException) {
+      throw new SQLException(sqlException.getMessage());
+    } catch (IOException ioException) {
+      throw new IOException(ioException.getMessage());
+    } catch (ClassNotFoundException classNotFoundException) {
+      throw new ClassNotFoundException(classNotFoundException.getMessage());
+    } finally {
+      /* Ensure the connection is closed */
+      DatabaseManager.closeConnection(connection);
+    }
+
+    if (replace) {
+      shelters.keySet().retainAll(seen);
+    }
+  }
+
+  /**
+   * Returns the key a shelter name is stored under.
+   *
+   * @param shelterName The name.
+   * @return The lower-case name.
+   */
+  private static String keyOf(String shelterName) {
+    return shelterName.toLowerCase(Locale.ROOT);
+  }
+
+  /**
+   * The beds of one shelter. The high half of the state is the shelter's free beds as of its latest
+   * declaration, less the check-ins since, and the low half the beds held by active reservations.
+   * Reservations change the state by compare-and-set only; declarations, which are rare, also
+   * update the capacity and latest occupancy under the shelter's monitor.
+   */
+  static class ShelterBeds {
+    private final AtomicLong state = new AtomicLong();
+    private volatile String name;
+    private int capacity;
+    private LocalDate latestDate;
+    private int occupancy;
+
+    ShelterBeds(String name) {
+      this.name = name;
+    }
+
+    String getName() {
+      return name;
+    }
+
+    int available() {
+      long current = state.get();
+      return Math.max(0, free(current) - held(current));
+    }
+
+    boolean tryReserve(int beds) {
+      while (true) {
+        long current = state.get();
+        int held = held(current);
+        if ((long) held + beds > free(current)) {
+          return false;
+        }
+        if (state.compareAndSet(current, pack(free(current), held + beds))) {
+          return true;
+        }
+      }
+    }
+
+    void settle(int beds, boolean checkedIn) {
+      while (true) {
+        long current = state.get();
+        int free = checkedIn ? free(current) - beds : free(current);
+        if (state.compareAndSet(current, pack(free, held(current) - beds))) {
+          return;
+        }
+      }
+    }
+
+    synchronized void declare(LocalDate date, int declaredOccupancy) {
+      /* A declaration for an earlier date describes the past */
+      if (latestDate != null && date.isBefore(latestDate)) {
+        return;
+      }
+      latestDate = date;
+      occupancy = declaredOccupancy;
+      setFree(capacity - occupancy);
+    }
+
+    synchronized void redefine(String shelterName, int maxCapacity) {
+      name = shelterName;
+      /* The beds checked in since the latest declaration stay taken */
+      addFree(maxCapacity - capacity);
+      capacity = maxCapacity;
+    }
+
+    private synchronized void reset(
+        String shelterName,
+        int maxCapacity,
+        LocalDate date,
+        int declaredOccupancy,
+        boolean replace) {
+      name = shelterName;
+      if (replace || (date != null && (latestDate == null || date.isAfter(latestDate)))) {
+        capacity = maxCapacity;
+        latestDate = date;
+        occupancy = declaredOccupancy;
+        setFree(capacity - occupancy);
+      } else {
+        addFree(maxCapacity - capacity);
+        capacity = maxCapacity;
+      }
+    }
+
+    /* Replaces the free beds, keeping the reservations held against them */
+    private void setFree(int free) {
+      while (true) {
+        long current = state.get();
+        if (state.compareAndSet(current, pack(free, held(current)))) {
+          return;
+        }
+      }
+    }
+
+    private void addFree(int delta) {
+      while (true) {
+        long current = state.get();
+        if (state.compareAndSet(current, pack(free(current) + delta, held(current)))) {
+          return;
+        }
+      }
+    }
+
+    private static long pack(int free, int held) {
+      return ((long) free << 32) | (held & 0xFFFFFFFFL);
+    }
+
+    private static int free(long state) {
+      return (int) (state >> 32);
+    }
+
+    private static int held(long state) {
+      return (int) state;
+    }
+  }
+}
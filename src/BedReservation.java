@@ -0,0 +1,59 @@
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * A hold on beds at one shelter, taken from the {@link BedAvailabilityService}. It ends exactly
+ * once: the client checks in, the intake worker releases it, or it expires.
+ */
+public class BedReservation {
+  static final int ACTIVE = 0;
+  static final int CHECKED_IN = 1;
+  static final int RELEASED = 2;
+  static final int EXPIRED = 3;
+
+  private final String shelterName;
+  private final int beds;
+  private final long expiresAtNanos;
+  final BedAvailabilityService.ShelterBeds shelter;
+  final AtomicInteger status = new AtomicInteger(ACTIVE);
+
+  BedReservation(BedAvailabilityService.ShelterBeds shelter, int beds, long expiresAtNanos) {
+    this.shelter = shelter;
+    this.shelterName = shelter.getName();
+    this.beds = beds;
+    this.expiresAtNanos = expiresAtNanos;
+  }
+
+  public String getShelterName() {
+    return shelterName;
+  }
+
+  public int getBeds() {
+    return beds;
+  }
+
+  /**
+   * Checks if the reservation still holds its beds.
+   *
+   * @return True until it is checked in, released or expired.
+   */
+  public boolean isActive() {
+    return status.get() == ACTIVE && !isPastExpiry(System.nanoTime());
+  }
+
+  boolean isPastExpiry(long nowNanos) {
+    return nowNanos - expiresAtNanos >= 0;
+  }
+
+  @Override
+  public String toString() {
+    return "BedReservation{"
+        + "shelterName='"
+        + shelterName
+        + '\''
+        + ", beds="
+        + beds
+        + ", status="
+        + status.get()
+        + '}';
+  }
+}
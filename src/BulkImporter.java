@@ -0,0 +1,729 @@
+import java.io.BufferedReader;
+import java.io.BufferedWriter;
+import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.sql.Connection;
+import java.sql.Date;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.time.LocalDate;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * BulkImporter streams a partner CSV export of donations, disbursements or occupancy declarations
+ * into the database. It runs as a three-stage pipeline connected by bounded queues, so memory use
+ * stays flat for inputs of any size and a slow stage holds back the ones before it:
+ *
+ * <ol>
+ *   <li>the calling thread reads chunks of lines from a file channel;
+ *   <li>a pool of parser threads parses and validates each line with the same rules the single-row
+ *       API applies;
+ *   <li>one writer thread inserts the accepted rows in batches, one transaction per batch, over a
+ *       single connection.
+ * </ol>
+ *
+ * <p>Every batch also counts its write in the {@link WriteWatermark}, so a server running against
+ * the same database notices the imported rows before its next report and rebuilds the stores and
+ * cache entries they make stale; no restart is needed.
+ *
+ * <p>Every rejected line is written with its line number and reason to a reject file, and the
+ * import returns a throughput summary. Expected columns are "donor,program,date,donation" for
+ * donations, "shelter,date,funds" for disbursements and "shelter,date,occupancy" for occupancy; a
+ * header line is skipped.
+ */
+public class BulkImporter {
+
+  /** The kind of records held by an import file. */
+  public enum ImportKind {
+    DONATION,
+    DISBURSEMENT,
+    OCCUPANCY
+  }
+
+  private static final int CHUNK_LINES = 1000;
+  private static final int QUEUE_CAPACITY = 16;
+
+  private final int parserThreads =
+      ConfigurationManager.getInt(
+          "bulkImport.parserThreads", Runtime.getRuntime().availableProcessors());
+  private final int batchSize = ConfigurationManager.getInt("bulkImport.batchSize", 500);
+  private final HelperMethod helperMethod = new HelperMethod();
+
+  /* Reference data, loaded once before the pipeline starts and only read afterwards */
+  private final Map<String, int[]> shelters = new HashMap<>();
+  private final Map<String, Map<String, int[]>> donorPrograms = new HashMap<>();
+
+  private final AtomicLong linesRead = new AtomicLong();
+  private final AtomicLong rowsImported = new AtomicLong();
+  private final AtomicLong rowsRejected = new AtomicLong();
+  private BufferedWriter rejectWriter;
+
+  /**
+   * Imports a CSV file.
+   *
+   * @param kind The kind of records in the file.
+   * @param input The CSV file to import.
+   * @param rejectFile The file receiving the rejected lines and their reasons.
+   * @return The summary of the import.
+   * @throws SQLException If the writer stage fails with a database error.
+   * @throws IOException If a file cannot be read or written, or the import is interrupted.
+   * @throws ClassNotFoundException If the required class is not found during database operations.
+   */
+  public ImportSummary importFile(ImportKind kind, Path input, Path rejectFile)
+      throws SQLException, IOException, ClassNotFoundException {
+    long startNanos = System.nanoTime();
+    loadReferenceData(kind);
+
+    BlockingQueue<List<Pair<Long, String>>> parseQueue = new ArrayBlockingQueue<>(QUEUE_CAPACITY);
+    BlockingQueue<List<ImportRow>> writeQueue = new ArrayBlockingQueue<>(QUEUE_CAPACITY);
+    ExecutorService parsers = Executors.newFixedThreadPool(parserThreads);
+    ExecutorService writer = Executors.newSingleThreadExecutor();
+
+    try (BufferedWriter rejects =
+            Files.newBufferedWriter(rejectFile, StandardCharsets.UTF_8);
+        FileChannel channel = FileChannel.open(input, StandardOpenOption.READ);
+        BufferedReader reader =
+            new BufferedReader(Channels.newReader(channel, StandardCharsets.UTF_8))) {
+      rejectWriter = rejects;
+      rejects.write("line,reason,record");
+      rejects.newLine();
+
+      List<Future<Void>> parserResults = new ArrayList<>(parserThreads);
+      for (int parser = 0; parser < parserThreads; parser++) {
+        parserResults.add(parsers.submit(() -> parseStage(kind, parseQueue, writeQueue)));
+      }
+      Future<Void> writerResult = writer.submit(() -> writeStage(kind, writeQueue));
+
+      /* Reader stage: runs on the calling thread and blocks whenever the parsers fall behind */
+      List<Pair<Long, String>> chunk = new ArrayList<>(CHUNK_LINES);
+      String line;
+      long lineNumber = 0;
+      while ((line = reader.readLine()) != null && !writerResult.isDone()) {
+        lineNumber++;
+        if (line.isBlank() || (lineNumber == 1 && isHeader(line))) {
+          continue;
+        }
+        chunk.add(new Pair<>(lineNumber, line));
+        if (chunk.size() == CHUNK_LINES) {
+          hand(parseQueue, chunk, writerResult);
+          chunk = new ArrayList<>(CHUNK_LINES);
+        }
+      }
+      linesRead.set(lineNumber);
+      hand(parseQueue, chunk, writerResult);
+      for (int parser = 0; parser < parserThreads; parser++) {
+        hand(parseQueue, List.of(), writerResult);
+      }
+
+      writerResult.get();
+      for (Future<Void> parserResult : parserResults) {
+        parserResult.get();
+      }
+    } catch (InterruptedException interruptedException) {
+      Thread.currentThread().interrupt();
+      throw new InterruptedIOException("Import interrupted");
+    } catch (ExecutionException executionException) {
+      Throwable cause = executionException.getCause();
+      if (cause instanceof SQLException) {
+        throw new SQLException(cause.getMessage());
+      }
+      throw new IOException(cause.getMessage());
+    } finally {
+      parsers.shutdownNow();
+      writer.shutdownNow();
+    }
+
+    return new ImportSummary(
+        linesRead.get(), rowsImported.get(), rowsRejected.get(), System.nanoTime() - startNanos);
+  }
+
+  /**
+   * Puts a chunk on the parse queue, giving up if the writer stage has already stopped.
+   *
+   * @param parseQueue The queue feeding the parsers; an empty chunk tells a parser to stop.
+   * @param chunk The numbered lines to parse.
+   * @param writerResult The writer stage, checked while waiting for room in the queue.
+   * @throws InterruptedException If the reader is interrupted while waiting.
+   */
+  private void hand(
+      BlockingQueue<List<Pair<Long, String>>> parseQueue,
+      List<Pair<Long, String>> chunk,
+      Future<Void> writerResult)
+      throws InterruptedException {
+    while (!parseQueue.offer(chunk, 100, TimeUnit.MILLISECONDS)) {
+      if (writerResult.isDone()) {
+        return;
+      }
+    }
+  }
+
+  /**
+   * Parser stage: turns chunks of lines into validated rows until it receives an empty chunk.
+   *
+   * @param kind The kind of records in the file.
+   * @param parseQueue The queue of numbered lines.
+   * @param writeQueue The queue of validated rows; an empty list tells the writer a parser ended.
+   * @return Nothing; declared so the stage can throw.
+   * @throws Exception If the stage is interrupted or the reject file cannot be written.
+   */
+  private Void parseStage(
+      ImportKind kind,
+      BlockingQueue<List<Pair<Long, String>>> parseQueue,
+      BlockingQueue<List<ImportRow>> writeQueue)
+      throws Exception {
+    try {
+      while (true) {
+        List<Pair<Long, String>> chunk = parseQueue.take();
+        if (chunk.isEmpty()) {
+          return null;
+        }
+        List<ImportRow> rows = new ArrayList<>(chunk.size());
+        for (Pair<Long, String> line : chunk) {
+          ImportRow row = new ImportRow(line.getKey(), line.getValue());
+          String reason = parse(kind, row);
+          if (reason == null) {
+            rows.add(row);
+          } else {
+            reject(row, reason);
+          }
+        }
+        if (!rows.isEmpty()) {
+          writeQueue.put(rows);
+        }
+      }
+    } finally {
+      /* The writer waits for every parser, including one that failed */
+      writeQueue.put(List.of());
+    }
+  }
+
+  /**
+   * Writer stage: inserts the validated rows in batches until every parser has ended.
+   *
+   * @param kind The kind of records in the file.
+   * @param writeQueue The queue of validated rows.
+   * @return Nothing; declared so the stage can throw.
+   * @throws Exception If a database or file error stops the import.
+   */
+  private Void writeStage(ImportKind kind, BlockingQueue<List<ImportRow>> writeQueue)
+      throws Exception {
+    Connection connection = null;
+    try {
+      connection = DatabaseManager.getConnection();
+      connection.setAutoCommit(false);
+
+      int parsersRunning = parserThreads;
+      List<ImportRow> batch = new ArrayList<>(batchSize);
+      while (parsersRunning > 0) {
+        List<ImportRow> rows = writeQueue.take();
+        if (rows.isEmpty()) {
+          parsersRunning--;
+          continue;
+        }
+        for (ImportRow row : rows) {
+          batch.add(row);
+          if (batch.size() == batchSize) {
+            write(connection, kind, batch);
+            batch = new ArrayList<>(batchSize);
+          }
+        }
+      }
+      if (!batch.isEmpty()) {
+        write(connection, kind, batch);
+      }
+    } finally {
+      /* Ensure the connection is closed */
+      DatabaseManager.closeConnection(connection);
+    }
+    return null;
+  }
+
+  /**
+   * Writes a batch in one transaction. If the batch fails, it is rolled back and retried row by
+   * row, so only the offending rows are rejected.
+   *
+   * @param connection The writer's connection, not in auto-commit mode.
+   * @param kind The kind of records in the batch.
+   * @param batch The rows to write.
+   * @throws SQLException If a rollback fails.
+   * @throws IOException If the reject file cannot be written.
+   */
+  private void write(Connection connection, ImportKind kind, List<ImportRow> batch)
+      throws SQLException, IOException {
+    try {
+      List<ImportRow> written;
+      List<ImportRow> overLimit = new ArrayList<>();
+      switch (kind) {
+        case DONATION:
+          written = insertDonations(connection, batch);
+          break;
+        case DISBURSEMENT:
+          written = insertDisbursements(connection, batch);
+          break;
+        default:
+          written = insertOccupancy(connection, batch, overLimit);
+          break;
+      }
+      /* Counted with the rows, so a running server sees the batch before its next report */
+      WriteWatermark.getInstance().recordWrite(connection, source(kind));
+      connection.commit();
+      rowsImported.addAndGet(written.size());
+      /* Only rejected once the batch commits, a failed batch is decided again row by row */
+      for (ImportRow row : overLimit) {
+        reject(row, "Occupancy records for the year are complete");
+      }
+      afterCommit(kind, written);
+    } catch (SQLException sqlException) {
+      DatabaseManager.rollback(connection);
+      if (batch.size() == 1) {
+        reject(batch.get(0), sqlException.getMessage());
+        return;
+      }
+      for (ImportRow row : batch) {
+        write(connection, kind, List.of(row));
+      }
+    }
+  }
+
+  private List<ImportRow> insertDonations(Connection connection, List<ImportRow> batch)
+      throws SQLException {
+    /* Statements are closed per batch, the writer connection lives for the whole import */
+    try (PreparedStatement insertReceiveDonationRecord =
+        connection.prepareStatement(
+            "insert into receive_donation_record (date, donation, donor_id, program_id) values (?, ?, ?, ?)")) {
+      for (ImportRow row : batch) {
+        insertReceiveDonationRecord.setDate(1, Date.valueOf(row.date));
+        insertReceiveDonationRecord.setInt(2, row.amount);
+        insertReceiveDonationRecord.setInt(3, row.entityID);
+        insertReceiveDonationRecord.setInt(4, row.programID);
+        insertReceiveDonationRecord.addBatch();
+      }
+      insertReceiveDonationRecord.executeBatch();
+    }
+    return batch;
+  }
+
+  private List<ImportRow> insertDisbursements(Connection connection, List<ImportRow> batch)
+      throws SQLException {
+    try (PreparedStatement insertDisburseFund =
+            connection.prepareStatement(
+                "insert into disburse_fund_record (date, funds, shelter_id) values (?, ?,?)");
+        PreparedStatement upsertDailyRollup =
+            connection.prepareStatement(
+                "insert into disburse_fund_daily (shelter_id, date, funds) values (?, ?, ?) on duplicate key update funds = funds + values(funds)");
+        PreparedStatement upsertMonthlyRollup =
+            connection.prepareStatement(
+                "insert into disburse_fund_monthly (shelter_id, month, funds) values (?, ?, ?) on duplicate key update funds = funds + values(funds)")) {
+      for (ImportRow row : batch) {
+        insertDisburseFund.setDate(1, Date.valueOf(row.date));
+        insertDisburseFund.setInt(2, row.amount);
+        insertDisburseFund.setInt(3, row.entityID);
+        insertDisburseFund.addBatch();
+
+        upsertDailyRollup.setInt(1, row.entityID);
+        upsertDailyRollup.setDate(2, Date.valueOf(row.date));
+        upsertDailyRollup.setInt(3, row.amount);
+        upsertDailyRollup.addBatch();
+
+        upsertMonthlyRollup.setInt(1, row.entityID);
+        upsertMonthlyRollup.setDate(2, Date.valueOf(row.date.withDayOfMonth(1)));
+        upsertMonthlyRollup.setInt(3, row.amount);
+        upsertMonthlyRollup.addBatch();
+      }
+      insertDisburseFund.executeBatch();
+      upsertDailyRollup.executeBatch();
+      upsertMonthlyRollup.executeBatch();
+    }
+    return batch;
+  }
+
+  /**
+   * Inserts occupancy rows, enforcing the per-year limit against the locked counter rows exactly
+   * like a single declaration does. Rows over the limit are left out of the batch; the others are
+   * added to their monthly occupancy sketches.
+   *
+   * @param connection The writer's connection, not in auto-commit mode.
+   * @param batch The rows to write.
+   * @param overLimit Receives the rows left out because their year is complete.
+   * @return The rows written.
+   * @throws SQLException If there is an issue with the SQL operations.
+   */
+  private List<ImportRow> insertOccupancy(
+      Connection connection, List<ImportRow> batch, List<ImportRow> overLimit)
+      throws SQLException {
+    Map<Long, int[]> yearCounts = new LinkedHashMap<>();
+    List<ImportRow> accepted = new ArrayList<>(batch.size());
+
+    /* Lock and read the counter of every shelter-year touched by the batch */
+    try (PreparedStatement ensureYearCount =
+            connection.prepareStatement(
+                "insert into shelter_occupancy_year_count (shelter_id, year, record_count) values (?, ?, 0) on duplicate key update record_count = record_count");
+        PreparedStatement shelterOccupancyInAYear =
+            connection.prepareStatement(
+                "select record_count from shelter_occupancy_year_count where shelter_id = ? and year = ? for update;")) {
+      for (ImportRow row : batch) {
+        long shelterYear = ((long) row.entityID << 32) | row.date.getYear();
+        int[] yearCount = yearCounts.get(shelterYear);
+        if (yearCount == null) {
+          ensureYearCount.setInt(1, row.entityID);
+          ensureYearCount.setInt(2, row.date.getYear());
+          ensureYearCount.executeUpdate();
+          shelterOccupancyInAYear.setInt(1, row.entityID);
+          shelterOccupancyInAYear.setInt(2, row.date.getYear());
+          ResultSet shelterOccupancyInAYearResultSet = shelterOccupancyInAYear.executeQuery();
+          /* Current count and the number of rows this batch adds */
+          yearCount =
+              new int[] {
+                shelterOccupancyInAYearResultSet.next()
+                    ? shelterOccupancyInAYearResultSet.getInt(1)
+                    : 0,
+                0
+              };
+          yearCounts.put(shelterYear, yearCount);
+        }
+
+        int count = yearCount[0] + yearCount[1];
+        if (row.date.isLeapYear() ? count > 366 : count > 365) {
+          overLimit.add(row);
+          continue;
+        }
+        yearCount[1]++;
+        accepted.add(row);
+      }
+    }
+
+    try (PreparedStatement insertShelterOccupancy =
+            connection.prepareStatement(
+                "insert into shelter_occupancy_record (date, occupancy, shelter_id) values (?, ?,?)");
+        PreparedStatement incrementYearCount =
+            connection.prepareStatement(
+                "update shelter_occupancy_year_count set record_count = record_count + ? where shelter_id = ? and year = ?;")) {
+      Map<Long, List<Integer>> sketchAdditions = new LinkedHashMap<>();
+      for (ImportRow row : accepted) {
+        sketchAdditions
+            .computeIfAbsent(
+                OccupancySketchStore.shelterMonth(row.entityID, row.date), k -> new ArrayList<>())
+            .add(row.amount);
+        insertShelterOccupancy.setDate(1, Date.valueOf(row.date));
+        insertShelterOccupancy.setInt(2, row.amount);
+        insertShelterOccupancy.setInt(3, row.entityID);
+        insertShelterOccupancy.addBatch();
+      }
+      insertShelterOccupancy.executeBatch();
+
+      for (Map.Entry<Long, int[]> entry : yearCounts.entrySet()) {
+        incrementYearCount.setInt(1, entry.getValue()[1]);
+        incrementYearCount.setInt(2, (int) (entry.getKey() >>> 32));
+        incrementYearCount.setInt(3, (int) (long) entry.getKey());
+        incrementYearCount.addBatch();
+      }
+      incrementYearCount.executeBatch();
+      OccupancySketchStore.persist(connection, sketchAdditions);
+    }
+    return accepted;
+  }
+
+  /**
+   * Mirrors committed rows into the in-process indexes, the report cache, the mutation journal and
+   * the occupancy feed, as the single-row write path does.
+   *
+   * @param kind The kind of records written.
+   * @param written The committed rows.
+   */
+  private void afterCommit(ImportKind kind, List<ImportRow> written) {
+    MutationJournal mutationJournal = MutationJournal.getInstance();
+    ReportCache reportCache = ReportCache.getInstance();
+    for (ImportRow row : written) {
+      if (kind == ImportKind.DONATION) {
+        DonationIndex.getInstance().recordDonation(row.name, row.program, row.date, row.amount);
+        reportCache.invalidate(ReportCache.Source.DONATIONS, row.date);
+        mutationJournal.append(
+            MutationEvent.receiveDonation(row.name, row.program, row.date, row.amount));
+      } else if (kind == ImportKind.DISBURSEMENT) {
+        reportCache.invalidate(ReportCache.Source.DISBURSEMENTS, row.date);
+        mutationJournal.append(MutationEvent.disburseFunds(row.name, row.date, row.amount));
+      } else {
+        OccupancyColumnStore.getInstance().record(row.entityID, row.date, row.amount);
+        OccupancySketchStore.getInstance().record(row.entityID, row.date, row.amount);
+        reportCache.invalidate(ReportCache.Source.OCCUPANCY, row.date);
+        MutationEvent event = MutationEvent.declareShelterOccupancy(row.name, row.date, row.amount);
+        mutationJournal.append(event);
+        OccupancyFeed.getInstance().publish(event);
+      }
+    }
+  }
+
+  /**
+   * Returns the kind of data the records of an import change.
+   *
+   * @param kind The kind of records imported.
+   * @return The source their write is counted under.
+   */
+  private static ReportCache.Source source(ImportKind kind) {
+    switch (kind) {
+      case DONATION:
+        return ReportCache.Source.DONATIONS;
+      case DISBURSEMENT:
+        return ReportCache.Source.DISBURSEMENTS;
+      default:
+        return ReportCache.Source.OCCUPANCY;
+    }
+  }
+
+  /**
+   * Parses and validates one line with the rules of the matching single-row operation.
+   *
+   * @param kind The kind of record on the line.
+   * @param row The row to fill in.
+   * @return Null if the row is valid; otherwise the reason it is rejected.
+   */
+  private String parse(ImportKind kind, ImportRow row) {
+    List<String> fields = splitFields(row.line);
+    int expectedFields = kind == ImportKind.DONATION ? 4 : 3;
+    if (fields.size() != expectedFields) {
+      return "Expected " + expectedFields + " fields but found " + fields.size();
+    }
+
+    row.name = fields.get(0);
+    if (kind == ImportKind.DONATION) {
+      row.program = fields.get(1);
+    }
+    row.date = helperMethod.parseDate(fields.get(expectedFields - 2));
+    if (row.name.isEmpty()
+        || (kind == ImportKind.DONATION && row.program.isEmpty())
+        || row.date == null) {
+      return "Missing name or invalid date";
+    }
+    try {
+      row.amount = Integer.parseInt(fields.get(expectedFields - 1));
+    } catch (NumberFormatException numberFormatException) {
+      return "Amount is not a number";
+    }
+
+    if (kind == ImportKind.DONATION) {
+      if (row.amount <= 0) {
+        return "Donation must be positive";
+      }
+      Map<String, int[]> programs = donorPrograms.get(row.name);
+      if (programs == null) {
+        return "Unknown donor";
+      }
+      int[] programIDs = programs.get(row.program);
+      if (programIDs == null) {
+        return "Program is not associated with the donor";
+      }
+      row.entityID = programIDs[0];
+      row.programID = programIDs[1];
+      return null;
+    }
+
+    int[] shelter = shelters.get(row.name);
+    if (shelter == null) {
+      return "Unknown shelter";
+    }
+    row.entityID = shelter[0];
+    if (kind == ImportKind.DISBURSEMENT) {
+      return row.amount <= 0 ? "Funds must be positive" : null;
+    }
+    if (row.amount < 0) {
+      return "Occupancy must not be negative";
+    }
+    if (shelter[1] < row.amount) {
+      return "Occupancy exceeds the shelter capacity";
+    }
+    if (OccupancyArchive.getInstance().isArchived(row.entityID, row.date.getYear())) {
+      return "The year is archived";
+    }
+    return null;
+  }
+
+  /**
+   * Loads the names the parser stage resolves, so no line needs a lookup query of its own.
+   *
+   * @param kind The kind of records being imported.
+   * @throws SQLException If there is an issue with the SQL operations.
+   * @throws IOException If there is an issue with input/output operations.
+   * @throws ClassNotFoundException If the required class is not found during database operations.
+   */
+  private void loadReferenceData(ImportKind kind)
+      throws SQLException, IOException, ClassNotFoundException {
+    Connection connection = null;
+    try {
+      connection = DatabaseManager.getConnection();
+
+      if (kind == ImportKind.DONATION) {
+        PreparedStatement allPrograms =
+            connection.prepareStatement(
+                """
+                    SELECT d.donor_id, d.name AS donor_name, fp.program_id, fp.name AS program_name
+                    FROM donor d
+                         JOIN funding_program fp ON d.donor_id = fp.donor_id""");
+        ResultSet allProgramsResultSet = allPrograms.executeQuery();
+        while (allProgramsResultSet.next()) {
+          donorPrograms
+              .computeIfAbsent(allProgramsResultSet.getString("donor_name"), k -> new HashMap<>())
+              .put(
+                  allProgramsResultSet.getString("program_name"),
+                  new int[] {
+                    allProgramsResultSet.getInt("donor_id"), allProgramsResultSet.getInt("program_id")
+                  });
+        }
+      } else {
+        PreparedStatement allShelters =
+            connection.prepareStatement("SELECT shelter_id, name, capacity FROM shelter;");
+        ResultSet allSheltersResultSet = allShelters.executeQuery();
+        while (allSheltersResultSet.next()) {
+          shelters.put(
+              allSheltersResultSet.getString("name"),
+              new int[] {
+                allSheltersResultSet.getInt("shelter_id"), allSheltersResultSet.getInt("capacity")
+              });
+        }
+      }
+    } catch (SQLException sqlException) {
+      throw new SQLException(sqlException.getMessage());
+    } catch (IOException ioException) {
+      throw new IOException(ioException.getMessage());
+    } catch (ClassNotFoundException classNotFoundException) {
+      throw new ClassNotFoundException(classNotFoundException.getMessage());
+    } finally {
+      /* Ensure the connection is closed */
+      DatabaseManager.closeConnection(connection);
+    }
+  }
+
+  /**
+   * Writes a rejected line to the reject file.
+   *
+   * @param row The rejected row.
+   * @param reason Why it was rejected.
+   * @throws IOException If the reject file cannot be written.
+   */
+  private void reject(ImportRow row, String reason) throws IOException {
+    rowsRejected.incrementAndGet();
+    synchronized (this) {
+      rejectWriter.write(row.lineNumber + "," + quote(reason) + "," + quote(row.line));
+      rejectWriter.newLine();
+    }
+  }
+
+  private boolean isHeader(String line) {
+    String firstField = splitFields(line).get(0).toLowerCase();
+    return firstField.equals("donor") || firstField.equals("shelter");
+  }
+
+  /**
+   * Splits a CSV line into trimmed fields, honouring double-quoted fields.
+   *
+   * @param line The line to split.
+   * @return The fields of the line.
+   */
+  private List<String> splitFields(String line) {
+    List<String> fields = new ArrayList<>();
+    StringBuilder field = new StringBuilder();
+    boolean quoted = false;
+    for (int index = 0; index < line.length(); index++) {
+      char character = line.charAt(index);
+      if (character == '"') {
+        if (quoted && index + 1 < line.length() && line.charAt(index + 1) == '"') {
+          field.append('"');
+          index++;
+        } else {
+          quoted = !quoted;
+        }
+      } else if (character == ',' && !quoted) {
+        fields.add(field.toString().trim());
+        field.setLength(0);
+      } else {
+        field.append(character);
+      }
+    }
+    fields.add(field.toString().trim());
+    return fields;
+  }
+
+  private String quote(String value) {
+    return "\"" + String.valueOf(value).replace("\"", "\"\"") + "\"";
+  }
+
+  /** One line of the import file on its way through the pipeline. */
+  private static class ImportRow {
+    private final long lineNumber;
+    private final String line;
+    private String name;
+    private String program;
+    private LocalDate date;
+    private int amount;
+    /* Shelter ID, or donor ID for donations */
+    private int entityID;
+    private int programID;
+
+    ImportRow(long lineNumber, String line) {
+      this.lineNumber = lineNumber;
+      this.line = line;
+    }
+  }
+
+  /** Counts and throughput of a finished import. */
+  public static class ImportSummary {
+    private final long linesRead;
+    private final long rowsImported;
+    private final long rowsRejected;
+    private final long elapsedNanos;
+
+    ImportSummary(long linesRead, long rowsImported, long rowsRejected, long elapsedNanos) {
+      this.linesRead = linesRead;
+      this.rowsImported = rowsImported;
+      this.rowsRejected = rowsRejected;
+      this.elapsedNanos = elapsedNanos;
+    }
+
+    public long getRowsImported() {
+      return rowsImported;
+    }
+
+    public long getRowsRejected() {
+      return rowsRejected;
+    }
+
+    /**
+     * Returns the number of lines processed per second.
+     *
+     * @return The throughput of the import.
+     */
+    public double getLinesPerSecond() {
+      return elapsedNanos == 0 ? 0 : linesRead / (elapsedNanos / 1_000_000_000.0);
+    }
+
+    /**
+     * Returns a string representation of the ImportSummary object.
+     *
+     * @return String representation of the object
+     */
+    @Override
+    public String toString() {
+      return String.format(
+          "ImportSummary{linesRead=%d, rowsImported=%d, rowsRejected=%d, seconds=%.3f, linesPerSecond=%.1f}",
+          linesRead, rowsImported, rowsRejected, elapsedNanos / 1_000_000_000.0, getLinesPerSecond());
+    }
+  }
+}
@@ -0,0 +1,63 @@
+import java.time.LocalDate;
+
+/** A change of a shelter's state against a {@link CapacityRule}, pushed to the alert listeners. */
+public class CapacityAlert {
+
+  /** Whether the shelter has just crossed the rule or recovered from it. */
+  public enum Kind {
+    CROSSED,
+    RECOVERED
+  }
+
+  private final Kind kind;
+  private final CapacityRule rule;
+  private final String shelterName;
+  private final LocalDate date;
+  private final int occupancy;
+  private final int capacity;
+
+  public CapacityAlert(
+      Kind kind,
+      CapacityRule rule,
+      String shelterName,
+      LocalDate date,
+      int occupancy,
+      int capacity) {
+    this.kind = kind;
+    this.rule = rule;
+    this.shelterName = shelterName;
+    this.date = date;
+    this.occupancy = occupancy;
+    this.capacity = capacity;
+  }
+
+  public Kind getKind() {
+    return kind;
+  }
+
+  public CapacityRule getRule() {
+    return rule;
+  }
+
+  public String getShelterName() {
+    return shelterName;
+  }
+
+  public LocalDate getDate() {
+    return date;
+  }
+
+  public int getOccupancy() {
+    return occupancy;
+  }
+
+  public int getCapacity() {
+    return capacity;
+  }
+
+  @Override
+  public String toString() {
+    return String.format(
+        "%s %s %s on %s: %d of %d", shelterName, kind, rule.getName(), date, occupancy, capacity);
+  }
+}
@@ -0,0 +1,325 @@
+import java.io.IOException;
+import java.sql.Connection;
+import java.sql.Date;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.text.Collator;
+import java.time.LocalDate;
+import java.util.ArrayList;
+import java.util.BitSet;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+/**
+ * CapacityAlertEngine evaluates the registered {@link CapacityRule}s continuously, on every
+ * successful occupancy declaration published by the {@link OccupancyFeed}, and pushes a {@link
+ * CapacityAlert} to its listeners when a shelter crosses a rule or recovers from it. It keeps the
+ * capacity, latest declaration and per-rule state of every shelter in memory, keyed by shelter id,
+ * so a write costs a lookup of the shelter's name and one comparison per rule, and never reads the
+ * database.
+ *
+ * <p>Alerts are de-duplicated: a shelter that stays over a rule raises it once, and only recovers
+ * once it falls below the rule's clear percentage. Declarations for a date older than the latest
+ * one seen for a shelter describe the past and are ignored. At start the state is seeded from the
+ * latest declaration of every shelter without raising alerts, so a restart does not repeat them. A
+ * shelter whose records have all been archived is seeded from the {@link OccupancyArchive} when it
+ * is open.
+ *
+ * <p>Only the declarations and shelter definitions published on the feed reach the engine, and
+ * the feed carries the writes of this process. Rows written by another process are not seen until
+ * the engine is started again, or reloaded as a snapshot load does.
+ */
+public class CapacityAlertEngine implements OccupancyListener {
+  private static final CapacityAlertEngine INSTANCE = new CapacityAlertEngine();
+  private static final Logger logger = Logger.getLogger("homelesssupport.capacityalerts");
+
+  private final List<CapacityRule> rules = new ArrayList<>();
+  private final List<CapacityAlertListener> listeners = new CopyOnWriteArrayList<>();
+  private final OccupancyArchive occupancyArchive;
+  private final Map<Integer, ShelterState> shelters = new HashMap<>();
+  /* Shelter name to id, matched the way the shelter table's collation compares names */
+  private final Map<String, Integer> shelterIDs = new TreeMap<>(nameOrder());
+  private boolean started = false;
+
+  private CapacityAlertEngine() {
+    this(OccupancyArchive.getInstance());
+  }
+
+  /**
+   * Creates an engine apart from the one shared by the process.
+   *
+   * @param occupancyArchive The archive the shelters without records are seeded from.
+   */
+  CapacityAlertEngine(OccupancyArchive occupancyArchive) {
+    this.occupancyArchive = occupancyArchive;
+  }
+
+  /**
+   * Returns the engine shared by the whole process.
+   *
+   * @return The capacity alert engine.
+   */
+  public static CapacityAlertEngine getInstance() {
+    return INSTANCE;
+  }
+
+  /**
+   * Adds a rule. Shelters start from their current state against it without raising an alert.
+   *
+   * @param rule The rule.
+   */
+  public synchronized void addRule(CapacityRule rule) {
+    rules.add(rule);
+    int ruleIndex = rules.size() - 1;
+    for (ShelterState state : shelters.values()) {
+      if (state.latestDate != null && rule.isCrossedBy(state.occupancy, state.capacity)) {
+        state.crossed.set(ruleIndex);
+      }
+    }
+  }
+
+  /**
+   * Returns the registered rules.
+   *
+   * @return A copy of the rules, in the order they were added.
+   */
+  public synchronized List<CapacityRule> getRules() {
+    return new ArrayList<>(rules);
+  }
+
+  /**
+   * Registers a listener for the alerts raised from now on.
+   *
+   * @param listener The listener.
+   */
+  public void addListener(CapacityAlertListener listener) {
+    listeners.add(listener);
+  }
+
+  /**
+   * Stops pushing alerts to a listener.
+   *
+   * @param listener The listener.
+   */
+  public void removeListener(CapacityAlertListener listener) {
+    listeners.remove(listener);
+  }
+
+  /**
+   * Checks if the engine is following the writes.
+   *
+   * @return True once the engine has been started.
+   */
+  public synchronized boolean isStarted() {
+    return started;
+  }
+
+  /**
+   * Loads the capacity and latest declaration of every shelter and subscribes to the feed.
+   *
+   * @throws SQLException If there is an issue with the SQL operations.
+   * @throws IOException If there is an issue with input/output operations.
+   * @throws ClassNotFoundException If the required class is not found during database operations.
+   */
+  public synchronized void start() throws SQLException, IOException, ClassNotFoundException {
+    load();
+    OccupancyFeed.getInstance().register(this);
+    started = true;
+  }
+
+  /** Unsubscribes from the feed; the state is kept until the next start. */
+  public synchronized void stop() {
+    OccupancyFeed.getInstance().unregister(this);
+    started = false;
+  }
+
+  /**
+   * Reloads the state from the database if the engine is started, after the tables have been
+   * replaced underneath it.
+   *
+   * @throws SQLException If there is an issue with the SQL operations.
+   * @throws IOException If there is an issue with input/output operations.
+   * @throws ClassNotFoundException If the required class is not found during database operations.
+   */
+  public synchronized void reload() throws SQLException, IOException, ClassNotFoundException {
+    if (started) {
+      load();
+    }
+  }
+
+  @Override
+  public synchronized void occupancyDeclared(String shelterName, LocalDate date, int occupancy) {
+    Integer shelterID = shelterIDs.get(shelterName);
+    ShelterState state = shelterID != null ? shelters.get(shelterID) : null;
+    if (state == null || (state.latestDate != null && date.isBefore(state.latestDate))) {
+      return;
+    }
+    state.latestDate = date;
+    state.occupancy = occupancy;
+    evaluate(state);
+  }
+
+  @Override
+  public synchronized void shelterDefined(String shelterName, int maxCapacity) {
+    Integer shelterID = shelterIDs.get(shelterName);
+    if (shelterID == null) {
+      /* A new shelter; the feed does not carry its id */
+      try {
+        int definedID = new HelperMethod().isShelterExists(shelterName);
+        if (definedID == Constants.SHELTER_NOT_FOUND) {
+          return;
+        }
+        shelterID = definedID;
+      } catch (SQLException | IOException | ClassNotFoundException exception) {
+        logger.log(Level.WARNING, "Could not read the id of shelter " + shelterName, exception);
+        return;
+      }
+      shelterIDs.put(shelterName, shelterID);
+    }
+    ShelterState state = shelters.computeIfAbsent(shelterID, key -> new ShelterState());
+    state.name = shelterName;
+    state.capacity = maxCapacity;
+    /* A new capacity moves the latest occupancy against every rule */
+    if (state.latestDate != null) {
+      evaluate(state);
+    }
+  }
+
+  /**
+   * Compares the latest declaration of a shelter with every rule and raises the changes.
+   *
+   * @param state The shelter.
+   */
+  private void evaluate(ShelterState state) {
+    if (state.capacity <= 0) {
+      return;
+    }
+    for (int ruleIndex = 0; ruleIndex < rules.size(); ruleIndex++) {
+      CapacityRule rule = rules.get(ruleIndex);
+      boolean crossed = state.crossed.get(ruleIndex);
+      if (!crossed && rule.isCrossedBy(state.occupancy, state.capacity)) {
+        state.crossed.set(ruleIndex);
+        push(CapacityAlert.Kind.CROSSED, rule, state);
+      } else if (crossed && rule.isClearedBy(state.occupancy, state.capacity)) {
+        state.crossed.clear(ruleIndex);
+        push(CapacityAlert.Kind.RECOVERED, rule, state);
+      }
+    }
+  }
+
+  /**
+   * Pushes an alert to every listener; a failing listener does not keep it from the others.
+   *
+   * @param kind Whether the shelter crossed the rule or recovered.
+   * @param rule The rule.
+   * @param state The shelter.
+   */
+  private void push(CapacityAlert.Kind kind, CapacityRule rule, ShelterState state) {
+    CapacityAlert alert =
+        new CapacityAlert(
+            kind, rule, state.name, state.latestDate, state.occupancy, state.capacity);
+    for (CapacityAlertListener listener : listeners) {
+      try {
+        listener.capacityAlert(alert);
+      } catch (RuntimeException runtimeException) {
+        logger.log(Level.WARNING, "Capacity alert listener failed on " + alert, runtimeException);
+      }
+    }
+  }
+
+  /**
+   * Replaces the state with the capacity and latest declaration of every shelter, marking the rules
+   * they are over without raising alerts. A shelter without records takes its latest declaration
+   * from the archive, if it is open.
+   *
+   * @throws SQLException If there is an issue with the SQL operations.
+   * @throws IOException If there is an issue with input/output operations.
+   * @throws ClassNotFoundException If the required class is not found during database operations.
+   */
+  private void load() throws SQLException, IOException, ClassNotFoundException {
+    Connection connection = null;
+    shelters.clear();
+    shelterIDs.clear();
+
+    try {
+      connection = DatabaseManager.getConnection();
+
+      PreparedStatement latestOccupancies =
+          connection.prepareStatement(
+              """
+                  SELECT s.shelter_id, s.name, s.capacity, sor.date, sor.occupancy
+                  FROM shelter s
+                  LEFT JOIN shelter_occupancy_record sor ON sor.shelter_id = s.shelter_id
+                    AND sor.date = (SELECT MAX(date) FROM shelter_occupancy_record WHERE shelter_id = s.shelter_id)""");
+      ResultSet latestOccupanciesResultSet = latestOccupancies.executeQuery();
+      boolean archiveOpen = occupancyArchive.isOpen();
+      while (latestOccupanciesResultSet.next()) {
+        int shelterID = latestOccupanciesResultSet.getInt("shelter_id");
+        ShelterState state = new ShelterState();
+        state.name = latestOccupanciesResultSet.getString("name");
+        state.capacity = latestOccupanciesResultSet.getInt("capacity");
+        Date latestDate = latestOccupanciesResultSet.getDate("date");
+        if (latestDate != null) {
+          state.latestDate = latestDate.toLocalDate();
+          state.occupancy = latestOccupanciesResultSet.getInt("occupancy");
+        } else if (archiveOpen) {
+          /* Every record of the shelter has been archived */
+          Pair<LocalDate, Integer> latest = occupancyArchive.latestOccupancy(shelterID);
+          if (latest != null) {
+            state.latestDate = latest.getKey();
+            state.occupancy = latest.getValue();
+          }
+        }
+        if (state.latestDate != null) {
+          for (int ruleIndex = 0; ruleIndex < rules.size(); ruleIndex++) {
+            if (state.capacity > 0
+                && rules.get(ruleIndex).isCrossedBy(state.occupancy, state.capacity)) {
+              state.crossed.set(ruleIndex);
+            }
+          }
+        }
+        shelters.put(shelterID, state);
+        shelterIDs.put(state.name, shelterID);
+      }
+    } catch (SQLException sqlException) {
+      throw new SQLException(sqlException.getMessage());
+    } catch (IOException ioException) {
+      throw new IOException(ioException.getMessage());
+    } catch (ClassNotFoundException classNotFoundException) {
+      throw new ClassNotFoundException(classNotFoundException.getMessage());
+    } finally {
+      /* Ensure the connection is closed */
+      DatabaseManager.closeConnection(connection);
+    }
+  }
+
+  /**
+   * Returns the order shelter names are matched in: case and accents are ignored, as the shelter
+   * table's collation ignores them.
+   *
+   * @return The name comparator.
+   */
+  private static Comparator<String> nameOrder() {
+    Collator collator = Collator.getInstance(Locale.ROOT);
+    collator.setStrength(Collator.PRIMARY);
+    return collator::compare;
+  }
+
+  /** What the engine knows of one shelter. */
+  private static class ShelterState {
+    private String name;
+    private int capacity;
+    private LocalDate latestDate;
+    private int occupancy;
+    /* Bit i is set while the shelter is over rule i */
+    private final BitSet crossed = new BitSet();
+  }
+}
@@ -0,0 +1,14 @@
+/**
+ * Receives the alerts of the {@link CapacityAlertEngine}. It is called on the writing thread while
+ * the engine holds its lock, so it must return quickly; slow work should be handed to another
+ * thread.
+ */
+@FunctionalInterface
+public interface CapacityAlertListener {
+  /**
+   * Called when a shelter crosses a rule or recovers from it.
+   *
+   * @param alert The alert.
+   */
+  void capacityAlert(CapacityAlert alert);
+}
@@ -0,0 +1,68 @@
+/**
+ * A threshold rule for the {@link CapacityAlertEngine}. A shelter crosses the rule when its
+ * occupancy reaches the raise percentage of its capacity, and recovers only once it falls below the
+ * lower clear percentage, so an occupancy hovering around the threshold does not raise an alert on
+ * every declaration.
+ */
+public class CapacityRule {
+  private final String name;
+  private final int raisePercent;
+  private final int clearPercent;
+
+  /**
+   * Creates a rule.
+   *
+   * @param name The name reported with its alerts.
+   * @param raisePercent The occupancy, as a percentage of capacity, at which the rule is crossed.
+   * @param clearPercent The percentage below which a crossed shelter has recovered; at most the
+   *     raise percentage.
+   */
+  public CapacityRule(String name, int raisePercent, int clearPercent) {
+    if (name == null || raisePercent < 0 || clearPercent < 0 || clearPercent > raisePercent) {
+      throw new IllegalArgumentException(
+          "A capacity rule needs a name and 0 <= clearPercent <= raisePercent");
+    }
+    this.name = name;
+    this.raisePercent = raisePercent;
+    this.clearPercent = clearPercent;
+  }
+
+  public String getName() {
+    return name;
+  }
+
+  public int getRaisePercent() {
+    return raisePercent;
+  }
+
+  public int getClearPercent() {
+    return clearPercent;
+  }
+
+  /**
+   * Checks if an occupancy is at or above the raise percentage.
+   *
+   * @param occupancy The occupancy.
+   * @param capacity The capacity of the shelter.
+   * @return True if the rule is crossed.
+   */
+  boolean isCrossedBy(int occupancy, int capacity) {
+    return occupancy * 100L >= (long) raisePercent * capacity;
+  }
+
+  /**
+   * Checks if an occupancy is below the clear percentage.
+   *
+   * @param occupancy The occupancy.
+   * @param capacity The capacity of the shelter.
+   * @return True if a crossed shelter has recovered.
+   */
+  boolean isClearedBy(int occupancy, int capacity) {
+    return occupancy * 100L < (long) clearPercent * capacity;
+  }
+
+  @Override
+  public String toString() {
+    return name + " (" + raisePercent + "%, clears below " + clearPercent + "%)";
+  }
+}
@@ -0,0 +1,355 @@
+import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.io.PrintWriter;
+import java.io.StringWriter;
+import java.sql.SQLException;
+import java.time.LocalDate;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeMap;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutionException;
+
+/**
+ * CollapsingDataManipulator sits in front of another {@link DataManipulator} and collapses
+ * identical concurrent report requests: while a report is running, every call with the same
+ * arguments waits for that execution and receives its result instead of running the report again.
+ * Nothing is kept once the execution finishes, so this is not a cache; a call that arrives after
+ * it always sees fresh data.
+ *
+ * <p>Each caller receives its own copy of the result. Donor reports are rendered once into a
+ * string and written to every caller's stream. A failure of the shared execution reaches every
+ * caller: checked exceptions as copies of their type and message, unchecked exceptions and errors
+ * as the very instance the execution threw.
+ */
+public class CollapsingDataManipulator implements DataManipulator {
+  private final DataManipulator delegate;
+  private final HelperMethod helperMethod = new HelperMethod();
+  private final Map<List<Object>, CompletableFuture<Object>> inFlight = new ConcurrentHashMap<>();
+
+  /**
+   * Creates a collapsing layer in front of a data manipulator.
+   *
+   * @param delegate The data manipulator that runs the reports.
+   */
+  public CollapsingDataManipulator(DataManipulator delegate) {
+    this.delegate = delegate;
+  }
+
+  @Override
+  public Set<String> shelterAtCapacity(int threshold)
+      throws SQLException, IOException, ClassNotFoundException {
+    return copyOf(
+        collapse(
+            Arrays.asList("shelterAtCapacity", threshold),
+            () -> delegate.shelterAtCapacity(threshold)));
+  }
+
+  @Override
+  public Map<Integer, Set<String>> shelterAtCapacity(List<Integer> thresholds)
+      throws SQLException, IOException, ClassNotFoundException {
+    return copyOfGroups(
+        collapse(
+            Arrays.asList(
+                "shelterAtCapacity", thresholds == null ? null : new ArrayList<>(thresholds)),
+            () -> delegate.shelterAtCapacity(thresholds)));
+  }
+
+  @Override
+  public Map<Integer, Set<String>> capacityBands(int bandWidth)
+      throws SQLException, IOException, ClassNotFoundException {
+    return copyOfGroups(
+        collapse(
+            Arrays.asList("capacityBands", bandWidth), () -> delegate.capacityBands(bandWidth)));
+  }
+
+  /**
+   * Passes the volatility ranking straight through; it is read from memory, not computed.
+   *
+   * @param windowDays Length of the window ending on the latest declared date, 7 or 30
+   * @param count Number of shelters to report
+   * @return The most volatile shelters, or null if the monitor is not running
+   * @throws SQLException if a database access error occurs
+   * @throws IOException if an I/O error occurs
+   * @throws ClassNotFoundException if the class is not found
+   */
+  @Override
+  public List<Pair<String, Double>> mostVolatileShelters(int windowDays, int count)
+      throws SQLException, IOException, ClassNotFoundException {
+    return delegate.mostVolatileShelters(windowDays, count);
+  }
+
+  /**
+   * Passes the nearest-bed lookup straight through; it is read from memory and its answer changes
+   * with every reservation.
+   *
+   * @param location Where the beds are needed
+   * @param count Number of shelters to report
+   * @param services Services the shelters must offer, or an empty set for any
+   * @return The nearest shelters with free beds, or null if the locator is not running
+   * @throws SQLException if a database access error occurs
+   * @throws IOException if an I/O error occurs
+   * @throws ClassNotFoundException if the class is not found
+   */
+  @Override
+  public List<Pair<String, Integer>> nearestAvailableShelters(
+      Point location, int count, Set<String> services)
+      throws SQLException, IOException, ClassNotFoundException {
+    return delegate.nearestAvailableShelters(location, count, services);
+  }
+
+  @Override
+  public Set<String> occupancyVariance(String startDate, String endDate, int threshold)
+      throws SQLException, IOException, ClassNotFoundException {
+    return occupancyVariance(
+        helperMethod.parseDate(startDate), helperMethod.parseDate(endDate), threshold);
+  }
+
+  @Override
+  public Set<String> occupancyVariance(LocalDate startDate, LocalDate endDate, int threshold)
+      throws SQLException, IOException, ClassNotFoundException {
+    return copyOf(
+        collapse(
+            Arrays.asList("occupancyVariance", startDate, endDate, threshold),
+            () -> delegate.occupancyVariance(startDate, endDate, threshold)));
+  }
+
+  @Override
+  public List<Set<String>> occupancyVariance(
+      List<Pair<LocalDate, LocalDate>> windows, int threshold)
+      throws SQLException, IOException, ClassNotFoundException {
+    /* Pair has no value equality, so the key spells the windows out as dates */
+    List<Object> key = new ArrayList<>(Arrays.asList("occupancyVarianceWindows", threshold));
+    if (windows != null) {
+      for (Pair<LocalDate, LocalDate> window : windows) {
+        key.add(window == null ? null : window.getKey());
+        key.add(window == null ? null : window.getValue());
+      }
+    }
+    List<Set<String>> windowResults =
+        collapse(key, () -> delegate.occupancyVariance(windows, threshold));
+    if (windowResults == null) {
+      return null;
+    }
+    List<Set<String>> result = new ArrayList<>();
+    for (Set<String> windowResult : windowResults) {
+      result.add(copyOf(windowResult));
+    }
+    return result;
+  }
+
+  @Override
+  public Map<LocalDate, Set<String>> occupancyVariance(
+      LocalDate startDate, LocalDate endDate, int windowDays, int stepDays, int threshold)
+      throws SQLException, IOException, ClassNotFoundException {
+    Map<LocalDate, Set<String>> windowResults =
+        collapse(
+            Arrays.asList(
+                "occupancyVarianceSliding", startDate, endDate, windowDays, stepDays, threshold),
+            () -> delegate.occupancyVariance(startDate, endDate, windowDays, stepDays, threshold));
+    if (windowResults == null) {
+      return null;
+    }
+    Map<LocalDate, Set<String>> result = new TreeMap<>();
+    for (Map.Entry<LocalDate, Set<String>> window : windowResults.entrySet()) {
+      result.put(window.getKey(), copyOf(window.getValue()));
+    }
+    return result;
+  }
+
+  @Override
+  public Map<String, Integer> occupancyPercentile(
+      String startDate, String endDate, int percentile)
+      throws SQLException, IOException, ClassNotFoundException {
+    return occupancyPercentile(
+        helperMethod.parseDate(startDate), helperMethod.parseDate(endDate), percentile);
+  }
+
+  @Override
+  public Map<String, Integer> occupancyPercentile(
+      LocalDate startDate, LocalDate endDate, int percentile)
+      throws SQLException, IOException, ClassNotFoundException {
+    Map<String, Integer> percentiles =
+        collapse(
+            Arrays.asList("occupancyPercentile", startDate, endDate, percentile),
+            () -> delegate.occupancyPercentile(startDate, endDate, percentile));
+    return percentiles == null ? null : new HashMap<>(percentiles);
+  }
+
+  @Override
+  public void donorReport(String startDate, String endDate, PrintWriter outstream)
+      throws SQLException, IOException, ClassNotFoundException {
+    donorReport(helperMethod.parseDate(startDate), helperMethod.parseDate(endDate), outstream);
+  }
+
+  @Override
+  public void donorReport(LocalDate startDate, LocalDate endDate, PrintWriter outstream)
+      throws SQLException, IOException, ClassNotFoundException {
+    if (outstream == null) {
+      return;
+    }
+    String report =
+        collapse(
+            Arrays.asList("donorReport", startDate, endDate),
+            () -> {
+              StringWriter rendered = new StringWriter();
+              PrintWriter renderedWriter = new PrintWriter(rendered);
+              delegate.donorReport(startDate, endDate, renderedWriter);
+              renderedWriter.flush();
+              return rendered.toString();
+            });
+    outstream.print(report);
+  }
+
+  /**
+   * Passes multi-period reports straight through; they already share one read of the data.
+   *
+   * @param periods Start and end date of each range, both included
+   * @param outstreams One outstream per range, or a single outstream for all of them
+   * @throws SQLException if a database access error occurs
+   * @throws IOException if an I/O error occurs
+   * @throws ClassNotFoundException if the class is not found
+   */
+  @Override
+  public void donorReport(List<Pair<LocalDate, LocalDate>> periods, List<PrintWriter> outstreams)
+      throws SQLException, IOException, ClassNotFoundException {
+    delegate.donorReport(periods, outstreams);
+  }
+
+  @Override
+  public Set<String> underfundedShelter(
+      String startDate, String endDate, int distance, int threshold)
+      throws SQLException, IOException, ClassNotFoundException {
+    return underfundedShelter(
+        helperMethod.parseDate(startDate), helperMethod.parseDate(endDate), distance, threshold);
+  }
+
+  @Override
+  public Set<String> underfundedShelter(
+      LocalDate startDate, LocalDate endDate, int distance, int threshold)
+      throws SQLException, IOException, ClassNotFoundException {
+    return copyOf(
+        collapse(
+            Arrays.asList("underfundedShelter", startDate, endDate, distance, threshold),
+            () -> delegate.underfundedShelter(startDate, endDate, distance, threshold)));
+  }
+
+  @Override
+  public Map<String, List<String>> inspectionSchedule(int scheduleDays, int inspectLimit)
+      throws SQLException, IOException, ClassNotFoundException {
+    Map<String, List<String>> schedule =
+        collapse(
+            Arrays.asList("inspectionSchedule", scheduleDays, inspectLimit),
+            () -> delegate.inspectionSchedule(scheduleDays, inspectLimit));
+    if (schedule == null) {
+      return null;
+    }
+    Map<String, List<String>> result = new HashMap<>();
+    for (Map.Entry<String, List<String>> staff : schedule.entrySet()) {
+      result.put(staff.getKey(), new ArrayList<>(staff.getValue()));
+    }
+    return result;
+  }
+
+  /**
+   * Runs an execution, or waits for the identical one already running and returns its result.
+   *
+   * @param key The operation name followed by its arguments.
+   * @param execution The report to run if no identical call is in flight.
+   * @param <T> The type of the result.
+   * @return The result of the shared execution.
+   * @throws SQLException If the shared execution failed with a SQL error.
+   * @throws IOException If the shared execution failed with an I/O error.
+   * @throws ClassNotFoundException If the shared execution could not load the database driver.
+   * @throws RuntimeException The unchecked exception the shared execution threw.
+   */
+  @SuppressWarnings("unchecked")
+  private <T> T collapse(List<Object> key, Execution<T> execution)
+      throws SQLException, IOException, ClassNotFoundException {
+    CompletableFuture<Object> ownExecution = new CompletableFuture<>();
+    CompletableFuture<Object> sharedExecution = inFlight.putIfAbsent(key, ownExecution);
+
+    if (sharedExecution == null) {
+      /* No identical call is running, so this caller runs it for everyone who joins meanwhile */
+      sharedExecution = ownExecution;
+      try {
+        ownExecution.complete(execution.run());
+      } catch (Throwable throwable) {
+        /* Every failure, errors included, must reach the callers waiting on the shared execution */
+        ownExecution.completeExceptionally(throwable);
+        if (throwable instanceof Error) {
+          throw (Error) throwable;
+        } else if (throwable instanceof RuntimeException) {
+          throw (RuntimeException) throwable;
+        }
+      } finally {
+        inFlight.remove(key, ownExecution);
+      }
+    }
+
+    try {
+      return (T) sharedExecution.get();
+    } catch (InterruptedException interruptedException) {
+      Thread.currentThread().interrupt();
+      throw new InterruptedIOException("Interrupted while waiting for a shared report execution");
+    } catch (ExecutionException executionException) {
+      Throwable cause = executionException.getCause();
+      if (cause instanceof SQLException) {
+        throw new SQLException(cause.getMessage());
+      } else if (cause instanceof IOException) {
+        throw new IOException(cause.getMessage());
+      } else if (cause instanceof ClassNotFoundException) {
+        throw new ClassNotFoundException(cause.getMessage());
+      } else if (cause instanceof Error) {
+        throw (Error) cause;
+      } else if (cause instanceof RuntimeException) {
+        /* Unchecked failures reach the callers as the leader saw them */
+        throw (RuntimeException) cause;
+      }
+      throw new IllegalStateException(cause);
+    }
+  }
+
+  /**
+   * Copies a shared set result so callers cannot change each other's answer.
+   *
+   * @param result The shared result, possibly null.
+   * @return A copy, or null if the result is null.
+   */
+  private Set<String> copyOf(Set<String> result) {
+    return result == null ? null : new HashSet<>(result);
+  }
+
+  /**
+   * Copies a shared grouped result, set by set, keeping the order of its keys.
+   *
+   * @param result The shared result, possibly null.
+   * @return A copy, or null if the result is null.
+   */
+  private Map<Integer, Set<String>> copyOfGroups(Map<Integer, Set<String>> result) {
+    if (result == null) {
+      return null;
+    }
+    Map<Integer, Set<String>> copy = new TreeMap<>();
+    for (Map.Entry<Integer, Set<String>> group : result.entrySet()) {
+      copy.put(group.getKey(), new HashSet<>(group.getValue()));
+    }
+    return copy;
+  }
+
+  /**
+   * A report execution that can fail the same way the {@link DataManipulator} methods do.
+   *
+   * @param <T> The type of the result.
+   */
+  @FunctionalInterface
+  private interface Execution<T> {
+    T run() throws SQLException, IOException, ClassNotFoundException;
+  }
+}
@@ -0,0 +1,89 @@
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.Properties;
+
+/**
+ * This class provides read access to the optional settings in the "config.prop" file. Like
+ * DatabaseManager it is a static utility class; every setting has a default so the system runs
+ * unchanged when the file or a key is missing.
+ */
+public class ConfigurationManager {
+  private static final String PROPERTY_FILENAME = "config.prop";
+  private static Properties settings = null;
+
+  /* Private ensures that nobody can access the constructor of the method and if somehow they do, we will throw an exception as a double safety check */
+  private ConfigurationManager() {
+    throw new AssertionError("ConfigurationManager class should not be instantiated.");
+  }
+
+  /**
+   * Loads the settings file once and keeps it for the lifetime of the process.
+   *
+   * @return The loaded settings, empty when the file does not exist.
+   */
+  private static synchronized Properties getSettings() {
+    if (settings == null) {
+      Properties loaded = new Properties();
+      try (InputStream stream = new FileInputStream(PROPERTY_FILENAME)) {
+        loaded.load(stream);
+      } catch (IOException ioException) {
+        /* No settings file, every lookup falls back to its default */
+      }
+      settings = loaded;
+    }
+    return settings;
+  }
+
+  /**
+   * Returns a text setting.
+   *
+   * @param key The name of the setting.
+   * @param defaultValue The value used when the setting is missing or blank.
+   * @return The configured value or the default.
+   */
+  public static String getString(String key, String defaultValue) {
+    String value = getSettings().getProperty(key);
+    if (value == null || value.isBlank()) {
+      return defaultValue;
+    }
+    return value.trim();
+  }
+
+  /**
+   * Returns a numeric setting.
+   *
+   * @param key The name of the setting.
+   * @param defaultValue The value used when the setting is missing or not a number.
+   * @return The configured value or the default.
+   */
+  public static long getLong(String key, long defaultValue) {
+    try {
+      return Long.parseLong(getString(key, String.valueOf(defaultValue)));
+    } catch (NumberFormatException numberFormatException) {
+      return defaultValue;
+    }
+  }
+
+  /**
+   * Returns an integer setting.
+   *
+   * @param key The name of the setting.
+   * @param defaultValue The value used when the setting is missing or not a number.
+   * @return The configured value or the default.
+   */
+  public static int getInt(String key, int defaultValue) {
+    return (int) getLong(key, defaultValue);
+  }
+
+  /**
+   * Returns a true/false setting.
+   *
+   * @param key The name of the setting.
+   * @param defaultValue The value used when the setting is missing.
+   * @return The configured value or the default.
+   */
+  public static boolean getBoolean(String key, boolean defaultValue) {
+    return Boolean.parseBoolean(getString(key, String.valueOf(defaultValue)));
+  }
+}
@@ -0,0 +1,21 @@
+import jdk.jfr.Category;
+import jdk.jfr.Description;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+
+/**
+ * Java Flight Recorder event emitted every time {@link DatabaseManager} opens a new connection. The
+ * duration of the event is the time spent inside the JDBC driver establishing the connection.
+ */
+@Name("homelesssupport.ConnectionAcquisition")
+@Label("Connection Acquisition")
+@Category({"Homeless Support", "Database"})
+@Description("Time taken to obtain a JDBC connection from the driver")
+public class ConnectionAcquisitionEvent extends jdk.jfr.Event {
+
+  @Label("URL")
+  String url;
+
+  @Label("Successful")
+  boolean successful;
+}
@@ -1,5 +1,6 @@
 import java.io.IOException;
 import java.sql.SQLException;
+import java.time.LocalDate;
 import java.util.Set;
 
 /* If you don't specify an access modifier for a method in an interface, it is implicitly public. */
@@ -7,24 +8,60 @@ public interface DataGenerator {
   boolean defineService(String serviceName, int inspectionFrequency)
       throws SQLException, IOException, ClassNotFoundException;
 
+  ServiceHandle defineServiceWithHandle(String serviceName, int inspectionFrequency)
+      throws SQLException, IOException, ClassNotFoundException;
+
   boolean defineShelter(String name, Point location, int maxCapacity, String staffInCharge)
       throws SQLException, IOException, ClassNotFoundException;
 
+  ShelterHandle defineShelterWithHandle(
+      String name, Point location, int maxCapacity, String staffInCharge)
+      throws SQLException, IOException, ClassNotFoundException;
+
   boolean serviceForShelter(String shelterName, String serviceName)
       throws SQLException, IOException, ClassNotFoundException;
 
+  boolean serviceForShelter(ShelterHandle shelter, ServiceHandle service)
+      throws SQLException, IOException, ClassNotFoundException;
+
   boolean declareShelterOccupancy(String name, String date, int occupancy)
       throws SQLException, IOException, ClassNotFoundException;
 
+  boolean declareShelterOccupancy(String name, LocalDate date, int occupancy)
+      throws SQLException, IOException, ClassNotFoundException;
+
+  boolean declareShelterOccupancy(ShelterHandle shelter, LocalDate date, int occupancy)
+      throws SQLException, IOException, ClassNotFoundException;
+
   boolean addStaff(String name, Set<String> services, boolean volunteer, String manager)
       throws SQLException, IOException, ClassNotFoundException;
 
+  StaffHandle addStaffWithHandle(
+      String name, Set<String> services, boolean volunteer, String manager)
+      throws SQLException, IOException, ClassNotFoundException;
+
   boolean defineDonor(String name, Point centralOffice, String contact, Set<String> fundingPrograms)
       throws SQLException, IOException, ClassNotFoundException;
 
+  DonorHandle defineDonorWithHandle(
+      String name, Point centralOffice, String contact, Set<String> fundingPrograms)
+      throws SQLException, IOException, ClassNotFoundException;
+
   boolean receiveDonation(String donor, String fundingProgram, String date, int donation)
       throws SQLException, IOException, ClassNotFoundException;
 
+  boolean receiveDonation(String donor, String fundingProgram, LocalDate date, int donation)
+      throws SQLException, IOException, ClassNotFoundException;
+
+  boolean receiveDonation(DonorHandle donor, String fundingProgram, LocalDate date, int donation)
+      throws SQLException, IOException, ClassNotFoundException;
+
   boolean disburseFunds(String shelterReceiving, String date, int funds)
       throws SQLException, IOException, ClassNotFoundException;
+
+  boolean disburseFunds(String shelterReceiving, LocalDate date, int funds)
+      throws SQLException, IOException, ClassNotFoundException;
+
+  boolean disburseFunds(ShelterHandle shelter, LocalDate date, int funds)
+      throws SQLException, IOException, ClassNotFoundException;
 }
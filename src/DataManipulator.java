@@ -1,6 +1,7 @@
 import java.io.IOException;
 import java.io.PrintWriter;
 import java.sql.SQLException;
+import java.time.LocalDate;
 import java.util.List;
 import java.util.Map;
 import java.util.Set;
@@ -10,15 +11,54 @@ public interface DataManipulator {
   Set<String> shelterAtCapacity(int threshold)
       throws SQLException, IOException, ClassNotFoundException;
 
+  Map<Integer, Set<String>> shelterAtCapacity(List<Integer> thresholds)
+      throws SQLException, IOException, ClassNotFoundException;
+
+  Map<Integer, Set<String>> capacityBands(int bandWidth)
+      throws SQLException, IOException, ClassNotFoundException;
+
+  List<Pair<String, Double>> mostVolatileShelters(int windowDays, int count)
+      throws SQLException, IOException, ClassNotFoundException;
+
+  List<Pair<String, Integer>> nearestAvailableShelters(
+      Point location, int count, Set<String> services)
+      throws SQLException, IOException, ClassNotFoundException;
+
   Set<String> occupancyVariance(String startDate, String endDate, int threshold)
       throws SQLException, IOException, ClassNotFoundException;
 
+  Set<String> occupancyVariance(LocalDate startDate, LocalDate endDate, int threshold)
+      throws SQLException, IOException, ClassNotFoundException;
+
+  List<Set<String>> occupancyVariance(List<Pair<LocalDate, LocalDate>> windows, int threshold)
+      throws SQLException, IOException, ClassNotFoundException;
+
+  Map<LocalDate, Set<String>> occupancyVariance(
+      LocalDate startDate, LocalDate endDate, int windowDays, int stepDays, int threshold)
+      throws SQLException, IOException, ClassNotFoundException;
+
+  Map<String, Integer> occupancyPercentile(String startDate, String endDate, int percentile)
+      throws SQLException, IOException, ClassNotFoundException;
+
+  Map<String, Integer> occupancyPercentile(LocalDate startDate, LocalDate endDate, int percentile)
+      throws SQLException, IOException, ClassNotFoundException;
+
   void donorReport(String startDate, String endDate, PrintWriter outstream)
       throws SQLException, IOException, ClassNotFoundException;
 
+  void donorReport(LocalDate startDate, LocalDate endDate, PrintWriter outstream)
+      throws SQLException, IOException, ClassNotFoundException;
+
+  void donorReport(List<Pair<LocalDate, LocalDate>> periods, List<PrintWriter> outstreams)
+      throws SQLException, IOException, ClassNotFoundException;
+
   Set<String> underfundedShelter(String startDate, String endDate, int distance, int threshold)
       throws SQLException, IOException, ClassNotFoundException;
 
+  Set<String> underfundedShelter(
+      LocalDate startDate, LocalDate endDate, int distance, int threshold)
+      throws SQLException, IOException, ClassNotFoundException;
+
   Map<String, List<String>> inspectionSchedule(int scheduleDays, int inspectLimit)
       throws SQLException, IOException, ClassNotFoundException;
 }
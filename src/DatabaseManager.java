@@ -5,6 +5,7 @@ import java.sql.Connection;
 import java.sql.DriverManager;
 import java.sql.SQLException;
 import java.util.Properties;
+import java.util.function.Supplier;
 
 /**
  * This class provides methods for managing database connections. The use of static in the
@@ -13,8 +14,14 @@ import java.util.Properties;
  */
 public class DatabaseManager {
 
+  /* Unit tests hand out connections of their own here; null means the configured database */
+  static Supplier<Connection> connectionSource = null;
+
   public static Connection getConnection()
       throws IOException, ClassNotFoundException, SQLException {
+    if (connectionSource != null) {
+      return connectionSource.get();
+    }
     Properties identity = new Properties();
 
     String propertyFilename = "credentials.prop";
@@ -34,7 +41,38 @@ public class DatabaseManager {
       throw new ClassNotFoundException(classNotFoundException.getMessage());
     }
 
-    return DriverManager.getConnection(URL, username, password);
+    ConnectionAcquisitionEvent acquisitionEvent = new ConnectionAcquisitionEvent();
+    acquisitionEvent.url = URL;
+    acquisitionEvent.begin();
+    Connection connection;
+    try {
+      connection = DriverManager.getConnection(URL, username, password);
+      acquisitionEvent.successful = true;
+    } finally {
+      acquisitionEvent.commit();
+    }
+
+    /* Only pay for the statement proxies while a recording or the slow-query log needs them */
+    if (SlowQueryLog.isEnabled() || new SqlExecutionEvent().isEnabled()) {
+      return InstrumentedConnection.wrap(connection);
+    }
+    return connection;
+  }
+
+  /**
+   * Rolls back the open transaction of the provided database connection, if there is one.
+   *
+   * @param connection The Connection object whose transaction is to be rolled back.
+   * @throws SQLException If there is an issue rolling back the transaction.
+   */
+  public static void rollback(Connection connection) throws SQLException {
+    if (connection != null && !connection.getAutoCommit()) {
+      try {
+        connection.rollback();
+      } catch (SQLException sqlException) {
+        throw new SQLException(sqlException.getMessage());
+      }
+    }
   }
 
   /**
@@ -0,0 +1,460 @@
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.EOFException;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.sql.Connection;
+import java.sql.Date;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.ResultSetMetaData;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.sql.Types;
+import java.time.LocalDate;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * DatasetSnapshot copies the whole dataset between environments as one compact binary file. Every
+ * table is written as its own section: the table name, the column names and types, and then the
+ * rows, each with a null bitmap followed by its values. Integers and dates are zigzag varints, dates
+ * as epoch days, and text is length-prefixed UTF-8. The file header records the schema version, and
+ * a snapshot is only loaded into a database at the same version.
+ *
+ * <p>Loading deletes the rows of the snapshot's tables and inserts its rows with multi-row inserts
+ * while foreign key and unique checks are switched off for the session. The deletes run in the
+ * load's transaction, unlike TRUNCATE, which would commit on its own; the load still commits in
+ * large groups, so a failure after the first group leaves the tables partly filled and the load is
+ * simply run again. The last group also counts the load in the {@link WriteWatermark} for every
+ * kind of data, so other running processes rebuild their stores. The in-process indexes and the
+ * mutation journal checkpoint are rebuilt afterwards. Archived years of occupancy live in the
+ * archive files, not in the database, and are copied along with the "data/archive" directory.
+ */
+public class DatasetSnapshot {
+  private static final int MAGIC = 0x48534E50;
+  private static final int FORMAT_VERSION = 1;
+
+  /* Parents before children, so the order is also valid with constraint checks on */
+  private static final List<String> TABLES =
+      List.of(
+          "service",
+          "staff",
+          "staff_for_service",
+          "shelter",
+          "service_for_shelter",
+          "donor",
+          "funding_program",
+          "receive_donation_record",
+          "shelter_occupancy_record",
+          "disburse_fund_record",
+          "shelter_occupancy_year_count",
+          "disburse_fund_daily",
+          "disburse_fund_monthly",
+          "journal_watermark");
+
+  private static final byte TYPE_INTEGER = 1;
+  private static final byte TYPE_BOOLEAN = 2;
+  private static final byte TYPE_DATE = 3;
+  private static final byte TYPE_TEXT = 4;
+
+  private static final byte ROW = 1;
+  private static final byte END_OF_TABLE = 0;
+
+  /* MySQL allows at most 65535 placeholders in one statement */
+  private static final int MAX_PLACEHOLDERS = 65_535;
+  /* A varint of a 64-bit value takes at most ten bytes */
+  private static final int MAX_VARINT_BYTES = 10;
+  /* The largest value a MEDIUMTEXT column holds */
+  private static final int MAX_TEXT_BYTES = (1 << 24) - 1;
+
+  private final int rowsPerInsert = ConfigurationManager.getInt("snapshot.rowsPerInsert", 1000);
+  private final int rowsPerCommit = ConfigurationManager.getInt("snapshot.rowsPerCommit", 50_000);
+
+  /**
+   * Streams every table into a snapshot file.
+   *
+   * @param snapshotFile The file to write.
+   * @return The number of rows written per table.
+   * @throws SQLException If there is an issue with the SQL operations.
+   * @throws IOException If there is an issue with input/output operations.
+   * @throws ClassNotFoundException If the required class is not found during database operations.
+   */
+  public Map<String, Long> export(Path snapshotFile)
+      throws SQLException, IOException, ClassNotFoundException {
+    Map<String, Long> rowCounts = new LinkedHashMap<>();
+    int schemaVersion = new SchemaMigrator().getCurrentVersion();
+    Connection connection = null;
+
+    try (DataOutputStream out =
+        new DataOutputStream(
+            new BufferedOutputStream(Files.newOutputStream(snapshotFile), 1 << 16))) {
+      connection = DatabaseManager.getConnection();
+
+      out.writeInt(MAGIC);
+      out.writeInt(FORMAT_VERSION);
+      out.writeInt(schemaVersion);
+      out.writeInt(TABLES.size());
+
+      for (String table : TABLES) {
+        PreparedStatement allRows =
+            connection.prepareStatement(
+                "SELECT * FROM " + table, ResultSet.TYPE_FORWARD_ONLY, ResultSet.CONCUR_READ_ONLY);
+        /* Makes Connector/J stream the rows instead of buffering the whole table */
+        allRows.setFetchSize(Integer.MIN_VALUE);
+        ResultSet allRowsResultSet = allRows.executeQuery();
+
+        ResultSetMetaData metaData = allRowsResultSet.getMetaData();
+        int columnCount = metaData.getColumnCount();
+        byte[] columnTypes = new byte[columnCount];
+        out.writeUTF(table);
+        out.writeShort(columnCount);
+        for (int column = 1; column <= columnCount; column++) {
+          columnTypes[column - 1] = typeOf(metaData.getColumnType(column));
+          out.writeUTF(metaData.getColumnName(column));
+          out.writeByte(columnTypes[column - 1]);
+        }
+
+        long rowCount = 0;
+        Object[] row = new Object[columnCount];
+        while (allRowsResultSet.next()) {
+          for (int column = 1; column <= columnCount; column++) {
+            row[column - 1] = read(allRowsResultSet, column, columnTypes[column - 1]);
+          }
+          out.writeByte(ROW);
+          writeRow(out, row, columnTypes);
+          rowCount++;
+        }
+        out.writeByte(END_OF_TABLE);
+        allRowsResultSet.close();
+        rowCounts.put(table, rowCount);
+      }
+    } catch (SQLException sqlException) {
+      throw new SQLException(sqlException.getMessage());
+    } catch (IOException ioException) {
+      throw new IOException(ioException.getMessage());
+    } catch (ClassNotFoundException classNotFoundException) {
+      throw new ClassNotFoundException(classNotFoundException.getMessage());
+    } finally {
+      /* Ensure the connection is closed */
+      DatabaseManager.closeConnection(connection);
+    }
+    return rowCounts;
+  }
+
+  /**
+   * Replaces the contents of the snapshot's tables with the rows of a snapshot file.
+   *
+   * @param snapshotFile The file to load.
+   * @return The number of rows loaded per table.
+   * @throws SQLException If the snapshot does not match the schema version or a statement fails.
+   * @throws IOException If the file cannot be read or is not a snapshot.
+   * @throws ClassNotFoundException If the required class is not found during database operations.
+   */
+  public Map<String, Long> load(Path snapshotFile)
+      throws SQLException, IOException, ClassNotFoundException {
+    Map<String, Long> rowCounts = new LinkedHashMap<>();
+    int schemaVersion = new SchemaMigrator().getCurrentVersion();
+    Connection connection = null;
+
+    try (DataInputStream in =
+        new DataInputStream(
+            new BufferedInputStream(Files.newInputStream(snapshotFile), 1 << 16))) {
+      if (in.readInt() != MAGIC || in.readInt() != FORMAT_VERSION) {
+        throw new IOException("Not a dataset snapshot: " + snapshotFile);
+      }
+      int snapshotSchemaVersion = in.readInt();
+      if (snapshotSchemaVersion != schemaVersion) {
+        throw new SQLException(
+            "Snapshot schema version "
+                + snapshotSchemaVersion
+                + " does not match database schema version "
+                + schemaVersion);
+      }
+
+      connection = DatabaseManager.getConnection();
+      connection.setAutoCommit(false);
+      Statement sessionSettings = connection.createStatement();
+      /* Constraints are deferred for the load; the snapshot was consistent when it was taken */
+      sessionSettings.execute("SET FOREIGN_KEY_CHECKS = 0");
+      sessionSettings.execute("SET UNIQUE_CHECKS = 0");
+
+      try {
+        int tableCount = in.readInt();
+        for (int table = 0; table < tableCount; table++) {
+          String tableName = in.readUTF();
+          if (!TABLES.contains(tableName)) {
+            throw new IOException("Unknown table in snapshot: " + tableName);
+          }
+          int columnCount = in.readShort();
+          if (columnCount <= 0) {
+            throw new IOException("Invalid column count in snapshot table " + tableName);
+          }
+          List<String> columnNames = new ArrayList<>(columnCount);
+          byte[] columnTypes = new byte[columnCount];
+          for (int column = 0; column < columnCount; column++) {
+            columnNames.add(in.readUTF());
+            columnTypes[column] = in.readByte();
+          }
+          sessionSettings.execute("DELETE FROM " + tableName);
+          rowCounts.put(
+              tableName, loadTable(connection, in, tableName, columnNames, columnTypes));
+        }
+        for (ReportCache.Source source : ReportCache.Source.values()) {
+          WriteWatermark.getInstance().recordWrite(connection, source);
+        }
+        connection.commit();
+      } finally {
+        sessionSettings.execute("SET UNIQUE_CHECKS = 1");
+        sessionSettings.execute("SET FOREIGN_KEY_CHECKS = 1");
+      }
+    } catch (SQLException sqlException) {
+      DatabaseManager.rollback(connection);
+      throw new SQLException(sqlException.getMessage());
+    } catch (EOFException eofException) {
+      DatabaseManager.rollback(connection);
+      throw new IOException("Snapshot is truncated: " + snapshotFile);
+    } catch (IOException ioException) {
+      DatabaseManager.rollback(connection);
+      throw new IOException(ioException.getMessage());
+    } catch (ClassNotFoundException classNotFoundException) {
+      throw new ClassNotFoundException(classNotFoundException.getMessage());
+    } finally {
+      /* Ensure the connection is closed */
+      DatabaseManager.closeConnection(connection);
+    }
+
+    /* The in-process copies still describe the data that was replaced */
+    if (DonationIndex.getInstance().isLoaded()) {
+      DonationIndex.getInstance().rebuild();
+    }
+    if (OccupancyColumnStore.getInstance().isReady()) {
+      OccupancyColumnStore.getInstance().rebuild();
+    }
+    /* The occupancy sketches are derived from the records and are not part of a snapshot */
+    if (OccupancySketchStore.getInstance().isReady()) {
+      OccupancySketchStore.getInstance().rebuild();
+    }
+    ReportCache.getInstance().clear();
+    CapacityAlertEngine.getInstance().reload();
+    VolatilityMonitor.getInstance().reload();
+    BedAvailabilityService.getInstance().reload();
+    ShelterLocator.getInstance().reload();
+    MutationJournal.getInstance().checkpoint();
+    return rowCounts;
+  }
+
+  /**
+   * Inserts the rows of one table section with multi-row inserts.
+   *
+   * @return The number of rows inserted.
+   */
+  private long loadTable(
+      Connection connection,
+      DataInputStream in,
+      String tableName,
+      List<String> columnNames,
+      byte[] columnTypes)
+      throws SQLException, IOException {
+    int columnCount = columnNames.size();
+    int rowsPerStatement = Math.max(1, Math.min(rowsPerInsert, MAX_PLACEHOLDERS / columnCount));
+    PreparedStatement fullInsert =
+        connection.prepareStatement(insertStatement(tableName, columnNames, rowsPerStatement));
+
+    List<Object[]> rows = new ArrayList<>(rowsPerStatement);
+    long rowCount = 0;
+    long uncommitted = 0;
+    while (in.readByte() == ROW) {
+      rows.add(readRow(in, columnTypes));
+      if (rows.size() == rowsPerStatement) {
+        bindRows(fullInsert, rows, columnTypes);
+        fullInsert.executeUpdate();
+        rowCount += rows.size();
+        uncommitted += rows.size();
+        rows.clear();
+        if (uncommitted >= rowsPerCommit) {
+          connection.commit();
+          uncommitted = 0;
+        }
+      }
+    }
+    fullInsert.close();
+
+    if (!rows.isEmpty()) {
+      try (PreparedStatement lastInsert =
+          connection.prepareStatement(insertStatement(tableName, columnNames, rows.size()))) {
+        bindRows(lastInsert, rows, columnTypes);
+        lastInsert.executeUpdate();
+      }
+      rowCount += rows.size();
+    }
+    return rowCount;
+  }
+
+  private String insertStatement(String tableName, List<String> columnNames, int rowCount) {
+    String rowPlaceholders = "(" + "?, ".repeat(columnNames.size() - 1) + "?)";
+    StringBuilder insert =
+        new StringBuilder("INSERT INTO ")
+            .append(tableName)
+            .append(" (")
+            .append(String.join(", ", columnNames))
+            .append(") VALUES ")
+            .append(rowPlaceholders);
+    for (int row = 1; row < rowCount; row++) {
+      insert.append(", ").append(rowPlaceholders);
+    }
+    return insert.toString();
+  }
+
+  private void bindRows(PreparedStatement insert, List<Object[]> rows, byte[] columnTypes)
+      throws SQLException {
+    int parameter = 1;
+    for (Object[] row : rows) {
+      for (int column = 0; column < row.length; column++) {
+        Object value = row[column];
+        if (value == null) {
+          insert.setNull(parameter++, Types.NULL);
+        } else if (columnTypes[column] == TYPE_INTEGER) {
+          insert.setLong(parameter++, (Long) value);
+        } else if (columnTypes[column] == TYPE_BOOLEAN) {
+          insert.setBoolean(parameter++, (Boolean) value);
+        } else if (columnTypes[column] == TYPE_DATE) {
+          insert.setDate(parameter++, Date.valueOf((LocalDate) value));
+        } else {
+          insert.setString(parameter++, (String) value);
+        }
+      }
+    }
+  }
+
+  private static byte typeOf(int sqlType) {
+    switch (sqlType) {
+      case Types.TINYINT:
+      case Types.SMALLINT:
+      case Types.INTEGER:
+      case Types.BIGINT:
+        return TYPE_INTEGER;
+      case Types.BIT:
+      case Types.BOOLEAN:
+        return TYPE_BOOLEAN;
+      case Types.DATE:
+        return TYPE_DATE;
+      default:
+        return TYPE_TEXT;
+    }
+  }
+
+  private static Object read(ResultSet resultSet, int column, byte type) throws SQLException {
+    Object value;
+    if (type == TYPE_INTEGER) {
+      value = resultSet.getLong(column);
+    } else if (type == TYPE_BOOLEAN) {
+      value = resultSet.getBoolean(column);
+    } else if (type == TYPE_DATE) {
+      Date date = resultSet.getDate(column);
+      value = date == null ? null : date.toLocalDate();
+    } else {
+      value = resultSet.getString(column);
+    }
+    return resultSet.wasNull() ? null : value;
+  }
+
+  /** Writes a null bitmap and then the value of every non-null column. */
+  private static void writeRow(DataOutputStream out, Object[] row, byte[] columnTypes)
+      throws IOException {
+    byte[] nulls = new byte[(row.length + 7) / 8];
+    for (int column = 0; column < row.length; column++) {
+      if (row[column] == null) {
+        nulls[column / 8] |= (byte) (1 << (column % 8));
+      }
+    }
+    out.write(nulls);
+
+    for (int column = 0; column < row.length; column++) {
+      Object value = row[column];
+      if (value == null) {
+        continue;
+      }
+      if (columnTypes[column] == TYPE_INTEGER) {
+        writeVarint(out, zigzag((Long) value));
+      } else if (columnTypes[column] == TYPE_BOOLEAN) {
+        out.writeBoolean((Boolean) value);
+      } else if (columnTypes[column] == TYPE_DATE) {
+        writeVarint(out, zigzag(((LocalDate) value).toEpochDay()));
+      } else {
+        byte[] text = ((String) value).getBytes(StandardCharsets.UTF_8);
+        writeVarint(out, text.length);
+        out.write(text);
+      }
+    }
+  }
+
+  private static Object[] readRow(DataInputStream in, byte[] columnTypes) throws IOException {
+    Object[] row = new Object[columnTypes.length];
+    byte[] nulls = new byte[(row.length + 7) / 8];
+    in.readFully(nulls);
+
+    for (int column = 0; column < row.length; column++) {
+      if ((nulls[column / 8] & (1 << (column % 8))) != 0) {
+        continue;
+      }
+      if (columnTypes[column] == TYPE_INTEGER) {
+        row[column] = unzigzag(readVarint(in));
+      } else if (columnTypes[column] == TYPE_BOOLEAN) {
+        row[column] = in.readBoolean();
+      } else if (columnTypes[column] == TYPE_DATE) {
+        row[column] = LocalDate.ofEpochDay(unzigzag(readVarint(in)));
+      } else {
+        long textBytes = readVarint(in);
+        if (textBytes > MAX_TEXT_BYTES) {
+          throw new IOException("Text value of " + textBytes + " bytes in snapshot");
+        }
+        byte[] text = new byte[(int) textBytes];
+        in.readFully(text);
+        row[column] = new String(text, StandardCharsets.UTF_8);
+      }
+    }
+    return row;
+  }
+
+  private static long zigzag(long value) {
+    return (value << 1) ^ (value >> 63);
+  }
+
+  private static long unzigzag(long value) {
+    return (value >>> 1) ^ -(value & 1);
+  }
+
+  private static void writeVarint(DataOutputStream out, long value) throws IOException {
+    while ((value & ~0x7FL) != 0) {
+      out.writeByte((int) ((value & 0x7F) | 0x80));
+      value >>>= 7;
+    }
+    out.writeByte((int) value);
+  }
+
+  /**
+   * Reads a varint written by {@link #writeVarint(DataOutputStream, long)}.
+   *
+   * @param in The stream to read from.
+   * @return The value.
+   * @throws IOException If the stream cannot be read or the varint runs past ten bytes.
+   */
+  private static long readVarint(DataInputStream in) throws IOException {
+    long value = 0;
+    for (int shift = 0; shift < MAX_VARINT_BYTES * 7; shift += 7) {
+      byte next = in.readByte();
+      value |= (long) (next & 0x7F) << shift;
+      if ((next & 0x80) == 0) {
+        return value;
+      }
+    }
+    throw new IOException("Varint longer than " + MAX_VARINT_BYTES + " bytes in snapshot");
+  }
+}
@@ -0,0 +1,374 @@
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.text.Collator;
+import java.time.LocalDate;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.LinkedHashSet;
+import java.util.Locale;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeMap;
+
+/**
+ * DonationIndex keeps an in-process prefix-sum index of every donation, with one {@link
+ * FenwickTree} keyed by epoch day for each donor and funding program. The total for any date range
+ * is then two lookups per program, however many years of donations are held. It is rebuilt from the
+ * database at startup and updated on every successful donation; until it has been loaded the
+ * reports keep using SQL. Donations and donor definitions written by other processes, such as a
+ * command-line import, are caught through the {@link WriteWatermark} before each report, which
+ * rebuilds the index when their write count moved.
+ *
+ * <p>The index is keyed by names compared the way the name columns' accent- and case-insensitive
+ * collation compares them, so a name matches the same donor or program it matches in SQL, names
+ * the database groups together are grouped together here, and the reports come out in the order
+ * the SQL reports sort them. Being keyed by names also lets the {@link MutationJournal} restore it
+ * from a snapshot and the journaled donor definitions and donations.
+ */
+public class DonationIndex implements ReadModel {
+  /* Primary strength ignores case and accents, like the utf8mb4_0900_ai_ci name columns */
+  private static final Comparator<String> NAME_ORDER = nameOrder();
+
+  /* Created after NAME_ORDER, which its maps are built with */
+  private static final DonationIndex INSTANCE = new DonationIndex();
+
+  private final Map<String, DonorEntry> donors = new TreeMap<>(NAME_ORDER);
+  private boolean loaded = false;
+  /* Donation and donor writes of other processes the index includes; -1 after a journal restore */
+  private long otherWrites = -1;
+
+  private DonationIndex() {}
+
+  /**
+   * Returns the index shared by the whole process.
+   *
+   * @return The donation index.
+   */
+  public static DonationIndex getInstance() {
+    return INSTANCE;
+  }
+
+  /**
+   * Checks if the index has been built and can answer queries.
+   *
+   * @return True once the index has been loaded.
+   */
+  public synchronized boolean isLoaded() {
+    return loaded;
+  }
+
+  /**
+   * Checks if the index can answer a report: it is loaded, and no other process has written
+   * donations or donors since it was built. An index that fell behind is rebuilt first. An index
+   * restored by the {@link MutationJournal} was checked against the table row counts, so it takes
+   * the write count of its first check as its own.
+   *
+   * @return True if the report can be answered from the index.
+   * @throws SQLException If there is an issue with the SQL operations.
+   * @throws IOException If there is an issue with input/output operations.
+   * @throws ClassNotFoundException If the required class is not found during database operations.
+   */
+  public synchronized boolean isCurrent() throws SQLException, IOException, ClassNotFoundException {
+    if (!loaded) {
+      return false;
+    }
+    long writes = readOtherWrites();
+    if (otherWrites < 0) {
+      otherWrites = writes;
+    } else if (writes != otherWrites) {
+      rebuild();
+    }
+    return loaded;
+  }
+
+  /**
+   * Rebuilds the whole index from the donor, funding_program and receive_donation_record tables.
+   *
+   * @throws SQLException If there is an issue with the SQL operations.
+   * @throws IOException If there is an issue with input/output operations.
+   * @throws ClassNotFoundException If the required class is not found during database operations.
+   */
+  public synchronized void rebuild() throws SQLException, IOException, ClassNotFoundException {
+    Connection connection = null;
+    donors.clear();
+    loaded = false;
+    /* Read first: a write landing during the copy moves the count again and costs a rebuild */
+    otherWrites = readOtherWrites();
+
+    try {
+      connection = DatabaseManager.getConnection();
+
+      PreparedStatement allDonors =
+          connection.prepareStatement("SELECT name, locationX, locationY FROM donor;");
+      ResultSet allDonorsResultSet = allDonors.executeQuery();
+      while (allDonorsResultSet.next()) {
+        DonorEntry donorEntry = new DonorEntry();
+        donorEntry.location =
+            new Point(allDonorsResultSet.getInt("locationX"), allDonorsResultSet.getInt("locationY"));
+        donors.put(allDonorsResultSet.getString("name"), donorEntry);
+      }
+
+      PreparedStatement allDonations =
+          connection.prepareStatement(
+              """
+                  SELECT d.name AS donor_name, fp.name AS program_name, rdr.date, rdr.donation
+                  FROM donor d
+                       JOIN funding_program fp ON d.donor_id = fp.donor_id
+                       JOIN receive_donation_record rdr ON fp.program_id = rdr.program_id
+                  """);
+      ResultSet allDonationsResultSet = allDonations.executeQuery();
+      while (allDonationsResultSet.next()) {
+        DonorEntry donorEntry = donors.get(allDonationsResultSet.getString("donor_name"));
+        if (donorEntry != null) {
+          donorEntry
+              .programs
+              .computeIfAbsent(allDonationsResultSet.getString("program_name"), k -> new FenwickTree())
+              .add(
+                  allDonationsResultSet.getDate("date").toLocalDate().toEpochDay(),
+                  allDonationsResultSet.getInt("donation"));
+        }
+      }
+      loaded = true;
+    } catch (SQLException sqlException) {
+      throw new SQLException(sqlException.getMessage());
+    } catch (IOException ioException) {
+      throw new IOException(ioException.getMessage());
+    } catch (ClassNotFoundException classNotFoundException) {
+      throw new ClassNotFoundException(classNotFoundException.getMessage());
+    } finally {
+      /* Ensure the connection is closed */
+      DatabaseManager.closeConnection(connection);
+    }
+  }
+
+  /**
+   * Mirrors a successful defineDonor. Redefining a donor replaces its funding programs, and the
+   * database cascades that to the donations made under the old programs, so they are dropped here
+   * too.
+   *
+   * @param name The name of the donor.
+   * @param location The central office of the donor.
+   * @param fundingPrograms The funding programs of the donor.
+   */
+  public synchronized void defineDonor(String name, Point location, Set<String> fundingPrograms) {
+    if (!loaded) {
+      return;
+    }
+    DonorEntry donorEntry = new DonorEntry();
+    donorEntry.location = location;
+    for (String fundingProgram : fundingPrograms) {
+      donorEntry.programs.put(fundingProgram, new FenwickTree());
+    }
+    donors.put(name, donorEntry);
+  }
+
+  /**
+   * Mirrors a successful receiveDonation.
+   *
+   * @param donor The name of the donor.
+   * @param fundingProgram The funding program the donation was made under.
+   * @param date The date of the donation.
+   * @param donation The donation amount.
+   */
+  public synchronized void recordDonation(
+      String donor, String fundingProgram, LocalDate date, int donation) {
+    if (!loaded) {
+      return;
+    }
+    DonorEntry donorEntry = donors.get(donor);
+    if (donorEntry == null) {
+      /* The donor was defined by another process; the index can no longer be trusted */
+      loaded = false;
+      return;
+    }
+    donorEntry
+        .programs
+        .computeIfAbsent(fundingProgram, k -> new FenwickTree())
+        .add(date.toEpochDay(), donation);
+  }
+
+  /**
+   * Returns the total donated per funding program for every donor with donations in the range,
+   * ordered by donor name and then program name.
+   *
+   * @param startDate The first day to include.
+   * @param endDate The last day to include.
+   * @return Donor name mapped to program name mapped to the total donated.
+   */
+  public synchronized Map<String, Map<String, Long>> programTotals(
+      LocalDate startDate, LocalDate endDate) {
+    Map<String, Map<String, Long>> result = new TreeMap<>(NAME_ORDER);
+    long from = startDate.toEpochDay();
+    long to = endDate.toEpochDay();
+
+    for (Map.Entry<String, DonorEntry> donor : donors.entrySet()) {
+      Map<String, Long> programTotals = new TreeMap<>(NAME_ORDER);
+      for (Map.Entry<String, FenwickTree> program : donor.getValue().programs.entrySet()) {
+        long total = program.getValue().rangeSum(from, to);
+        /* Donations are always positive, so a zero total means no donation in the range */
+        if (total > 0) {
+          programTotals.put(program.getKey(), total);
+        }
+      }
+      if (!programTotals.isEmpty()) {
+        result.put(donor.getKey(), programTotals);
+      }
+    }
+    return result;
+  }
+
+  /**
+   * Returns every donor who donated in the range, with their location and total donation.
+   *
+   * @param startDate The first day to include.
+   * @param endDate The last day to include.
+   * @return The donors with their total donation set.
+   */
+  public synchronized List<Donor> donorTotals(LocalDate startDate, LocalDate endDate) {
+    List<Donor> result = new ArrayList<>();
+    long from = startDate.toEpochDay();
+    long to = endDate.toEpochDay();
+
+    for (Map.Entry<String, DonorEntry> donor : donors.entrySet()) {
+      long total = 0;
+      for (FenwickTree program : donor.getValue().programs.values()) {
+        total += program.rangeSum(from, to);
+      }
+      if (total > 0) {
+        Donor donorWithTotal = new Donor(donor.getKey(), donor.getValue().location, null, null);
+        donorWithTotal.setDonation(total);
+        result.add(donorWithTotal);
+      }
+    }
+    return result;
+  }
+
+  @Override
+  public String getSnapshotName() {
+    return "donationIndex";
+  }
+
+  @Override
+  public Set<String> getSourceTables() {
+    return Set.of("donor", "funding_program", "receive_donation_record");
+  }
+
+  /**
+   * Counts a donation as one receive_donation_record row. A donor definition may update the donor
+   * and replace its programs, which cascades to their donations, so it cannot be followed.
+   *
+   * @param event The mutation.
+   * @return The rows added, or null for a donor definition.
+   */
+  @Override
+  public Map<String, Integer> rowsAdded(MutationEvent event) {
+    if (event.getType() == MutationEvent.Type.DEFINE_DONOR) {
+      return null;
+    }
+    if (event.getType() == MutationEvent.Type.RECEIVE_DONATION) {
+      return Map.of("receive_donation_record", 1);
+    }
+    return Map.of();
+  }
+
+  /**
+   * Applies a journaled donor definition or donation; other mutations do not affect the index.
+   *
+   * @param event The mutation, in journal order.
+   */
+  @Override
+  public synchronized void apply(MutationEvent event) {
+    if (event.getType() == MutationEvent.Type.DEFINE_DONOR) {
+      defineDonor(
+          event.getText(0),
+          new Point((int) event.getNumber(0), (int) event.getNumber(1)),
+          new LinkedHashSet<>(event.getTextFrom(2)));
+    } else if (event.getType() == MutationEvent.Type.RECEIVE_DONATION) {
+      recordDonation(
+          event.getText(0), event.getText(1), event.getDate(0), (int) event.getNumber(1));
+    }
+  }
+
+  /**
+   * Writes every donor with its location and the prefix-sum tree of each funding program.
+   *
+   * @param out The stream to write to.
+   * @throws IOException If the stream cannot be written.
+   */
+  @Override
+  public synchronized void writeSnapshot(DataOutputStream out) throws IOException {
+    out.writeBoolean(loaded);
+    out.writeInt(donors.size());
+    for (Map.Entry<String, DonorEntry> donor : donors.entrySet()) {
+      out.writeUTF(donor.getKey());
+      out.writeInt(donor.getValue().location.getX());
+      out.writeInt(donor.getValue().location.getY());
+      out.writeInt(donor.getValue().programs.size());
+      for (Map.Entry<String, FenwickTree> program : donor.getValue().programs.entrySet()) {
+        out.writeUTF(program.getKey());
+        program.getValue().writeTo(out);
+      }
+    }
+  }
+
+  /**
+   * Replaces the index with a snapshot written by {@link #writeSnapshot(DataOutputStream)}.
+   *
+   * @param in The stream to read from.
+   * @throws IOException If the stream cannot be read.
+   */
+  @Override
+  public synchronized void readSnapshot(DataInputStream in) throws IOException {
+    donors.clear();
+    otherWrites = -1;
+    boolean snapshotLoaded = in.readBoolean();
+    int donorCount = in.readInt();
+    for (int donor = 0; donor < donorCount; donor++) {
+      String name = in.readUTF();
+      DonorEntry donorEntry = new DonorEntry();
+      donorEntry.location = new Point(in.readInt(), in.readInt());
+      int programCount = in.readInt();
+      for (int program = 0; program < programCount; program++) {
+        donorEntry.programs.put(in.readUTF(), FenwickTree.readFrom(in));
+      }
+      donors.put(name, donorEntry);
+    }
+    loaded = snapshotLoaded;
+  }
+
+  /**
+   * Reads the donation and donor writes of other processes.
+   *
+   * @return Their combined write count.
+   * @throws SQLException If there is an issue with the SQL operations.
+   * @throws IOException If there is an issue with input/output operations.
+   * @throws ClassNotFoundException If the required class is not found during database operations.
+   */
+  private static long readOtherWrites() throws SQLException, IOException, ClassNotFoundException {
+    Map<ReportCache.Source, Long> otherWrites = WriteWatermark.getInstance().otherWrites();
+    return otherWrites.get(ReportCache.Source.DONATIONS) + otherWrites.get(ReportCache.Source.DONORS);
+  }
+
+  /**
+   * Returns the order of the name columns' collation.
+   *
+   * @return A comparator that treats names differing only in case or accents as equal.
+   */
+  private static Comparator<String> nameOrder() {
+    Collator collator = Collator.getInstance(Locale.ROOT);
+    collator.setStrength(Collator.PRIMARY);
+    return collator::compare;
+  }
+
+  /** The location of a donor and one prefix-sum tree per funding program. */
+  private static class DonorEntry {
+    private Point location;
+    private final Map<String, FenwickTree> programs = new TreeMap<>(NAME_ORDER);
+  }
+}
@@ -1,5 +1,6 @@
 import java.io.IOException;
 import java.sql.*;
+import java.time.LocalDate;
 
 /**
  * DonationRecord class represents a record of a donation, capturing details such as donor
@@ -8,8 +9,9 @@ import java.sql.*;
  */
 public class DonationRecord {
   private String donor;
+  private DonorHandle donorHandle;
   private String fundingProgram;
-  private String date;
+  private LocalDate date;
   private int donation;
 
   /**
@@ -20,13 +22,28 @@ public class DonationRecord {
    * @param date The date of the donation.
    * @param donation The amount of the donation.
    */
-  public DonationRecord(String donor, String fundingProgram, String date, int donation) {
+  public DonationRecord(String donor, String fundingProgram, LocalDate date, int donation) {
     this.donor = donor;
     this.fundingProgram = fundingProgram;
     this.date = date;
     this.donation = donation;
   }
 
+  /**
+   * Constructor for creating a new DonationRecord instance for a donor handle, which skips the
+   * donor and funding program lookups.
+   *
+   * @param donorHandle The handle of the donor.
+   * @param fundingProgram The name of the funding program.
+   * @param date The date of the donation.
+   * @param donation The amount of the donation.
+   */
+  public DonationRecord(
+      DonorHandle donorHandle, String fundingProgram, LocalDate date, int donation) {
+    this(donorHandle.getName(), fundingProgram, date, donation);
+    this.donorHandle = donorHandle;
+  }
+
   /**
    * Receives and records a donation in the system. Checks if the donor and funding program are
    * valid and associated with each other before recording the donation.
@@ -43,23 +60,37 @@ public class DonationRecord {
     try {
       connection = DatabaseManager.getConnection();
 
-      /* Checking if donor exists in the system */
-      int donorID = helperMethod.isDonorExists(donor);
-      if (donorID == Constants.DONOR_NOT_FOUND) {
-        return false;
-      }
+      int donorID;
+      int programID;
+      if (donorHandle != null) {
+        /* A handle already carries the donor id and the ids of its programs */
+        Integer handleProgramID = donorHandle.getProgramId(fundingProgram);
+        if (handleProgramID == null) {
+          return false;
+        }
+        donorID = donorHandle.getId();
+        programID = handleProgramID;
+      } else {
+        /* Checking if donor exists in the system */
+        donorID = helperMethod.isDonorExists(donor);
+        if (donorID == Constants.DONOR_NOT_FOUND) {
+          return false;
+        }
 
-      /* Checking if program is associated with the given donor */
-      PreparedStatement isProgramDonorAssociated =
-          connection.prepareStatement(
-              "select program_id from funding_program where name = ? and donor_id = ?;");
-      isProgramDonorAssociated.setString(1, fundingProgram);
-      isProgramDonorAssociated.setInt(2, donorID);
-      ResultSet isProgramDonorAssociatedResultSet = isProgramDonorAssociated.executeQuery();
-      if (!isProgramDonorAssociatedResultSet.next()) {
-        return false;
+        /* Checking if program is associated with the given donor */
+        PreparedStatement isProgramDonorAssociated =
+            connection.prepareStatement(
+                "select program_id from funding_program where name = ? and donor_id = ?;");
+        isProgramDonorAssociated.setString(1, fundingProgram);
+        isProgramDonorAssociated.setInt(2, donorID);
+        ResultSet isProgramDonorAssociatedResultSet = isProgramDonorAssociated.executeQuery();
+        if (!isProgramDonorAssociatedResultSet.next()) {
+          return false;
+        }
+        programID = isProgramDonorAssociatedResultSet.getInt("program_id");
       }
-      int programID = isProgramDonorAssociatedResultSet.getInt("program_id");
+      /* The donation and its write count are committed together */
+      connection.setAutoCommit(false);
       PreparedStatement insertReceiveDonationRecord =
           connection.prepareStatement(
               "insert into receive_donation_record (date, donation, donor_id, program_id) values (?, ?, ?, ?)");
@@ -68,8 +99,14 @@ public class DonationRecord {
       insertReceiveDonationRecord.setInt(3, donorID);
       insertReceiveDonationRecord.setInt(4, programID);
       insertReceiveDonationRecord.executeUpdate();
+      WriteWatermark.getInstance().recordWrite(connection, ReportCache.Source.DONATIONS);
+      connection.commit();
+
+      DonationIndex.getInstance().recordDonation(donor, fundingProgram, date, donation);
+      ReportCache.getInstance().invalidate(ReportCache.Source.DONATIONS, date);
 
     } catch (SQLException sqlException) {
+      DatabaseManager.rollback(connection);
       throw new SQLException(sqlException.getMessage());
     } catch (IOException ioException) {
       throw new IOException(ioException.getMessage());
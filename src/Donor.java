@@ -1,6 +1,12 @@
 import java.io.IOException;
 import java.io.PrintWriter;
 import java.sql.*;
+import java.sql.Date;
+import java.time.LocalDate;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
 import java.util.Set;
 
 /**
@@ -13,15 +19,17 @@ public class Donor implements Locatable {
   private Point centralOffice;
   private String contact;
   private Set<String> fundingPrograms;
-  private int donation;
+  private long donation;
   private HelperMethod helperMethod = new HelperMethod();
   private Connection connection = null;
+  private int donorID = Constants.DONOR_NOT_FOUND;
+  private final Map<String, Integer> fundingProgramIDs = new LinkedHashMap<>();
 
-  public int getDonation() {
+  public long getDonation() {
     return donation;
   }
 
-  public void setDonation(int donation) {
+  public void setDonation(long donation) {
     this.donation = donation;
   }
 
@@ -43,6 +51,24 @@ public class Donor implements Locatable {
     this.fundingPrograms = fundingPrograms;
   }
 
+  /**
+   * Returns the ID of the donor once they have been defined.
+   *
+   * @return The donor ID, or {@code Constants.DONOR_NOT_FOUND} before a successful definition.
+   */
+  public int getDonorID() {
+    return donorID;
+  }
+
+  /**
+   * Returns the IDs of the funding programs written by the last definition.
+   *
+   * @return Funding program name mapped to its ID.
+   */
+  public Map<String, Integer> getFundingProgramIDs() {
+    return fundingProgramIDs;
+  }
+
   /**
    * Defines a new donor or updates existing donor information in the system, including associated
    * funding programs.
@@ -61,14 +87,17 @@ public class Donor implements Locatable {
       if (donorID == Constants.DONOR_NOT_FOUND) {
         PreparedStatement insertDonor =
             connection.prepareStatement(
-                "insert into donor (name, locationX, locationY, contact) values (?, ?, ?, ?)");
+                "insert into donor (name, locationX, locationY, contact) values (?, ?, ?, ?)",
+                Statement.RETURN_GENERATED_KEYS);
         insertDonor.setString(1, name);
         insertDonor.setInt(2, getLocation().getX());
         insertDonor.setInt(3, getLocation().getY());
         insertDonor.setString(4, contact);
         insertDonor.executeUpdate();
 
-        donorID = helperMethod.isDonorExists(name);
+        ResultSet generatedKeys = insertDonor.getGeneratedKeys();
+        generatedKeys.next();
+        donorID = generatedKeys.getInt(1);
         insertFundingPrograms(connection, donorID);
 
       }
@@ -91,7 +120,13 @@ public class Donor implements Locatable {
 
         insertFundingPrograms(connection, donorID);
       }
+      /* The steps above commit one by one, as the donor lookup reads through its own connection */
+      WriteWatermark.getInstance().recordWrite(connection, ReportCache.Source.DONORS);
+      this.donorID = donorID;
 
+      DonationIndex.getInstance().defineDonor(name, centralOffice, fundingPrograms);
+      /* Redefining a donor cascades to its donations, whatever their date */
+      ReportCache.getInstance().invalidate(ReportCache.Source.DONORS);
     } catch (SQLException sqlException) {
       throw new SQLException(sqlException.getMessage());
     } catch (IOException ioException) {
@@ -107,19 +142,25 @@ public class Donor implements Locatable {
   }
 
   /**
-   * Inserts funding programs associated with a donor into the database.
+   * Inserts funding programs associated with a donor into the database and keeps their IDs.
    *
    * @param connection The database connection.
    * @param donorID The ID of the donor.
    * @throws SQLException If there is an issue with the SQL operations.
    */
   private void insertFundingPrograms(Connection connection, int donorID) throws SQLException {
+    fundingProgramIDs.clear();
     for (String program : fundingPrograms) {
       PreparedStatement insertProgram =
-          connection.prepareStatement("insert into funding_program (name, donor_id) values (?, ?)");
+          connection.prepareStatement(
+              "insert into funding_program (name, donor_id) values (?, ?)",
+              Statement.RETURN_GENERATED_KEYS);
       insertProgram.setString(1, program);
       insertProgram.setInt(2, donorID);
       insertProgram.executeUpdate();
+      ResultSet generatedKeys = insertProgram.getGeneratedKeys();
+      generatedKeys.next();
+      fundingProgramIDs.put(program, generatedKeys.getInt(1));
     }
   }
 
@@ -133,8 +174,22 @@ public class Donor implements Locatable {
    * @throws IOException If there is an issue with input/output operations.
    * @throws ClassNotFoundException If the required class is not found during database operations.
    */
-  public void donorReport(String startDate, String endDate, PrintWriter outstream)
+  public void donorReport(LocalDate startDate, LocalDate endDate, PrintWriter outstream)
       throws SQLException, IOException, ClassNotFoundException {
+    /* With the prefix-sum index loaded, every total is two lookups and the database is not touched */
+    DonationIndex donationIndex = DonationIndex.getInstance();
+    if (donationIndex.isCurrent()) {
+      ReportStageEvent indexStage = ReportStageEvent.start("donorReport", "readDonationIndex");
+      Map<String, Map<String, Long>> programTotals =
+          donationIndex.programTotals(startDate, endDate);
+      indexStage.commit();
+
+      ReportStageEvent writeStage = ReportStageEvent.start("donorReport", "writeReport");
+      writeReport(programTotals, outstream);
+      writeStage.commit();
+      return;
+    }
+
     try {
       connection = DatabaseManager.getConnection();
 
@@ -154,11 +209,12 @@ public class Donor implements Locatable {
 
       ResultSet donorReportResultSet = donorReportQuery.executeQuery();
 
+      ReportStageEvent writeStage = ReportStageEvent.start("donorReport", "writeReport");
       String currentDonor = null;
       while (donorReportResultSet.next()) {
         String donorName = donorReportResultSet.getString("donor_name");
         String programName = donorReportResultSet.getString("program_name");
-        int totalDonation = donorReportResultSet.getInt("total_donation");
+        long totalDonation = donorReportResultSet.getLong("total_donation");
 
         if (!donorName.equals(currentDonor)) {
           if (currentDonor != null) {
@@ -173,6 +229,129 @@ public class Donor implements Locatable {
         /* Print funding program details */
         outstream.printf("\t%s\t%d%n", programName, totalDonation);
       }
+      writeStage.commit();
+    } catch (SQLException sqlException) {
+      throw new SQLException(sqlException.getMessage());
+    } catch (IOException ioException) {
+      throw new IOException(ioException.getMessage());
+    } catch (ClassNotFoundException classNotFoundException) {
+      throw new ClassNotFoundException(classNotFoundException.getMessage());
+    } finally {
+      /* Ensure the connection is closed */
+      DatabaseManager.closeConnection(connection);
+    }
+  }
+
+  /**
+   * Generates the donation report for several periods at once. Without the donation index, the
+   * donations of the whole span are read once, ordered by donor, program and date, and added to
+   * every period that contains them in a single streaming pass. Each period is then written as one
+   * section in the format of the single-period report; when sections share a stream, each is
+   * preceded by a line naming its period and separated from the next by a blank line.
+   *
+   * @param periods The start and end date of each reporting period, both included.
+   * @param outstreams One PrintWriter per period, or a single one for every period.
+   * @throws SQLException If there is an issue with the SQL operations.
+   * @throws IOException If there is an issue with input/output operations.
+   * @throws ClassNotFoundException If the required class is not found during database operations.
+   */
+  public void donorReport(List<Pair<LocalDate, LocalDate>> periods, List<PrintWriter> outstreams)
+      throws SQLException, IOException, ClassNotFoundException {
+    List<Map<String, Map<String, Long>>> periodTotals = new ArrayList<>();
+
+    DonationIndex donationIndex = DonationIndex.getInstance();
+    if (donationIndex.isCurrent()) {
+      ReportStageEvent indexStage = ReportStageEvent.start("donorReport", "readDonationIndex");
+      for (Pair<LocalDate, LocalDate> period : periods) {
+        periodTotals.add(donationIndex.programTotals(period.getKey(), period.getValue()));
+      }
+      indexStage.commit();
+    } else {
+      periodTotals = getPeriodTotals(periods);
+    }
+
+    ReportStageEvent writeStage = ReportStageEvent.start("donorReport", "writeReport");
+    boolean sharedStream = outstreams.size() == 1 && periods.size() > 1;
+    for (int period = 0; period < periods.size(); period++) {
+      PrintWriter outstream = sharedStream ? outstreams.get(0) : outstreams.get(period);
+      if (sharedStream) {
+        if (period > 0) {
+          outstream.println();
+        }
+        outstream.printf(
+            "%s to %s%n", periods.get(period).getKey(), periods.get(period).getValue());
+      }
+      writeReport(periodTotals.get(period), outstream);
+    }
+    writeStage.commit();
+  }
+
+  /**
+   * Reads the donations of the span covering every period in one ordered query and totals them by
+   * donor and program for each period.
+   *
+   * @param periods The start and end date of each reporting period, both included.
+   * @return For each period, donor name mapped to program name mapped to the total donated, in
+   *     report order.
+   * @throws SQLException If there is an issue with the SQL operations.
+   * @throws IOException If there is an issue with input/output operations.
+   * @throws ClassNotFoundException If the required class is not found during database operations.
+   */
+  private List<Map<String, Map<String, Long>>> getPeriodTotals(
+      List<Pair<LocalDate, LocalDate>> periods)
+      throws SQLException, IOException, ClassNotFoundException {
+    List<Map<String, Map<String, Long>>> result = new ArrayList<>();
+    LocalDate spanStart = LocalDate.MAX;
+    LocalDate spanEnd = LocalDate.MIN;
+    for (Pair<LocalDate, LocalDate> period : periods) {
+      /* The rows arrive in report order, so insertion order is the order of the SQL report */
+      result.add(new LinkedHashMap<>());
+      spanStart = period.getKey().isBefore(spanStart) ? period.getKey() : spanStart;
+      spanEnd = period.getValue().isAfter(spanEnd) ? period.getValue() : spanEnd;
+    }
+    if (spanStart.isAfter(spanEnd)) {
+      return result;
+    }
+
+    try {
+      connection = DatabaseManager.getConnection();
+
+      PreparedStatement periodDonations =
+          connection.prepareStatement(
+              """
+                  SELECT d.name AS donor_name, fp.name AS program_name, rdr.date, rdr.donation
+                  FROM donor d
+                       JOIN funding_program fp ON d.donor_id = fp.donor_id
+                       JOIN receive_donation_record rdr ON fp.program_id = rdr.program_id
+                  WHERE rdr.date BETWEEN ? AND ?
+                  ORDER BY d.name, fp.name, rdr.date
+                  """,
+              ResultSet.TYPE_FORWARD_ONLY,
+              ResultSet.CONCUR_READ_ONLY);
+      /* Stream the rows instead of buffering the whole span in the driver */
+      periodDonations.setFetchSize(Integer.MIN_VALUE);
+      periodDonations.setDate(1, Date.valueOf(spanStart));
+      periodDonations.setDate(2, Date.valueOf(spanEnd));
+
+      ResultSet periodDonationsResultSet = periodDonations.executeQuery();
+      ReportStageEvent bucketStage = ReportStageEvent.start("donorReport", "bucketPeriods");
+      while (periodDonationsResultSet.next()) {
+        String donorName = periodDonationsResultSet.getString("donor_name");
+        String programName = periodDonationsResultSet.getString("program_name");
+        LocalDate date = periodDonationsResultSet.getDate("date").toLocalDate();
+        long donation = periodDonationsResultSet.getInt("donation");
+
+        for (int period = 0; period < periods.size(); period++) {
+          if (!date.isBefore(periods.get(period).getKey())
+              && !date.isAfter(periods.get(period).getValue())) {
+            result
+                .get(period)
+                .computeIfAbsent(donorName, k -> new LinkedHashMap<>())
+                .merge(programName, donation, Long::sum);
+          }
+        }
+      }
+      bucketStage.commit();
     } catch (SQLException sqlException) {
       throw new SQLException(sqlException.getMessage());
     } catch (IOException ioException) {
@@ -183,6 +362,31 @@ public class Donor implements Locatable {
       /* Ensure the connection is closed */
       DatabaseManager.closeConnection(connection);
     }
+    return result;
+  }
+
+  /**
+   * Writes the donor report from totals already grouped by donor and program, in the same format
+   * as the SQL report.
+   *
+   * @param programTotals Donor name mapped to program name mapped to the total donated, in report
+   *     order.
+   * @param outstream The PrintWriter to write the report output.
+   */
+  private void writeReport(Map<String, Map<String, Long>> programTotals, PrintWriter outstream) {
+    boolean firstDonor = true;
+    for (Map.Entry<String, Map<String, Long>> donor : programTotals.entrySet()) {
+      if (!firstDonor) {
+        /* Print a blank line between donors (except for the first donor) */
+        outstream.println();
+      }
+      outstream.println(donor.getKey());
+      firstDonor = false;
+
+      for (Map.Entry<String, Long> program : donor.getValue().entrySet()) {
+        outstream.printf("\t%s\t%d%n", program.getKey(), program.getValue());
+      }
+    }
   }
 
   /**
@@ -0,0 +1,41 @@
+import java.util.Collections;
+import java.util.Map;
+
+/**
+ * A handle to a donor defined in the system, with the ids of its funding programs. Redefining the
+ * donor replaces its funding programs, so a handle taken before that must be replaced too.
+ */
+public class DonorHandle extends EntityHandle {
+  private final Map<String, Integer> programIDs;
+
+  /**
+   * Creates a handle for a donor.
+   *
+   * @param id The donor id.
+   * @param name The name of the donor.
+   * @param programIDs The id of each funding program of the donor, by program name.
+   */
+  public DonorHandle(int id, String name, Map<String, Integer> programIDs) {
+    super(id, name);
+    this.programIDs = Collections.unmodifiableMap(programIDs);
+  }
+
+  /**
+   * Returns the id of one of the donor's funding programs.
+   *
+   * @param fundingProgram The name of the funding program.
+   * @return The program id, or null if the program is not associated with the donor.
+   */
+  public Integer getProgramId(String fundingProgram) {
+    return programIDs.get(fundingProgram);
+  }
+
+  /**
+   * Returns the id of each funding program of the donor.
+   *
+   * @return Program name mapped to program id.
+   */
+  public Map<String, Integer> getProgramIds() {
+    return programIDs;
+  }
+}
@@ -0,0 +1,60 @@
+/**
+ * A lightweight reference to an entity that has been defined in the system. It carries the
+ * surrogate id next to the name, so operations given a handle can skip the name lookup. Handles
+ * are obtained from the define methods of {@link DataGenerator} and stay valid for as long as the
+ * entity is not removed from the database.
+ */
+public abstract class EntityHandle {
+  private final int id;
+  private final String name;
+
+  /**
+   * Creates a handle for an entity.
+   *
+   * @param id The surrogate id of the entity.
+   * @param name The unique name of the entity.
+   */
+  protected EntityHandle(int id, String name) {
+    this.id = id;
+    this.name = name;
+  }
+
+  /**
+   * Returns the surrogate id of the entity.
+   *
+   * @return The database id.
+   */
+  public int getId() {
+    return id;
+  }
+
+  /**
+   * Returns the unique name of the entity.
+   *
+   * @return The entity name.
+   */
+  public String getName() {
+    return name;
+  }
+
+  @Override
+  public boolean equals(Object other) {
+    if (this == other) {
+      return true;
+    }
+    if (other == null || getClass() != other.getClass()) {
+      return false;
+    }
+    return id == ((EntityHandle) other).id;
+  }
+
+  @Override
+  public int hashCode() {
+    return 31 * getClass().hashCode() + id;
+  }
+
+  @Override
+  public String toString() {
+    return getClass().getSimpleName() + "{" + "id=" + id + ", name='" + name + '\'' + '}';
+  }
+}
@@ -0,0 +1,249 @@
+import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.EnumMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+
+/**
+ * EntityLookupCoalescer resolves entity names to ids for {@link HelperMethod}, combining the
+ * lookups that arrive together. When no query of the same kind is running, a lookup is queried at
+ * once. Lookups that arrive while one is running join a single batch, which is answered by one
+ * {@code WHERE name IN (...)} query as soon as the running one returns. Callers asking for a name
+ * already in the open batch share its result, so under load the number of queries follows the
+ * number of distinct names rather than the number of concurrent callers, and an idle lookup never
+ * waits.
+ *
+ * <p>A caller only joins a batch that has not been queried yet, so it never sees an answer older
+ * than its own call; a lookup made right after an insert therefore finds the new row.
+ */
+public class EntityLookupCoalescer {
+  private static final EntityLookupCoalescer INSTANCE = new EntityLookupCoalescer();
+
+  private final boolean enabled = ConfigurationManager.getBoolean("lookupCoalescer.enabled", true);
+  private final int maxBatch = ConfigurationManager.getInt("lookupCoalescer.maxBatch", 100);
+
+  private final Map<Kind, Batcher> batchers = new EnumMap<>(Kind.class);
+
+  private EntityLookupCoalescer() {
+    for (Kind kind : Kind.values()) {
+      batchers.put(kind, new Batcher());
+    }
+  }
+
+  /**
+   * Returns the coalescer shared by the whole process.
+   *
+   * @return The entity lookup coalescer.
+   */
+  public static EntityLookupCoalescer getInstance() {
+    return INSTANCE;
+  }
+
+  /**
+   * Checks if lookups should go through the coalescer.
+   *
+   * @return True unless it has been disabled in the configuration.
+   */
+  public boolean isEnabled() {
+    return enabled;
+  }
+
+  /**
+   * Returns the id of the entity with the given name, sharing the query with concurrent lookups.
+   *
+   * @param kind The kind of entity to look up.
+   * @param name The name of the entity.
+   * @return The entity id, or the kind's not-found constant if no entity has the name.
+   * @throws SQLException If there is an issue with the SQL operations.
+   * @throws IOException If there is an issue with input/output operations.
+   * @throws ClassNotFoundException If the required class is not found during database operations.
+   */
+  public int lookup(Kind kind, String name)
+      throws SQLException, IOException, ClassNotFoundException {
+    Batcher batcher = batchers.get(kind);
+    Batch ledBatch = null;
+    CompletableFuture<Integer> result;
+
+    synchronized (batcher) {
+      Batch open = batcher.open;
+      if (open != null && open.lookups.containsKey(name)) {
+        result = open.lookups.get(name);
+      } else {
+        if (open == null || open.lookups.size() >= maxBatch) {
+          /* No batch is collecting, so this caller opens one and runs its query */
+          open = new Batch();
+          batcher.open = open;
+          ledBatch = open;
+        }
+        result = new CompletableFuture<>();
+        open.lookups.put(name, result);
+      }
+    }
+
+    if (ledBatch != null) {
+      runBatch(kind, batcher, ledBatch);
+    }
+    return await(result);
+  }
+
+  /**
+   * Waits for the running query of the same kind, if any, then closes the batch and answers every
+   * lookup in it with one query.
+   *
+   * @param kind The kind of entity looked up.
+   * @param batcher The batcher the batch belongs to.
+   * @param batch The batch this caller opened.
+   */
+  private void runBatch(Kind kind, Batcher batcher, Batch batch) {
+    List<String> names;
+    synchronized (batcher) {
+      /* The batch keeps collecting only while another query runs, never on a timer */
+      while (batcher.running > 0) {
+        try {
+          batcher.wait();
+        } catch (InterruptedException interruptedException) {
+          /* Answer what has been collected; the other callers are waiting on it */
+          Thread.currentThread().interrupt();
+          break;
+        }
+      }
+      batcher.running++;
+      if (batcher.open == batch) {
+        batcher.open = null;
+      }
+      names = new ArrayList<>(batch.lookups.keySet());
+    }
+
+    try {
+      Map<String, Integer> ids = queryIDs(kind, names);
+      for (Map.Entry<String, CompletableFuture<Integer>> lookup : batch.lookups.entrySet()) {
+        lookup.getValue().complete(ids.getOrDefault(lookup.getKey(), kind.notFound));
+      }
+    } catch (SQLException | IOException | ClassNotFoundException | RuntimeException exception) {
+      for (CompletableFuture<Integer> lookup : batch.lookups.values()) {
+        lookup.completeExceptionally(exception);
+      }
+    } finally {
+      synchronized (batcher) {
+        batcher.running--;
+        batcher.notifyAll();
+      }
+    }
+  }
+
+  /**
+   * Looks up the ids of a batch of names in one query.
+   *
+   * @param kind The kind of entity looked up.
+   * @param names The distinct names in the batch.
+   * @return The id of every name that exists.
+   * @throws SQLException If there is an issue with the SQL operations.
+   * @throws IOException If there is an issue with input/output operations.
+   * @throws ClassNotFoundException If the required class is not found during database operations.
+   */
+  private Map<String, Integer> queryIDs(Kind kind, List<String> names)
+      throws SQLException, IOException, ClassNotFoundException {
+    /* Names are compared the way the column's case-insensitive collation compares them */
+    Map<String, Integer> result = new TreeMap<>(String.CASE_INSENSITIVE_ORDER);
+    Connection connection = null;
+
+    try {
+      connection = DatabaseManager.getConnection();
+
+      PreparedStatement lookupIDs =
+          connection.prepareStatement(
+              "select name, "
+                  + kind.idColumn
+                  + " from "
+                  + kind.table
+                  + " where name in ("
+                  + String.join(", ", Collections.nCopies(names.size(), "?"))
+                  + ");");
+      for (int index = 0; index < names.size(); index++) {
+        lookupIDs.setString(index + 1, names.get(index));
+      }
+      ResultSet lookupIDsResultSet = lookupIDs.executeQuery();
+      while (lookupIDsResultSet.next()) {
+        result.put(lookupIDsResultSet.getString("name"), lookupIDsResultSet.getInt(kind.idColumn));
+      }
+    } catch (SQLException sqlException) {
+      throw new SQLException(sqlException.getMessage());
+    } catch (IOException ioException) {
+      throw new IOException(ioException.getMessage());
+    } catch (ClassNotFoundException classNotFoundException) {
+      throw new ClassNotFoundException(classNotFoundException.getMessage());
+    } finally {
+      /* Ensure the connection is closed */
+      DatabaseManager.closeConnection(connection);
+    }
+    return result;
+  }
+
+  /**
+   * Waits for a lookup and rethrows the failure of its batch query as this caller's own.
+   *
+   * @param result The pending lookup.
+   * @return The entity id or the not-found constant.
+   * @throws SQLException If the batch query failed with a SQL error.
+   * @throws IOException If the batch query failed with an I/O error or the wait is interrupted.
+   * @throws ClassNotFoundException If the batch query could not load the database driver.
+   */
+  private int await(CompletableFuture<Integer> result)
+      throws SQLException, IOException, ClassNotFoundException {
+    try {
+      return result.get();
+    } catch (InterruptedException interruptedException) {
+      Thread.currentThread().interrupt();
+      throw new InterruptedIOException("Interrupted while waiting for an entity lookup");
+    } catch (ExecutionException executionException) {
+      Throwable cause = executionException.getCause();
+      if (cause instanceof SQLException) {
+        throw new SQLException(cause.getMessage());
+      } else if (cause instanceof IOException) {
+        throw new IOException(cause.getMessage());
+      } else if (cause instanceof ClassNotFoundException) {
+        throw new ClassNotFoundException(cause.getMessage());
+      }
+      throw new IllegalStateException(cause);
+    }
+  }
+
+  /** The kinds of entity that are looked up by name, with their table and id column. */
+  public enum Kind {
+    SERVICE("service", "service_id", Constants.SERVICE_NOT_FOUND),
+    SHELTER("shelter", "shelter_id", Constants.SHELTER_NOT_FOUND),
+    STAFF("staff", "staff_id", Constants.STAFF_NOT_FOUND),
+    DONOR("donor", "donor_id", Constants.DONOR_NOT_FOUND);
+
+    private final String table;
+    private final String idColumn;
+    private final int notFound;
+
+    Kind(String table, String idColumn, int notFound) {
+      this.table = table;
+      this.idColumn = idColumn;
+      this.notFound = notFound;
+    }
+  }
+
+  /** The batch of one kind collecting lookups, if any, and the number of its queries running. */
+  private static class Batcher {
+    private Batch open;
+    private int running;
+  }
+
+  /** The lookups collected while a query was running, by name, in arrival order. */
+  private static class Batch {
+    private final Map<String, CompletableFuture<Integer>> lookups = new LinkedHashMap<>();
+  }
+}
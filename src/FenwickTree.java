@@ -0,0 +1,144 @@
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+
+/**
+ * A Fenwick (binary indexed) tree of sums keyed by epoch day. Adding an amount on a day and asking
+ * for the total of any day range are both O(log n) in the number of days covered, no matter how
+ * many amounts were added. The covered day range grows on demand in both directions.
+ */
+public class FenwickTree {
+  private static final int INITIAL_CAPACITY = 512;
+
+  /* The epoch day stored at position 1 of the tree */
+  private long origin;
+  private long[] tree;
+  private boolean empty = true;
+
+  /**
+   * Adds an amount to the given day.
+   *
+   * @param epochDay The day, as a count of days since 1970-01-01.
+   * @param amount The amount to add.
+   */
+  public void add(long epochDay, long amount) {
+    if (empty) {
+      origin = epochDay - INITIAL_CAPACITY / 2;
+      tree = new long[INITIAL_CAPACITY + 1];
+      empty = false;
+    } else if (epochDay < origin || epochDay >= origin + capacity()) {
+      grow(epochDay);
+    }
+
+    for (int index = (int) (epochDay - origin) + 1; index < tree.length; index += index & -index) {
+      tree[index] += amount;
+    }
+  }
+
+  /**
+   * Returns the total of all amounts added on or before the given day.
+   *
+   * @param epochDay The last day to include.
+   * @return The running total up to and including the day.
+   */
+  public long sumUpTo(long epochDay) {
+    if (empty || epochDay < origin) {
+      return 0;
+    }
+    int index = (int) Math.min(epochDay - origin + 1, capacity());
+    long sum = 0;
+    for (; index > 0; index -= index & -index) {
+      sum += tree[index];
+    }
+    return sum;
+  }
+
+  /**
+   * Returns the total of all amounts added between two days, both included.
+   *
+   * @param fromEpochDay The first day to include.
+   * @param toEpochDay The last day to include.
+   * @return The total over the range, or 0 if the range is empty.
+   */
+  public long rangeSum(long fromEpochDay, long toEpochDay) {
+    if (toEpochDay < fromEpochDay) {
+      return 0;
+    }
+    return sumUpTo(toEpochDay) - sumUpTo(fromEpochDay - 1);
+  }
+
+  /**
+   * Writes the tree as it is laid out in memory, so it can be read back without re-adding amounts.
+   *
+   * @param out The stream to write to.
+   * @throws IOException If the stream cannot be written.
+   */
+  public void writeTo(DataOutputStream out) throws IOException {
+    out.writeBoolean(empty);
+    if (empty) {
+      return;
+    }
+    out.writeLong(origin);
+    out.writeInt(tree.length);
+    for (long node : tree) {
+      out.writeLong(node);
+    }
+  }
+
+  /**
+   * Reads a tree written by {@link #writeTo(DataOutputStream)}.
+   *
+   * @param in The stream to read from.
+   * @return The tree.
+   * @throws IOException If the stream cannot be read.
+   */
+  public static FenwickTree readFrom(DataInputStream in) throws IOException {
+    FenwickTree fenwickTree = new FenwickTree();
+    if (in.readBoolean()) {
+      return fenwickTree;
+    }
+    fenwickTree.empty = false;
+    fenwickTree.origin = in.readLong();
+    fenwickTree.tree = new long[in.readInt()];
+    for (int index = 0; index < fenwickTree.tree.length; index++) {
+      fenwickTree.tree[index] = in.readLong();
+    }
+    return fenwickTree;
+  }
+
+  private int capacity() {
+    return tree.length - 1;
+  }
+
+  /**
+   * Re-creates the tree so that it covers the given day, at least doubling the covered range.
+   *
+   * @param epochDay The day that must become addressable.
+   */
+  private void grow(long epochDay) {
+    long[] values = new long[capacity()];
+    for (int position = 0; position < values.length; position++) {
+      values[position] = rangeSum(origin + position, origin + position);
+    }
+
+    long newOrigin = Math.min(origin, epochDay);
+    long newEnd = Math.max(origin + capacity(), epochDay + 1);
+    int newCapacity = capacity();
+    while (newCapacity < newEnd - newOrigin) {
+      newCapacity *= 2;
+    }
+    /* Leave room on the side that had to grow, since that is where the next days will land */
+    if (epochDay < origin) {
+      newOrigin = newEnd - newCapacity;
+    }
+
+    long oldOrigin = origin;
+    origin = newOrigin;
+    tree = new long[newCapacity + 1];
+    for (int position = 0; position < values.length; position++) {
+      if (values[position] != 0) {
+        add(oldOrigin + position, values[position]);
+      }
+    }
+  }
+}
@@ -3,6 +3,7 @@ import java.sql.Connection;
 import java.sql.Date;
 import java.sql.PreparedStatement;
 import java.sql.SQLException;
+import java.time.LocalDate;
 
 /**
  * FundsDisbursement class represents a record of funds being disbursed to a shelter, capturing
@@ -11,7 +12,8 @@ import java.sql.SQLException;
  */
 public class FundsDisbursement {
   private String shelterReceiving;
-  private String date;
+  private ShelterHandle shelter;
+  private LocalDate date;
   private int funds;
 
   /**
@@ -21,12 +23,25 @@ public class FundsDisbursement {
    * @param date The disbursement date.
    * @param funds The amount of funds being disbursed.
    */
-  public FundsDisbursement(String shelterReceiving, String date, int funds) {
+  public FundsDisbursement(String shelterReceiving, LocalDate date, int funds) {
     this.shelterReceiving = shelterReceiving;
     this.date = date;
     this.funds = funds;
   }
 
+  /**
+   * Constructor for creating a new FundsDisbursement instance for a shelter handle, which skips the
+   * name lookup.
+   *
+   * @param shelter The handle of the shelter receiving the funds.
+   * @param date The disbursement date.
+   * @param funds The amount of funds being disbursed.
+   */
+  public FundsDisbursement(ShelterHandle shelter, LocalDate date, int funds) {
+    this(shelter.getName(), date, funds);
+    this.shelter = shelter;
+  }
+
   /**
    * Disburses funds to the specified shelter and records the transaction in the system.
    *
@@ -42,12 +57,16 @@ public class FundsDisbursement {
     try {
       connection = DatabaseManager.getConnection();
 
-      /* Validating the shelter */
-      int shelterID = helperMethod.isShelterExists(shelterReceiving);
+      /* Validating the shelter; a handle already carries its id */
+      int shelterID =
+          shelter != null ? shelter.getId() : helperMethod.isShelterExists(shelterReceiving);
       if (shelterID == Constants.SHELTER_NOT_FOUND) {
         return false;
       }
 
+      /* The record and both rollups are written together, so the rollups never drift */
+      connection.setAutoCommit(false);
+
       PreparedStatement insertDisburseFund =
           connection.prepareStatement(
               "insert into disburse_fund_record (date, funds, shelter_id) values (?, ?,?)");
@@ -56,7 +75,27 @@ public class FundsDisbursement {
       insertDisburseFund.setInt(3, shelterID);
       insertDisburseFund.executeUpdate();
 
+      PreparedStatement upsertDailyRollup =
+          connection.prepareStatement(
+              "insert into disburse_fund_daily (shelter_id, date, funds) values (?, ?, ?) on duplicate key update funds = funds + values(funds)");
+      upsertDailyRollup.setInt(1, shelterID);
+      upsertDailyRollup.setDate(2, Date.valueOf(date));
+      upsertDailyRollup.setInt(3, funds);
+      upsertDailyRollup.executeUpdate();
+
+      PreparedStatement upsertMonthlyRollup =
+          connection.prepareStatement(
+              "insert into disburse_fund_monthly (shelter_id, month, funds) values (?, ?, ?) on duplicate key update funds = funds + values(funds)");
+      upsertMonthlyRollup.setInt(1, shelterID);
+      upsertMonthlyRollup.setDate(2, Date.valueOf(date.withDayOfMonth(1)));
+      upsertMonthlyRollup.setInt(3, funds);
+      upsertMonthlyRollup.executeUpdate();
+
+      WriteWatermark.getInstance().recordWrite(connection, ReportCache.Source.DISBURSEMENTS);
+      connection.commit();
+      ReportCache.getInstance().invalidate(ReportCache.Source.DISBURSEMENTS, date);
     } catch (SQLException sqlException) {
+      DatabaseManager.rollback(connection);
       throw new SQLException(sqlException.getMessage());
     } catch (IOException ioException) {
       throw new IOException(ioException.getMessage());
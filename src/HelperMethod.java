@@ -4,6 +4,7 @@ import java.sql.PreparedStatement;
 import java.sql.ResultSet;
 import java.sql.SQLException;
 import java.time.LocalDate;
+import java.time.format.DateTimeParseException;
 import java.util.*;
 import java.util.stream.Collectors;
 
@@ -31,6 +32,12 @@ public class HelperMethod {
       return Constants.SERVICE_NOT_FOUND;
     }
 
+    /* Concurrent lookups share one query; distinct names in the same window are batched */
+    EntityLookupCoalescer lookupCoalescer = EntityLookupCoalescer.getInstance();
+    if (lookupCoalescer.isEnabled()) {
+      return lookupCoalescer.lookup(EntityLookupCoalescer.Kind.SERVICE, serviceName);
+    }
+
     try {
       connection = DatabaseManager.getConnection();
 
@@ -72,6 +79,12 @@ public class HelperMethod {
       return Constants.SHELTER_NOT_FOUND;
     }
 
+    /* Concurrent lookups share one query; distinct names in the same window are batched */
+    EntityLookupCoalescer lookupCoalescer = EntityLookupCoalescer.getInstance();
+    if (lookupCoalescer.isEnabled()) {
+      return lookupCoalescer.lookup(EntityLookupCoalescer.Kind.SHELTER, shelterName);
+    }
+
     try {
       connection = DatabaseManager.getConnection();
 
@@ -113,6 +126,12 @@ public class HelperMethod {
       return Constants.STAFF_NOT_FOUND;
     }
 
+    /* Concurrent lookups share one query; distinct names in the same window are batched */
+    EntityLookupCoalescer lookupCoalescer = EntityLookupCoalescer.getInstance();
+    if (lookupCoalescer.isEnabled()) {
+      return lookupCoalescer.lookup(EntityLookupCoalescer.Kind.STAFF, staffName);
+    }
+
     try {
       connection = DatabaseManager.getConnection();
 
@@ -154,6 +173,12 @@ public class HelperMethod {
       return Constants.DONOR_NOT_FOUND;
     }
 
+    /* Concurrent lookups share one query; distinct names in the same window are batched */
+    EntityLookupCoalescer lookupCoalescer = EntityLookupCoalescer.getInstance();
+    if (lookupCoalescer.isEnabled()) {
+      return lookupCoalescer.lookup(EntityLookupCoalescer.Kind.DONOR, donorName);
+    }
+
     try {
       connection = DatabaseManager.getConnection();
 
@@ -178,6 +203,46 @@ public class HelperMethod {
     return Constants.DONOR_NOT_FOUND;
   }
 
+  /**
+   * Returns the id of each funding program of a donor.
+   *
+   * @param donorID The ID of the donor.
+   * @return Program name mapped to program id; empty if the donor has no programs.
+   * @throws SQLException If there is an issue with the SQL operations.
+   * @throws IOException If there is an issue with input/output operations.
+   * @throws ClassNotFoundException If the required class is not found during database operations.
+   */
+  public Map<String, Integer> getFundingProgramIDs(int donorID)
+      throws SQLException, IOException, ClassNotFoundException {
+    Map<String, Integer> result = new HashMap<>();
+
+    try {
+      connection = DatabaseManager.getConnection();
+
+      PreparedStatement fundingProgramIDs =
+          connection.prepareStatement(
+              "select program_id, name from funding_program where donor_id = ?;");
+      fundingProgramIDs.setInt(1, donorID);
+      ResultSet fundingProgramIDsResultSet = fundingProgramIDs.executeQuery();
+      while (fundingProgramIDsResultSet.next()) {
+        result.put(
+            fundingProgramIDsResultSet.getString("name"),
+            fundingProgramIDsResultSet.getInt("program_id"));
+      }
+
+    } catch (SQLException sqlException) {
+      throw new SQLException(sqlException.getMessage());
+    } catch (IOException ioException) {
+      throw new IOException(ioException.getMessage());
+    } catch (ClassNotFoundException classNotFoundException) {
+      throw new ClassNotFoundException(classNotFoundException.getMessage());
+    } finally {
+      /* Ensure the connection is closed */
+      DatabaseManager.closeConnection(connection);
+    }
+    return result;
+  }
+
   /**
    * Checks if a given date string is invalid.
    *
@@ -191,12 +256,26 @@ public class HelperMethod {
       return false;
     }
 
+    return parseDate(date) == null;
+  }
+
+  /**
+   * Parses a date string in the system's date format. Callers at the API edge parse each date once
+   * with this method and pass the LocalDate on, instead of validating and re-parsing the string.
+   *
+   * @param date The date string to parse.
+   * @return The parsed date, or null if the string is missing or not a valid date.
+   */
+  public LocalDate parseDate(String date) {
+    if (date == null || date.isEmpty()) {
+      return null;
+    }
+
     try {
       /* Try parsing the date with the defined format */
-      LocalDate.parse(date, Constants.DATE_FORMATTER);
-      return false; /* Parsing successful, date is valid */
-    } catch (Exception e) {
-      return true; /* Parsing failed, date is invalid */
+      return LocalDate.parse(date, Constants.DATE_FORMATTER);
+    } catch (DateTimeParseException dateTimeParseException) {
+      return null; /* Parsing failed, date is invalid */
     }
   }
 
@@ -1,11 +1,17 @@
 import java.io.IOException;
 import java.io.PrintWriter;
+import java.io.StringWriter;
 import java.sql.Connection;
 import java.sql.PreparedStatement;
+import java.sql.ResultSet;
 import java.sql.SQLException;
+import java.time.LocalDate;
+import java.util.ArrayList;
+import java.util.EnumSet;
 import java.util.List;
 import java.util.Map;
 import java.util.Set;
+import java.util.TreeMap;
 
 /**
  * The class HomelessSupport implements DataGenerator and DataManipulator interfaces to manage
@@ -15,6 +21,99 @@ public class HomelessSupport implements DataGenerator, DataManipulator {
   private HelperMethod helperMethod = new HelperMethod();
   private Connection connection = null;
 
+  /**
+   * Prepares the system for use. Applies pending schema migrations, loads the in-process indexes,
+   * stores and report cache, and starts the continuous monitors that follow the occupancy feed.
+   * Each step can be switched off in "config.prop".
+   *
+   * @throws SQLException if a database access error occurs
+   * @throws IOException if an I/O error occurs
+   * @throws ClassNotFoundException if the class is not found
+   */
+  public void initialize() throws SQLException, IOException, ClassNotFoundException {
+    if (ConfigurationManager.getBoolean("migrations.runOnStartup", true)) {
+      SchemaMigrator schemaMigrator = new SchemaMigrator();
+      schemaMigrator.migrate();
+    }
+    WriteWatermark.getInstance().retireIdleWriters();
+    MutationJournal mutationJournal = MutationJournal.getInstance();
+    if (ConfigurationManager.getBoolean("donationIndex.enabled", true)) {
+      mutationJournal.register(DonationIndex.getInstance());
+    }
+    if (ConfigurationManager.getBoolean("mutationJournal.enabled", false)) {
+      mutationJournal.open();
+    }
+    /* Replaying the journal after the last checkpoint is far cheaper than re-reading the tables */
+    if (!mutationJournal.replay() || !DonationIndex.getInstance().isLoaded()) {
+      if (ConfigurationManager.getBoolean("donationIndex.enabled", true)) {
+        DonationIndex.getInstance().rebuild();
+      }
+    }
+    /* No write is in flight yet, so the checkpoint matches the journal exactly */
+    mutationJournal.checkpoint();
+    if (ConfigurationManager.getBoolean("occupancyArchive.enabled", true)) {
+      OccupancyArchive occupancyArchive = OccupancyArchive.getInstance();
+      occupancyArchive.open();
+      if (ConfigurationManager.getBoolean("occupancyArchive.archiveOnStartup", false)) {
+        occupancyArchive.archiveClosedYears();
+      }
+    }
+    if (ConfigurationManager.getBoolean("occupancyStore.enabled", true)) {
+      OccupancyColumnStore.getInstance().open();
+    }
+    if (ConfigurationManager.getBoolean("occupancySketches.enabled", true)) {
+      OccupancySketchStore.getInstance().open();
+    }
+    if (ConfigurationManager.getBoolean("writeBehind.enabled", false)) {
+      OccupancyWriteBehind.getInstance().start();
+    }
+    if (ConfigurationManager.getBoolean("reportCache.enabled", true)) {
+      ReportCache.getInstance().open();
+    }
+    if (ConfigurationManager.getBoolean("capacityAlerts.enabled", true)) {
+      CapacityAlertEngine capacityAlertEngine = CapacityAlertEngine.getInstance();
+      if (capacityAlertEngine.getRules().isEmpty()) {
+        capacityAlertEngine.addRule(
+            new CapacityRule(
+                "capacity",
+                ConfigurationManager.getInt("capacityAlerts.raisePercent", 90),
+                ConfigurationManager.getInt("capacityAlerts.clearPercent", 85)));
+      }
+      capacityAlertEngine.start();
+    }
+    if (ConfigurationManager.getBoolean("volatilityMonitor.enabled", true)) {
+      VolatilityMonitor.getInstance().start();
+    }
+    if (ConfigurationManager.getBoolean("bedAvailability.enabled", true)) {
+      BedAvailabilityService.getInstance().start();
+    }
+    if (ConfigurationManager.getBoolean("shelterLocator.enabled", true)) {
+      ShelterLocator.getInstance().start();
+    }
+  }
+
+  /**
+   * Prepares the system for a command-line import, which may run while a server uses the same
+   * data directories. Brings the database schema up to date as {@link #initialize()} does, and
+   * reads the occupancy archive so records of archived years are refused, but opens none of the
+   * journals, stores and caches the server owns. The import counts its writes in the {@link
+   * WriteWatermark}, so the server rebuilds what the imported rows made stale before its next
+   * report.
+   *
+   * @throws SQLException if a database access error occurs
+   * @throws IOException if an I/O error occurs
+   * @throws ClassNotFoundException if the class is not found
+   */
+  public void initializeForImport() throws SQLException, IOException, ClassNotFoundException {
+    if (ConfigurationManager.getBoolean("migrations.runOnStartup", true)) {
+      SchemaMigrator schemaMigrator = new SchemaMigrator();
+      schemaMigrator.migrate();
+    }
+    if (ConfigurationManager.getBoolean("occupancyArchive.enabled", true)) {
+      OccupancyArchive.getInstance().open();
+    }
+  }
+
   /**
    * Define a new service in the system.
    *
@@ -28,14 +127,34 @@ public class HomelessSupport implements DataGenerator, DataManipulator {
   @Override
   public boolean defineService(String serviceName, int inspectionFrequency)
       throws SQLException, IOException, ClassNotFoundException {
+    return defineServiceWithHandle(serviceName, inspectionFrequency) != null;
+  }
+
+  /**
+   * Define a new service in the system and return a handle to it.
+   *
+   * @param serviceName Name of the service to be added
+   * @param inspectionFrequency How frequently does it need inspection
+   * @return The handle of the service, or null if it could not be defined
+   * @throws SQLException if a database access error occurs
+   * @throws IOException if an I/O error occurs
+   * @throws ClassNotFoundException if the class is not found
+   */
+  @Override
+  public ServiceHandle defineServiceWithHandle(String serviceName, int inspectionFrequency)
+      throws SQLException, IOException, ClassNotFoundException {
     boolean isInputNotValidated =
         serviceName == null || serviceName.isEmpty() || inspectionFrequency < 0;
     if (isInputNotValidated) {
-      return false;
+      return null;
     }
 
     Service service = new Service(serviceName, inspectionFrequency);
-    return service.defineService();
+    if (!journal(
+        service.defineService(), MutationEvent.defineService(serviceName, inspectionFrequency))) {
+      return null;
+    }
+    return new ServiceHandle(service.getServiceID(), serviceName);
   }
 
   /**
@@ -53,6 +172,25 @@ public class HomelessSupport implements DataGenerator, DataManipulator {
   @Override
   public boolean defineShelter(String name, Point location, int maxCapacity, String staffInCharge)
       throws SQLException, IOException, ClassNotFoundException {
+    return defineShelterWithHandle(name, location, maxCapacity, staffInCharge) != null;
+  }
+
+  /**
+   * Add a shelter or camp to the system and return a handle to it.
+   *
+   * @param name Name of the shelter or camp
+   * @param location Location of the shelter or camp
+   * @param maxCapacity Maximum number of people it can accommodate
+   * @param staffInCharge Staff member in charge of the shelter or camp
+   * @return The handle of the shelter, or null if it could not be added
+   * @throws SQLException if a database access error occurs
+   * @throws IOException if an I/O error occurs
+   * @throws ClassNotFoundException if the class is not found
+   */
+  @Override
+  public ShelterHandle defineShelterWithHandle(
+      String name, Point location, int maxCapacity, String staffInCharge)
+      throws SQLException, IOException, ClassNotFoundException {
     boolean isInputNotValidated =
         name == null
             || name.isEmpty()
@@ -61,12 +199,16 @@ public class HomelessSupport implements DataGenerator, DataManipulator {
             || staffInCharge == null
             || staffInCharge.isEmpty();
     if (isInputNotValidated) {
-      return false;
+      return null;
     }
 
     Shelter shelter = new Shelter(name, location, maxCapacity, staffInCharge);
-
-    return shelter.defineShelter();
+    if (!journal(
+        shelter.defineShelter(),
+        MutationEvent.defineShelter(name, location, maxCapacity, staffInCharge))) {
+      return null;
+    }
+    return new ShelterHandle(shelter.getShelterID(), name);
   }
 
   /**
@@ -99,6 +241,81 @@ public class HomelessSupport implements DataGenerator, DataManipulator {
       return false;
     }
 
+    insertServiceForShelter(serviceID, shelterID);
+    return journal(true, MutationEvent.serviceForShelter(shelterName, serviceName));
+  }
+
+  /**
+   * Identify that a service is available at a given shelter or camp, without looking up either by
+   * name.
+   *
+   * @param shelter Handle of the shelter
+   * @param service Handle of the service
+   * @return true if the mapping was successful; false if either handle names no row any more
+   * @throws SQLException if a database access error occurs
+   * @throws IOException if an I/O error occurs
+   * @throws ClassNotFoundException if the class is not found
+   */
+  @Override
+  public boolean serviceForShelter(ShelterHandle shelter, ServiceHandle service)
+      throws SQLException, IOException, ClassNotFoundException {
+    if (shelter == null || service == null) {
+      return false;
+    }
+    /* A handle may outlive its row; a missing one is refused instead of failing the foreign key */
+    if (!handlesExist(shelter.getId(), service.getId())) {
+      return false;
+    }
+
+    insertServiceForShelter(service.getId(), shelter.getId());
+    return journal(true, MutationEvent.serviceForShelter(shelter.getName(), service.getName()));
+  }
+
+  /**
+   * Checks that the rows of a shelter and a service handle still exist, in one query.
+   *
+   * @param shelterID The shelter id
+   * @param serviceID The service id
+   * @return true if both exist
+   * @throws SQLException if a database access error occurs
+   * @throws IOException if an I/O error occurs
+   * @throws ClassNotFoundException if the class is not found
+   */
+  private boolean handlesExist(int shelterID, int serviceID)
+      throws SQLException, IOException, ClassNotFoundException {
+    try {
+      connection = DatabaseManager.getConnection();
+
+      PreparedStatement handlesExist =
+          connection.prepareStatement(
+              "select exists(select 1 from shelter where shelter_id = ?) and exists(select 1 from service where service_id = ?) as handles_exist;");
+      handlesExist.setInt(1, shelterID);
+      handlesExist.setInt(2, serviceID);
+      ResultSet handlesExistResultSet = handlesExist.executeQuery();
+      return handlesExistResultSet.next() && handlesExistResultSet.getBoolean("handles_exist");
+    } catch (SQLException sqlException) {
+      throw new SQLException(sqlException.getMessage());
+    } catch (IOException ioException) {
+      throw new IOException(ioException.getMessage());
+    } catch (ClassNotFoundException classNotFoundException) {
+      throw new ClassNotFoundException(classNotFoundException.getMessage());
+    } finally {
+      /* Ensure the connection is closed */
+      DatabaseManager.closeConnection(connection);
+    }
+  }
+
+  /**
+   * Maps a service to a shelter by id.
+   *
+   * @param serviceID The service id
+   * @param shelterID The shelter id
+   * @throws SQLException if a database access error occurs
+   * @throws IOException if an I/O error occurs
+   * @throws ClassNotFoundException if the class is not found
+   */
+  private void insertServiceForShelter(int serviceID, int shelterID)
+      throws SQLException, IOException, ClassNotFoundException {
     try {
       connection = DatabaseManager.getConnection();
 
@@ -118,8 +335,6 @@ public class HomelessSupport implements DataGenerator, DataManipulator {
       /* Ensure the connection is closed */
       DatabaseManager.closeConnection(connection);
     }
-
-    return true;
   }
 
   /**
@@ -136,19 +351,77 @@ public class HomelessSupport implements DataGenerator, DataManipulator {
   @Override
   public boolean declareShelterOccupancy(String name, String date, int occupancy)
       throws SQLException, IOException, ClassNotFoundException {
+    return declareShelterOccupancy(name, helperMethod.parseDate(date), occupancy);
+  }
+
+  /**
+   * Declare shelter occupancy on a specific date.
+   *
+   * @param name Name of the shelter or camp
+   * @param date Date of record
+   * @param occupancy Occupancy of the shelter or camp
+   * @return true if the entry was successful
+   * @throws SQLException if a database access error occurs
+   * @throws IOException if an I/O error occurs
+   * @throws ClassNotFoundException if the class is not found
+   */
+  @Override
+  public boolean declareShelterOccupancy(String name, LocalDate date, int occupancy)
+      throws SQLException, IOException, ClassNotFoundException {
     boolean isInputNotValidated =
-        name == null
-            || name.isEmpty()
-            || date == null
-            || date.isEmpty()
-            || helperMethod.isDateInvalid(date)
-            || occupancy < 0;
+        name == null || name.isEmpty() || date == null || occupancy < 0;
     if (isInputNotValidated) {
       return false;
     }
 
+    /*
+     * In write-behind mode the declaration is committed with the next group, which also journals
+     * it; the feed hears of it once it is accepted
+     */
+    OccupancyWriteBehind occupancyWriteBehind = OccupancyWriteBehind.getInstance();
+    if (occupancyWriteBehind.isStarted()) {
+      if (!occupancyWriteBehind.declare(name, date, occupancy)) {
+        return false;
+      }
+      OccupancyFeed.getInstance()
+          .publish(MutationEvent.declareShelterOccupancy(name, date, occupancy));
+      return true;
+    }
+
     OccupancyRecord occupancyRecord = new OccupancyRecord(name, date, occupancy);
-    return occupancyRecord.declareShelterOccupancy();
+    return journal(
+        occupancyRecord.declareShelterOccupancy(),
+        MutationEvent.declareShelterOccupancy(name, date, occupancy));
+  }
+
+  /**
+   * Declare shelter occupancy on a specific date, without looking up the shelter by name.
+   *
+   * @param shelter Handle of the shelter or camp
+   * @param date Date of record
+   * @param occupancy Occupancy of the shelter or camp
+   * @return true if the entry was successful
+   * @throws SQLException if a database access error occurs
+   * @throws IOException if an I/O error occurs
+   * @throws ClassNotFoundException if the class is not found
+   */
+  @Override
+  public boolean declareShelterOccupancy(ShelterHandle shelter, LocalDate date, int occupancy)
+      throws SQLException, IOException, ClassNotFoundException {
+    boolean isInputNotValidated = shelter == null || date == null || occupancy < 0;
+    if (isInputNotValidated) {
+      return false;
+    }
+
+    /* The write-behind buffer keeps its own cache of shelter ids and capacities */
+    if (OccupancyWriteBehind.getInstance().isStarted()) {
+      return declareShelterOccupancy(shelter.getName(), date, occupancy);
+    }
+
+    OccupancyRecord occupancyRecord = new OccupancyRecord(shelter, date, occupancy);
+    return journal(
+        occupancyRecord.declareShelterOccupancy(),
+        MutationEvent.declareShelterOccupancy(shelter.getName(), date, occupancy));
   }
 
   /**
@@ -166,6 +439,25 @@ public class HomelessSupport implements DataGenerator, DataManipulator {
   @Override
   public boolean addStaff(String name, Set<String> services, boolean volunteer, String manager)
       throws SQLException, IOException, ClassNotFoundException {
+    return addStaffWithHandle(name, services, volunteer, manager) != null;
+  }
+
+  /**
+   * Declare that a new staff member has joined the organization and return a handle to them.
+   *
+   * @param name Name of the staff member to be added
+   * @param services Services which that staff member can inspect
+   * @param volunteer True if the staff member is a volunteer, false if paid
+   * @param manager Name of the manager
+   * @return The handle of the staff member, or null if they could not be added
+   * @throws SQLException if a database access error occurs
+   * @throws IOException if an I/O error occurs
+   * @throws ClassNotFoundException if the class is not found
+   */
+  @Override
+  public StaffHandle addStaffWithHandle(
+      String name, Set<String> services, boolean volunteer, String manager)
+      throws SQLException, IOException, ClassNotFoundException {
     boolean isInputNotValidated =
         name == null
             || name.isEmpty()
@@ -175,10 +467,13 @@ public class HomelessSupport implements DataGenerator, DataManipulator {
             || manager == null
             || manager.isEmpty();
     if (isInputNotValidated) {
-      return false;
+      return null;
     }
     Staff staff = new Staff(name, services, volunteer, manager);
-    return staff.addStaff();
+    if (!journal(staff.addStaff(), MutationEvent.addStaff(name, services, volunteer, manager))) {
+      return null;
+    }
+    return new StaffHandle(staff.getStaffID(), name);
   }
 
   /**
@@ -197,6 +492,25 @@ public class HomelessSupport implements DataGenerator, DataManipulator {
   public boolean defineDonor(
       String name, Point centralOffice, String contact, Set<String> fundingPrograms)
       throws SQLException, IOException, ClassNotFoundException {
+    return defineDonorWithHandle(name, centralOffice, contact, fundingPrograms) != null;
+  }
+
+  /**
+   * Identify a potential donor and return a handle to them with the ids of their funding programs.
+   *
+   * @param name Name of the donor
+   * @param centralOffice Donor's location
+   * @param contact Donor's contact info
+   * @param fundingPrograms The grant programs which the donor contributes to
+   * @return The handle of the donor, or null if the donor could not be added
+   * @throws SQLException if a database access error occurs
+   * @throws IOException if an I/O error occurs
+   * @throws ClassNotFoundException if the class is not found
+   */
+  @Override
+  public DonorHandle defineDonorWithHandle(
+      String name, Point centralOffice, String contact, Set<String> fundingPrograms)
+      throws SQLException, IOException, ClassNotFoundException {
     boolean isInputNotValidated =
         name == null
             || name.isEmpty()
@@ -207,11 +521,16 @@ public class HomelessSupport implements DataGenerator, DataManipulator {
             || fundingPrograms.isEmpty()
             || helperMethod.isSetEmpty(fundingPrograms);
     if (isInputNotValidated) {
-      return false;
+      return null;
     }
     Donor donor = new Donor(name, centralOffice, contact, fundingPrograms);
-
-    return donor.defineDonor();
+    if (!journal(
+        donor.defineDonor(),
+        MutationEvent.defineDonor(name, centralOffice, contact, fundingPrograms))) {
+      return null;
+    }
+    /* The IDs come from the inserts, not from a second lookup by name */
+    return new DonorHandle(donor.getDonorID(), name, donor.getFundingProgramIDs());
   }
 
   /**
@@ -230,21 +549,73 @@ public class HomelessSupport implements DataGenerator, DataManipulator {
   @Override
   public boolean receiveDonation(String donor, String fundingProgram, String date, int donation)
       throws SQLException, IOException, ClassNotFoundException {
+    return receiveDonation(donor, fundingProgram, helperMethod.parseDate(date), donation);
+  }
+
+  /**
+   * Record that a donor has provided funding under a given program on a particular date to the
+   * organization.
+   *
+   * @param donor Name of the donor
+   * @param fundingProgram The funding program through which the donation is to be made
+   * @param date Date of donation
+   * @param donation Donation amount
+   * @return true if the donation was successful
+   * @throws SQLException if a database access error occurs
+   * @throws IOException if an I/O error occurs
+   * @throws ClassNotFoundException if the class is not found
+   */
+  @Override
+  public boolean receiveDonation(String donor, String fundingProgram, LocalDate date, int donation)
+      throws SQLException, IOException, ClassNotFoundException {
     boolean isInputNotValidated =
         donor == null
             || donor.isEmpty()
             || fundingProgram == null
             || fundingProgram.isEmpty()
             || date == null
-            || date.isEmpty()
-            || helperMethod.isDateInvalid(date)
             || donation <= 0;
     if (isInputNotValidated) {
       return false;
     }
     DonationRecord donationRecord = new DonationRecord(donor, fundingProgram, date, donation);
 
-    return donationRecord.receiveDonation();
+    return journal(
+        donationRecord.receiveDonation(),
+        MutationEvent.receiveDonation(donor, fundingProgram, date, donation));
+  }
+
+  /**
+   * Record a donation under one of a donor's funding programs, without looking up the donor or the
+   * program by name.
+   *
+   * @param donor Handle of the donor
+   * @param fundingProgram The funding program through which the donation is to be made
+   * @param date Date of donation
+   * @param donation Donation amount
+   * @return true if the donation was successful
+   * @throws SQLException if a database access error occurs
+   * @throws IOException if an I/O error occurs
+   * @throws ClassNotFoundException if the class is not found
+   */
+  @Override
+  public boolean receiveDonation(
+      DonorHandle donor, String fundingProgram, LocalDate date, int donation)
+      throws SQLException, IOException, ClassNotFoundException {
+    boolean isInputNotValidated =
+        donor == null
+            || fundingProgram == null
+            || fundingProgram.isEmpty()
+            || date == null
+            || donation <= 0;
+    if (isInputNotValidated) {
+      return false;
+    }
+    DonationRecord donationRecord = new DonationRecord(donor, fundingProgram, date, donation);
+
+    return journal(
+        donationRecord.receiveDonation(),
+        MutationEvent.receiveDonation(donor.getName(), fundingProgram, date, donation));
   }
 
   /**
@@ -262,18 +633,57 @@ public class HomelessSupport implements DataGenerator, DataManipulator {
   @Override
   public boolean disburseFunds(String shelterReceiving, String date, int funds)
       throws SQLException, IOException, ClassNotFoundException {
+    return disburseFunds(shelterReceiving, helperMethod.parseDate(date), funds);
+  }
+
+  /**
+   * Record that we have used an amount of funds on a given date in support of the operations of one
+   * of the shelters or camps.
+   *
+   * @param shelterReceiving Shelter name
+   * @param date Date of disbursing
+   * @param funds Total funds disbursed
+   * @return true if the disbursing was successful
+   * @throws SQLException if a database access error occurs
+   * @throws IOException if an I/O error occurs
+   * @throws ClassNotFoundException if the class is not found
+   */
+  @Override
+  public boolean disburseFunds(String shelterReceiving, LocalDate date, int funds)
+      throws SQLException, IOException, ClassNotFoundException {
     boolean isInputNotValidated =
-        shelterReceiving == null
-            || shelterReceiving.isEmpty()
-            || date == null
-            || date.isEmpty()
-            || helperMethod.isDateInvalid(date)
-            || funds <= 0;
+        shelterReceiving == null || shelterReceiving.isEmpty() || date == null || funds <= 0;
     if (isInputNotValidated) {
       return false;
     }
     FundsDisbursement fundsDisbursement = new FundsDisbursement(shelterReceiving, date, funds);
-    return fundsDisbursement.disburseFunds();
+    return journal(
+        fundsDisbursement.disburseFunds(),
+        MutationEvent.disburseFunds(shelterReceiving, date, funds));
+  }
+
+  /**
+   * Record funds used on a given date by a shelter or camp, without looking up the shelter by name.
+   *
+   * @param shelter Handle of the shelter
+   * @param date Date of disbursing
+   * @param funds Total funds disbursed
+   * @return true if the disbursing was successful
+   * @throws SQLException if a database access error occurs
+   * @throws IOException if an I/O error occurs
+   * @throws ClassNotFoundException if the class is not found
+   */
+  @Override
+  public boolean disburseFunds(ShelterHandle shelter, LocalDate date, int funds)
+      throws SQLException, IOException, ClassNotFoundException {
+    boolean isInputNotValidated = shelter == null || date == null || funds <= 0;
+    if (isInputNotValidated) {
+      return false;
+    }
+    FundsDisbursement fundsDisbursement = new FundsDisbursement(shelter, date, funds);
+    return journal(
+        fundsDisbursement.disburseFunds(),
+        MutationEvent.disburseFunds(shelter.getName(), date, funds));
   }
 
   /**
@@ -298,6 +708,106 @@ public class HomelessSupport implements DataGenerator, DataManipulator {
     return shelter.shelterAtCapacity(threshold);
   }
 
+  /**
+   * Report, for each of several thresholds, the shelters or camps whose most recent occupancy
+   * report has them operating at or above that percentage of their capacity. The latest occupancy
+   * is read once for all thresholds.
+   *
+   * @param thresholds Values to compare
+   * @return Each threshold mapped to the set of shelters at or above it
+   * @throws SQLException if a database access error occurs
+   * @throws IOException if an I/O error occurs
+   * @throws ClassNotFoundException if the class is not found
+   */
+  @Override
+  public Map<Integer, Set<String>> shelterAtCapacity(List<Integer> thresholds)
+      throws SQLException, IOException, ClassNotFoundException {
+    boolean isInputNotValidated =
+        thresholds == null
+            || thresholds.isEmpty()
+            || thresholds.stream().anyMatch(t -> t == null || t < 0 || t > 100);
+    if (isInputNotValidated) {
+      return null;
+    }
+
+    Shelter shelter = new Shelter();
+    return shelter.shelterAtCapacity(thresholds);
+  }
+
+  /**
+   * Report the shelters or camps grouped into utilization bands by their most recent occupancy
+   * report, in one pass.
+   *
+   * @param bandWidth Width of each band in percentage points
+   * @return The lower bound of each band mapped to the shelters in it
+   * @throws SQLException if a database access error occurs
+   * @throws IOException if an I/O error occurs
+   * @throws ClassNotFoundException if the class is not found
+   */
+  @Override
+  public Map<Integer, Set<String>> capacityBands(int bandWidth)
+      throws SQLException, IOException, ClassNotFoundException {
+    boolean isInputNotValidated = bandWidth <= 0 || bandWidth > 100;
+    if (isInputNotValidated) {
+      return null;
+    }
+
+    Shelter shelter = new Shelter();
+    return shelter.capacityBands(bandWidth);
+  }
+
+  /**
+   * Report the shelters or camps whose occupancy moved the most over the last 7 or 30 days, from
+   * the live ranking kept by the volatility monitor rather than from the records.
+   *
+   * @param windowDays Length of the window ending on the latest declared date, 7 or 30
+   * @param count Number of shelters to report
+   * @return The most volatile shelters with their occupancy variance as a percentage of capacity,
+   *     most volatile first, an empty list if the window is not 7 or 30 days or the count is not
+   *     positive, or null if the monitor is not running
+   * @throws SQLException if a database access error occurs
+   * @throws IOException if an I/O error occurs
+   * @throws ClassNotFoundException if the class is not found
+   */
+  @Override
+  public List<Pair<String, Double>> mostVolatileShelters(int windowDays, int count)
+      throws SQLException, IOException, ClassNotFoundException {
+    boolean isInputNotValidated = !VolatilityMonitor.isMonitoredWindow(windowDays) || count <= 0;
+    if (isInputNotValidated) {
+      return new ArrayList<>();
+    }
+    VolatilityMonitor volatilityMonitor = VolatilityMonitor.getInstance();
+    if (!volatilityMonitor.isStarted()) {
+      return null;
+    }
+    return volatilityMonitor.mostVolatile(windowDays, count);
+  }
+
+  /**
+   * Report the shelters or camps nearest to a location that have a free bed right now, from the
+   * spatial index kept by the shelter locator rather than from the records.
+   *
+   * @param location Where the beds are needed
+   * @param count Number of shelters to report
+   * @param services Services the shelters must offer, or null or an empty set for any
+   * @return The nearest shelters with their free beds, nearest first, or null if the locator is
+   *     not running
+   * @throws SQLException if a database access error occurs
+   * @throws IOException if an I/O error occurs
+   * @throws ClassNotFoundException if the class is not found
+   */
+  @Override
+  public List<Pair<String, Integer>> nearestAvailableShelters(
+      Point location, int count, Set<String> services)
+      throws SQLException, IOException, ClassNotFoundException {
+    ShelterLocator shelterLocator = ShelterLocator.getInstance();
+    boolean isInputNotValidated = location == null || count <= 0 || !shelterLocator.isStarted();
+    if (isInputNotValidated) {
+      return null;
+    }
+    return shelterLocator.nearestAvailable(location, count, services == null ? Set.of() : services);
+  }
+
   /**
    * Report the names of all shelters or camps whose occupancy reports in the given date range.
    *
@@ -312,20 +822,181 @@ public class HomelessSupport implements DataGenerator, DataManipulator {
   @Override
   public Set<String> occupancyVariance(String startDate, String endDate, int threshold)
       throws SQLException, IOException, ClassNotFoundException {
+    return occupancyVariance(
+        helperMethod.parseDate(startDate), helperMethod.parseDate(endDate), threshold);
+  }
+
+  /**
+   * Report the names of all shelters or camps whose occupancy reports in the given date range.
+   *
+   * @param startDate Start date in the range
+   * @param endDate End date in the range
+   * @param threshold Threshold value to check
+   * @return Set of shelters which have occupancy variance at or more than threshold
+   * @throws SQLException if a database access error occurs
+   * @throws IOException if an I/O error occurs
+   * @throws ClassNotFoundException if the class is not found
+   */
+  @Override
+  public Set<String> occupancyVariance(LocalDate startDate, LocalDate endDate, int threshold)
+      throws SQLException, IOException, ClassNotFoundException {
+    boolean isInputNotValidated =
+        startDate == null || endDate == null || threshold < 0 || threshold > 100;
+    if (isInputNotValidated) {
+      return null;
+    }
+    ReportCache reportCache = ReportCache.getInstance();
+    if (!reportCache.covers(endDate)) {
+      Shelter shelter = new Shelter();
+      return shelter.occupancyVariance(startDate, endDate, threshold);
+    }
+    String key = "occupancyVariance|" + startDate + "|" + endDate + "|" + threshold;
+    Set<String> cached = reportCache.getNames(key);
+    if (cached != null) {
+      return cached;
+    }
+    long readGeneration = reportCache.getGeneration();
+    Shelter shelter = new Shelter();
+    Set<String> result = shelter.occupancyVariance(startDate, endDate, threshold);
+    if (result != null) {
+      reportCache.putNames(
+          key,
+          startDate,
+          endDate,
+          EnumSet.of(ReportCache.Source.OCCUPANCY, ReportCache.Source.SHELTERS),
+          readGeneration,
+          result);
+    }
+    return result;
+  }
+
+  /**
+   * Report, for each of many date windows, the shelters or camps whose occupancy variance in that
+   * window is at or above the threshold. All windows are answered from one pass over the records.
+   *
+   * @param windows Start and end date of each window, both included
+   * @param threshold Threshold value to check
+   * @return For each window, in the given order, the set of shelters meeting the threshold
+   * @throws SQLException if a database access error occurs
+   * @throws IOException if an I/O error occurs
+   * @throws ClassNotFoundException if the class is not found
+   */
+  @Override
+  public List<Set<String>> occupancyVariance(
+      List<Pair<LocalDate, LocalDate>> windows, int threshold)
+      throws SQLException, IOException, ClassNotFoundException {
+    boolean isInputNotValidated =
+        windows == null
+            || windows.isEmpty()
+            || windows.stream()
+                .anyMatch(
+                    window ->
+                        window == null || window.getKey() == null || window.getValue() == null)
+            || threshold < 0
+            || threshold > 100;
+    if (isInputNotValidated) {
+      return null;
+    }
+    Shelter shelter = new Shelter();
+    return shelter.occupancyVariance(windows, threshold);
+  }
+
+  /**
+   * Report the shelters or camps whose occupancy variance meets the threshold in each window of a
+   * tumbling or sliding window specification. Windows of windowDays days start at startDate and
+   * every stepDays days after it, as long as they end by endDate; a step equal to the window size
+   * gives tumbling windows.
+   *
+   * @param startDate Start date of the first window
+   * @param endDate Last date any window may cover
+   * @param windowDays Length of each window in days
+   * @param stepDays Days between the starts of consecutive windows
+   * @param threshold Threshold value to check
+   * @return The start date of each window mapped to the shelters meeting the threshold in it
+   * @throws SQLException if a database access error occurs
+   * @throws IOException if an I/O error occurs
+   * @throws ClassNotFoundException if the class is not found
+   */
+  @Override
+  public Map<LocalDate, Set<String>> occupancyVariance(
+      LocalDate startDate, LocalDate endDate, int windowDays, int stepDays, int threshold)
+      throws SQLException, IOException, ClassNotFoundException {
     boolean isInputNotValidated =
         startDate == null
-            || startDate.isEmpty()
-            || helperMethod.isDateInvalid(startDate)
             || endDate == null
-            || endDate.isEmpty()
-            || helperMethod.isDateInvalid(endDate)
+            || windowDays <= 0
+            || stepDays <= 0
             || threshold < 0
             || threshold > 100;
     if (isInputNotValidated) {
       return null;
     }
+
+    List<Pair<LocalDate, LocalDate>> windows = new ArrayList<>();
+    for (LocalDate windowStart = startDate;
+        !windowStart.plusDays(windowDays - 1).isAfter(endDate);
+        windowStart = windowStart.plusDays(stepDays)) {
+      windows.add(new Pair<>(windowStart, windowStart.plusDays(windowDays - 1)));
+    }
+
+    Map<LocalDate, Set<String>> result = new TreeMap<>();
+    if (windows.isEmpty()) {
+      return result;
+    }
     Shelter shelter = new Shelter();
-    return shelter.occupancyVariance(startDate, endDate, threshold);
+    List<Set<String>> windowResults = shelter.occupancyVariance(windows, threshold);
+    for (int window = 0; window < windows.size(); window++) {
+      result.put(windows.get(window).getKey(), windowResults.get(window));
+    }
+    return result;
+  }
+
+  /**
+   * Report a percentile of the occupancy of each shelter or camp in the given date range, such as
+   * the median or the 95th percentile.
+   *
+   * @param startDate Start date in the range
+   * @param endDate End date in the range
+   * @param percentile Percentile to report, from 0 to 100
+   * @return Name of each shelter with records in the range mapped to its occupancy at the
+   *     percentile
+   * @throws SQLException if a database access error occurs
+   * @throws IOException if an I/O error occurs
+   * @throws ClassNotFoundException if the class is not found
+   */
+  @Override
+  public Map<String, Integer> occupancyPercentile(
+      String startDate, String endDate, int percentile)
+      throws SQLException, IOException, ClassNotFoundException {
+    return occupancyPercentile(
+        helperMethod.parseDate(startDate), helperMethod.parseDate(endDate), percentile);
+  }
+
+  /**
+   * Report a percentile of the occupancy of each shelter or camp in the given date range, such as
+   * the median or the 95th percentile. Whole months are answered from the monthly occupancy
+   * sketches, so the result is approximate once many declarations are merged.
+   *
+   * @param startDate Start date in the range
+   * @param endDate End date in the range
+   * @param percentile Percentile to report, from 0 to 100
+   * @return Name of each shelter with records in the range mapped to its occupancy at the
+   *     percentile
+   * @throws SQLException if a database access error occurs
+   * @throws IOException if an I/O error occurs
+   * @throws ClassNotFoundException if the class is not found
+   */
+  @Override
+  public Map<String, Integer> occupancyPercentile(
+      LocalDate startDate, LocalDate endDate, int percentile)
+      throws SQLException, IOException, ClassNotFoundException {
+    boolean isInputNotValidated =
+        startDate == null || endDate == null || percentile < 0 || percentile > 100;
+    if (isInputNotValidated) {
+      return null;
+    }
+    Shelter shelter = new Shelter();
+    return shelter.occupancyPercentile(startDate, endDate, percentile);
   }
 
   /**
@@ -342,17 +1013,83 @@ public class HomelessSupport implements DataGenerator, DataManipulator {
   @Override
   public void donorReport(String startDate, String endDate, PrintWriter outstream)
       throws SQLException, IOException, ClassNotFoundException {
+    donorReport(helperMethod.parseDate(startDate), helperMethod.parseDate(endDate), outstream);
+  }
+
+  /**
+   * Send a report about the activity of each donor in the given time range (including both
+   * endpoints of the time range). The report is sent to the outstream parameter.
+   *
+   * @param startDate Start date in the range
+   * @param endDate End date in the range
+   * @param outstream The outstream file for the output
+   * @throws SQLException if a database access error occurs
+   * @throws IOException if an I/O error occurs
+   * @throws ClassNotFoundException if the class is not found
+   */
+  @Override
+  public void donorReport(LocalDate startDate, LocalDate endDate, PrintWriter outstream)
+      throws SQLException, IOException, ClassNotFoundException {
+    boolean isInputNotValidated = startDate == null || endDate == null || outstream == null;
+    if (isInputNotValidated) {
+      return;
+    }
+    ReportCache reportCache = ReportCache.getInstance();
+    if (!reportCache.covers(endDate)) {
+      Donor donor = new Donor();
+      donor.donorReport(startDate, endDate, outstream);
+      return;
+    }
+    String key = "donorReport|" + startDate + "|" + endDate;
+    String report = reportCache.getText(key);
+    if (report == null) {
+      long readGeneration = reportCache.getGeneration();
+      StringWriter rendered = new StringWriter();
+      PrintWriter renderedWriter = new PrintWriter(rendered);
+      Donor donor = new Donor();
+      donor.donorReport(startDate, endDate, renderedWriter);
+      renderedWriter.flush();
+      report = rendered.toString();
+      reportCache.putText(
+          key,
+          startDate,
+          endDate,
+          EnumSet.of(ReportCache.Source.DONATIONS, ReportCache.Source.DONORS),
+          readGeneration,
+          report);
+    }
+    outstream.print(report);
+  }
+
+  /**
+   * Send the donor report for several time ranges at once, reading the donations of the whole span
+   * a single time. Each range is written as one section in the format of the single-range report,
+   * either to its own outstream or, with a single outstream, one after the other.
+   *
+   * @param periods Start and end date of each range, both included
+   * @param outstreams One outstream per range, or a single outstream for all of them
+   * @throws SQLException if a database access error occurs
+   * @throws IOException if an I/O error occurs
+   * @throws ClassNotFoundException if the class is not found
+   */
+  @Override
+  public void donorReport(List<Pair<LocalDate, LocalDate>> periods, List<PrintWriter> outstreams)
+      throws SQLException, IOException, ClassNotFoundException {
     boolean isInputNotValidated =
-        startDate == null
-            || startDate.isEmpty()
-            || endDate == null
-            || endDate.isEmpty()
-            || outstream == null;
+        periods == null
+            || periods.isEmpty()
+            || periods.stream()
+                .anyMatch(
+                    period ->
+                        period == null || period.getKey() == null || period.getValue() == null)
+            || outstreams == null
+            || (outstreams.size() != 1 && outstreams.size() != periods.size())
+            || outstreams.stream().anyMatch(outstream -> outstream == null);
     if (isInputNotValidated) {
       return;
     }
     Donor donor = new Donor();
-    donor.donorReport(startDate, endDate, outstream);
+    donor.donorReport(periods, outstreams);
   }
 
   /**
@@ -373,18 +1110,57 @@ public class HomelessSupport implements DataGenerator, DataManipulator {
   public Set<String> underfundedShelter(
       String startDate, String endDate, int distance, int threshold)
       throws SQLException, IOException, ClassNotFoundException {
+    return underfundedShelter(
+        helperMethod.parseDate(startDate), helperMethod.parseDate(endDate), distance, threshold);
+  }
+
+  /**
+   * Report the names of the "threshold" shelters or camps who have the lowest per-occupant funding
+   * in the given reporting period (including both start and end dates). These are the shelters or
+   * camps that need more supports over the given reporting period.
+   *
+   * @param startDate Start date in the range
+   * @param endDate End date in the range
+   * @param distance The distance to find the shelters
+   * @param threshold Threshold value
+   * @return Set of shelters which are underfunded
+   * @throws SQLException if a database access error occurs
+   * @throws IOException if an I/O error occurs
+   * @throws ClassNotFoundException if the class is not found
+   */
+  @Override
+  public Set<String> underfundedShelter(
+      LocalDate startDate, LocalDate endDate, int distance, int threshold)
+      throws SQLException, IOException, ClassNotFoundException {
     boolean isInputNotValidated =
-        startDate == null
-            || startDate.isEmpty()
-            || endDate == null
-            || endDate.isEmpty()
-            || distance < 0
-            || threshold < 0;
+        startDate == null || endDate == null || distance < 0 || threshold < 0;
     if (isInputNotValidated) {
       return null;
     }
+    ReportCache reportCache = ReportCache.getInstance();
+    if (!reportCache.covers(endDate)) {
+      Shelter shelter = new Shelter();
+      return shelter.underfundedShelter(startDate, endDate, distance, threshold);
+    }
+    String key =
+        "underfundedShelter|" + startDate + "|" + endDate + "|" + distance + "|" + threshold;
+    Set<String> cached = reportCache.getNames(key);
+    if (cached != null) {
+      return cached;
+    }
+    long readGeneration = reportCache.getGeneration();
     Shelter shelter = new Shelter();
-    return shelter.underfundedShelter(startDate, endDate, distance, threshold);
+    Set<String> result = shelter.underfundedShelter(startDate, endDate, distance, threshold);
+    if (result != null) {
+      reportCache.putNames(
+          key,
+          startDate,
+          endDate,
+          EnumSet.allOf(ReportCache.Source.class),
+          readGeneration,
+          result);
+    }
+    return result;
   }
 
   /**
@@ -408,4 +1184,19 @@ public class HomelessSupport implements DataGenerator, DataManipulator {
     Staff staff = new Staff();
     return staff.inspectionSchedule(scheduleDays, inspectLimit);
   }
+
+  /**
+   * Appends a mutation to the journal and publishes it to the occupancy feed if it succeeded.
+   *
+   * @param succeeded The result of the mutation.
+   * @param event The mutation as a journal event.
+   * @return The result of the mutation.
+   */
+  private boolean journal(boolean succeeded, MutationEvent event) {
+    if (succeeded) {
+      MutationJournal.getInstance().append(event);
+      OccupancyFeed.getInstance().publish(event);
+    }
+    return succeeded;
+  }
 }
@@ -0,0 +1,174 @@
+import java.lang.reflect.InvocationHandler;
+import java.lang.reflect.InvocationTargetException;
+import java.lang.reflect.Method;
+import java.lang.reflect.Proxy;
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.Statement;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+
+/**
+ * InstrumentedConnection wraps a JDBC connection in a dynamic proxy so that every statement
+ * executed through it is reported as a {@link SqlExecutionEvent} and checked against the {@link
+ * SlowQueryLog}, without changing any of the classes that prepare and run the statements.
+ */
+public class InstrumentedConnection implements InvocationHandler {
+  private final Connection connection;
+
+  /* Query events stay open until their result set is exhausted, or until the connection closes */
+  private final List<SqlExecutionEvent> openEvents = new ArrayList<>();
+
+  private InstrumentedConnection(Connection connection) {
+    this.connection = connection;
+  }
+
+  /**
+   * Wraps the given connection so that the statements it creates are instrumented.
+   *
+   * @param connection The connection obtained from the driver.
+   * @return A connection proxy delegating to the given connection.
+   */
+  public static Connection wrap(Connection connection) {
+    return (Connection)
+        Proxy.newProxyInstance(
+            InstrumentedConnection.class.getClassLoader(),
+            new Class<?>[] {Connection.class},
+            new InstrumentedConnection(connection));
+  }
+
+  @Override
+  public Object invoke(Object proxy, Method method, Object[] args) throws Throwable {
+    switch (method.getName()) {
+      case "prepareStatement":
+        return wrapStatement(
+            PreparedStatement.class, (Statement) call(connection, method, args), (String) args[0]);
+      case "createStatement":
+        return wrapStatement(Statement.class, (Statement) call(connection, method, args), null);
+      case "close":
+        /* Result sets die with the connection, so whatever was read from them is final now */
+        commitOpenEvents();
+        return call(connection, method, args);
+      default:
+        return call(connection, method, args);
+    }
+  }
+
+  /**
+   * Invokes a method on the wrapped JDBC object, unwrapping the reflection exception so that
+   * callers see the original SQLException.
+   */
+  private static Object call(Object target, Method method, Object[] args) throws Throwable {
+    try {
+      return method.invoke(target, args);
+    } catch (InvocationTargetException invocationTargetException) {
+      throw invocationTargetException.getCause();
+    }
+  }
+
+  private Object wrapStatement(Class<?> type, Statement statement, String sql) {
+    return Proxy.newProxyInstance(
+        InstrumentedConnection.class.getClassLoader(),
+        new Class<?>[] {type},
+        new StatementHandler(statement, sql));
+  }
+
+  private void commitOpenEvents() {
+    for (SqlExecutionEvent event : openEvents) {
+      event.commit();
+    }
+    openEvents.clear();
+  }
+
+  /** Intercepts the execute methods of a statement, times them and keeps the bound parameters. */
+  private class StatementHandler implements InvocationHandler {
+    private final Statement statement;
+    private final String sql;
+    private final Map<Integer, Object> parameters = new TreeMap<>();
+
+    StatementHandler(Statement statement, String sql) {
+      this.statement = statement;
+      this.sql = sql;
+    }
+
+    @Override
+    public Object invoke(Object proxy, Method method, Object[] args) throws Throwable {
+      String name = method.getName();
+      if (name.equals("setNull") && args != null && args[0] instanceof Integer) {
+        /* The second argument is the SQL type code, not the value */
+        parameters.put((Integer) args[0], null);
+      } else if (name.startsWith("set")
+          && args != null
+          && args.length >= 2
+          && args[0] instanceof Integer) {
+        parameters.put((Integer) args[0], args[1]);
+      } else if (name.equals("clearParameters")) {
+        parameters.clear();
+      }
+      if (!name.startsWith("execute")) {
+        return call(statement, method, args);
+      }
+
+      SqlExecutionEvent event = new SqlExecutionEvent();
+      /* Plain statements carry their SQL as the first argument */
+      event.sql = sql != null ? sql : (args != null && args.length > 0 ? (String) args[0] : null);
+      event.begin();
+      long startNanos = System.nanoTime();
+      Object result = call(statement, method, args);
+      SlowQueryLog.record(event.sql, parameters, System.nanoTime() - startNanos);
+
+      if (result instanceof ResultSet) {
+        openEvents.add(event);
+        return Proxy.newProxyInstance(
+            InstrumentedConnection.class.getClassLoader(),
+            new Class<?>[] {ResultSet.class},
+            new ResultSetHandler((ResultSet) result, event));
+      }
+      if (result instanceof Integer || result instanceof Long) {
+        event.rowCount = ((Number) result).longValue();
+      } else if (result instanceof int[]) {
+        for (int count : (int[]) result) {
+          event.rowCount += Math.max(count, 0);
+        }
+      }
+      event.commit();
+      return result;
+    }
+  }
+
+  /** Counts the rows read from a result set and ends the query event once it is exhausted. */
+  private class ResultSetHandler implements InvocationHandler {
+    private final ResultSet resultSet;
+    private final SqlExecutionEvent event;
+
+    ResultSetHandler(ResultSet resultSet, SqlExecutionEvent event) {
+      this.resultSet = resultSet;
+      this.event = event;
+    }
+
+    @Override
+    public Object invoke(Object proxy, Method method, Object[] args) throws Throwable {
+      Object result = call(resultSet, method, args);
+      String name = method.getName();
+      if (name.equals("next")) {
+        if ((Boolean) result) {
+          event.rowCount++;
+        } else {
+          finish();
+        }
+      } else if (name.equals("close")) {
+        finish();
+      }
+      return result;
+    }
+
+    private void finish() {
+      if (openEvents.remove(event)) {
+        event.commit();
+      }
+    }
+  }
+}
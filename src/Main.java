@@ -1,7 +1,9 @@
 import java.io.FileWriter;
 import java.io.IOException;
 import java.io.PrintWriter;
+import java.nio.file.Paths;
 import java.sql.SQLException;
+import java.util.Locale;
 import java.util.Set;
 
 public class Main {
@@ -10,6 +12,38 @@ public class Main {
 
     try (PrintWriter printWriter = new PrintWriter(new FileWriter("output.txt"))) {
 
+      /* java Main import <donation|disbursement|occupancy> <file.csv> <rejects.csv> */
+      if (args.length == 4 && args[0].equals("import")) {
+        BulkImporter.ImportKind importKind;
+        try {
+          importKind = BulkImporter.ImportKind.valueOf(args[1].toUpperCase(Locale.ROOT));
+        } catch (IllegalArgumentException illegalArgumentException) {
+          System.out.println(
+              "Usage: java Main import <donation|disbursement|occupancy> <file.csv> <rejects.csv>");
+          return;
+        }
+        homelessSupport.initializeForImport();
+        BulkImporter.ImportSummary importSummary =
+            new BulkImporter().importFile(importKind, Paths.get(args[2]), Paths.get(args[3]));
+        System.out.println(importSummary);
+        return;
+      }
+
+      homelessSupport.initialize();
+
+      /* java Main snapshot <export|import> <file> */
+      if (args.length == 3 && args[0].equals("snapshot")) {
+        DatasetSnapshot datasetSnapshot = new DatasetSnapshot();
+        if (args[1].equals("export")) {
+          System.out.println(datasetSnapshot.export(Paths.get(args[2])));
+        } else if (args[1].equals("import")) {
+          System.out.println(datasetSnapshot.load(Paths.get(args[2])));
+        } else {
+          System.out.println("Usage: java Main snapshot <export|import> <file>");
+        }
+        return;
+      }
+
       homelessSupport.donorReport("2023-09-06", "2023-12-15", printWriter);
 
     } catch (SQLException | ClassNotFoundException | IOException exception) {
@@ -0,0 +1,67 @@
+import java.util.List;
+
+/**
+ * The Migration class represents one versioned change to the database schema. A migration is a
+ * list of SQL statements applied in order; its version decides where it runs relative to the
+ * other migrations. A migration that existing rows can block, such as a unique index, also carries
+ * a query for the rows in the way.
+ */
+public class Migration {
+  private final int version;
+  private final String description;
+  private final List<String> statements;
+  private final String conflictQuery;
+
+  /**
+   * Constructs a migration.
+   *
+   * @param version The schema version this migration brings the database to.
+   * @param description A short description recorded with the applied version.
+   * @param statements The SQL statements to run, in order.
+   */
+  public Migration(int version, String description, String... statements) {
+    this(version, description, null, List.of(statements));
+  }
+
+  /**
+   * Constructs a migration that existing rows can block.
+   *
+   * @param version The schema version this migration brings the database to.
+   * @param description A short description recorded with the applied version.
+   * @param conflictQuery A query whose first column names the rows that would make the statements
+   *     fail; the migration is not applied while it returns any.
+   * @param statements The SQL statements to run, in order.
+   */
+  public Migration(int version, String description, String conflictQuery, List<String> statements) {
+    this.version = version;
+    this.description = description;
+    this.conflictQuery = conflictQuery;
+    this.statements = List.copyOf(statements);
+  }
+
+  public int getVersion() {
+    return version;
+  }
+
+  public String getDescription() {
+    return description;
+  }
+
+  public List<String> getStatements() {
+    return statements;
+  }
+
+  public String getConflictQuery() {
+    return conflictQuery;
+  }
+
+  /**
+   * Returns a string representation of the Migration object.
+   *
+   * @return String representation of the object
+   */
+  @Override
+  public String toString() {
+    return "Migration{" + "version=" + version + ", description='" + description + '\'' + '}';
+  }
+}
@@ -0,0 +1,237 @@
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.time.LocalDate;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Set;
+
+/**
+ * MutationEvent is one successful DataGenerator call as it is stored in the {@link
+ * MutationJournal}. An event is a type, a list of text fields and a list of number fields, written
+ * as length-prefixed UTF-8 and zigzag varints. Dates are stored as epoch days. The fields of each
+ * type are described on the factory method that creates it.
+ */
+public class MutationEvent {
+
+  /** The DataGenerator operation an event records. */
+  public enum Type {
+    DEFINE_SERVICE,
+    DEFINE_SHELTER,
+    SERVICE_FOR_SHELTER,
+    DECLARE_OCCUPANCY,
+    ADD_STAFF,
+    DEFINE_DONOR,
+    RECEIVE_DONATION,
+    DISBURSE_FUNDS
+  }
+
+  private final Type type;
+  private final String[] text;
+  private final long[] numbers;
+  private long sequence;
+
+  private MutationEvent(Type type, String[] text, long[] numbers) {
+    this.type = type;
+    this.text = text;
+    this.numbers = numbers;
+  }
+
+  /** Text: service name. Numbers: inspection frequency. */
+  public static MutationEvent defineService(String serviceName, int inspectionFrequency) {
+    return new MutationEvent(
+        Type.DEFINE_SERVICE, new String[] {serviceName}, new long[] {inspectionFrequency});
+  }
+
+  /** Text: shelter name, staff in charge. Numbers: x, y, capacity. */
+  public static MutationEvent defineShelter(
+      String name, Point location, int maxCapacity, String staffInCharge) {
+    return new MutationEvent(
+        Type.DEFINE_SHELTER,
+        new String[] {name, staffInCharge},
+        new long[] {location.getX(), location.getY(), maxCapacity});
+  }
+
+  /** Text: shelter name, service name. */
+  public static MutationEvent serviceForShelter(String shelterName, String serviceName) {
+    return new MutationEvent(
+        Type.SERVICE_FOR_SHELTER, new String[] {shelterName, serviceName}, new long[0]);
+  }
+
+  /** Text: shelter name. Numbers: epoch day, occupancy. */
+  public static MutationEvent declareShelterOccupancy(String name, LocalDate date, int occupancy) {
+    return new MutationEvent(
+        Type.DECLARE_OCCUPANCY, new String[] {name}, new long[] {date.toEpochDay(), occupancy});
+  }
+
+  /** Text: staff name, manager, then the services. Numbers: 1 for a volunteer, 0 otherwise. */
+  public static MutationEvent addStaff(
+      String name, Set<String> services, boolean volunteer, String manager) {
+    List<String> text = new ArrayList<>(List.of(name, manager));
+    text.addAll(services);
+    return new MutationEvent(
+        Type.ADD_STAFF, text.toArray(new String[0]), new long[] {volunteer ? 1 : 0});
+  }
+
+  /** Text: donor name, contact, then the funding programs. Numbers: x, y. */
+  public static MutationEvent defineDonor(
+      String name, Point centralOffice, String contact, Set<String> fundingPrograms) {
+    List<String> text = new ArrayList<>(List.of(name, contact));
+    text.addAll(fundingPrograms);
+    return new MutationEvent(
+        Type.DEFINE_DONOR,
+        text.toArray(new String[0]),
+        new long[] {centralOffice.getX(), centralOffice.getY()});
+  }
+
+  /** Text: donor name, funding program. Numbers: epoch day, donation. */
+  public static MutationEvent receiveDonation(
+      String donor, String fundingProgram, LocalDate date, int donation) {
+    return new MutationEvent(
+        Type.RECEIVE_DONATION,
+        new String[] {donor, fundingProgram},
+        new long[] {date.toEpochDay(), donation});
+  }
+
+  /** Text: shelter name. Numbers: epoch day, funds. */
+  public static MutationEvent disburseFunds(String shelterReceiving, LocalDate date, int funds) {
+    return new MutationEvent(
+        Type.DISBURSE_FUNDS, new String[] {shelterReceiving}, new long[] {date.toEpochDay(), funds});
+  }
+
+  public Type getType() {
+    return type;
+  }
+
+  /**
+   * Returns the position of the event in the journal.
+   *
+   * @return The sequence number, or 0 if the event has not been journaled.
+   */
+  public long getSequence() {
+    return sequence;
+  }
+
+  void setSequence(long sequence) {
+    this.sequence = sequence;
+  }
+
+  public String getText(int index) {
+    return text[index];
+  }
+
+  /**
+   * Returns the text fields from a position to the end, such as the services of ADD_STAFF.
+   *
+   * @param fromIndex The first text field to include.
+   * @return The remaining text fields.
+   */
+  public List<String> getTextFrom(int fromIndex) {
+    return Arrays.asList(text).subList(fromIndex, text.length);
+  }
+
+  public long getNumber(int index) {
+    return numbers[index];
+  }
+
+  /**
+   * Returns a number field holding an epoch day as a date.
+   *
+   * @param index The number field.
+   * @return The date.
+   */
+  public LocalDate getDate(int index) {
+    return LocalDate.ofEpochDay(numbers[index]);
+  }
+
+  /**
+   * Encodes the event, without its sequence number.
+   *
+   * @return The encoded event.
+   */
+  byte[] encode() {
+    byte[][] encodedText = new byte[text.length][];
+    int size = 3;
+    for (int index = 0; index < text.length; index++) {
+      encodedText[index] = text[index].getBytes(StandardCharsets.UTF_8);
+      size += 5 + encodedText[index].length;
+    }
+    size += numbers.length * 10;
+
+    ByteBuffer buffer = ByteBuffer.allocate(size);
+    buffer.put((byte) type.ordinal());
+    buffer.put((byte) text.length);
+    for (byte[] field : encodedText) {
+      putVarint(buffer, field.length);
+      buffer.put(field);
+    }
+    buffer.put((byte) numbers.length);
+    for (long number : numbers) {
+      putVarint(buffer, (number << 1) ^ (number >> 63));
+    }
+    return Arrays.copyOf(buffer.array(), buffer.position());
+  }
+
+  /**
+   * Decodes an event written by {@link #encode()}.
+   *
+   * @param buffer The buffer, positioned at the start of the event.
+   * @param sequence The sequence number of the event.
+   * @return The event.
+   */
+  static MutationEvent decode(ByteBuffer buffer, long sequence) {
+    Type type = Type.values()[buffer.get()];
+    String[] text = new String[buffer.get() & 0xFF];
+    for (int index = 0; index < text.length; index++) {
+      byte[] field = new byte[(int) getVarint(buffer)];
+      buffer.get(field);
+      text[index] = new String(field, StandardCharsets.UTF_8);
+    }
+    long[] numbers = new long[buffer.get() & 0xFF];
+    for (int index = 0; index < numbers.length; index++) {
+      long zigzag = getVarint(buffer);
+      numbers[index] = (zigzag >>> 1) ^ -(zigzag & 1);
+    }
+    MutationEvent event = new MutationEvent(type, text, numbers);
+    event.sequence = sequence;
+    return event;
+  }
+
+  private static void putVarint(ByteBuffer buffer, long value) {
+    while ((value & ~0x7FL) != 0) {
+      buffer.put((byte) ((value & 0x7F) | 0x80));
+      value >>>= 7;
+    }
+    buffer.put((byte) value);
+  }
+
+  private static long getVarint(ByteBuffer buffer) {
+    long value = 0;
+    for (int shift = 0; ; shift += 7) {
+      byte next = buffer.get();
+      value |= (long) (next & 0x7F) << shift;
+      if ((next & 0x80) == 0) {
+        return value;
+      }
+    }
+  }
+
+  /**
+   * Returns a string representation of the MutationEvent object.
+   *
+   * @return String representation of the object
+   */
+  @Override
+  public String toString() {
+    return "MutationEvent{"
+        + "sequence="
+        + sequence
+        + ", type="
+        + type
+        + ", text="
+        + Arrays.toString(text)
+        + ", numbers="
+        + Arrays.toString(numbers)
+        + '}';
+  }
+}
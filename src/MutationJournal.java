@@ -0,0 +1,505 @@
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.TreeSet;
+import java.util.function.Consumer;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+import java.util.zip.CRC32;
+
+/**
+ * MutationJournal appends every successful DataGenerator mutation to a sequential,
+ * memory-mapped log, so the registered {@link ReadModel}s can be restored at startup without
+ * re-reading the full tables. The {@link DonationIndex} is the only one; the other stores keep
+ * state of their own (the column store's segments, the sketch table, the report cache directory)
+ * or reload from the database when they start, and the journal plays no part in restoring them.
+ *
+ * <p>The log is split into segment files named after the sequence number of their first event;
+ * each event is framed as its length, the sequence number and encoded {@link MutationEvent}, and a
+ * CRC32 of both. A zero length marks the end of the written part.
+ *
+ * <p>A checkpoint writes the snapshot of every registered {@link ReadModel} together with the last
+ * sequence number it covers and deletes the segments it makes redundant. Replay loads the newest
+ * checkpoint and applies only the events after it.
+ *
+ * <p>Appends write their frame under the journal's lock and force it outside, and appends that
+ * arrive while a force is running share the next one, so concurrent writers do not queue behind
+ * one disk flush each.
+ *
+ * <p>Events are appended after their database commit, so a crash in between loses one, and so does
+ * a write made by another process. Each checkpoint therefore also stamps the row counts of the
+ * tables the read models are derived from, and replay is only trusted if those counts plus the
+ * rows added by the replayed events match the tables; otherwise the caller rebuilds the models.
+ */
+public class MutationJournal {
+  private static final MutationJournal INSTANCE = new MutationJournal();
+  private static final Logger logger = Logger.getLogger("homelesssupport.mutationjournal");
+
+  /* "JRN2": the checkpoint ends with the row counts of the source tables */
+  private static final int CHECKPOINT_MAGIC = 0x4A524E32;
+  private static final String SEGMENT_PREFIX = "mutations-";
+  private static final String SEGMENT_SUFFIX = ".log";
+  private static final String CHECKPOINT_PREFIX = "checkpoint-";
+  private static final String CHECKPOINT_SUFFIX = ".snap";
+
+  /* Length (4), sequence (8), CRC32 (4) around each encoded event */
+  private static final int FRAME_OVERHEAD = 16;
+
+  private final Path directory;
+  private final int segmentBytes =
+      ConfigurationManager.getInt("mutationJournal.segmentBytes", 64 * 1024 * 1024);
+
+  private final Map<String, ReadModel> readModels = new TreeMap<>();
+  /* First sequence number of each segment, to its file */
+  private final TreeMap<Long, Path> segments = new TreeMap<>();
+  private MappedByteBuffer activeSegment;
+  /* Start of the frames of the active segment that are written but not forced yet */
+  private int unforcedStart;
+  private long nextSequence = 1;
+  private boolean open = false;
+
+  /* Held while forcing, then the journal's lock; the highest sequence on disk */
+  private final Object forceLock = new Object();
+  private long forcedSequence;
+
+  private MutationJournal() {
+    this(Paths.get(ConfigurationManager.getString("mutationJournal.directory", "data/journal")));
+  }
+
+  /**
+   * Creates a journal over a directory of its own, apart from the one shared by the process.
+   *
+   * @param directory The directory holding the segments and checkpoints.
+   */
+  MutationJournal(Path directory) {
+    this.directory = directory;
+  }
+
+  /**
+   * Returns the journal shared by the whole process.
+   *
+   * @return The mutation journal.
+   */
+  public static MutationJournal getInstance() {
+    return INSTANCE;
+  }
+
+  /**
+   * Registers a read model to be included in checkpoints and replay.
+   *
+   * @param readModel The read model.
+   */
+  public synchronized void register(ReadModel readModel) {
+    readModels.put(readModel.getSnapshotName(), readModel);
+  }
+
+  /**
+   * Checks if mutations are being journaled.
+   *
+   * @return True once the journal has been opened.
+   */
+  public synchronized boolean isOpen() {
+    return open;
+  }
+
+  /**
+   * Opens the journal directory and finds the end of the last segment.
+   *
+   * @throws IOException If the journal cannot be read.
+   */
+  public synchronized void open() throws IOException {
+    Files.createDirectories(directory);
+    segments.clear();
+    try (DirectoryStream<Path> segmentFiles =
+        Files.newDirectoryStream(directory, SEGMENT_PREFIX + "*" + SEGMENT_SUFFIX)) {
+      for (Path segmentFile : segmentFiles) {
+        segments.put(sequenceOf(segmentFile, SEGMENT_PREFIX, SEGMENT_SUFFIX), segmentFile);
+      }
+    }
+
+    nextSequence = Math.max(1, latestCheckpointSequence() + 1);
+    if (!segments.isEmpty()) {
+      Map.Entry<Long, Path> lastSegment = segments.lastEntry();
+      activeSegment = map(lastSegment.getValue(), 0);
+      nextSequence = Math.max(nextSequence, lastSegment.getKey());
+      /* Walk to the end of the written part, stopping at a torn frame */
+      readEvents(activeSegment, event -> nextSequence = event.getSequence() + 1);
+      unforcedStart = activeSegment.position();
+    }
+    forcedSequence = nextSequence - 1;
+    open = true;
+  }
+
+  /**
+   * Appends a mutation that has been committed to the database and waits until it is on disk. The
+   * write has already succeeded, so a failure is logged rather than thrown; the missing event shows
+   * in the row counts at the next replay, which then falls back to a rebuild.
+   *
+   * @param event The mutation.
+   */
+  public void append(MutationEvent event) {
+    try {
+      synchronized (this) {
+        if (!open) {
+          return;
+        }
+        write(event);
+      }
+      awaitForced(event.getSequence());
+    } catch (IOException | RuntimeException exception) {
+      logger.log(Level.WARNING, "Mutation " + event + " could not be journaled", exception);
+    }
+  }
+
+  /**
+   * Waits until the journal is on disk up to a sequence. The first waiter forces every frame
+   * written so far; the ones that queued behind it find their events already covered and return.
+   *
+   * @param sequence The sequence of the event to wait for.
+   */
+  private void awaitForced(long sequence) {
+    synchronized (forceLock) {
+      if (forcedSequence >= sequence) {
+        return;
+      }
+      MappedByteBuffer segment;
+      int from;
+      int to;
+      long written;
+      synchronized (this) {
+        segment = activeSegment;
+        from = unforcedStart;
+        to = activeSegment.position();
+        written = nextSequence - 1;
+        unforcedStart = to;
+      }
+      segment.force(from, to - from);
+      forcedSequence = written;
+    }
+  }
+
+  /**
+   * Writes one event at the end of the active segment, starting a new segment when it is full. The
+   * frame is forced by {@link #awaitForced(long)}.
+   *
+   * @param event The mutation.
+   * @throws IOException If the event cannot be written.
+   */
+  private void write(MutationEvent event) throws IOException {
+    byte[] encoded = event.encode();
+    int frameBytes = FRAME_OVERHEAD + encoded.length;
+    /* Keep room for the zero length that ends the segment */
+    if (activeSegment == null || activeSegment.remaining() < frameBytes + Integer.BYTES) {
+      if (activeSegment != null) {
+        /* The forces that follow only cover the new segment */
+        activeSegment.force(unforcedStart, activeSegment.position() - unforcedStart);
+      }
+      Path segmentFile =
+          directory.resolve(
+              String.format("%s%020d%s", SEGMENT_PREFIX, nextSequence, SEGMENT_SUFFIX));
+      activeSegment = map(segmentFile, Math.max(segmentBytes, frameBytes + Integer.BYTES));
+      segments.put(nextSequence, segmentFile);
+      unforcedStart = 0;
+    }
+
+    CRC32 crc = new CRC32();
+    ByteBuffer sequenceBytes = ByteBuffer.allocate(Long.BYTES).putLong(0, nextSequence);
+    crc.update(sequenceBytes.array());
+    crc.update(encoded);
+    activeSegment
+        .putInt(encoded.length)
+        .putLong(nextSequence)
+        .put(encoded)
+        .putInt((int) crc.getValue());
+
+    event.setSequence(nextSequence);
+    nextSequence++;
+  }
+
+  /**
+   * Restores the registered read models from the newest checkpoint and the events after it.
+   *
+   * @return True if the models were restored; false if there is no usable checkpoint or the
+   *     journal does not account for every row in the source tables, in which case the caller
+   *     rebuilds them from the database.
+   * @throws IOException If the journal cannot be read.
+   * @throws SQLException If there is an issue with the SQL operations.
+   * @throws ClassNotFoundException If the required class is not found during database operations.
+   */
+  public synchronized boolean replay() throws IOException, SQLException, ClassNotFoundException {
+    long checkpointSequence = latestCheckpointSequence();
+    if (!open || readModels.isEmpty() || checkpointSequence < 0) {
+      return false;
+    }
+
+    Map<String, byte[]> sections = new HashMap<>();
+    Map<String, Long> expectedRows = new TreeMap<>();
+    try (DataInputStream in =
+        new DataInputStream(
+            new BufferedInputStream(Files.newInputStream(checkpointPath(checkpointSequence))))) {
+      if (in.readInt() != CHECKPOINT_MAGIC || in.readLong() != checkpointSequence) {
+        return false;
+      }
+      int sectionCount = in.readInt();
+      for (int section = 0; section < sectionCount; section++) {
+        String name = in.readUTF();
+        byte[] snapshot = new byte[in.readInt()];
+        in.readFully(snapshot);
+        sections.put(name, snapshot);
+      }
+      int tableCount = in.readInt();
+      for (int table = 0; table < tableCount; table++) {
+        String name = in.readUTF();
+        expectedRows.put(name, in.readLong());
+      }
+    }
+    if (!expectedRows.keySet().equals(sourceTables())) {
+      return false;
+    }
+    if (!sections.keySet().containsAll(readModels.keySet())) {
+      /* A model registered after the checkpoint was taken has nothing to start from */
+      return false;
+    }
+    for (ReadModel readModel : readModels.values()) {
+      readModel.readSnapshot(
+          new DataInputStream(
+              new ByteArrayInputStream(sections.get(readModel.getSnapshotName()))));
+    }
+
+    boolean[] countable = {true};
+    for (Path segmentFile : segments.values()) {
+      MappedByteBuffer segment = map(segmentFile, 0);
+      readEvents(
+          segment,
+          event -> {
+            if (event.getSequence() > checkpointSequence) {
+              for (ReadModel readModel : readModels.values()) {
+                readModel.apply(event);
+                Map<String, Integer> rowsAdded = readModel.rowsAdded(event);
+                if (rowsAdded == null) {
+                  countable[0] = false;
+                } else {
+                  rowsAdded.forEach(
+                      (table, rows) -> expectedRows.merge(table, (long) rows, Long::sum));
+                }
+              }
+            }
+          });
+    }
+    /* Rows the journal does not account for were written without it */
+    return countable[0] && expectedRows.equals(countRows());
+  }
+
+  /**
+   * Writes a checkpoint of every registered read model covering all events journaled so far, and
+   * deletes the segments and older checkpoints it replaces. Should not run while writes are in
+   * flight: one committed but not yet applied would make the stamp disagree with the snapshot,
+   * which costs a rebuild at the next start.
+   *
+   * @throws IOException If the checkpoint cannot be written.
+   * @throws SQLException If there is an issue with the SQL operations.
+   * @throws ClassNotFoundException If the required class is not found during database operations.
+   */
+  public synchronized void checkpoint() throws IOException, SQLException, ClassNotFoundException {
+    if (!open || readModels.isEmpty()) {
+      return;
+    }
+    long checkpointSequence = nextSequence - 1;
+    /* Counted before the snapshots, so a write in between can only make them disagree */
+    Map<String, Long> rowCounts = countRows();
+    Path checkpointFile = checkpointPath(checkpointSequence);
+    Path temporaryFile = directory.resolve(checkpointFile.getFileName() + ".tmp");
+
+    try (DataOutputStream out =
+        new DataOutputStream(new BufferedOutputStream(Files.newOutputStream(temporaryFile)))) {
+      out.writeInt(CHECKPOINT_MAGIC);
+      out.writeLong(checkpointSequence);
+      out.writeInt(readModels.size());
+      for (ReadModel readModel : readModels.values()) {
+        ByteArrayOutputStream snapshot = new ByteArrayOutputStream();
+        readModel.writeSnapshot(new DataOutputStream(snapshot));
+        out.writeUTF(readModel.getSnapshotName());
+        out.writeInt(snapshot.size());
+        snapshot.writeTo(out);
+      }
+      out.writeInt(rowCounts.size());
+      for (Map.Entry<String, Long> rowCount : rowCounts.entrySet()) {
+        out.writeUTF(rowCount.getKey());
+        out.writeLong(rowCount.getValue());
+      }
+    }
+    try (FileChannel channel = FileChannel.open(temporaryFile, StandardOpenOption.WRITE)) {
+      channel.force(true);
+    }
+    Files.move(
+        temporaryFile,
+        checkpointFile,
+        StandardCopyOption.REPLACE_EXISTING,
+        StandardCopyOption.ATOMIC_MOVE);
+
+    /* Older checkpoints, and segments whose events all lie at or before this one, are redundant */
+    try (DirectoryStream<Path> checkpointFiles =
+        Files.newDirectoryStream(directory, CHECKPOINT_PREFIX + "*" + CHECKPOINT_SUFFIX)) {
+      for (Path oldCheckpoint : checkpointFiles) {
+        if (sequenceOf(oldCheckpoint, CHECKPOINT_PREFIX, CHECKPOINT_SUFFIX) < checkpointSequence) {
+          Files.delete(oldCheckpoint);
+        }
+      }
+    }
+    List<Long> redundantSegments = new ArrayList<>();
+    for (Map.Entry<Long, Path> segment : segments.entrySet()) {
+      Long nextSegmentStart = segments.higherKey(segment.getKey());
+      if (nextSegmentStart != null && nextSegmentStart <= checkpointSequence + 1) {
+        redundantSegments.add(segment.getKey());
+      }
+    }
+    for (Long firstSequence : redundantSegments) {
+      Files.delete(segments.remove(firstSequence));
+    }
+  }
+
+  /**
+   * Returns the tables any registered read model is derived from.
+   *
+   * @return The table names, sorted.
+   */
+  private TreeSet<String> sourceTables() {
+    TreeSet<String> tables = new TreeSet<>();
+    for (ReadModel readModel : readModels.values()) {
+      tables.addAll(readModel.getSourceTables());
+    }
+    return tables;
+  }
+
+  /**
+   * Counts the rows of every source table.
+   *
+   * @return Table name mapped to its row count.
+   * @throws SQLException If there is an issue with the SQL operations.
+   * @throws IOException If there is an issue with input/output operations.
+   * @throws ClassNotFoundException If the required class is not found during database operations.
+   */
+  private Map<String, Long> countRows() throws SQLException, IOException, ClassNotFoundException {
+    Connection connection = null;
+    Map<String, Long> rowCounts = new TreeMap<>();
+
+    try {
+      connection = DatabaseManager.getConnection();
+
+      for (String table : sourceTables()) {
+        /* Table names come from the read models, never from input */
+        PreparedStatement countRows = connection.prepareStatement("SELECT COUNT(*) FROM " + table);
+        ResultSet countRowsResultSet = countRows.executeQuery();
+        countRowsResultSet.next();
+        rowCounts.put(table, countRowsResultSet.getLong(1));
+      }
+    } catch (SQLException sqlException) {
+      throw new SQLException(sqlException.getMessage());
+    } catch (IOException ioException) {
+      throw new IOException(ioException.getMessage());
+    } catch (ClassNotFoundException classNotFoundException) {
+      throw new ClassNotFoundException(classNotFoundException.getMessage());
+    } finally {
+      /* Ensure the connection is closed */
+      DatabaseManager.closeConnection(connection);
+    }
+    return rowCounts;
+  }
+
+  /**
+   * Calls the visitor for every complete event of a segment, in order, and leaves the buffer
+   * positioned after the last one.
+   *
+   * @param segment The mapped segment, positioned at its start.
+   * @param visitor Receives each event.
+   */
+  private void readEvents(MappedByteBuffer segment, Consumer<MutationEvent> visitor) {
+    while (segment.remaining() >= FRAME_OVERHEAD) {
+      int frameStart = segment.position();
+      int length = segment.getInt();
+      if (length <= 0 || segment.remaining() < length + Long.BYTES + Integer.BYTES) {
+        segment.position(frameStart);
+        return;
+      }
+      long sequence = segment.getLong();
+      byte[] encoded = new byte[length];
+      segment.get(encoded);
+      CRC32 crc = new CRC32();
+      crc.update(ByteBuffer.allocate(Long.BYTES).putLong(0, sequence).array());
+      crc.update(encoded);
+      if (segment.getInt() != (int) crc.getValue()) {
+        /* A frame torn by a crash; appends continue over it */
+        segment.position(frameStart);
+        return;
+      }
+      visitor.accept(MutationEvent.decode(ByteBuffer.wrap(encoded), sequence));
+    }
+  }
+
+  /**
+   * Maps a segment file read-write, creating it with the given size if it does not exist.
+   *
+   * @param segmentFile The segment file.
+   * @param size The size of a new segment; an existing one is mapped at its own size.
+   * @return The mapped segment, positioned at its start.
+   * @throws IOException If the file cannot be created or mapped.
+   */
+  private MappedByteBuffer map(Path segmentFile, int size) throws IOException {
+    try (FileChannel channel =
+        FileChannel.open(
+            segmentFile,
+            StandardOpenOption.CREATE,
+            StandardOpenOption.READ,
+            StandardOpenOption.WRITE)) {
+      long mappedSize = Math.max(channel.size(), size);
+      /* The mapping stays valid after the channel is closed */
+      return channel.map(FileChannel.MapMode.READ_WRITE, 0, mappedSize);
+    }
+  }
+
+  private long latestCheckpointSequence() throws IOException {
+    long latest = -1;
+    if (!Files.isDirectory(directory)) {
+      return latest;
+    }
+    try (DirectoryStream<Path> checkpointFiles =
+        Files.newDirectoryStream(directory, CHECKPOINT_PREFIX + "*" + CHECKPOINT_SUFFIX)) {
+      for (Path checkpointFile : checkpointFiles) {
+        latest = Math.max(latest, sequenceOf(checkpointFile, CHECKPOINT_PREFIX, CHECKPOINT_SUFFIX));
+      }
+    }
+    return latest;
+  }
+
+  private Path checkpointPath(long sequence) {
+    return directory.resolve(
+        String.format("%s%020d%s", CHECKPOINT_PREFIX, sequence, CHECKPOINT_SUFFIX));
+  }
+
+  private static long sequenceOf(Path file, String prefix, String suffix) {
+    String fileName = file.getFileName().toString();
+    return Long.parseLong(fileName.substring(prefix.length(), fileName.length() - suffix.length()));
+  }
+}
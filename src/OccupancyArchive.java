@@ -0,0 +1,535 @@
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.sql.Connection;
+import java.sql.Date;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.time.LocalDate;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.NavigableMap;
+import java.util.Set;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.zip.CRC32;
+
+/**
+ * OccupancyArchive holds the occupancy records of closed years outside of MySQL. Each shelter has
+ * one archive file with an index of its archived years followed by one block per year. A block
+ * stores the records in day order as the varint-encoded gap to the previous day and the zigzag
+ * varint-encoded change from the previous occupancy, and is protected by a CRC32 checksum kept in
+ * the index.
+ *
+ * <p>The archival job moves every year before the current one out of shelter_occupancy_record. An
+ * archived year is read-only: declarations for it are rejected, and the reports read it from the
+ * archive. A declaration re-checks the year while it holds the lock on the shelter-year's record
+ * counter, and archiving takes those locks after closing the years, so a declaration either
+ * commits before its year is moved or is rejected.
+ */
+public class OccupancyArchive {
+  private static final OccupancyArchive INSTANCE = new OccupancyArchive();
+
+  private static final int MAGIC = 0x4F434341; /* "OCCA" */
+  private static final byte FORMAT_VERSION = 1;
+  private static final String ARCHIVE_SUFFIX = ".arc";
+
+  /* Magic, format version and year count */
+  private static final int HEADER_BYTES = Integer.BYTES + Byte.BYTES + Integer.BYTES;
+  /* Year, block offset, block length, record count and checksum */
+  private static final int INDEX_ENTRY_BYTES =
+      Integer.BYTES + Long.BYTES + Integer.BYTES + Integer.BYTES + Integer.BYTES;
+
+  private final Path directory;
+  private final Map<Integer, NavigableMap<Integer, BlockIndex>> archivedYears = new HashMap<>();
+  /* The keys of archivedYears as shelter-years, read without the archive's lock */
+  private final Set<Long> closedYears = ConcurrentHashMap.newKeySet();
+  private boolean open = false;
+
+  private OccupancyArchive() {
+    this(Paths.get(ConfigurationManager.getString("occupancyArchive.directory", "data/archive")));
+  }
+
+  /**
+   * Creates an archive over a directory of its own, apart from the one shared by the process.
+   *
+   * @param directory The directory holding the archive files.
+   */
+  OccupancyArchive(Path directory) {
+    this.directory = directory;
+  }
+
+  /**
+   * Returns the archive shared by the whole process.
+   *
+   * @return The occupancy archive.
+   */
+  public static OccupancyArchive getInstance() {
+    return INSTANCE;
+  }
+
+  /**
+   * Checks if the archive has been opened and its index loaded.
+   *
+   * @return True once the archive is open.
+   */
+  public synchronized boolean isOpen() {
+    return open;
+  }
+
+  /**
+   * Opens the archive by reading the index of every archive file.
+   *
+   * @throws IOException If an archive file cannot be read or is not a valid archive.
+   */
+  public synchronized void open() throws IOException {
+    Files.createDirectories(directory);
+    archivedYears.clear();
+    closedYears.clear();
+    try (DirectoryStream<Path> archives =
+        Files.newDirectoryStream(directory, "*" + ARCHIVE_SUFFIX)) {
+      for (Path archive : archives) {
+        String fileName = archive.getFileName().toString();
+        int shelterID =
+            Integer.parseInt(fileName.substring(0, fileName.length() - ARCHIVE_SUFFIX.length()));
+        NavigableMap<Integer, BlockIndex> years = readIndex(archive);
+        archivedYears.put(shelterID, years);
+        for (int year : years.keySet()) {
+          closedYears.add(shelterYear(shelterID, year));
+        }
+      }
+    }
+    open = true;
+  }
+
+  /**
+   * Checks if a year of a shelter has been archived and is therefore read-only.
+   *
+   * @param shelterID The ID of the shelter.
+   * @param year The year to check.
+   * @return True if the year is archived.
+   */
+  public boolean isArchived(int shelterID, int year) {
+    /* Not synchronized: declarations call it holding row locks that a running archival waits for */
+    return closedYears.contains(shelterYear(shelterID, year));
+  }
+
+  /**
+   * Checks if any shelter has an archived year between two years, both included.
+   *
+   * @param fromYear The first year.
+   * @param toYear The last year.
+   * @return True if a range query over these years has to read the archive.
+   */
+  public synchronized boolean hasYearsBetween(int fromYear, int toYear) {
+    for (NavigableMap<Integer, BlockIndex> years : archivedYears.values()) {
+      if (fromYear <= toYear && !years.subMap(fromYear, true, toYear, true).isEmpty()) {
+        return true;
+      }
+    }
+    return false;
+  }
+
+  /**
+   * Returns the lowest and highest archived occupancy of a shelter between two dates.
+   *
+   * @param shelterID The ID of the shelter.
+   * @param startDate The first day of the range.
+   * @param endDate The last day of the range.
+   * @return The minimum and maximum as a two-element array, or null if nothing is archived there.
+   * @throws IOException If a block cannot be read or fails its checksum.
+   */
+  public synchronized int[] occupancyRange(int shelterID, LocalDate startDate, LocalDate endDate)
+      throws IOException {
+    int[] range = {Integer.MAX_VALUE, Integer.MIN_VALUE};
+    scan(
+        shelterID,
+        startDate,
+        endDate,
+        (id, date, occupancy) -> {
+          range[0] = Math.min(range[0], occupancy);
+          range[1] = Math.max(range[1], occupancy);
+        });
+    return range[1] == Integer.MIN_VALUE ? null : range;
+  }
+
+  /**
+   * Returns the most recent archived occupancy record of a shelter.
+   *
+   * @param shelterID The ID of the shelter.
+   * @return The date and occupancy of the latest archived record, or null if there is none.
+   * @throws IOException If a block cannot be read or fails its checksum.
+   */
+  public synchronized Pair<LocalDate, Integer> latestOccupancy(int shelterID) throws IOException {
+    NavigableMap<Integer, BlockIndex> years = archivedYears.get(shelterID);
+    if (years == null) {
+      return null;
+    }
+    for (Map.Entry<Integer, BlockIndex> year : years.descendingMap().entrySet()) {
+      int[][] block = readBlock(shelterID, year.getValue());
+      int records = block[0].length;
+      if (records > 0) {
+        return new Pair<>(
+            LocalDate.ofYearDay(year.getKey(), block[0][records - 1]), block[1][records - 1]);
+      }
+    }
+    return null;
+  }
+
+  /**
+   * Visits the archived records of a shelter between two dates, in date order.
+   *
+   * @param shelterID The ID of the shelter.
+   * @param startDate The first day of the range.
+   * @param endDate The last day of the range.
+   * @param visitor The callback receiving the records.
+   * @throws IOException If a block cannot be read or fails its checksum.
+   */
+  public synchronized void scan(
+      int shelterID, LocalDate startDate, LocalDate endDate, OccupancyVisitor visitor)
+      throws IOException {
+    NavigableMap<Integer, BlockIndex> years = archivedYears.get(shelterID);
+    if (years == null || endDate.isBefore(startDate)) {
+      return;
+    }
+    for (Map.Entry<Integer, BlockIndex> year :
+        years.subMap(startDate.getYear(), true, endDate.getYear(), true).entrySet()) {
+      int[][] block = readBlock(shelterID, year.getValue());
+      for (int record = 0; record < block[0].length; record++) {
+        LocalDate date = LocalDate.ofYearDay(year.getKey(), block[0][record]);
+        if (!date.isBefore(startDate) && !date.isAfter(endDate)) {
+          visitor.visit(shelterID, date, block[1][record]);
+        }
+      }
+    }
+  }
+
+  /**
+   * Visits every archived record of every shelter.
+   *
+   * @param visitor The callback receiving the records.
+   * @throws IOException If a block cannot be read or fails its checksum.
+   */
+  public synchronized void scanAll(OccupancyVisitor visitor) throws IOException {
+    for (int shelterID : archivedYears.keySet()) {
+      scan(shelterID, LocalDate.MIN, LocalDate.MAX, visitor);
+    }
+  }
+
+  /**
+   * Moves every occupancy record dated before the current year from the database into the archive.
+   * The archive file is written and synced before the rows are deleted, so a crash in between only
+   * leaves rows that the next run merges again.
+   *
+   * @return The number of shelter-years archived.
+   * @throws SQLException If there is an issue with the SQL operations.
+   * @throws IOException If there is an issue with input/output operations.
+   * @throws ClassNotFoundException If the required class is not found during database operations.
+   */
+  public synchronized int archiveClosedYears()
+      throws SQLException, IOException, ClassNotFoundException {
+    if (!open) {
+      open();
+    }
+    Connection connection = null;
+    LocalDate firstOpenDay = LocalDate.now().withDayOfYear(1);
+    int archived = 0;
+
+    try {
+      connection = DatabaseManager.getConnection();
+
+      PreparedStatement closedShelters =
+          connection.prepareStatement(
+              "SELECT shelter_id, MIN(date) AS first_date FROM shelter_occupancy_record WHERE date < ? GROUP BY shelter_id;");
+      closedShelters.setDate(1, Date.valueOf(firstOpenDay));
+      ResultSet closedSheltersResultSet = closedShelters.executeQuery();
+      Map<Integer, Integer> firstClosedYear = new HashMap<>();
+      while (closedSheltersResultSet.next()) {
+        firstClosedYear.put(
+            closedSheltersResultSet.getInt("shelter_id"),
+            closedSheltersResultSet.getDate("first_date").toLocalDate().getYear());
+      }
+
+      for (Map.Entry<Integer, Integer> shelter : firstClosedYear.entrySet()) {
+        archived +=
+            archiveShelter(connection, shelter.getKey(), shelter.getValue(), firstOpenDay);
+      }
+    } catch (SQLException sqlException) {
+      DatabaseManager.rollback(connection);
+      throw new SQLException(sqlException.getMessage());
+    } catch (IOException ioException) {
+      throw new IOException(ioException.getMessage());
+    } catch (ClassNotFoundException classNotFoundException) {
+      throw new ClassNotFoundException(classNotFoundException.getMessage());
+    } finally {
+      /* Ensure the connection is closed */
+      DatabaseManager.closeConnection(connection);
+    }
+    return archived;
+  }
+
+  /**
+   * Archives the closed years of one shelter and deletes them from the database.
+   *
+   * @param connection The database connection.
+   * @param shelterID The ID of the shelter.
+   * @param firstYear The first year with a closed record.
+   * @param firstOpenDay The first day that stays in the database.
+   * @return The number of years archived.
+   * @throws SQLException If there is an issue with the SQL operations.
+   * @throws IOException If the archive file cannot be written.
+   */
+  private int archiveShelter(
+      Connection connection, int shelterID, int firstYear, LocalDate firstOpenDay)
+      throws SQLException, IOException {
+    /* Close the years first, so no declaration can land in them while they are being moved */
+    NavigableMap<Integer, BlockIndex> years =
+        archivedYears.computeIfAbsent(shelterID, k -> new TreeMap<>());
+    for (int year = firstYear; year < firstOpenDay.getYear(); year++) {
+      years.putIfAbsent(year, BlockIndex.EMPTY);
+      closedYears.add(shelterYear(shelterID, year));
+    }
+
+    /* Waits for the declarations already past their check; the ones after it see the years closed */
+    PreparedStatement lockYearCounts =
+        connection.prepareStatement(
+            "SELECT record_count FROM shelter_occupancy_year_count WHERE shelter_id = ? AND year < ? FOR UPDATE;");
+    lockYearCounts.setInt(1, shelterID);
+    lockYearCounts.setInt(2, firstOpenDay.getYear());
+    lockYearCounts.executeQuery();
+
+    /* Existing blocks are merged with the new rows, so a rerun after a crash is harmless */
+    NavigableMap<Integer, TreeMap<Integer, Integer>> records = new TreeMap<>();
+    for (Map.Entry<Integer, BlockIndex> year : years.entrySet()) {
+      int[][] block = readBlock(shelterID, year.getValue());
+      TreeMap<Integer, Integer> days = records.computeIfAbsent(year.getKey(), k -> new TreeMap<>());
+      for (int record = 0; record < block[0].length; record++) {
+        days.put(block[0][record], block[1][record]);
+      }
+    }
+
+    PreparedStatement closedRecords =
+        connection.prepareStatement(
+            "SELECT date, occupancy FROM shelter_occupancy_record WHERE shelter_id = ? AND date < ? ORDER BY date;");
+    closedRecords.setInt(1, shelterID);
+    closedRecords.setDate(2, Date.valueOf(firstOpenDay));
+    ResultSet closedRecordsResultSet = closedRecords.executeQuery();
+    while (closedRecordsResultSet.next()) {
+      LocalDate date = closedRecordsResultSet.getDate("date").toLocalDate();
+      records
+          .computeIfAbsent(date.getYear(), k -> new TreeMap<>())
+          .put(date.getDayOfYear(), closedRecordsResultSet.getInt("occupancy"));
+    }
+
+    archivedYears.put(shelterID, writeArchive(shelterID, records));
+
+    PreparedStatement deleteClosedRecords =
+        connection.prepareStatement(
+            "DELETE FROM shelter_occupancy_record WHERE shelter_id = ? AND date < ?;");
+    deleteClosedRecords.setInt(1, shelterID);
+    deleteClosedRecords.setDate(2, Date.valueOf(firstOpenDay));
+    int archivedRows = deleteClosedRecords.executeUpdate();
+    OccupancyColumnStore.getInstance().archived(archivedRows);
+    ReportCache.getInstance().rowsMoved(ReportCache.Source.OCCUPANCY, archivedRows);
+
+    return firstOpenDay.getYear() - firstYear;
+  }
+
+  private static long shelterYear(int shelterID, int year) {
+    return ((long) shelterID << 32) | year;
+  }
+
+  /**
+   * Writes the archive file of a shelter, replacing the previous one atomically.
+   *
+   * @param shelterID The ID of the shelter.
+   * @param records Year mapped to day of year mapped to occupancy.
+   * @return The index of the written file.
+   * @throws IOException If the file cannot be written.
+   */
+  NavigableMap<Integer, BlockIndex> writeArchive(
+      int shelterID, NavigableMap<Integer, TreeMap<Integer, Integer>> records) throws IOException {
+    NavigableMap<Integer, BlockIndex> index = new TreeMap<>();
+    ByteArrayOutputStream blocks = new ByteArrayOutputStream();
+    long offset = HEADER_BYTES + (long) records.size() * INDEX_ENTRY_BYTES;
+
+    for (Map.Entry<Integer, TreeMap<Integer, Integer>> year : records.entrySet()) {
+      byte[] block = encodeBlock(year.getValue());
+      CRC32 checksum = new CRC32();
+      checksum.update(block);
+      index.put(
+          year.getKey(),
+          new BlockIndex(offset, block.length, year.getValue().size(), (int) checksum.getValue()));
+      blocks.write(block);
+      offset += block.length;
+    }
+
+    ByteArrayOutputStream file = new ByteArrayOutputStream();
+    DataOutputStream output = new DataOutputStream(file);
+    output.writeInt(MAGIC);
+    output.writeByte(FORMAT_VERSION);
+    output.writeInt(index.size());
+    for (Map.Entry<Integer, BlockIndex> year : index.entrySet()) {
+      BlockIndex blockIndex = year.getValue();
+      output.writeInt(year.getKey());
+      output.writeLong(blockIndex.offset);
+      output.writeInt(blockIndex.length);
+      output.writeInt(blockIndex.records);
+      output.writeInt(blockIndex.checksum);
+    }
+    blocks.writeTo(output);
+    output.flush();
+
+    Path archive = directory.resolve(shelterID + ARCHIVE_SUFFIX);
+    Path temporary = directory.resolve(shelterID + ARCHIVE_SUFFIX + ".tmp");
+    try (FileChannel channel =
+        FileChannel.open(
+            temporary,
+            StandardOpenOption.CREATE,
+            StandardOpenOption.TRUNCATE_EXISTING,
+            StandardOpenOption.WRITE)) {
+      ByteBuffer content = ByteBuffer.wrap(file.toByteArray());
+      while (content.hasRemaining()) {
+        channel.write(content);
+      }
+      channel.force(true);
+    }
+    Files.move(
+        temporary, archive, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+    return index;
+  }
+
+  /**
+   * Reads the header and year index of an archive file.
+   *
+   * @param archive The archive file.
+   * @return Year mapped to the position of its block.
+   * @throws IOException If the file cannot be read or is not a valid archive.
+   */
+  private NavigableMap<Integer, BlockIndex> readIndex(Path archive) throws IOException {
+    NavigableMap<Integer, BlockIndex> index = new TreeMap<>();
+    try (DataInputStream input = new DataInputStream(Files.newInputStream(archive))) {
+      if (input.readInt() != MAGIC || input.readByte() != FORMAT_VERSION) {
+        throw new IOException("Not an occupancy archive: " + archive);
+      }
+      int years = input.readInt();
+      for (int entry = 0; entry < years; entry++) {
+        int year = input.readInt();
+        index.put(
+            year, new BlockIndex(input.readLong(), input.readInt(), input.readInt(), input.readInt()));
+      }
+    }
+    return index;
+  }
+
+  /**
+   * Reads and decodes one year block, verifying its checksum.
+   *
+   * @param shelterID The ID of the shelter.
+   * @param blockIndex The position of the block.
+   * @return The days of year and the occupancies, as two parallel arrays.
+   * @throws IOException If the block cannot be read or fails its checksum.
+   */
+  private int[][] readBlock(int shelterID, BlockIndex blockIndex) throws IOException {
+    if (blockIndex.records == 0) {
+      return new int[][] {new int[0], new int[0]};
+    }
+
+    ByteBuffer block = ByteBuffer.allocate(blockIndex.length);
+    try (FileChannel channel =
+        FileChannel.open(directory.resolve(shelterID + ARCHIVE_SUFFIX), StandardOpenOption.READ)) {
+      while (block.hasRemaining()) {
+        if (channel.read(block, blockIndex.offset + block.position()) < 0) {
+          throw new IOException("Truncated occupancy archive for shelter " + shelterID);
+        }
+      }
+    }
+
+    CRC32 checksum = new CRC32();
+    checksum.update(block.array());
+    if ((int) checksum.getValue() != blockIndex.checksum) {
+      throw new IOException("Corrupt occupancy archive block for shelter " + shelterID);
+    }
+
+    block.flip();
+    int[] days = new int[blockIndex.records];
+    int[] occupancies = new int[blockIndex.records];
+    int day = 0;
+    int occupancy = 0;
+    for (int record = 0; record < blockIndex.records; record++) {
+      day += readVarint(block);
+      int change = readVarint(block);
+      occupancy += (change >>> 1) ^ -(change & 1);
+      days[record] = day;
+      occupancies[record] = occupancy;
+    }
+    return new int[][] {days, occupancies};
+  }
+
+  /**
+   * Encodes the records of one year as day gaps and zigzag occupancy changes.
+   *
+   * @param days Day of year mapped to occupancy, in day order.
+   * @return The encoded block.
+   */
+  private byte[] encodeBlock(TreeMap<Integer, Integer> days) {
+    ByteArrayOutputStream block = new ByteArrayOutputStream();
+    int previousDay = 0;
+    int previousOccupancy = 0;
+    for (Map.Entry<Integer, Integer> record : days.entrySet()) {
+      writeVarint(block, record.getKey() - previousDay);
+      int change = record.getValue() - previousOccupancy;
+      writeVarint(block, (change << 1) ^ (change >> 31));
+      previousDay = record.getKey();
+      previousOccupancy = record.getValue();
+    }
+    return block.toByteArray();
+  }
+
+  private void writeVarint(ByteArrayOutputStream output, int value) {
+    while ((value & ~0x7F) != 0) {
+      output.write((value & 0x7F) | 0x80);
+      value >>>= 7;
+    }
+    output.write(value);
+  }
+
+  private int readVarint(ByteBuffer input) {
+    int value = 0;
+    for (int shift = 0; ; shift += 7) {
+      byte next = input.get();
+      value |= (next & 0x7F) << shift;
+      if ((next & 0x80) == 0) {
+        return value;
+      }
+    }
+  }
+
+  /** Where a year block lives in an archive file and how to verify it. */
+  private static class BlockIndex {
+    /* A year closed by the archival job that had no records, or whose block is being written */
+    private static final BlockIndex EMPTY = new BlockIndex(0, 0, 0, 0);
+
+    private final long offset;
+    private final int length;
+    private final int records;
+    private final int checksum;
+
+    BlockIndex(long offset, int length, int records, int checksum) {
+      this.offset = offset;
+      this.length = length;
+      this.records = records;
+      this.checksum = checksum;
+    }
+  }
+}
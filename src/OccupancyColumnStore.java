@@ -0,0 +1,494 @@
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.time.LocalDate;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.NavigableSet;
+import java.util.TreeSet;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * OccupancyColumnStore is a local columnar copy of shelter_occupancy_record. Every shelter-year is
+ * one file segment holding a dense array of 366 ints indexed by day of year, with -1 for days
+ * without a record. Segments are read and written through memory-mapped buffers, so the capacity
+ * and variance scans walk contiguous memory without going through JDBC.
+ *
+ * <p>The store is backfilled from the database and the {@link OccupancyArchive} the first time it
+ * is opened and then kept in sync by the occupancy write path. Writes made by other processes are
+ * caught through the {@link WriteWatermark}: the store notes the other processes' occupancy write
+ * count when it is built, and the reports check it again through {@link #isCurrent()}, which
+ * rebuilds the store when the count moved. A ready marker holding the mirrored row count and the
+ * write count of every process is only written by a clean shutdown, after every segment has been
+ * forced to disk. The marker is deleted when the store is opened and checked against the table and
+ * the watermark, so after a crash, or when rows were written without the store, by another process
+ * or while it was switched off, the store is rebuilt. If an update cannot be written the store
+ * stops answering until the next start; until then the reports fall back to SQL.
+ */
+public class OccupancyColumnStore {
+  private static final OccupancyColumnStore INSTANCE = new OccupancyColumnStore();
+
+  private static final int DAYS_PER_SEGMENT = 366;
+  private static final int SEGMENT_BYTES = DAYS_PER_SEGMENT * Integer.BYTES;
+  private static final int MISSING = -1;
+  private static final String SEGMENT_SUFFIX = ".occ";
+  private static final String READY_MARKER = "store.ready";
+
+  /* Every mapping is a kernel memory map, so only the most recently used segments stay mapped */
+  private static final int MAX_MAPPED_SEGMENTS = 4096;
+
+  private final Path directory;
+  private final Map<Integer, NavigableSet<Integer>> yearsByShelter = new HashMap<>();
+  private final Map<String, MappedByteBuffer> mappedSegments =
+      new LinkedHashMap<>(16, 0.75f, true) {
+        @Override
+        protected boolean removeEldestEntry(Map.Entry<String, MappedByteBuffer> eldest) {
+          if (size() <= MAX_MAPPED_SEGMENTS) {
+            return false;
+          }
+          /* An unmapped segment can no longer be forced at shutdown */
+          eldest.getValue().force();
+          return true;
+        }
+      };
+  private boolean ready = false;
+  private boolean closeHookAdded = false;
+  /* Rows of shelter_occupancy_record the segments mirror; archived rows are kept but not counted */
+  private final AtomicLong tableRows = new AtomicLong();
+  /* Occupancy writes of other processes the segments include */
+  private long otherWrites;
+
+  private OccupancyColumnStore() {
+    this(Paths.get(ConfigurationManager.getString("occupancyStore.directory", "data/occupancy")));
+  }
+
+  /**
+   * Creates a store over a directory of its own, apart from the one shared by the process.
+   *
+   * @param directory The directory holding the segments.
+   */
+  OccupancyColumnStore(Path directory) {
+    this.directory = directory;
+  }
+
+  /**
+   * Returns the store shared by the whole process.
+   *
+   * @return The occupancy column store.
+   */
+  public static OccupancyColumnStore getInstance() {
+    return INSTANCE;
+  }
+
+  /**
+   * Checks if the store holds a complete copy of the occupancy records.
+   *
+   * @return True if the reports can be answered from the store.
+   */
+  public synchronized boolean isReady() {
+    return ready;
+  }
+
+  /**
+   * Checks if the store can answer a report: it is ready, and no other process has written
+   * occupancy records since it was built. A store that fell behind is rebuilt first.
+   *
+   * @return True if the report can be answered from the store.
+   * @throws SQLException If there is an issue with the SQL operations.
+   * @throws IOException If there is an issue with input/output operations.
+   * @throws ClassNotFoundException If the required class is not found during database operations.
+   */
+  public synchronized boolean isCurrent() throws SQLException, IOException, ClassNotFoundException {
+    if (!ready) {
+      return false;
+    }
+    if (WriteWatermark.getInstance().otherWrites(ReportCache.Source.OCCUPANCY) != otherWrites) {
+      rebuild();
+    }
+    return ready;
+  }
+
+  /**
+   * Opens the store, backfilling it from the database unless the last run shut down cleanly and
+   * neither the table rows nor the occupancy write count changed since.
+   *
+   * @throws SQLException If there is an issue with the SQL operations.
+   * @throws IOException If there is an issue with input/output operations.
+   * @throws ClassNotFoundException If the required class is not found during database operations.
+   */
+  public synchronized void open() throws SQLException, IOException, ClassNotFoundException {
+    Files.createDirectories(directory);
+    Path readyMarker = directory.resolve(READY_MARKER);
+    String mirrored = null;
+    if (Files.exists(readyMarker)) {
+      mirrored = Files.readString(readyMarker, StandardCharsets.UTF_8).strip();
+      /* Until the next clean shutdown the segments may fall behind the table */
+      Files.delete(readyMarker);
+    }
+    long rowCount = countTableRows();
+    /* Nothing is written by this run yet, so every earlier write counts as another process's */
+    long writes = WriteWatermark.getInstance().otherWrites(ReportCache.Source.OCCUPANCY);
+    if ((rowCount + " " + writes).equals(mirrored)) {
+      loadSegmentList();
+      tableRows.set(rowCount);
+      otherWrites = writes;
+      ready = true;
+    } else {
+      rebuild();
+    }
+    if (!closeHookAdded) {
+      Runtime.getRuntime().addShutdownHook(new Thread(this::close, "occupancy-store-close"));
+      closeHookAdded = true;
+    }
+  }
+
+  /**
+   * Forces every segment to disk and writes the ready marker with the count of rows mirrored and
+   * the occupancy writes of every process, so the next start can reuse the store. The store answers
+   * no more reports until it is opened again.
+   */
+  public synchronized void close() {
+    if (!ready) {
+      return;
+    }
+    ready = false;
+    try {
+      for (MappedByteBuffer segment : mappedSegments.values()) {
+        segment.force();
+      }
+      Path readyMarker = directory.resolve(READY_MARKER);
+      Path temporaryMarker = directory.resolve(READY_MARKER + ".tmp");
+      long writes = WriteWatermark.getInstance().allWrites().get(ReportCache.Source.OCCUPANCY);
+      Files.writeString(temporaryMarker, tableRows.get() + " " + writes, StandardCharsets.UTF_8);
+      Files.move(
+          temporaryMarker,
+          readyMarker,
+          StandardCopyOption.REPLACE_EXISTING,
+          StandardCopyOption.ATOMIC_MOVE);
+    } catch (SQLException
+        | IOException
+        | ClassNotFoundException
+        | RuntimeException exception) {
+      /* Without a marker the store is rebuilt on the next start */
+    }
+  }
+
+  /**
+   * Discards every segment and copies all occupancy records from the database again.
+   *
+   * @throws SQLException If there is an issue with the SQL operations.
+   * @throws IOException If there is an issue with input/output operations.
+   * @throws ClassNotFoundException If the required class is not found during database operations.
+   */
+  public synchronized void rebuild() throws SQLException, IOException, ClassNotFoundException {
+    Connection connection = null;
+    ready = false;
+    tableRows.set(0);
+    mappedSegments.clear();
+    yearsByShelter.clear();
+    try (DirectoryStream<Path> segments =
+        Files.newDirectoryStream(directory, "*" + SEGMENT_SUFFIX)) {
+      for (Path segment : segments) {
+        Files.delete(segment);
+      }
+    }
+
+    /* Read first: a write landing during the copy moves the count again and costs a rebuild */
+    otherWrites = WriteWatermark.getInstance().otherWrites(ReportCache.Source.OCCUPANCY);
+
+    try {
+      connection = DatabaseManager.getConnection();
+
+      PreparedStatement allOccupancy =
+          connection.prepareStatement(
+              "SELECT shelter_id, date, occupancy FROM shelter_occupancy_record ORDER BY shelter_id, date;",
+              ResultSet.TYPE_FORWARD_ONLY,
+              ResultSet.CONCUR_READ_ONLY);
+      /* Stream the rows instead of buffering the whole table in the driver */
+      allOccupancy.setFetchSize(Integer.MIN_VALUE);
+      ResultSet allOccupancyResultSet = allOccupancy.executeQuery();
+      while (allOccupancyResultSet.next()) {
+        write(
+            allOccupancyResultSet.getInt("shelter_id"),
+            allOccupancyResultSet.getDate("date").toLocalDate(),
+            allOccupancyResultSet.getInt("occupancy"));
+        tableRows.incrementAndGet();
+      }
+    } catch (SQLException sqlException) {
+      throw new SQLException(sqlException.getMessage());
+    } catch (IOException ioException) {
+      throw new IOException(ioException.getMessage());
+    } catch (ClassNotFoundException classNotFoundException) {
+      throw new ClassNotFoundException(classNotFoundException.getMessage());
+    } finally {
+      /* Ensure the connection is closed */
+      DatabaseManager.closeConnection(connection);
+    }
+
+    /* Closed years no longer live in the database */
+    OccupancyArchive occupancyArchive = OccupancyArchive.getInstance();
+    if (occupancyArchive.isOpen()) {
+      occupancyArchive.scanAll(this::write);
+    }
+
+    ready = true;
+  }
+
+  /**
+   * Mirrors a successful occupancy declaration into the store.
+   *
+   * @param shelterID The ID of the shelter.
+   * @param date The date of the record.
+   * @param occupancy The declared occupancy.
+   */
+  public synchronized void record(int shelterID, LocalDate date, int occupancy) {
+    if (!ready) {
+      return;
+    }
+    try {
+      write(shelterID, date, occupancy);
+      tableRows.incrementAndGet();
+    } catch (IOException ioException) {
+      /* The database already has the record; a store that missed it must not answer reports */
+      ready = false;
+    }
+  }
+
+  /**
+   * Accounts for records moved from the table to the {@link OccupancyArchive}; the segments keep
+   * them. Called with the archive's lock held, so it does not take the store's.
+   *
+   * @param rows The number of rows deleted from the table.
+   */
+  public void archived(int rows) {
+    tableRows.addAndGet(-rows);
+  }
+
+  /**
+   * Checks if the store holds a record for a shelter on a day.
+   *
+   * @param shelterID The ID of the shelter.
+   * @param date The day to check.
+   * @return True if the day has a record; always false while the store is not ready.
+   * @throws IOException If the segment cannot be read.
+   */
+  public synchronized boolean isRecorded(int shelterID, LocalDate date) throws IOException {
+    NavigableSet<Integer> years = yearsByShelter.get(shelterID);
+    if (!ready || years == null || !years.contains(date.getYear())) {
+      return false;
+    }
+    ByteBuffer segment = segment(shelterID, date.getYear(), false);
+    return segment.getInt((date.getDayOfYear() - 1) * Integer.BYTES) != MISSING;
+  }
+
+  /**
+   * Returns the most recent occupancy record of a shelter.
+   *
+   * @param shelterID The ID of the shelter.
+   * @return The date and occupancy of the latest record, or null if the shelter has none.
+   * @throws IOException If a segment cannot be read.
+   */
+  public synchronized Pair<LocalDate, Integer> latestOccupancy(int shelterID) throws IOException {
+    NavigableSet<Integer> years = yearsByShelter.get(shelterID);
+    if (years == null) {
+      return null;
+    }
+    for (int year : years.descendingSet()) {
+      ByteBuffer segment = segment(shelterID, year, false);
+      for (int day = LocalDate.ofYearDay(year, 1).lengthOfYear(); day >= 1; day--) {
+        int occupancy = segment.getInt((day - 1) * Integer.BYTES);
+        if (occupancy != MISSING) {
+          return new Pair<>(LocalDate.ofYearDay(year, day), occupancy);
+        }
+      }
+    }
+    return null;
+  }
+
+  /**
+   * Returns the lowest and highest occupancy of a shelter between two dates, both included.
+   *
+   * @param shelterID The ID of the shelter.
+   * @param startDate The first day of the range.
+   * @param endDate The last day of the range.
+   * @return The minimum and maximum as a two-element array, or null if there are no records.
+   * @throws IOException If a segment cannot be read.
+   */
+  public synchronized int[] occupancyRange(int shelterID, LocalDate startDate, LocalDate endDate)
+      throws IOException {
+    NavigableSet<Integer> years = yearsByShelter.get(shelterID);
+    if (years == null || endDate.isBefore(startDate)) {
+      return null;
+    }
+
+    int min = Integer.MAX_VALUE;
+    int max = Integer.MIN_VALUE;
+    for (int year : years.subSet(startDate.getYear(), true, endDate.getYear(), true)) {
+      ByteBuffer segment = segment(shelterID, year, false);
+      int fromDay = year == startDate.getYear() ? startDate.getDayOfYear() : 1;
+      int toDay =
+          year == endDate.getYear()
+              ? endDate.getDayOfYear()
+              : LocalDate.ofYearDay(year, 1).lengthOfYear();
+      for (int day = fromDay; day <= toDay; day++) {
+        int occupancy = segment.getInt((day - 1) * Integer.BYTES);
+        if (occupancy != MISSING) {
+          min = Math.min(min, occupancy);
+          max = Math.max(max, occupancy);
+        }
+      }
+    }
+    return max == Integer.MIN_VALUE ? null : new int[] {min, max};
+  }
+
+  /**
+   * Visits the records of a shelter between two dates, both included, in date order.
+   *
+   * @param shelterID The ID of the shelter.
+   * @param startDate The first day of the range.
+   * @param endDate The last day of the range.
+   * @param visitor The callback receiving the records.
+   * @throws IOException If a segment cannot be read or the visitor fails.
+   */
+  public synchronized void scan(
+      int shelterID, LocalDate startDate, LocalDate endDate, OccupancyVisitor visitor)
+      throws IOException {
+    NavigableSet<Integer> years = yearsByShelter.get(shelterID);
+    if (years == null || endDate.isBefore(startDate)) {
+      return;
+    }
+
+    for (int year : years.subSet(startDate.getYear(), true, endDate.getYear(), true)) {
+      ByteBuffer segment = segment(shelterID, year, false);
+      int fromDay = year == startDate.getYear() ? startDate.getDayOfYear() : 1;
+      int toDay =
+          year == endDate.getYear()
+              ? endDate.getDayOfYear()
+              : LocalDate.ofYearDay(year, 1).lengthOfYear();
+      for (int day = fromDay; day <= toDay; day++) {
+        int occupancy = segment.getInt((day - 1) * Integer.BYTES);
+        if (occupancy != MISSING) {
+          visitor.visit(shelterID, LocalDate.ofYearDay(year, day), occupancy);
+        }
+      }
+    }
+  }
+
+  /**
+   * Writes one day of a shelter into its segment, creating the segment if needed.
+   *
+   * @param shelterID The ID of the shelter.
+   * @param date The date of the record.
+   * @param occupancy The declared occupancy.
+   * @throws IOException If the segment cannot be created or mapped.
+   */
+  private void write(int shelterID, LocalDate date, int occupancy) throws IOException {
+    MappedByteBuffer segment = segment(shelterID, date.getYear(), true);
+    segment.putInt((date.getDayOfYear() - 1) * Integer.BYTES, occupancy);
+    yearsByShelter.computeIfAbsent(shelterID, k -> new TreeSet<>()).add(date.getYear());
+  }
+
+  /**
+   * Returns the mapped segment of a shelter-year.
+   *
+   * @param shelterID The ID of the shelter.
+   * @param year The year of the segment.
+   * @param create True to create a missing segment filled with the missing-day sentinel.
+   * @return The mapped segment.
+   * @throws IOException If the segment cannot be created or mapped.
+   */
+  private MappedByteBuffer segment(int shelterID, int year, boolean create) throws IOException {
+    String segmentName = shelterID + "-" + year + SEGMENT_SUFFIX;
+    MappedByteBuffer segment = mappedSegments.get(segmentName);
+    if (segment != null) {
+      return segment;
+    }
+
+    Path segmentPath = directory.resolve(segmentName);
+    try (FileChannel channel =
+        create
+            ? FileChannel.open(
+                segmentPath,
+                StandardOpenOption.CREATE,
+                StandardOpenOption.READ,
+                StandardOpenOption.WRITE)
+            : FileChannel.open(segmentPath, StandardOpenOption.READ, StandardOpenOption.WRITE)) {
+      if (channel.size() < SEGMENT_BYTES) {
+        ByteBuffer missingDays = ByteBuffer.allocate(SEGMENT_BYTES);
+        while (missingDays.hasRemaining()) {
+          missingDays.putInt(MISSING);
+        }
+        missingDays.flip();
+        channel.write(missingDays, 0);
+      }
+      /* The mapping stays valid after the channel is closed */
+      segment = channel.map(FileChannel.MapMode.READ_WRITE, 0, SEGMENT_BYTES);
+    }
+    mappedSegments.put(segmentName, segment);
+    return segment;
+  }
+
+  /**
+   * Counts the rows of shelter_occupancy_record.
+   *
+   * @return The row count.
+   * @throws SQLException If there is an issue with the SQL operations.
+   * @throws IOException If there is an issue with input/output operations.
+   * @throws ClassNotFoundException If the required class is not found during database operations.
+   */
+  private long countTableRows() throws SQLException, IOException, ClassNotFoundException {
+    Connection connection = null;
+
+    try {
+      connection = DatabaseManager.getConnection();
+
+      PreparedStatement countRecords =
+          connection.prepareStatement("SELECT COUNT(*) FROM shelter_occupancy_record;");
+      ResultSet countRecordsResultSet = countRecords.executeQuery();
+      countRecordsResultSet.next();
+      return countRecordsResultSet.getLong(1);
+    } catch (SQLException sqlException) {
+      throw new SQLException(sqlException.getMessage());
+    } catch (IOException ioException) {
+      throw new IOException(ioException.getMessage());
+    } catch (ClassNotFoundException classNotFoundException) {
+      throw new ClassNotFoundException(classNotFoundException.getMessage());
+    } finally {
+      /* Ensure the connection is closed */
+      DatabaseManager.closeConnection(connection);
+    }
+  }
+
+  /**
+   * Reads which shelter-years have a segment from the file names in the store directory.
+   *
+   * @throws IOException If the directory cannot be listed.
+   */
+  private void loadSegmentList() throws IOException {
+    yearsByShelter.clear();
+    try (DirectoryStream<Path> segments =
+        Files.newDirectoryStream(directory, "*" + SEGMENT_SUFFIX)) {
+      for (Path segment : segments) {
+        String fileName = segment.getFileName().toString();
+        String[] shelterAndYear =
+            fileName.substring(0, fileName.length() - SEGMENT_SUFFIX.length()).split("-");
+        yearsByShelter
+            .computeIfAbsent(Integer.parseInt(shelterAndYear[0]), k -> new TreeSet<>())
+            .add(Integer.parseInt(shelterAndYear[1]));
+      }
+    }
+  }
+}
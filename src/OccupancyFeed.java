@@ -0,0 +1,79 @@
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+/**
+ * OccupancyFeed passes every successful occupancy declaration, shelter definition and shelter
+ * service made through this process to the registered {@link OccupancyListener}s, so continuous
+ * queries can follow the data as it is written instead of polling the reports. Events are
+ * published from the same places that append them to the {@link MutationJournal}; in write-behind
+ * mode a declaration is published once it has been journaled locally, which is when the call
+ * reports success.
+ *
+ * <p>A listener that throws does not fail the write, which has already succeeded; the failure is
+ * logged and the other listeners still receive the event.
+ */
+public class OccupancyFeed {
+  private static final OccupancyFeed INSTANCE = new OccupancyFeed();
+  private static final Logger logger = Logger.getLogger("homelesssupport.occupancyfeed");
+
+  private final CopyOnWriteArrayList<OccupancyListener> listeners = new CopyOnWriteArrayList<>();
+
+  private OccupancyFeed() {}
+
+  /**
+   * Returns the feed shared by the whole process.
+   *
+   * @return The occupancy feed.
+   */
+  public static OccupancyFeed getInstance() {
+    return INSTANCE;
+  }
+
+  /**
+   * Registers a listener for the writes that succeed from now on.
+   *
+   * @param listener The listener.
+   */
+  public void register(OccupancyListener listener) {
+    listeners.addIfAbsent(listener);
+  }
+
+  /**
+   * Stops passing writes to a listener.
+   *
+   * @param listener The listener.
+   */
+  public void unregister(OccupancyListener listener) {
+    listeners.remove(listener);
+  }
+
+  /**
+   * Passes a successful mutation to the listeners if it declares an occupancy or defines a shelter;
+   * other mutations are ignored.
+   *
+   * @param event The mutation.
+   */
+  public void publish(MutationEvent event) {
+    if (listeners.isEmpty()) {
+      return;
+    }
+    for (OccupancyListener listener : listeners) {
+      try {
+        if (event.getType() == MutationEvent.Type.DECLARE_OCCUPANCY) {
+          listener.occupancyDeclared(
+              event.getText(0), event.getDate(0), (int) event.getNumber(1));
+        } else if (event.getType() == MutationEvent.Type.DEFINE_SHELTER) {
+          listener.shelterDefined(
+              event.getText(0),
+              new Point((int) event.getNumber(0), (int) event.getNumber(1)),
+              (int) event.getNumber(2));
+        } else if (event.getType() == MutationEvent.Type.SERVICE_FOR_SHELTER) {
+          listener.serviceForShelter(event.getText(0), event.getText(1));
+        }
+      } catch (RuntimeException runtimeException) {
+        logger.log(Level.WARNING, "Occupancy listener failed on " + event, runtimeException);
+      }
+    }
+  }
+}
@@ -0,0 +1,45 @@
+import java.time.LocalDate;
+
+/**
+ * Receives the occupancy declarations, shelter definitions and shelter services made through this
+ * process once they have succeeded, as published by the {@link OccupancyFeed}. Listeners are called
+ * on the writing thread, so they must return quickly and must not call back into the database.
+ */
+public interface OccupancyListener {
+  /**
+   * Called after an occupancy declaration has succeeded.
+   *
+   * @param shelterName The name of the shelter or camp.
+   * @param date The date of the record.
+   * @param occupancy The declared occupancy.
+   */
+  void occupancyDeclared(String shelterName, LocalDate date, int occupancy);
+
+  /**
+   * Called after a shelter has been added or its details updated.
+   *
+   * @param shelterName The name of the shelter or camp.
+   * @param maxCapacity Its capacity.
+   */
+  default void shelterDefined(String shelterName, int maxCapacity) {}
+
+  /**
+   * Called after a shelter has been added or its details updated, with its location. Listeners
+   * that do not need the location only override {@link #shelterDefined(String, int)}.
+   *
+   * @param shelterName The name of the shelter or camp.
+   * @param location Its location.
+   * @param maxCapacity Its capacity.
+   */
+  default void shelterDefined(String shelterName, Point location, int maxCapacity) {
+    shelterDefined(shelterName, maxCapacity);
+  }
+
+  /**
+   * Called after a service has been assigned to a shelter.
+   *
+   * @param shelterName The name of the shelter or camp.
+   * @param serviceName The name of the service.
+   */
+  default void serviceForShelter(String shelterName, String serviceName) {}
+}
@@ -1,5 +1,8 @@
 import java.io.IOException;
 import java.sql.*;
+import java.time.LocalDate;
+import java.util.List;
+import java.util.Map;
 
 /**
  * The OccupancyRecord class represents the occupancy record of a shelter or camp on a specific
@@ -7,7 +10,8 @@ import java.sql.*;
  */
 public class OccupancyRecord {
   private String name;
-  private String date;
+  private ShelterHandle shelter;
+  private LocalDate date;
   private int occupancy;
 
   /**
@@ -17,12 +21,25 @@ public class OccupancyRecord {
    * @param date Date of the occupancy record
    * @param occupancy Occupancy value for the shelter or camp on the specified date
    */
-  public OccupancyRecord(String name, String date, int occupancy) {
+  public OccupancyRecord(String name, LocalDate date, int occupancy) {
     this.name = name;
     this.date = date;
     this.occupancy = occupancy;
   }
 
+  /**
+   * Constructor to initialize an OccupancyRecord object for a shelter handle, which skips the name
+   * lookup.
+   *
+   * @param shelter Handle of the shelter or camp
+   * @param date Date of the occupancy record
+   * @param occupancy Occupancy value for the shelter or camp on the specified date
+   */
+  public OccupancyRecord(ShelterHandle shelter, LocalDate date, int occupancy) {
+    this(shelter.getName(), date, occupancy);
+    this.shelter = shelter;
+  }
+
   /**
    * Declares the shelter or camp occupancy for a specific date, validating constraints.
    *
@@ -39,25 +56,50 @@ public class OccupancyRecord {
     try {
       connection = DatabaseManager.getConnection();
 
-      /* Validating the shelter */
-      int shelterID = helperMethod.isShelterExists(name);
+      /* Validating the shelter; a handle already carries its id */
+      int shelterID = shelter != null ? shelter.getId() : helperMethod.isShelterExists(name);
       if (shelterID == Constants.SHELTER_NOT_FOUND) {
         return false;
       }
 
-      /* Check constraint to ensure 365 occupancy figures for each shelter in a non-leap year */
+      /* Archived years are closed and read-only */
+      int year = date.getYear();
+      if (OccupancyArchive.getInstance().isArchived(shelterID, year)) {
+        return false;
+      }
+
+      /* The counter row and the new record are written together, so the count never drifts */
+      connection.setAutoCommit(false);
+
+      /* Make sure the counter row exists; locking it serialises declarations for the same shelter and year */
+      PreparedStatement ensureYearCount =
+          connection.prepareStatement(
+              "insert into shelter_occupancy_year_count (shelter_id, year, record_count) values (?, ?, 0) on duplicate key update record_count = record_count");
+      ensureYearCount.setInt(1, shelterID);
+      ensureYearCount.setInt(2, year);
+      ensureYearCount.executeUpdate();
+
+      /* Check constraint to ensure 365 occupancy figures for each shelter in a non-leap year, read from the counter by primary key instead of counting the shelter's history */
       PreparedStatement shelterOccupancyInAYear =
           connection.prepareStatement(
-              "SELECT COUNT(*) FROM shelter_occupancy_record WHERE shelter_id = ? AND YEAR(date) = YEAR(?);");
+              "select record_count from shelter_occupancy_year_count where shelter_id = ? and year = ? for update;");
       shelterOccupancyInAYear.setInt(1, shelterID);
-      shelterOccupancyInAYear.setDate(2, Date.valueOf(date));
+      shelterOccupancyInAYear.setInt(2, year);
       ResultSet shelterOccupancyInAYearResultSet = shelterOccupancyInAYear.executeQuery();
+
+      /* Checked again under the counter's lock, which archiving takes after closing the year */
+      if (OccupancyArchive.getInstance().isArchived(shelterID, year)) {
+        DatabaseManager.rollback(connection);
+        return false;
+      }
+
       if (shelterOccupancyInAYearResultSet.next()) {
 
         int shelterOccupancyInAYearCount = shelterOccupancyInAYearResultSet.getInt(1);
-        if (helperMethod.isLeapYear(date)
+        if (date.isLeapYear()
             ? shelterOccupancyInAYearCount > 366
             : shelterOccupancyInAYearCount > 365) {
+          DatabaseManager.rollback(connection);
           return false;
         }
       }
@@ -70,6 +112,7 @@ public class OccupancyRecord {
       if (shelterCapacityResultSet.next()) {
         int shelterCapacityValue = shelterCapacityResultSet.getInt("capacity");
         if (shelterCapacityValue < occupancy) {
+          DatabaseManager.rollback(connection);
           return false;
         }
       }
@@ -82,7 +125,25 @@ public class OccupancyRecord {
       insertShelterOccupancy.setInt(3, shelterID);
       insertShelterOccupancy.executeUpdate();
 
+      PreparedStatement incrementYearCount =
+          connection.prepareStatement(
+              "update shelter_occupancy_year_count set record_count = record_count + 1 where shelter_id = ? and year = ?;");
+      incrementYearCount.setInt(1, shelterID);
+      incrementYearCount.setInt(2, year);
+      incrementYearCount.executeUpdate();
+
+      OccupancySketchStore.persist(
+          connection,
+          Map.of(OccupancySketchStore.shelterMonth(shelterID, date), List.of(occupancy)));
+      WriteWatermark.getInstance().recordWrite(connection, ReportCache.Source.OCCUPANCY);
+
+      connection.commit();
+
+      OccupancyColumnStore.getInstance().record(shelterID, date, occupancy);
+      OccupancySketchStore.getInstance().record(shelterID, date, occupancy);
+      ReportCache.getInstance().invalidate(ReportCache.Source.OCCUPANCY, date);
     } catch (SQLException sqlException) {
+      DatabaseManager.rollback(connection);
       throw new SQLException(sqlException.getMessage());
     } catch (IOException ioException) {
       throw new IOException(ioException.getMessage());
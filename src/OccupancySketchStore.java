@@ -0,0 +1,415 @@
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardCopyOption;
+import java.sql.Connection;
+import java.sql.Date;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.time.LocalDate;
+import java.time.YearMonth;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+
+/**
+ * OccupancySketchStore keeps a {@link KllSketch} of the occupancy declarations of every shelter in
+ * every month. The sketches are persisted in the shelter_occupancy_sketch table, updated in the
+ * same transaction as the records they describe, and mirrored in memory so percentile reports
+ * merge whole months without reading the database. A month holds at most a few dozen declarations,
+ * well under the sketch capacity, so each monthly sketch is exact; the error bound only applies
+ * once months are merged.
+ *
+ * <p>Only a process that has opened the store adds its declarations to the table; the others
+ * leave it behind. A clean shutdown writes a ready marker holding the occupancy write count of
+ * every process from the {@link WriteWatermark}. Opening deletes the marker and loads the table
+ * only if the other processes' count still equals it. Otherwise the sketches are built again from
+ * the records and the archive: after a crash, right after the migration that creates the table,
+ * or when rows were written by another process or while the store was switched off. While
+ * running, the reports check the count through {@link #isCurrent()}, which rebuilds the store
+ * when another process wrote occupancy records since it was built.
+ */
+public class OccupancySketchStore {
+  private static final OccupancySketchStore INSTANCE = new OccupancySketchStore();
+
+  private static final int WRITE_BATCH_SIZE = 1000;
+  private static final String READY_MARKER = "sketches.ready";
+
+  private final Path directory;
+  private final Map<Integer, TreeMap<YearMonth, KllSketch>> sketches = new HashMap<>();
+  private final Map<Integer, String> names = new HashMap<>();
+  private boolean ready = false;
+  private boolean closeHookAdded = false;
+  /* Set once opened; read by writers in their transactions without the store's lock */
+  private volatile boolean maintained = false;
+  /* Occupancy writes of other processes the sketches include */
+  private long otherWrites;
+
+  private OccupancySketchStore() {
+    this(Paths.get(ConfigurationManager.getString("occupancySketches.directory", "data/sketches")));
+  }
+
+  /**
+   * Creates a store with a ready marker of its own, apart from the one shared by the process.
+   *
+   * @param directory The directory holding the ready marker.
+   */
+  OccupancySketchStore(Path directory) {
+    this.directory = directory;
+  }
+
+  /**
+   * Returns the store shared by the whole process.
+   *
+   * @return The occupancy sketch store.
+   */
+  public static OccupancySketchStore getInstance() {
+    return INSTANCE;
+  }
+
+  /**
+   * Checks if the sketches are in memory and can answer queries.
+   *
+   * @return True once the store has been opened.
+   */
+  public synchronized boolean isReady() {
+    return ready;
+  }
+
+  /**
+   * Checks if the store can answer a report: it is ready, and no other process has written
+   * occupancy records since it was built. A store that fell behind is rebuilt first.
+   *
+   * @return True if the report can be answered from the store.
+   * @throws SQLException If there is an issue with the SQL operations.
+   * @throws IOException If there is an issue with input/output operations.
+   * @throws ClassNotFoundException If the required class is not found during database operations.
+   */
+  public synchronized boolean isCurrent() throws SQLException, IOException, ClassNotFoundException {
+    if (!ready) {
+      return false;
+    }
+    if (WriteWatermark.getInstance().otherWrites(ReportCache.Source.OCCUPANCY) != otherWrites) {
+      rebuild();
+    }
+    return ready;
+  }
+
+  /**
+   * Loads the persisted sketches if the last run shut down cleanly and no other process has
+   * written occupancy records since, and builds them from the records otherwise. From then on the
+   * declarations of this process are added to the table.
+   *
+   * @throws SQLException If there is an issue with the SQL operations.
+   * @throws IOException If there is an issue with input/output operations.
+   * @throws ClassNotFoundException If the required class is not found during database operations.
+   */
+  public synchronized void open() throws SQLException, IOException, ClassNotFoundException {
+    ready = false;
+    Files.createDirectories(directory);
+    Path readyMarker = directory.resolve(READY_MARKER);
+    String stamped = null;
+    if (Files.exists(readyMarker)) {
+      stamped = Files.readString(readyMarker, StandardCharsets.UTF_8).strip();
+      /* Until the next clean shutdown the table may fall behind the records */
+      Files.delete(readyMarker);
+    }
+    maintained = true;
+    /* Nothing is written by this run yet, so every earlier write counts as another process's */
+    long writes = WriteWatermark.getInstance().otherWrites(ReportCache.Source.OCCUPANCY);
+    if (String.valueOf(writes).equals(stamped)) {
+      load();
+      otherWrites = writes;
+    } else {
+      rebuild();
+    }
+    ready = true;
+    if (!closeHookAdded) {
+      Runtime.getRuntime().addShutdownHook(new Thread(this::close, "occupancy-sketches-close"));
+      closeHookAdded = true;
+    }
+  }
+
+  /**
+   * Writes the ready marker with the occupancy writes of every process, so the next start can load
+   * the table. The store answers no more reports until it is opened again.
+   */
+  public synchronized void close() {
+    if (!ready) {
+      return;
+    }
+    ready = false;
+    try {
+      Path readyMarker = directory.resolve(READY_MARKER);
+      Path temporaryMarker = directory.resolve(READY_MARKER + ".tmp");
+      long writes = WriteWatermark.getInstance().allWrites().get(ReportCache.Source.OCCUPANCY);
+      Files.writeString(temporaryMarker, String.valueOf(writes), StandardCharsets.UTF_8);
+      Files.move(
+          temporaryMarker,
+          readyMarker,
+          StandardCopyOption.REPLACE_EXISTING,
+          StandardCopyOption.ATOMIC_MOVE);
+    } catch (SQLException
+        | IOException
+        | ClassNotFoundException
+        | RuntimeException exception) {
+      /* Without a marker the sketches are rebuilt on the next start */
+    }
+  }
+
+  /**
+   * Replaces the sketches in memory with the ones persisted in the table.
+   *
+   * @throws SQLException If there is an issue with the SQL operations.
+   * @throws IOException If there is an issue with input/output operations.
+   * @throws ClassNotFoundException If the required class is not found during database operations.
+   */
+  private void load() throws SQLException, IOException, ClassNotFoundException {
+    Connection connection = null;
+    sketches.clear();
+    names.clear();
+
+    try {
+      connection = DatabaseManager.getConnection();
+
+      loadNames(connection);
+      PreparedStatement allSketches =
+          connection.prepareStatement(
+              "SELECT shelter_id, month, sketch FROM shelter_occupancy_sketch;");
+      allSketches.setFetchSize(Integer.MIN_VALUE);
+      ResultSet allSketchesResultSet = allSketches.executeQuery();
+      while (allSketchesResultSet.next()) {
+        sketches
+            .computeIfAbsent(allSketchesResultSet.getInt("shelter_id"), k -> new TreeMap<>())
+            .put(
+                YearMonth.from(allSketchesResultSet.getDate("month").toLocalDate()),
+                KllSketch.fromBytes(allSketchesResultSet.getBytes("sketch")));
+      }
+    } catch (SQLException sqlException) {
+      throw new SQLException(sqlException.getMessage());
+    } catch (IOException ioException) {
+      throw new IOException(ioException.getMessage());
+    } catch (ClassNotFoundException classNotFoundException) {
+      throw new ClassNotFoundException(classNotFoundException.getMessage());
+    } finally {
+      /* Ensure the connection is closed */
+      DatabaseManager.closeConnection(connection);
+    }
+  }
+
+  /**
+   * Replaces every persisted sketch with one built from the occupancy records in the database and
+   * the archive.
+   *
+   * @throws SQLException If there is an issue with the SQL operations.
+   * @throws IOException If there is an issue with input/output operations.
+   * @throws ClassNotFoundException If the required class is not found during database operations.
+   */
+  public synchronized void rebuild() throws SQLException, IOException, ClassNotFoundException {
+    Connection connection = null;
+    sketches.clear();
+    names.clear();
+    /* Read first: a write landing during the copy moves the count again and costs a rebuild */
+    otherWrites = WriteWatermark.getInstance().otherWrites(ReportCache.Source.OCCUPANCY);
+
+    OccupancyVisitor builder =
+        (shelterID, date, occupancy) ->
+            sketches
+                .computeIfAbsent(shelterID, k -> new TreeMap<>())
+                .computeIfAbsent(YearMonth.from(date), k -> new KllSketch())
+                .update(occupancy);
+
+    try {
+      connection = DatabaseManager.getConnection();
+
+      loadNames(connection);
+      OccupancyArchive occupancyArchive = OccupancyArchive.getInstance();
+      if (occupancyArchive.isOpen()) {
+        occupancyArchive.scanAll(builder);
+      }
+      PreparedStatement allOccupancy =
+          connection.prepareStatement(
+              "SELECT shelter_id, date, occupancy FROM shelter_occupancy_record;");
+      allOccupancy.setFetchSize(Integer.MIN_VALUE);
+      ResultSet allOccupancyResultSet = allOccupancy.executeQuery();
+      while (allOccupancyResultSet.next()) {
+        builder.visit(
+            allOccupancyResultSet.getInt("shelter_id"),
+            allOccupancyResultSet.getDate("date").toLocalDate(),
+            allOccupancyResultSet.getInt("occupancy"));
+      }
+      allOccupancyResultSet.close();
+
+      connection.setAutoCommit(false);
+      PreparedStatement clearSketches =
+          connection.prepareStatement("DELETE FROM shelter_occupancy_sketch;");
+      clearSketches.executeUpdate();
+      PreparedStatement insertSketch =
+          connection.prepareStatement(
+              "insert into shelter_occupancy_sketch (shelter_id, month, record_count, sketch) values (?, ?, ?, ?)");
+      int batched = 0;
+      for (Map.Entry<Integer, TreeMap<YearMonth, KllSketch>> shelter : sketches.entrySet()) {
+        for (Map.Entry<YearMonth, KllSketch> month : shelter.getValue().entrySet()) {
+          insertSketch.setInt(1, shelter.getKey());
+          insertSketch.setDate(2, Date.valueOf(month.getKey().atDay(1)));
+          insertSketch.setLong(3, month.getValue().getCount());
+          insertSketch.setBytes(4, month.getValue().toBytes());
+          insertSketch.addBatch();
+          if (++batched % WRITE_BATCH_SIZE == 0) {
+            insertSketch.executeBatch();
+          }
+        }
+      }
+      insertSketch.executeBatch();
+      connection.commit();
+    } catch (SQLException sqlException) {
+      DatabaseManager.rollback(connection);
+      throw new SQLException(sqlException.getMessage());
+    } catch (IOException ioException) {
+      DatabaseManager.rollback(connection);
+      throw new IOException(ioException.getMessage());
+    } catch (ClassNotFoundException classNotFoundException) {
+      throw new ClassNotFoundException(classNotFoundException.getMessage());
+    } finally {
+      /* Ensure the connection is closed */
+      DatabaseManager.closeConnection(connection);
+    }
+  }
+
+  /**
+   * Adds declarations to their persisted monthly sketches within the writer's open transaction.
+   * Each sketch row is read for update, so concurrent writers to the same shelter-month take
+   * turns. Nothing is written unless the store has been opened in this process; the table it
+   * leaves behind is rebuilt by the next open, which finds the occupancy write count moved.
+   *
+   * @param connection The writer's connection, not in auto-commit mode.
+   * @param additions The occupancies to add, by {@link #shelterMonth(int, LocalDate)}.
+   * @throws SQLException If there is an issue with the SQL operations.
+   */
+  public static void persist(Connection connection, Map<Long, List<Integer>> additions)
+      throws SQLException {
+    if (additions.isEmpty() || !INSTANCE.maintained) {
+      return;
+    }
+    try (PreparedStatement currentSketch =
+            connection.prepareStatement(
+                "select sketch from shelter_occupancy_sketch where shelter_id = ? and month = ? for update;");
+        PreparedStatement upsertSketch =
+            connection.prepareStatement(
+                "insert into shelter_occupancy_sketch (shelter_id, month, record_count, sketch) values (?, ?, ?, ?) on duplicate key update record_count = values(record_count), sketch = values(sketch)")) {
+      for (Map.Entry<Long, List<Integer>> addition : additions.entrySet()) {
+        int shelterID = (int) (addition.getKey() >>> 32);
+        Date month = Date.valueOf(monthOf(addition.getKey()).atDay(1));
+
+        currentSketch.setInt(1, shelterID);
+        currentSketch.setDate(2, month);
+        KllSketch sketch;
+        try (ResultSet currentSketchResultSet = currentSketch.executeQuery()) {
+          sketch =
+              currentSketchResultSet.next()
+                  ? KllSketch.fromBytes(currentSketchResultSet.getBytes("sketch"))
+                  : new KllSketch();
+        }
+        for (int occupancy : addition.getValue()) {
+          sketch.update(occupancy);
+        }
+
+        upsertSketch.setInt(1, shelterID);
+        upsertSketch.setDate(2, month);
+        upsertSketch.setLong(3, sketch.getCount());
+        upsertSketch.setBytes(4, sketch.toBytes());
+        upsertSketch.addBatch();
+      }
+      upsertSketch.executeBatch();
+    }
+  }
+
+  /**
+   * Packs a shelter and the month of a date into the key used by {@link #persist(Connection,
+   * Map)}.
+   *
+   * @param shelterID The ID of the shelter.
+   * @param date A date in the month.
+   * @return The key.
+   */
+  public static long shelterMonth(int shelterID, LocalDate date) {
+    return ((long) shelterID << 32) | (date.getYear() * 12L + date.getMonthValue() - 1);
+  }
+
+  /**
+   * Mirrors a committed declaration into the in-memory sketch of its month.
+   *
+   * @param shelterID The ID of the shelter.
+   * @param date The date of the record.
+   * @param occupancy The declared occupancy.
+   */
+  public synchronized void record(int shelterID, LocalDate date, int occupancy) {
+    if (!ready) {
+      return;
+    }
+    sketches
+        .computeIfAbsent(shelterID, k -> new TreeMap<>())
+        .computeIfAbsent(YearMonth.from(date), k -> new KllSketch())
+        .update(occupancy);
+  }
+
+  /**
+   * Merges the monthly sketches of every shelter over a span of whole months.
+   *
+   * @param firstMonth The first month, included.
+   * @param lastMonth The last month, included.
+   * @return Shelter ID mapped to a new sketch of its declarations in the span; shelters without
+   *     declarations in it are left out.
+   */
+  public synchronized Map<Integer, KllSketch> merge(YearMonth firstMonth, YearMonth lastMonth) {
+    Map<Integer, KllSketch> result = new HashMap<>();
+    if (lastMonth.isBefore(firstMonth)) {
+      return result;
+    }
+    for (Map.Entry<Integer, TreeMap<YearMonth, KllSketch>> shelter : sketches.entrySet()) {
+      Map<YearMonth, KllSketch> months = shelter.getValue().subMap(firstMonth, true, lastMonth, true);
+      for (KllSketch month : months.values()) {
+        result.computeIfAbsent(shelter.getKey(), k -> new KllSketch()).merge(month);
+      }
+    }
+    return result;
+  }
+
+  /**
+   * Returns the name of a shelter as known to the store.
+   *
+   * @param shelterID The ID of the shelter.
+   * @return The name, or null for a shelter defined after the store was opened and not yet named.
+   */
+  public synchronized String getName(int shelterID) {
+    return names.get(shelterID);
+  }
+
+  /**
+   * Records the name of a shelter the store did not know.
+   *
+   * @param shelterID The ID of the shelter.
+   * @param name Its name.
+   */
+  public synchronized void putName(int shelterID, String name) {
+    names.put(shelterID, name);
+  }
+
+  private void loadNames(Connection connection) throws SQLException {
+    PreparedStatement allShelters =
+        connection.prepareStatement("SELECT shelter_id, name FROM shelter;");
+    ResultSet allSheltersResultSet = allShelters.executeQuery();
+    while (allSheltersResultSet.next()) {
+      names.put(allSheltersResultSet.getInt("shelter_id"), allSheltersResultSet.getString("name"));
+    }
+  }
+
+  private static YearMonth monthOf(long shelterMonth) {
+    int monthIndex = (int) shelterMonth;
+    return YearMonth.of(monthIndex / 12, monthIndex % 12 + 1);
+  }
+}
@@ -0,0 +1,15 @@
+import java.io.IOException;
+import java.time.LocalDate;
+
+/** A callback receiving occupancy records one at a time while a store is scanned. */
+public interface OccupancyVisitor {
+  /**
+   * Receives one occupancy record.
+   *
+   * @param shelterID The ID of the shelter.
+   * @param date The date of the record.
+   * @param occupancy The declared occupancy.
+   * @throws IOException If the visitor cannot store the record.
+   */
+  void visit(int shelterID, LocalDate date, int occupancy) throws IOException;
+}
@@ -0,0 +1,862 @@
+import java.io.BufferedWriter;
+import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardOpenOption;
+import java.sql.Connection;
+import java.sql.Date;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.SQLIntegrityConstraintViolationException;
+import java.time.LocalDate;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+import java.util.zip.CRC32;
+
+/**
+ * OccupancyWriteBehind is the optional write-behind mode of shelter occupancy declarations. A
+ * declaration is validated at once against cached shelter capacities and per-year record counts,
+ * appended to a local journal that is forced to disk, and acknowledged. Declarations that arrive
+ * while the journal is being forced share the next force. A background thread then writes the
+ * accepted records to the database in group commits, whenever "writeBehind.batchSize" records are
+ * waiting or "writeBehind.flushIntervalMillis" has passed.
+ *
+ * <p>Every journal entry carries a sequence number, and each group commit stores the highest one it
+ * wrote in the journal_watermark table within the same transaction. On start the entries above the
+ * watermark are replayed, so an accepted record reaches the database exactly once even if the
+ * process stops between acknowledging and flushing it. A day is only accepted once it is in neither
+ * the waiting records nor the table, read from a snapshot that covers every record the buffer has
+ * committed, so a day declared twice is refused at once. A record the database still refuses, for
+ * example a day another process declared in the meantime, is written to "occupancy-rejected.csv"
+ * in the journal directory instead of being dropped. Only committed records are appended to the
+ * {@link MutationJournal}.
+ *
+ * <p>The cached year counts assume this buffer is the only writer of occupancy records while it
+ * is enabled. Cached capacities follow the shelter definitions published on the {@link
+ * OccupancyFeed}. Reports read the database and column store, so they see a record once it is
+ * flushed.
+ */
+public class OccupancyWriteBehind implements OccupancyListener {
+  private static final OccupancyWriteBehind INSTANCE = new OccupancyWriteBehind();
+
+  private static final Logger logger = Logger.getLogger("homelesssupport.writebehind");
+  private static final String JOURNAL_NAME = "occupancy";
+  private static final String JOURNAL_FILE = "occupancy.journal";
+  private static final String REJECTED_FILE = "occupancy-rejected.csv";
+
+  /* Sequence (8), shelter ID (4), epoch day (4), occupancy (4), CRC32 of the first 20 bytes (4) */
+  private static final int ENTRY_BYTES = 24;
+
+  private final Path directory;
+  private final int batchSize = ConfigurationManager.getInt("writeBehind.batchSize", 500);
+  private final long flushIntervalMillis =
+      ConfigurationManager.getLong("writeBehind.flushIntervalMillis", 200);
+  private final int maxPending = ConfigurationManager.getInt("writeBehind.maxPending", 100_000);
+  private final long retryIntervalMillis =
+      ConfigurationManager.getLong("writeBehind.retryIntervalMillis", 5_000);
+
+  /* Shelter name to {shelter ID, capacity}; read without holding the buffer's lock */
+  private final Map<String, int[]> shelters = new ConcurrentHashMap<>();
+  /* Shelter ID to the name declarations use, for the mutation journal */
+  private final Map<Integer, String> shelterNames = new ConcurrentHashMap<>();
+
+  /* Held while forcing the journal, then the buffer's lock; the highest sequence on disk */
+  private final Object forceLock = new Object();
+  private long forcedSequence;
+
+  /* Everything below is guarded by the buffer's lock */
+  private final List<JournalEntry> pending = new ArrayList<>();
+  private final Set<Long> pendingDays = new HashSet<>();
+  private final Map<Long, Integer> yearCounts = new HashMap<>();
+  private FileChannel journal;
+  private long nextSequence;
+  /* Every entry removed from the waiting records has a sequence at or below this one */
+  private long committedSequence;
+  private boolean started = false;
+  private boolean closed = false;
+  private Thread flusher;
+
+  private OccupancyWriteBehind() {
+    this(Paths.get(ConfigurationManager.getString("writeBehind.directory", "data/writebehind")));
+  }
+
+  /**
+   * Creates a buffer journaling to a directory of its own, apart from the one shared by the
+   * process.
+   *
+   * @param directory The directory holding the journal and the rejected records.
+   */
+  OccupancyWriteBehind(Path directory) {
+    this.directory = directory;
+  }
+
+  /**
+   * Returns the buffer shared by the whole process.
+   *
+   * @return The occupancy write-behind buffer.
+   */
+  public static OccupancyWriteBehind getInstance() {
+    return INSTANCE;
+  }
+
+  /**
+   * Checks if declarations are currently taken by the buffer.
+   *
+   * @return True once the buffer is started and until it is closed.
+   */
+  public synchronized boolean isStarted() {
+    return started && !closed;
+  }
+
+  /**
+   * Opens the journal, queues the entries that were accepted but never committed, and starts the
+   * background flusher.
+   *
+   * @throws SQLException If there is an issue with the SQL operations.
+   * @throws IOException If there is an issue with input/output operations.
+   * @throws ClassNotFoundException If the required class is not found during database operations.
+   */
+  public synchronized void start() throws SQLException, IOException, ClassNotFoundException {
+    if (started) {
+      return;
+    }
+    Files.createDirectories(directory);
+    long watermark = readWatermark();
+    nextSequence = watermark + 1;
+    committedSequence = watermark;
+
+    journal =
+        FileChannel.open(
+            directory.resolve(JOURNAL_FILE),
+            StandardOpenOption.CREATE,
+            StandardOpenOption.READ,
+            StandardOpenOption.WRITE);
+    ByteBuffer entryBuffer = ByteBuffer.allocate(ENTRY_BYTES);
+    long position = 0;
+    while (position + ENTRY_BYTES <= journal.size()) {
+      entryBuffer.clear();
+      while (entryBuffer.hasRemaining()) {
+        journal.read(entryBuffer, position + entryBuffer.position());
+      }
+      entryBuffer.flip();
+      JournalEntry entry = JournalEntry.decode(entryBuffer);
+      if (entry == null) {
+        /* A torn write at the tail was never acknowledged */
+        break;
+      }
+      if (entry.sequence > watermark) {
+        queue(entry);
+      }
+      nextSequence = Math.max(nextSequence, entry.sequence + 1);
+      position += ENTRY_BYTES;
+    }
+    journal.truncate(position);
+    journal.position(position);
+
+    started = true;
+    OccupancyFeed.getInstance().register(this);
+    flusher = new Thread(this::flushLoop, "occupancy-write-behind");
+    flusher.setDaemon(true);
+    flusher.start();
+    Runtime.getRuntime().addShutdownHook(new Thread(this::close, "occupancy-write-behind-close"));
+  }
+
+  /**
+   * Validates a declaration and, if it is accepted, journals it for the next group commit.
+   *
+   * @param name Name of the shelter or camp.
+   * @param date Date of the record.
+   * @param occupancy Occupancy of the shelter or camp.
+   * @return True if the declaration was accepted.
+   * @throws SQLException If there is an issue with the SQL operations, including when the day
+   *     cannot be checked against the table; the declaration is then not acknowledged.
+   * @throws IOException If the journal cannot be written or the buffer is closed. If only the
+   *     force failed, the record may still be committed by the flusher.
+   * @throws ClassNotFoundException If the required class is not found during database operations.
+   */
+  public boolean declare(String name, LocalDate date, int occupancy)
+      throws SQLException, IOException, ClassNotFoundException {
+    int[] shelter = resolveShelter(name);
+    if (shelter == null || shelter[1] < occupancy) {
+      return false;
+    }
+    int shelterID = shelter[0];
+
+    /* Archived years are closed and read-only */
+    if (OccupancyArchive.getInstance().isArchived(shelterID, date.getYear())) {
+      return false;
+    }
+
+    /* The committed count is read before taking the lock, so declarations never wait on a query */
+    long shelterYear = ((long) shelterID << 32) | date.getYear();
+    while (!hasYearCount(shelterYear)) {
+      loadYearCount(shelterID, date.getYear());
+    }
+
+    long sequence;
+    while (true) {
+      /* Read before taking the lock as well; the snapshot is checked against the commits below */
+      long[] recorded = readRecorded(shelterID, date);
+
+      synchronized (this) {
+        while (pending.size() >= maxPending && !closed) {
+          try {
+            wait();
+          } catch (InterruptedException interruptedException) {
+            Thread.currentThread().interrupt();
+            throw new InterruptedIOException(
+                "Interrupted while waiting for the write-behind buffer");
+          }
+        }
+        if (closed) {
+          throw new IOException("The occupancy write-behind buffer is closed.");
+        }
+
+        /* A group commit after the snapshot may hold the day without it waiting; read again */
+        if (committedSequence > recorded[1]) {
+          continue;
+        }
+
+        /* Each shelter has a single occupancy record for a given date */
+        long shelterDay = ((long) shelterID << 32) | (date.toEpochDay() & 0xFFFFFFFFL);
+        if (recorded[0] != 0 || pendingDays.contains(shelterDay)) {
+          return false;
+        }
+
+        /* Same limit as the synchronous declaration, checked against the cached counter */
+        int yearCount = yearCounts.getOrDefault(shelterYear, 0);
+        if (date.isLeapYear() ? yearCount > 366 : yearCount > 365) {
+          return false;
+        }
+
+        JournalEntry entry = new JournalEntry(nextSequence, shelterID, date, occupancy);
+        ByteBuffer encoded = entry.encode();
+        while (encoded.hasRemaining()) {
+          journal.write(encoded);
+        }
+        sequence = nextSequence;
+        nextSequence++;
+        queue(entry);
+
+        if (pending.size() >= batchSize) {
+          notifyAll();
+        }
+        break;
+      }
+    }
+
+    /* The caller is only told about records that survive a crash */
+    awaitForced(sequence);
+    return true;
+  }
+
+  /**
+   * Waits until the journal is on disk up to a sequence. The first waiter forces everything written
+   * so far; the ones that queued behind it find their entries already covered and return.
+   *
+   * @param sequence The sequence of the entry to wait for.
+   * @throws IOException If the journal cannot be forced.
+   */
+  private void awaitForced(long sequence) throws IOException {
+    synchronized (forceLock) {
+      if (forcedSequence >= sequence) {
+        return;
+      }
+      long written;
+      synchronized (this) {
+        written = nextSequence - 1;
+      }
+      journal.force(false);
+      forcedSequence = written;
+    }
+  }
+
+  /**
+   * Follows capacity changes, so declarations above a reduced capacity are refused.
+   *
+   * @param shelterName The name of the shelter or camp.
+   * @param maxCapacity Its capacity.
+   */
+  @Override
+  public void shelterDefined(String shelterName, int maxCapacity) {
+    shelters.computeIfPresent(shelterName, (name, shelter) -> new int[] {shelter[0], maxCapacity});
+  }
+
+  /** Declarations are validated by {@link #declare(String, LocalDate, int)} itself. */
+  @Override
+  public void occupancyDeclared(String shelterName, LocalDate date, int occupancy) {}
+
+  /**
+   * Blocks until every accepted record has been committed to the database.
+   *
+   * @throws IOException If the wait is interrupted.
+   */
+  public synchronized void flush() throws IOException {
+    notifyAll();
+    while (!pending.isEmpty() && started) {
+      try {
+        wait(flushIntervalMillis);
+      } catch (InterruptedException interruptedException) {
+        Thread.currentThread().interrupt();
+        throw new InterruptedIOException("Interrupted while flushing the write-behind buffer");
+      }
+    }
+  }
+
+  /**
+   * Stops taking declarations and gives the flusher one interval to commit what is waiting. What
+   * it cannot commit stays in the journal and is replayed on the next start.
+   */
+  public void close() {
+    Thread flusherThread;
+    synchronized (this) {
+      if (!started || closed) {
+        return;
+      }
+      closed = true;
+      notifyAll();
+      flusherThread = flusher;
+      OccupancyFeed.getInstance().unregister(this);
+    }
+    try {
+      flusherThread.join(Math.max(flushIntervalMillis, retryIntervalMillis));
+    } catch (InterruptedException interruptedException) {
+      Thread.currentThread().interrupt();
+    }
+  }
+
+  /** Writes waiting records in group commits until the buffer is closed and drained. */
+  private void flushLoop() {
+    while (true) {
+      List<JournalEntry> batch;
+      synchronized (this) {
+        long deadline = System.currentTimeMillis() + flushIntervalMillis;
+        long remaining = flushIntervalMillis;
+        while (!closed && pending.size() < batchSize && remaining > 0) {
+          try {
+            wait(remaining);
+          } catch (InterruptedException interruptedException) {
+            return;
+          }
+          remaining = deadline - System.currentTimeMillis();
+        }
+        if (pending.isEmpty()) {
+          if (closed) {
+            return;
+          }
+          continue;
+        }
+        batch = new ArrayList<>(pending.subList(0, Math.min(pending.size(), batchSize)));
+      }
+
+      try {
+        commit(batch);
+      } catch (SQLException
+          | IOException
+          | ClassNotFoundException
+          | RuntimeException exception) {
+        /* The records stay queued for another attempt; a dead flusher would block every producer */
+        logger.log(Level.WARNING, "Occupancy group commit failed, retrying", exception);
+        synchronized (this) {
+          if (closed) {
+            return;
+          }
+          try {
+            wait(retryIntervalMillis);
+          } catch (InterruptedException interruptedException) {
+            return;
+          }
+        }
+        continue;
+      }
+
+      synchronized (this) {
+        pending.subList(0, batch.size()).clear();
+        committedSequence = batch.get(batch.size() - 1).sequence;
+        for (JournalEntry entry : batch) {
+          pendingDays.remove(entry.shelterDay());
+        }
+        if (pending.isEmpty()) {
+          /* Everything journaled is committed and covered by the watermark */
+          try {
+            journal.truncate(0);
+            journal.position(0);
+          } catch (IOException ioException) {
+            logger.log(Level.WARNING, "Occupancy journal could not be truncated", ioException);
+          }
+        }
+        notifyAll();
+      }
+    }
+  }
+
+  /**
+   * Commits a batch in one transaction together with the watermark. If the batch is refused, its
+   * records are committed one at a time and the ones the database refuses are set aside. The
+   * committed records are then journaled in the {@link MutationJournal}, never before.
+   *
+   * @param batch The records to commit, in sequence order.
+   * @throws SQLException If there is an issue with the SQL operations.
+   * @throws IOException If there is an issue with input/output operations.
+   * @throws ClassNotFoundException If the required class is not found during database operations.
+   */
+  private void commit(List<JournalEntry> batch)
+      throws SQLException, IOException, ClassNotFoundException {
+    Connection connection = null;
+    List<JournalEntry> committed = new ArrayList<>();
+
+    try {
+      connection = DatabaseManager.getConnection();
+      /* Records replayed from an earlier run name shelters this run has not resolved */
+      for (JournalEntry entry : batch) {
+        if (!shelterNames.containsKey(entry.shelterID)) {
+          readShelterName(connection, entry.shelterID);
+        }
+      }
+      connection.setAutoCommit(false);
+
+      try {
+        insert(connection, batch);
+        connection.commit();
+        committed.addAll(batch);
+      } catch (SQLException batchException) {
+        DatabaseManager.rollback(connection);
+        for (JournalEntry entry : batch) {
+          try {
+            insert(connection, List.of(entry));
+            connection.commit();
+            committed.add(entry);
+          } catch (SQLException sqlException) {
+            DatabaseManager.rollback(connection);
+            if (!isConstraintViolation(sqlException)) {
+              throw sqlException;
+            }
+            reject(entry, sqlException.getMessage());
+            updateWatermark(connection, entry.sequence);
+            connection.commit();
+          }
+        }
+      }
+    } catch (SQLException sqlException) {
+      DatabaseManager.rollback(connection);
+      throw new SQLException(sqlException.getMessage());
+    } catch (IOException ioException) {
+      throw new IOException(ioException.getMessage());
+    } catch (ClassNotFoundException classNotFoundException) {
+      throw new ClassNotFoundException(classNotFoundException.getMessage());
+    } finally {
+      /* Ensure the connection is closed */
+      DatabaseManager.closeConnection(connection);
+    }
+
+    /* Refused records are in the rejected file, not in the tables or the mutation journal */
+    try {
+      for (JournalEntry entry : committed) {
+        MutationJournal.getInstance()
+            .append(
+                MutationEvent.declareShelterOccupancy(
+                    shelterNames.get(entry.shelterID),
+                    LocalDate.ofEpochDay(entry.epochDay),
+                    entry.occupancy));
+        OccupancyColumnStore.getInstance()
+            .record(entry.shelterID, LocalDate.ofEpochDay(entry.epochDay), entry.occupancy);
+        OccupancySketchStore.getInstance()
+            .record(entry.shelterID, LocalDate.ofEpochDay(entry.epochDay), entry.occupancy);
+        ReportCache.getInstance()
+            .invalidate(ReportCache.Source.OCCUPANCY, LocalDate.ofEpochDay(entry.epochDay));
+      }
+    } catch (RuntimeException runtimeException) {
+      /* The batch is committed; retrying it would only set its records aside as duplicates */
+      logger.log(Level.WARNING, "Committed occupancy records were not mirrored", runtimeException);
+    }
+  }
+
+  /**
+   * Writes records, their year counters, monthly sketches, the write count and the watermark within
+   * the open transaction.
+   *
+   * @param connection The connection, not in auto-commit mode.
+   * @param entries The records to write, in sequence order.
+   * @throws SQLException If there is an issue with the SQL operations.
+   */
+  private void insert(Connection connection, List<JournalEntry> entries) throws SQLException {
+    if (entries.isEmpty()) {
+      return;
+    }
+    Map<Long, Integer> yearIncrements = new LinkedHashMap<>();
+    Map<Long, List<Integer>> sketchAdditions = new LinkedHashMap<>();
+    try (PreparedStatement insertShelterOccupancy =
+            connection.prepareStatement(
+                "insert into shelter_occupancy_record (date, occupancy, shelter_id) values (?, ?,?)");
+        PreparedStatement incrementYearCount =
+            connection.prepareStatement(
+                "insert into shelter_occupancy_year_count (shelter_id, year, record_count) values (?, ?, ?) on duplicate key update record_count = record_count + values(record_count)")) {
+      for (JournalEntry entry : entries) {
+        LocalDate date = LocalDate.ofEpochDay(entry.epochDay);
+        insertShelterOccupancy.setDate(1, Date.valueOf(date));
+        insertShelterOccupancy.setInt(2, entry.occupancy);
+        insertShelterOccupancy.setInt(3, entry.shelterID);
+        insertShelterOccupancy.addBatch();
+        yearIncrements.merge(((long) entry.shelterID << 32) | date.getYear(), 1, Integer::sum);
+        sketchAdditions
+            .computeIfAbsent(
+                OccupancySketchStore.shelterMonth(entry.shelterID, date), k -> new ArrayList<>())
+            .add(entry.occupancy);
+      }
+      insertShelterOccupancy.executeBatch();
+
+      for (Map.Entry<Long, Integer> yearIncrement : yearIncrements.entrySet()) {
+        incrementYearCount.setInt(1, (int) (yearIncrement.getKey() >>> 32));
+        incrementYearCount.setInt(2, (int) (long) yearIncrement.getKey());
+        incrementYearCount.setInt(3, yearIncrement.getValue());
+        incrementYearCount.addBatch();
+      }
+      incrementYearCount.executeBatch();
+    }
+    OccupancySketchStore.persist(connection, sketchAdditions);
+    WriteWatermark.getInstance().recordWrite(connection, ReportCache.Source.OCCUPANCY);
+    updateWatermark(connection, entries.get(entries.size() - 1).sequence);
+  }
+
+  private void updateWatermark(Connection connection, long sequence) throws SQLException {
+    try (PreparedStatement updateWatermark =
+        connection.prepareStatement(
+            "update journal_watermark set last_sequence = greatest(last_sequence, ?) where journal = ?;")) {
+      updateWatermark.setLong(1, sequence);
+      updateWatermark.setString(2, JOURNAL_NAME);
+      updateWatermark.executeUpdate();
+    }
+  }
+
+  private long readWatermark() throws SQLException, IOException, ClassNotFoundException {
+    Connection connection = null;
+
+    try {
+      connection = DatabaseManager.getConnection();
+
+      PreparedStatement watermark =
+          connection.prepareStatement(
+              "select last_sequence from journal_watermark where journal = ?;");
+      watermark.setString(1, JOURNAL_NAME);
+      ResultSet watermarkResultSet = watermark.executeQuery();
+      if (watermarkResultSet.next()) {
+        return watermarkResultSet.getLong(1);
+      }
+      return 0;
+    } catch (SQLException sqlException) {
+      throw new SQLException(sqlException.getMessage());
+    } catch (IOException ioException) {
+      throw new IOException(ioException.getMessage());
+    } catch (ClassNotFoundException classNotFoundException) {
+      throw new ClassNotFoundException(classNotFoundException.getMessage());
+    } finally {
+      /* Ensure the connection is closed */
+      DatabaseManager.closeConnection(connection);
+    }
+  }
+
+  /**
+   * Returns the ID and capacity of a shelter, reading the database only the first time a name is
+   * seen.
+   *
+   * @param name Name of the shelter or camp.
+   * @return The shelter ID and capacity, or null if there is no such shelter.
+   * @throws SQLException If there is an issue with the SQL operations.
+   * @throws IOException If there is an issue with input/output operations.
+   * @throws ClassNotFoundException If the required class is not found during database operations.
+   */
+  private int[] resolveShelter(String name)
+      throws SQLException, IOException, ClassNotFoundException {
+    int[] shelter = shelters.get(name);
+    if (shelter != null) {
+      return shelter;
+    }
+    Connection connection = null;
+
+    try {
+      connection = DatabaseManager.getConnection();
+
+      PreparedStatement shelterCapacity =
+          connection.prepareStatement("select shelter_id, capacity from shelter where name = ?;");
+      shelterCapacity.setString(1, name);
+      ResultSet shelterCapacityResultSet = shelterCapacity.executeQuery();
+      if (shelterCapacityResultSet.next()) {
+        shelter =
+            new int[] {
+              shelterCapacityResultSet.getInt("shelter_id"),
+              shelterCapacityResultSet.getInt("capacity")
+            };
+        shelters.put(name, shelter);
+        shelterNames.putIfAbsent(shelter[0], name);
+      }
+    } catch (SQLException sqlException) {
+      throw new SQLException(sqlException.getMessage());
+    } catch (IOException ioException) {
+      throw new IOException(ioException.getMessage());
+    } catch (ClassNotFoundException classNotFoundException) {
+      throw new ClassNotFoundException(classNotFoundException.getMessage());
+    } finally {
+      /* Ensure the connection is closed */
+      DatabaseManager.closeConnection(connection);
+    }
+    return shelter;
+  }
+
+  /**
+   * Reads the name of a shelter into the name cache.
+   *
+   * @param connection An open connection.
+   * @param shelterID The shelter ID.
+   * @throws SQLException If there is an issue with the SQL operations.
+   */
+  private void readShelterName(Connection connection, int shelterID) throws SQLException {
+    try (PreparedStatement shelterName =
+        connection.prepareStatement("select name from shelter where shelter_id = ?;")) {
+      shelterName.setInt(1, shelterID);
+      ResultSet shelterNameResultSet = shelterName.executeQuery();
+      if (shelterNameResultSet.next()) {
+        shelterNames.put(shelterID, shelterNameResultSet.getString("name"));
+      }
+    }
+  }
+
+  private synchronized boolean hasYearCount(long shelterYear) {
+    return yearCounts.containsKey(shelterYear);
+  }
+
+  /**
+   * Loads the number of records of a shelter-year, committed and waiting, the first time the
+   * shelter-year is seen. The committed count is read without the buffer's lock; if the flusher
+   * committed past the snapshot meanwhile, nothing is cached and the caller reads again.
+   *
+   * @param shelterID The ID of the shelter.
+   * @param year The year.
+   * @throws SQLException If there is an issue with the SQL operations.
+   * @throws IOException If there is an issue with input/output operations.
+   * @throws ClassNotFoundException If the required class is not found during database operations.
+   */
+  private void loadYearCount(int shelterID, int year)
+      throws SQLException, IOException, ClassNotFoundException {
+    Connection connection = null;
+    int count = 0;
+    long watermark = 0;
+
+    try {
+      connection = DatabaseManager.getConnection();
+
+      /* One statement reads the counter and the watermark from the same snapshot */
+      PreparedStatement shelterOccupancyInAYear =
+          connection.prepareStatement(
+              """
+                  SELECT COALESCE((SELECT record_count
+                                   FROM shelter_occupancy_year_count
+                                   WHERE shelter_id = ?
+                                     AND year = ?), 0)                                      AS record_count,
+                         (SELECT last_sequence FROM journal_watermark WHERE journal = ?) AS last_sequence""");
+      shelterOccupancyInAYear.setInt(1, shelterID);
+      shelterOccupancyInAYear.setInt(2, year);
+      shelterOccupancyInAYear.setString(3, JOURNAL_NAME);
+      ResultSet shelterOccupancyInAYearResultSet = shelterOccupancyInAYear.executeQuery();
+      if (shelterOccupancyInAYearResultSet.next()) {
+        count = shelterOccupancyInAYearResultSet.getInt("record_count");
+        watermark = shelterOccupancyInAYearResultSet.getLong("last_sequence");
+      }
+    } catch (SQLException sqlException) {
+      throw new SQLException(sqlException.getMessage());
+    } catch (IOException ioException) {
+      throw new IOException(ioException.getMessage());
+    } catch (ClassNotFoundException classNotFoundException) {
+      throw new ClassNotFoundException(classNotFoundException.getMessage());
+    } finally {
+      /* Ensure the connection is closed */
+      DatabaseManager.closeConnection(connection);
+    }
+
+    synchronized (this) {
+      long shelterYear = ((long) shelterID << 32) | year;
+      /* A record committed after the snapshot would be in neither the counter nor the waiting ones */
+      if (yearCounts.containsKey(shelterYear) || committedSequence > watermark) {
+        return;
+      }
+      /* Waiting records that the counter does not include yet */
+      for (JournalEntry entry : pending) {
+        if (entry.sequence > watermark
+            && entry.shelterID == shelterID
+            && LocalDate.ofEpochDay(entry.epochDay).getYear() == year) {
+          count++;
+        }
+      }
+      yearCounts.put(shelterYear, count);
+    }
+  }
+
+  /**
+   * Checks if the table holds a record of a shelter for a day. The answer is read together with the
+   * watermark, so the caller can tell whether a later group commit may have changed it.
+   *
+   * @param shelterID The ID of the shelter.
+   * @param date The day to check.
+   * @return 1 or 0 for whether the day is recorded, and the watermark of the same snapshot.
+   * @throws SQLException If there is an issue with the SQL operations.
+   * @throws IOException If there is an issue with input/output operations.
+   * @throws ClassNotFoundException If the required class is not found during database operations.
+   */
+  private long[] readRecorded(int shelterID, LocalDate date)
+      throws SQLException, IOException, ClassNotFoundException {
+    Connection connection = null;
+
+    try {
+      connection = DatabaseManager.getConnection();
+
+      /* One statement reads the record and the watermark from the same snapshot */
+      PreparedStatement isRecorded =
+          connection.prepareStatement(
+              """
+                  SELECT EXISTS(SELECT 1
+                                FROM shelter_occupancy_record
+                                WHERE shelter_id = ?
+                                  AND date = ?)                                           AS recorded,
+                         (SELECT last_sequence FROM journal_watermark WHERE journal = ?) AS last_sequence""");
+      isRecorded.setInt(1, shelterID);
+      isRecorded.setDate(2, Date.valueOf(date));
+      isRecorded.setString(3, JOURNAL_NAME);
+      ResultSet isRecordedResultSet = isRecorded.executeQuery();
+      if (!isRecordedResultSet.next()) {
+        throw new SQLException("No answer for the occupancy record of " + date);
+      }
+      return new long[] {
+        isRecordedResultSet.getInt("recorded"), isRecordedResultSet.getLong("last_sequence")
+      };
+    } catch (SQLException sqlException) {
+      throw new SQLException(sqlException.getMessage());
+    } catch (IOException ioException) {
+      throw new IOException(ioException.getMessage());
+    } catch (ClassNotFoundException classNotFoundException) {
+      throw new ClassNotFoundException(classNotFoundException.getMessage());
+    } finally {
+      /* Ensure the connection is closed */
+      DatabaseManager.closeConnection(connection);
+    }
+  }
+
+  /** Adds an accepted entry to the waiting records. Called with the buffer's lock held. */
+  private void queue(JournalEntry entry) {
+    pending.add(entry);
+    pendingDays.add(entry.shelterDay());
+    yearCounts.computeIfPresent(
+        ((long) entry.shelterID << 32) | LocalDate.ofEpochDay(entry.epochDay).getYear(),
+        (k, count) -> count + 1);
+  }
+
+  /**
+   * Sets aside a record the database refused, so the acknowledged declaration is not lost.
+   *
+   * @param entry The refused record.
+   * @param reason The database error.
+   * @throws IOException If the rejected-records file cannot be written.
+   */
+  private void reject(JournalEntry entry, String reason) throws IOException {
+    logger.warning("Occupancy record " + entry.sequence + " refused: " + reason);
+    synchronized (this) {
+      yearCounts.computeIfPresent(
+          ((long) entry.shelterID << 32) | LocalDate.ofEpochDay(entry.epochDay).getYear(),
+          (k, count) -> count - 1);
+    }
+    try (BufferedWriter rejected =
+        Files.newBufferedWriter(
+            directory.resolve(REJECTED_FILE),
+            StandardCharsets.UTF_8,
+            StandardOpenOption.CREATE,
+            StandardOpenOption.APPEND)) {
+      rejected.write(
+          entry.sequence
+              + ","
+              + entry.shelterID
+              + ","
+              + LocalDate.ofEpochDay(entry.epochDay)
+              + ","
+              + entry.occupancy
+              + ",\""
+              + String.valueOf(reason).replace("\"", "\"\"")
+              + "\"");
+      rejected.newLine();
+    }
+  }
+
+  /**
+   * Checks if the database refused a record itself, as opposed to being unreachable.
+   *
+   * @param sqlException The error of a single-record commit.
+   * @return True for integrity constraint violations, SQL state class 23.
+   */
+  private static boolean isConstraintViolation(SQLException sqlException) {
+    for (Throwable cause = sqlException; cause != null; cause = cause.getCause()) {
+      if (cause instanceof SQLIntegrityConstraintViolationException) {
+        return true;
+      }
+    }
+    return sqlException.getSQLState() != null && sqlException.getSQLState().startsWith("23");
+  }
+
+  /** One accepted occupancy declaration as stored in the journal. */
+  private static class JournalEntry {
+    private final long sequence;
+    private final int shelterID;
+    private final int epochDay;
+    private final int occupancy;
+
+    JournalEntry(long sequence, int shelterID, LocalDate date, int occupancy) {
+      this.sequence = sequence;
+      this.shelterID = shelterID;
+      this.epochDay = (int) date.toEpochDay();
+      this.occupancy = occupancy;
+    }
+
+    long shelterDay() {
+      return ((long) shelterID << 32) | (epochDay & 0xFFFFFFFFL);
+    }
+
+    ByteBuffer encode() {
+      ByteBuffer buffer = ByteBuffer.allocate(ENTRY_BYTES);
+      buffer.putLong(sequence).putInt(shelterID).putInt(epochDay).putInt(occupancy);
+      CRC32 crc = new CRC32();
+      crc.update(buffer.array(), 0, ENTRY_BYTES - Integer.BYTES);
+      buffer.putInt((int) crc.getValue());
+      buffer.flip();
+      return buffer;
+    }
+
+    /**
+     * Decodes an entry, checking its checksum.
+     *
+     * @param buffer A buffer holding exactly one entry.
+     * @return The entry, or null if the checksum does not match.
+     */
+    static JournalEntry decode(ByteBuffer buffer) {
+      CRC32 crc = new CRC32();
+      crc.update(buffer.array(), 0, ENTRY_BYTES - Integer.BYTES);
+      long sequence = buffer.getLong();
+      int shelterID = buffer.getInt();
+      int epochDay = buffer.getInt();
+      int occupancy = buffer.getInt();
+      if (buffer.getInt() != (int) crc.getValue()) {
+        return null;
+      }
+      return new JournalEntry(sequence, shelterID, LocalDate.ofEpochDay(epochDay), occupancy);
+    }
+  }
+}
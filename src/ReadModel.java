@@ -0,0 +1,60 @@
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * A piece of in-process state derived from the database that the {@link MutationJournal} can
+ * restore at startup: first from the model's own snapshot, then by applying the events journaled
+ * after it.
+ */
+public interface ReadModel {
+  /**
+   * Returns the name of the model's section in a checkpoint; it must not change between releases.
+   *
+   * @return The snapshot section name.
+   */
+  String getSnapshotName();
+
+  /**
+   * Returns the tables the model is derived from. Their row counts are stamped into every
+   * checkpoint, and a replay is only trusted if the journal accounts for every row added since.
+   *
+   * @return The table names.
+   */
+  Set<String> getSourceTables();
+
+  /**
+   * Returns the rows a journaled mutation adds to the source tables.
+   *
+   * @param event The mutation.
+   * @return Table name mapped to the rows added, empty if the mutation does not touch the source
+   *     tables, or null if it may change them in a way row counts cannot follow.
+   */
+  Map<String, Integer> rowsAdded(MutationEvent event);
+
+  /**
+   * Applies one journaled mutation during replay.
+   *
+   * @param event The mutation, in journal order.
+   */
+  void apply(MutationEvent event);
+
+  /**
+   * Writes the complete state of the model.
+   *
+   * @param out The stream to write to.
+   * @throws IOException If the stream cannot be written.
+   */
+  void writeSnapshot(DataOutputStream out) throws IOException;
+
+  /**
+   * Replaces the state of the model with a snapshot written by {@link
+   * #writeSnapshot(DataOutputStream)}.
+   *
+   * @param in The stream to read from.
+   * @throws IOException If the stream cannot be read.
+   */
+  void readSnapshot(DataInputStream in) throws IOException;
+}
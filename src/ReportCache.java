@@ -0,0 +1,751 @@
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.NoSuchFileException;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardCopyOption;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.time.LocalDate;
+import java.util.Collections;
+import java.util.EnumMap;
+import java.util.EnumSet;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.HexFormat;
+import java.util.Iterator;
+import java.util.Map;
+import java.util.Set;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+/**
+ * ReportCache keeps the results of reports over closed periods in a local directory, one file per
+ * report. A period is closed when it ends before "reportCache.closedBefore" (by default the first
+ * day of the current month); such reports are served from the cache across restarts.
+ *
+ * <p>Entries are keyed by operation and arguments and stamped with the schema version, so a
+ * migration drops them all. Each entry records its period and the kinds of data it was computed
+ * from; the write paths report every committed change, and an entry is dropped only when a change
+ * to one of its sources is dated inside its period, or when an undated definition it depends on
+ * changes.
+ *
+ * <p>Writes the cache never saw, from another process, from a run with the cache switched off, or
+ * lost in a crash between a commit and its invalidation, are caught at open: a watermark file
+ * holds, for each source, the row count (for dated records) or content checksum (for definitions)
+ * the cached entries agree with. Sources whose watermark no longer matches the database drop every
+ * entry computed from them.
+ *
+ * <p>While the cache is open, writes of other processes that are running at the same time, such
+ * as a command-line import, are caught on every lookup: each one compares the counters of the
+ * {@link WriteWatermark} with the ones it saw last, and a source another process wrote to drops
+ * every entry computed from it.
+ *
+ * <p>The cache needs the schema_version and write_watermark tables; on a database that has not
+ * been migrated it stays closed and every report is computed.
+ */
+public class ReportCache {
+  private static final ReportCache INSTANCE = new ReportCache();
+  private static final Logger logger = Logger.getLogger("homelesssupport.reportcache");
+
+  private static final int ENTRY_MAGIC = 0x48535243;
+  private static final String ENTRY_SUFFIX = ".report";
+  private static final byte NAMES = 1;
+  private static final byte TEXT = 2;
+  private static final int MAX_STRING_BYTES = 64 * 1024 * 1024;
+  private static final String WATERMARK_FILE = "watermarks";
+  private static final int WATERMARK_MAGIC = 0x48535257;
+
+  private final Path directory;
+  private final Map<String, EntryIndex> entries = new HashMap<>();
+  private boolean open = false;
+  private int schemaVersion;
+  private LocalDate closedBefore;
+  private long generation = 0;
+  /* What the database holds for each source as far as this process knows; absent when unknown */
+  private final Map<Source, Long> watermarks = new EnumMap<>(Source.class);
+  /* The write counters of other processes the entries were last checked against */
+  private final Map<Source, Long> otherWrites = new EnumMap<>(Source.class);
+  private boolean closeHookAdded = false;
+
+  private ReportCache() {
+    this(Paths.get(ConfigurationManager.getString("reportCache.directory", "data/reportcache")));
+  }
+
+  /**
+   * Creates a cache over a directory of its own, apart from the one shared by the process.
+   *
+   * @param directory The directory holding the entries and the watermark file.
+   */
+  ReportCache(Path directory) {
+    this.directory = directory;
+  }
+
+  /**
+   * Returns the cache shared by the whole process.
+   *
+   * @return The report cache.
+   */
+  public static ReportCache getInstance() {
+    return INSTANCE;
+  }
+
+  /**
+   * Opens the cache directory and indexes the entries computed at the current schema version;
+   * entries from another schema version, or computed from data changed behind the cache's back,
+   * are deleted. The cache stays closed if the database has no schema version or write watermark
+   * to check the entries against.
+   *
+   * @throws SQLException If there is an issue with the SQL operations.
+   * @throws IOException If the directory cannot be read.
+   * @throws ClassNotFoundException If the required class is not found during database operations.
+   */
+  public synchronized void open() throws SQLException, IOException, ClassNotFoundException {
+    try {
+      schemaVersion = new SchemaMigrator().getCurrentVersion();
+      /* Read before the watermarks below, so a write in between is caught by the next lookup */
+      otherWrites.clear();
+      otherWrites.putAll(WriteWatermark.getInstance().otherWrites());
+    } catch (SQLException sqlException) {
+      /* With migrations switched off, the tables may not exist yet */
+      logger.log(
+          Level.WARNING, "Report cache stays closed: " + sqlException.getMessage(), sqlException);
+      return;
+    }
+    closedBefore =
+        new HelperMethod().parseDate(ConfigurationManager.getString("reportCache.closedBefore", ""));
+    if (closedBefore == null) {
+      closedBefore = LocalDate.now().withDayOfMonth(1);
+    }
+    Files.createDirectories(directory);
+    entries.clear();
+
+    try (DirectoryStream<Path> entryFiles =
+        Files.newDirectoryStream(directory, "*" + ENTRY_SUFFIX)) {
+      for (Path entryFile : entryFiles) {
+        EntryIndex entryIndex = readHeader(entryFile);
+        if (entryIndex == null) {
+          Files.deleteIfExists(entryFile);
+        } else {
+          entries.put(entryIndex.key, entryIndex);
+        }
+      }
+    }
+
+    Map<Source, Long> stored = readWatermarks();
+    watermarks.clear();
+    watermarks.putAll(readDatabaseWatermarks());
+    Set<Source> changed = EnumSet.noneOf(Source.class);
+    for (Source source : Source.values()) {
+      if (!watermarks.get(source).equals(stored.get(source))) {
+        changed.add(source);
+      }
+    }
+    dropEntries(changed);
+    /* Written now as well as at shutdown, so a crash leaves a watermark the next open can check */
+    writeWatermarks();
+    open = true;
+    if (!closeHookAdded) {
+      Runtime.getRuntime().addShutdownHook(new Thread(this::close, "report-cache-close"));
+      closeHookAdded = true;
+    }
+  }
+
+  /**
+   * Writes the watermarks of the writes this process reported, so the next open keeps the entries
+   * they did not invalidate. The cache serves no more reports until it is opened again.
+   */
+  public synchronized void close() {
+    if (!open) {
+      return;
+    }
+    open = false;
+    try {
+      writeWatermarks();
+    } catch (IOException ioException) {
+      /* The watermark written at open is older, so the next open only drops more entries */
+    }
+  }
+
+  /**
+   * Checks if a report over a period ending on the given date may be cached.
+   *
+   * @param endDate The last day of the report's period.
+   * @return True if the cache is open and the period is closed.
+   */
+  public synchronized boolean covers(LocalDate endDate) {
+    return open && endDate.isBefore(closedBefore);
+  }
+
+  /**
+   * Returns a counter that moves on every invalidation. A report takes it before reading the data
+   * and hands it back when storing its result, so a result computed while a write landed is not
+   * stored.
+   *
+   * @return The current invalidation generation.
+   */
+  public synchronized long getGeneration() {
+    return generation;
+  }
+
+  /**
+   * Returns a cached set of names.
+   *
+   * @param key The operation and arguments of the report.
+   * @return The cached names, or null if the report is not cached.
+   * @throws SQLException If the write watermark cannot be read.
+   * @throws IOException If the entry cannot be read.
+   * @throws ClassNotFoundException If the required class is not found during database operations.
+   */
+  public synchronized Set<String> getNames(String key)
+      throws SQLException, IOException, ClassNotFoundException {
+    byte[] payload = readPayload(key, NAMES);
+    if (payload == null) {
+      return null;
+    }
+    Set<String> result = new HashSet<>();
+    try (DataInputStream in = new DataInputStream(new ByteArrayInputStream(payload))) {
+      int count = in.readInt();
+      for (int name = 0; name < count; name++) {
+        result.add(readString(in));
+      }
+    }
+    return result;
+  }
+
+  /**
+   * Returns a cached rendered report.
+   *
+   * @param key The operation and arguments of the report.
+   * @return The cached text, or null if the report is not cached.
+   * @throws SQLException If the write watermark cannot be read.
+   * @throws IOException If the entry cannot be read.
+   * @throws ClassNotFoundException If the required class is not found during database operations.
+   */
+  public synchronized String getText(String key)
+      throws SQLException, IOException, ClassNotFoundException {
+    byte[] payload = readPayload(key, TEXT);
+    return payload == null ? null : new String(payload, StandardCharsets.UTF_8);
+  }
+
+  /**
+   * Stores a set of names, unless the data changed since the report read it.
+   *
+   * @param key The operation and arguments of the report.
+   * @param startDate The first day of the report's period.
+   * @param endDate The last day of the report's period.
+   * @param sources The kinds of data the report was computed from.
+   * @param readGeneration The generation taken before the report read the data.
+   * @param names The result of the report.
+   * @throws IOException If the entry cannot be written.
+   */
+  public synchronized void putNames(
+      String key,
+      LocalDate startDate,
+      LocalDate endDate,
+      Set<Source> sources,
+      long readGeneration,
+      Set<String> names)
+      throws IOException {
+    ByteArrayOutputStream payload = new ByteArrayOutputStream();
+    try (DataOutputStream out = new DataOutputStream(payload)) {
+      out.writeInt(names.size());
+      for (String name : names) {
+        writeString(out, name);
+      }
+    }
+    write(key, startDate, endDate, sources, readGeneration, NAMES, payload.toByteArray());
+  }
+
+  /**
+   * Stores a rendered report, unless the data changed since the report read it.
+   *
+   * @param key The operation and arguments of the report.
+   * @param startDate The first day of the report's period.
+   * @param endDate The last day of the report's period.
+   * @param sources The kinds of data the report was computed from.
+   * @param readGeneration The generation taken before the report read the data.
+   * @param text The rendered report.
+   * @throws IOException If the entry cannot be written.
+   */
+  public synchronized void putText(
+      String key,
+      LocalDate startDate,
+      LocalDate endDate,
+      Set<Source> sources,
+      long readGeneration,
+      String text)
+      throws IOException {
+    write(
+        key,
+        startDate,
+        endDate,
+        sources,
+        readGeneration,
+        TEXT,
+        text.getBytes(StandardCharsets.UTF_8));
+  }
+
+  /**
+   * Drops every cached report computed from the given kind of data whose period contains the date
+   * of a committed change.
+   *
+   * @param source The kind of data that changed.
+   * @param date The date of the changed record.
+   */
+  public synchronized void invalidate(Source source, LocalDate date) {
+    generation++;
+    /* Every dated change reported is one new row */
+    watermarks.computeIfPresent(source, (changedSource, rows) -> rows + 1);
+    Iterator<EntryIndex> iterator = entries.values().iterator();
+    while (iterator.hasNext()) {
+      EntryIndex entryIndex = iterator.next();
+      if (entryIndex.sources.contains(source)
+          && !date.isBefore(entryIndex.startDate)
+          && !date.isAfter(entryIndex.endDate)) {
+        delete(entryIndex);
+        iterator.remove();
+      }
+    }
+  }
+
+  /**
+   * Drops every cached report computed from the given kind of undated data, such as the shelter or
+   * donor definitions.
+   *
+   * @param source The kind of data that changed.
+   */
+  public synchronized void invalidate(Source source) {
+    generation++;
+    /* The new checksum is not known without reading the table again */
+    watermarks.remove(source);
+    Iterator<EntryIndex> iterator = entries.values().iterator();
+    while (iterator.hasNext()) {
+      EntryIndex entryIndex = iterator.next();
+      if (entryIndex.sources.contains(source)) {
+        delete(entryIndex);
+        iterator.remove();
+      }
+    }
+  }
+
+  /** Drops every cached report, for changes that replace the whole dataset. */
+  public synchronized void clear() {
+    generation++;
+    watermarks.clear();
+    for (EntryIndex entryIndex : entries.values()) {
+      delete(entryIndex);
+    }
+    entries.clear();
+  }
+
+  /**
+   * Reports rows moved out of the tables of a kind of dated data without changing any report, such
+   * as occupancy records moved to the archive.
+   *
+   * @param source The kind of data moved.
+   * @param rows The number of rows deleted from its table.
+   */
+  public synchronized void rowsMoved(Source source, int rows) {
+    watermarks.computeIfPresent(source, (movedSource, tableRows) -> tableRows - rows);
+  }
+
+  /**
+   * Reads the watermarks the cached entries agree with.
+   *
+   * @return The watermark of each source, without the sources whose watermark is unknown.
+   */
+  private Map<Source, Long> readWatermarks() {
+    Map<Source, Long> stored = new EnumMap<>(Source.class);
+    try (DataInputStream in =
+        new DataInputStream(
+            new BufferedInputStream(Files.newInputStream(directory.resolve(WATERMARK_FILE))))) {
+      if (in.readInt() != WATERMARK_MAGIC) {
+        return stored;
+      }
+      int count = in.readInt();
+      for (int watermark = 0; watermark < count; watermark++) {
+        String name = readString(in);
+        long value = in.readLong();
+        for (Source source : Source.values()) {
+          if (source.name().equals(name)) {
+            stored.put(source, value);
+          }
+        }
+      }
+    } catch (IOException ioException) {
+      /* A missing or damaged watermark file leaves every source unknown */
+      stored.clear();
+    }
+    return stored;
+  }
+
+  /**
+   * Writes the current watermarks to a temporary file and moves it into place.
+   *
+   * @throws IOException If the file cannot be written.
+   */
+  private void writeWatermarks() throws IOException {
+    Path watermarkFile = directory.resolve(WATERMARK_FILE);
+    Path temporaryFile = directory.resolve(WATERMARK_FILE + ".tmp");
+    try (DataOutputStream out =
+        new DataOutputStream(new BufferedOutputStream(Files.newOutputStream(temporaryFile)))) {
+      out.writeInt(WATERMARK_MAGIC);
+      out.writeInt(watermarks.size());
+      for (Map.Entry<Source, Long> watermark : watermarks.entrySet()) {
+        writeString(out, watermark.getKey().name());
+        out.writeLong(watermark.getValue());
+      }
+    }
+    Files.move(
+        temporaryFile,
+        watermarkFile,
+        StandardCopyOption.REPLACE_EXISTING,
+        StandardCopyOption.ATOMIC_MOVE);
+  }
+
+  /**
+   * Reads the watermark of every source from the database: the row count of the dated records and
+   * a checksum of the definitions, which are updated in place.
+   *
+   * @return The watermark of each source.
+   * @throws SQLException If there is an issue with the SQL operations.
+   * @throws IOException If there is an issue with input/output operations.
+   * @throws ClassNotFoundException If the required class is not found during database operations.
+   */
+  private Map<Source, Long> readDatabaseWatermarks()
+      throws SQLException, IOException, ClassNotFoundException {
+    Connection connection = null;
+    try {
+      connection = DatabaseManager.getConnection();
+      Map<Source, Long> current = new EnumMap<>(Source.class);
+      current.put(
+          Source.DONATIONS,
+          checksum(connection, "SELECT COUNT(*) FROM receive_donation_record;"));
+      current.put(
+          Source.DISBURSEMENTS, checksum(connection, "SELECT COUNT(*) FROM disburse_fund_record;"));
+      current.put(
+          Source.OCCUPANCY, checksum(connection, "SELECT COUNT(*) FROM shelter_occupancy_record;"));
+      current.put(
+          Source.DONORS,
+          checksum(
+              connection,
+              "SELECT donor.donor_id, donor.name, locationX, locationY, contact, program_id,"
+                  + " funding_program.name FROM donor LEFT JOIN funding_program"
+                  + " ON funding_program.donor_id = donor.donor_id"
+                  + " ORDER BY donor.donor_id, program_id;"));
+      current.put(
+          Source.SHELTERS,
+          checksum(
+              connection,
+              "SELECT shelter_id, name, locationX, locationY, capacity, staff_in_charge"
+                  + " FROM shelter ORDER BY shelter_id;"));
+      return current;
+    } catch (SQLException sqlException) {
+      throw new SQLException(sqlException.getMessage());
+    } catch (IOException ioException) {
+      throw new IOException(ioException.getMessage());
+    } catch (ClassNotFoundException classNotFoundException) {
+      throw new ClassNotFoundException(classNotFoundException.getMessage());
+    } finally {
+      /* Ensure the connection is closed */
+      DatabaseManager.closeConnection(connection);
+    }
+  }
+
+  /**
+   * Runs a query and folds its result into one number: the value itself for a single count, and a
+   * hash of every column of every row otherwise.
+   *
+   * @param connection The connection to query.
+   * @param query The query.
+   * @return The watermark.
+   * @throws SQLException If there is an issue with the SQL operations.
+   */
+  private long checksum(Connection connection, String query) throws SQLException {
+    try (PreparedStatement statement = connection.prepareStatement(query);
+        ResultSet resultSet = statement.executeQuery()) {
+      int columns = resultSet.getMetaData().getColumnCount();
+      if (columns == 1) {
+        return resultSet.next() ? resultSet.getLong(1) : 0;
+      }
+      MessageDigest digest = MessageDigest.getInstance("SHA-256");
+      while (resultSet.next()) {
+        for (int column = 1; column <= columns; column++) {
+          String value = resultSet.getString(column);
+          digest.update((value == null ? "\\N" : value).getBytes(StandardCharsets.UTF_8));
+          digest.update((byte) 0);
+        }
+      }
+      return ByteBuffer.wrap(digest.digest()).getLong();
+    } catch (NoSuchAlgorithmException noSuchAlgorithmException) {
+      throw new IllegalStateException(noSuchAlgorithmException);
+    }
+  }
+
+  /**
+   * Writes an entry to a temporary file and moves it into place, so a crash never leaves a partial
+   * entry behind.
+   *
+   * @param key The operation and arguments of the report.
+   * @param startDate The first day of the report's period.
+   * @param endDate The last day of the report's period.
+   * @param sources The kinds of data the report was computed from.
+   * @param readGeneration The generation taken before the report read the data.
+   * @param type The type of the payload.
+   * @param payload The encoded result.
+   * @throws IOException If the entry cannot be written.
+   */
+  private void write(
+      String key,
+      LocalDate startDate,
+      LocalDate endDate,
+      Set<Source> sources,
+      long readGeneration,
+      byte type,
+      byte[] payload)
+      throws IOException {
+    if (!open || readGeneration != generation) {
+      return;
+    }
+
+    EntryIndex entryIndex = new EntryIndex();
+    entryIndex.key = key;
+    entryIndex.startDate = startDate;
+    entryIndex.endDate = endDate;
+    entryIndex.sources = EnumSet.copyOf(sources);
+    entryIndex.file = directory.resolve(fileName(key));
+
+    Path temporaryFile = directory.resolve(entryIndex.file.getFileName() + ".tmp");
+    try (DataOutputStream out =
+        new DataOutputStream(new BufferedOutputStream(Files.newOutputStream(temporaryFile)))) {
+      out.writeInt(ENTRY_MAGIC);
+      out.writeInt(schemaVersion);
+      writeString(out, key);
+      out.writeLong(startDate.toEpochDay());
+      out.writeLong(endDate.toEpochDay());
+      int sourceBits = 0;
+      for (Source source : sources) {
+        sourceBits |= 1 << source.ordinal();
+      }
+      out.writeInt(sourceBits);
+      out.writeByte(type);
+      out.writeInt(payload.length);
+      out.write(payload);
+    }
+    Files.move(
+        temporaryFile,
+        entryIndex.file,
+        StandardCopyOption.REPLACE_EXISTING,
+        StandardCopyOption.ATOMIC_MOVE);
+    entries.put(key, entryIndex);
+  }
+
+  /**
+   * Reads the header of an entry file.
+   *
+   * @param entryFile The entry file.
+   * @return The indexed entry, or null if the file is damaged or from another schema version.
+   */
+  private EntryIndex readHeader(Path entryFile) {
+    try (DataInputStream in =
+        new DataInputStream(new BufferedInputStream(Files.newInputStream(entryFile)))) {
+      if (in.readInt() != ENTRY_MAGIC || in.readInt() != schemaVersion) {
+        return null;
+      }
+      EntryIndex entryIndex = new EntryIndex();
+      entryIndex.key = readString(in);
+      entryIndex.startDate = LocalDate.ofEpochDay(in.readLong());
+      entryIndex.endDate = LocalDate.ofEpochDay(in.readLong());
+      int sourceBits = in.readInt();
+      entryIndex.sources = EnumSet.noneOf(Source.class);
+      for (Source source : Source.values()) {
+        if ((sourceBits & (1 << source.ordinal())) != 0) {
+          entryIndex.sources.add(source);
+        }
+      }
+      entryIndex.file = entryFile;
+      return entryIndex;
+    } catch (IOException ioException) {
+      return null;
+    }
+  }
+
+  /**
+   * Reads the payload of a cached report, after dropping the entries of the sources other
+   * processes wrote to since the last lookup.
+   *
+   * @param key The operation and arguments of the report.
+   * @param type The expected type of the payload.
+   * @return The payload, or null if the report is not cached or its file is gone.
+   * @throws SQLException If the write watermark cannot be read.
+   * @throws IOException If the entry cannot be read.
+   * @throws ClassNotFoundException If the required class is not found during database operations.
+   */
+  private byte[] readPayload(String key, byte type)
+      throws SQLException, IOException, ClassNotFoundException {
+    if (!open) {
+      return null;
+    }
+    dropOtherWrites();
+    EntryIndex entryIndex = entries.get(key);
+    if (entryIndex == null) {
+      return null;
+    }
+    try (DataInputStream in =
+        new DataInputStream(new BufferedInputStream(Files.newInputStream(entryIndex.file)))) {
+      in.readInt();
+      in.readInt();
+      readString(in);
+      in.readLong();
+      in.readLong();
+      in.readInt();
+      if (in.readByte() != type) {
+        return null;
+      }
+      byte[] payload = new byte[in.readInt()];
+      in.readFully(payload);
+      return payload;
+    } catch (NoSuchFileException noSuchFileException) {
+      /* Deleted by another process sharing the directory; computed again like any other miss */
+      entries.remove(key);
+      return null;
+    }
+  }
+
+  /**
+   * Drops the entries of every source another process wrote to since the counters were last read.
+   * Those sources' watermarks become unknown, so the next open drops their entries as well.
+   *
+   * @throws SQLException If the write watermark cannot be read.
+   * @throws IOException If there is an issue with input/output operations.
+   * @throws ClassNotFoundException If the required class is not found during database operations.
+   */
+  private void dropOtherWrites() throws SQLException, IOException, ClassNotFoundException {
+    Map<Source, Long> current = WriteWatermark.getInstance().otherWrites();
+    Set<Source> changed = EnumSet.noneOf(Source.class);
+    for (Source source : Source.values()) {
+      if (!current.get(source).equals(otherWrites.get(source))) {
+        changed.add(source);
+      }
+    }
+    if (changed.isEmpty()) {
+      return;
+    }
+    otherWrites.putAll(current);
+    /* A report that read the data before the other write must not store its result */
+    generation++;
+    for (Source source : changed) {
+      watermarks.remove(source);
+    }
+    dropEntries(changed);
+  }
+
+  /**
+   * Drops every entry computed from any of the given sources.
+   *
+   * @param changed The sources that changed.
+   */
+  private void dropEntries(Set<Source> changed) {
+    Iterator<EntryIndex> iterator = entries.values().iterator();
+    while (iterator.hasNext()) {
+      EntryIndex entryIndex = iterator.next();
+      if (!Collections.disjoint(entryIndex.sources, changed)) {
+        delete(entryIndex);
+        iterator.remove();
+      }
+    }
+  }
+
+  /**
+   * Deletes the file of an entry; a file that cannot be deleted is left for the next open to
+   * retry, and is no longer served meanwhile.
+   *
+   * @param entryIndex The entry to delete.
+   */
+  private void delete(EntryIndex entryIndex) {
+    try {
+      Files.deleteIfExists(entryIndex.file);
+    } catch (IOException ioException) {
+      /* The entry is already out of the index; a stale file is only a wasted read on open */
+    }
+  }
+
+  /**
+   * Names the file of an entry after the hash of its key, which may be long and hold any
+   * character.
+   *
+   * @param key The operation and arguments of the report.
+   * @return The file name.
+   */
+  private String fileName(String key) {
+    try {
+      MessageDigest digest = MessageDigest.getInstance("SHA-256");
+      return HexFormat.of().formatHex(digest.digest(key.getBytes(StandardCharsets.UTF_8)))
+          + ENTRY_SUFFIX;
+    } catch (NoSuchAlgorithmException noSuchAlgorithmException) {
+      throw new IllegalStateException(noSuchAlgorithmException);
+    }
+  }
+
+  /**
+   * Writes a length-prefixed UTF-8 string; unlike writeUTF it has no 64 KB limit.
+   *
+   * @param out The stream to write to.
+   * @param value The string.
+   * @throws IOException If the stream cannot be written.
+   */
+  private static void writeString(DataOutputStream out, String value) throws IOException {
+    byte[] bytes = value.getBytes(StandardCharsets.UTF_8);
+    out.writeInt(bytes.length);
+    out.write(bytes);
+  }
+
+  /**
+   * Reads a string written by {@link #writeString(DataOutputStream, String)}.
+   *
+   * @param in The stream to read from.
+   * @return The string.
+   * @throws IOException If the stream cannot be read.
+   */
+  private static String readString(DataInputStream in) throws IOException {
+    int length = in.readInt();
+    if (length < 0 || length > MAX_STRING_BYTES) {
+      throw new IOException("Damaged report cache entry");
+    }
+    byte[] bytes = new byte[length];
+    in.readFully(bytes);
+    return new String(bytes, StandardCharsets.UTF_8);
+  }
+
+  /** The kinds of data a report can be computed from. */
+  public enum Source {
+    DONATIONS,
+    DISBURSEMENTS,
+    OCCUPANCY,
+    DONORS,
+    SHELTERS
+  }
+
+  /** Where an entry is stored and what it depends on. */
+  private static class EntryIndex {
+    private String key;
+    private LocalDate startDate;
+    private LocalDate endDate;
+    private EnumSet<Source> sources;
+    private Path file;
+  }
+}
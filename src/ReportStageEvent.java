@@ -0,0 +1,39 @@
+import jdk.jfr.Category;
+import jdk.jfr.Description;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+
+/**
+ * Java Flight Recorder event covering one named compute stage of a report, such as loading the
+ * donors or allocating funds in {@code underfundedShelter}. Together with {@link
+ * SqlExecutionEvent} it shows whether the time of a report went to the database, object mapping or
+ * in-memory computation.
+ */
+@Name("homelesssupport.ReportStage")
+@Label("Report Stage")
+@Category({"Homeless Support", "Reports"})
+@Description("A named compute stage of a report")
+public class ReportStageEvent extends jdk.jfr.Event {
+
+  @Label("Report")
+  String report;
+
+  @Label("Stage")
+  String stage;
+
+  /**
+   * Creates and begins the timing of a report stage. The caller ends the stage with {@link
+   * #commit()}.
+   *
+   * @param report The name of the report the stage belongs to.
+   * @param stage The name of the stage.
+   * @return The started event.
+   */
+  public static ReportStageEvent start(String report, String stage) {
+    ReportStageEvent event = new ReportStageEvent();
+    event.report = report;
+    event.stage = stage;
+    event.begin();
+    return event;
+  }
+}
@@ -0,0 +1,104 @@
+import java.time.LocalDate;
+import java.time.temporal.TemporalAdjusters;
+
+/**
+ * RollupRange rewrites a date range into the parts that the disbursement rollup tables can answer:
+ * the boundary days before the first whole month, the run of whole months, and the boundary days
+ * after the last whole month. A part that is not needed is empty, meaning its start is after its
+ * end, so a "BETWEEN" over it matches nothing.
+ */
+public class RollupRange {
+  private final LocalDate headStart;
+  private final LocalDate headEnd;
+  private final LocalDate firstMonth;
+  private final LocalDate lastMonth;
+  private final LocalDate tailStart;
+  private final LocalDate tailEnd;
+
+  private RollupRange(
+      LocalDate headStart,
+      LocalDate headEnd,
+      LocalDate firstMonth,
+      LocalDate lastMonth,
+      LocalDate tailStart,
+      LocalDate tailEnd) {
+    this.headStart = headStart;
+    this.headEnd = headEnd;
+    this.firstMonth = firstMonth;
+    this.lastMonth = lastMonth;
+    this.tailStart = tailStart;
+    this.tailEnd = tailEnd;
+  }
+
+  /**
+   * Splits the range from start to end, both included, into boundary days and whole months.
+   *
+   * @param start The first day of the range.
+   * @param end The last day of the range.
+   * @return The rewritten range.
+   */
+  public static RollupRange of(LocalDate start, LocalDate end) {
+    /* The first day of the first month that lies completely inside the range */
+    LocalDate firstMonth =
+        start.getDayOfMonth() == 1 ? start : start.with(TemporalAdjusters.firstDayOfNextMonth());
+    /* The first day of the last month that lies completely inside the range */
+    LocalDate lastMonth =
+        end.equals(end.with(TemporalAdjusters.lastDayOfMonth()))
+            ? end.withDayOfMonth(1)
+            : end.withDayOfMonth(1).minusMonths(1);
+
+    if (firstMonth.isAfter(lastMonth)) {
+      /* No whole month fits, the range is answered from the daily rollup alone */
+      return new RollupRange(start, end, firstMonth, lastMonth, end.plusDays(1), end);
+    }
+    return new RollupRange(
+        start, firstMonth.minusDays(1), firstMonth, lastMonth, lastMonth.plusMonths(1), end);
+  }
+
+  public LocalDate getHeadStart() {
+    return headStart;
+  }
+
+  public LocalDate getHeadEnd() {
+    return headEnd;
+  }
+
+  public LocalDate getFirstMonth() {
+    return firstMonth;
+  }
+
+  public LocalDate getLastMonth() {
+    return lastMonth;
+  }
+
+  public LocalDate getTailStart() {
+    return tailStart;
+  }
+
+  public LocalDate getTailEnd() {
+    return tailEnd;
+  }
+
+  /**
+   * Returns a string representation of the RollupRange object.
+   *
+   * @return String representation of the object
+   */
+  @Override
+  public String toString() {
+    return "RollupRange{"
+        + "days="
+        + headStart
+        + ".."
+        + headEnd
+        + ", months="
+        + firstMonth
+        + ".."
+        + lastMonth
+        + ", days="
+        + tailStart
+        + ".."
+        + tailEnd
+        + '}';
+  }
+}
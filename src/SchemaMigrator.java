@@ -0,0 +1,361 @@
+import java.io.IOException;
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+/**
+ * SchemaMigrator brings an existing database created by "SQL.sql" up to the latest schema. The
+ * migrations are applied in version order at startup and every applied version is recorded in the
+ * schema_version table, so each one runs exactly once per database. Every statement can be run
+ * again safely, so a migration interrupted part way is completed on the next start.
+ */
+public class SchemaMigrator {
+
+  /* New migrations are appended here with the next version number; applied ones keep their effect */
+  static final List<Migration> MIGRATIONS =
+      List.of(
+          new Migration(
+              1,
+              "Unique index on shelter name",
+              "SELECT name FROM shelter WHERE name IS NOT NULL GROUP BY name HAVING COUNT(*) > 1",
+              List.of("ALTER TABLE shelter ADD CONSTRAINT uq_shelter_name UNIQUE (name)")),
+          new Migration(
+              2,
+              "Unique index on service name",
+              "SELECT name FROM service WHERE name IS NOT NULL GROUP BY name HAVING COUNT(*) > 1",
+              List.of("ALTER TABLE service ADD CONSTRAINT uq_service_name UNIQUE (name)")),
+          new Migration(
+              3,
+              "Unique index on staff name",
+              "SELECT name FROM staff WHERE name IS NOT NULL GROUP BY name HAVING COUNT(*) > 1",
+              List.of("ALTER TABLE staff ADD CONSTRAINT uq_staff_name UNIQUE (name)")),
+          new Migration(
+              4,
+              "Unique index on donor name",
+              "SELECT name FROM donor WHERE name IS NOT NULL GROUP BY name HAVING COUNT(*) > 1",
+              List.of("ALTER TABLE donor ADD CONSTRAINT uq_donor_name UNIQUE (name)")),
+          new Migration(
+              5,
+              "Index on donation date for report range scans",
+              "CREATE INDEX idx_receive_donation_record_date ON receive_donation_record (date)"),
+          new Migration(
+              6,
+              "Index on disbursement shelter and date for funding range scans",
+              "CREATE INDEX idx_disburse_fund_record_shelter_date ON disburse_fund_record (shelter_id, date)"),
+          new Migration(
+              7,
+              "Per-shelter, per-year occupancy record counter",
+              """
+                  CREATE TABLE IF NOT EXISTS shelter_occupancy_year_count
+                  (
+                      shelter_id   INT,
+                      year         INT,
+                      record_count INT NOT NULL DEFAULT 0,
+                      PRIMARY KEY (shelter_id, year),
+                      FOREIGN KEY (shelter_id) REFERENCES shelter (shelter_id) ON DELETE CASCADE ON UPDATE CASCADE
+                  )""",
+              """
+                  INSERT INTO shelter_occupancy_year_count (shelter_id, year, record_count)
+                  SELECT shelter_id, YEAR(date), COUNT(*)
+                  FROM shelter_occupancy_record
+                  GROUP BY shelter_id, YEAR(date)
+                  ON DUPLICATE KEY UPDATE record_count = VALUES(record_count)"""),
+          new Migration(
+              8,
+              "Daily and monthly disbursement rollups",
+              """
+                  CREATE TABLE IF NOT EXISTS disburse_fund_daily
+                  (
+                      shelter_id INT,
+                      date       DATE,
+                      funds      BIGINT NOT NULL DEFAULT 0,
+                      PRIMARY KEY (shelter_id, date),
+                      FOREIGN KEY (shelter_id) REFERENCES shelter (shelter_id) ON DELETE CASCADE ON UPDATE CASCADE
+                  )""",
+              """
+                  CREATE TABLE IF NOT EXISTS disburse_fund_monthly
+                  (
+                      shelter_id INT,
+                      month      DATE,
+                      funds      BIGINT NOT NULL DEFAULT 0,
+                      PRIMARY KEY (shelter_id, month),
+                      FOREIGN KEY (shelter_id) REFERENCES shelter (shelter_id) ON DELETE CASCADE ON UPDATE CASCADE
+                  )""",
+              """
+                  INSERT INTO disburse_fund_daily (shelter_id, date, funds)
+                  SELECT shelter_id, date, SUM(funds)
+                  FROM disburse_fund_record
+                  GROUP BY shelter_id, date
+                  ON DUPLICATE KEY UPDATE funds = VALUES(funds)""",
+              """
+                  INSERT INTO disburse_fund_monthly (shelter_id, month, funds)
+                  SELECT shelter_id, DATE_FORMAT(date, '%Y-%m-01'), SUM(funds)
+                  FROM disburse_fund_record
+                  GROUP BY shelter_id, DATE_FORMAT(date, '%Y-%m-01')
+                  ON DUPLICATE KEY UPDATE funds = VALUES(funds)"""),
+          new Migration(
+              9,
+              "Watermark of journal entries already committed by the write-behind buffers",
+              """
+                  CREATE TABLE IF NOT EXISTS journal_watermark
+                  (
+                      journal       VARCHAR(64) PRIMARY KEY,
+                      last_sequence BIGINT NOT NULL DEFAULT 0
+                  )""",
+              "INSERT IGNORE INTO journal_watermark (journal, last_sequence) VALUES ('occupancy', 0)"),
+          new Migration(
+              10,
+              "Per-shelter, per-month occupancy quantile sketches",
+              """
+                  CREATE TABLE IF NOT EXISTS shelter_occupancy_sketch
+                  (
+                      shelter_id   INT,
+                      month        DATE,
+                      record_count BIGINT NOT NULL DEFAULT 0,
+                      sketch       MEDIUMBLOB NOT NULL,
+                      PRIMARY KEY (shelter_id, month),
+                      FOREIGN KEY (shelter_id) REFERENCES shelter (shelter_id) ON DELETE CASCADE ON UPDATE CASCADE
+                  )"""),
+          new Migration(
+              11,
+              "Covering indexes on the disbursement rollups for date range scans",
+              "CREATE INDEX idx_disburse_fund_daily_date ON disburse_fund_daily (date, shelter_id, funds)",
+              "CREATE INDEX idx_disburse_fund_monthly_month ON disburse_fund_monthly (month, shelter_id, funds)"),
+          new Migration(
+              12,
+              "Per-process write counters the in-process stores check for writes of other processes",
+              """
+                  CREATE TABLE IF NOT EXISTS write_watermark
+                  (
+                      source     VARCHAR(32),
+                      writer     VARCHAR(64),
+                      version    BIGINT    NOT NULL DEFAULT 0,
+                      updated_on TIMESTAMP NOT NULL DEFAULT CURRENT_TIMESTAMP ON UPDATE CURRENT_TIMESTAMP,
+                      PRIMARY KEY (source, writer)
+                  )"""));
+
+  private static final Pattern CREATE_INDEX =
+      Pattern.compile("\\s*CREATE\\s+INDEX\\s+(\\w+)\\s+ON\\s+(\\w+)", Pattern.CASE_INSENSITIVE);
+  private static final Pattern ADD_UNIQUE =
+      Pattern.compile(
+          "\\s*ALTER\\s+TABLE\\s+(\\w+)\\s+ADD\\s+CONSTRAINT\\s+(\\w+)\\s+UNIQUE",
+          Pattern.CASE_INSENSITIVE);
+
+  private static final String LOCK_NAME = "homeless_support_schema_migration";
+  private static final int LOCK_TIMEOUT_SECONDS = 60;
+
+  /**
+   * Returns the version of the newest migration known to this build.
+   *
+   * @return The latest schema version.
+   */
+  public static int getLatestVersion() {
+    return MIGRATIONS.get(MIGRATIONS.size() - 1).getVersion();
+  }
+
+  /**
+   * Applies every migration that has not yet been recorded in the schema_version table.
+   *
+   * @return The number of migrations applied.
+   * @throws SQLException If a migration fails; the versions before it stay applied.
+   * @throws IOException If there is an issue with input/output operations.
+   * @throws ClassNotFoundException If the required class is not found during database operations.
+   */
+  public int migrate() throws SQLException, IOException, ClassNotFoundException {
+    Connection connection = null;
+    int applied = 0;
+
+    try {
+      connection = DatabaseManager.getConnection();
+
+      /* Two instances starting together must not both apply the same migration */
+      PreparedStatement getLock = connection.prepareStatement("SELECT GET_LOCK(?, ?);");
+      getLock.setString(1, LOCK_NAME);
+      getLock.setInt(2, LOCK_TIMEOUT_SECONDS);
+      ResultSet getLockResultSet = getLock.executeQuery();
+      if (!getLockResultSet.next() || getLockResultSet.getInt(1) != 1) {
+        throw new SQLException("Could not acquire the schema migration lock.");
+      }
+
+      try {
+        Statement createVersionTable = connection.createStatement();
+        createVersionTable.executeUpdate(
+            """
+                CREATE TABLE IF NOT EXISTS schema_version
+                (
+                    version     INT PRIMARY KEY,
+                    description VARCHAR(255),
+                    applied_on  TIMESTAMP DEFAULT CURRENT_TIMESTAMP
+                )""");
+
+        Set<Integer> appliedVersions = getAppliedVersions(connection);
+        for (Migration migration : MIGRATIONS) {
+          if (appliedVersions.contains(migration.getVersion())) {
+            continue;
+          }
+          apply(connection, migration);
+          applied++;
+        }
+      } finally {
+        PreparedStatement releaseLock = connection.prepareStatement("SELECT RELEASE_LOCK(?);");
+        releaseLock.setString(1, LOCK_NAME);
+        releaseLock.executeQuery();
+      }
+    } catch (SQLException sqlException) {
+      throw new SQLException(sqlException.getMessage());
+    } catch (IOException ioException) {
+      throw new IOException(ioException.getMessage());
+    } catch (ClassNotFoundException classNotFoundException) {
+      throw new ClassNotFoundException(classNotFoundException.getMessage());
+    } finally {
+      /* Ensure the connection is closed */
+      DatabaseManager.closeConnection(connection);
+    }
+
+    return applied;
+  }
+
+  /**
+   * Returns the highest schema version recorded in the database.
+   *
+   * @return The current schema version, or 0 if no migration has been applied.
+   * @throws SQLException If there is an issue with the SQL operations.
+   * @throws IOException If there is an issue with input/output operations.
+   * @throws ClassNotFoundException If the required class is not found during database operations.
+   */
+  public int getCurrentVersion() throws SQLException, IOException, ClassNotFoundException {
+    Connection connection = null;
+
+    try {
+      connection = DatabaseManager.getConnection();
+
+      PreparedStatement currentVersion =
+          connection.prepareStatement("SELECT COALESCE(MAX(version), 0) FROM schema_version;");
+      ResultSet currentVersionResultSet = currentVersion.executeQuery();
+      if (currentVersionResultSet.next()) {
+        return currentVersionResultSet.getInt(1);
+      }
+    } catch (SQLException sqlException) {
+      throw new SQLException(sqlException.getMessage());
+    } catch (IOException ioException) {
+      throw new IOException(ioException.getMessage());
+    } catch (ClassNotFoundException classNotFoundException) {
+      throw new ClassNotFoundException(classNotFoundException.getMessage());
+    } finally {
+      /* Ensure the connection is closed */
+      DatabaseManager.closeConnection(connection);
+    }
+    return 0;
+  }
+
+  /**
+   * Reads the versions already recorded in the schema_version table.
+   *
+   * @param connection The database connection.
+   * @return The applied versions.
+   * @throws SQLException If there is an issue with the SQL operations.
+   */
+  private Set<Integer> getAppliedVersions(Connection connection) throws SQLException {
+    Set<Integer> result = new HashSet<>();
+    PreparedStatement appliedVersions =
+        connection.prepareStatement("SELECT version FROM schema_version;");
+    ResultSet appliedVersionsResultSet = appliedVersions.executeQuery();
+    while (appliedVersionsResultSet.next()) {
+      result.add(appliedVersionsResultSet.getInt("version"));
+    }
+    return result;
+  }
+
+  /**
+   * Runs the statements of a migration and records its version. MySQL commits DDL implicitly, so
+   * every statement is written to be safe to run again: tables are created if they do not exist,
+   * seeding inserts overwrite or skip the rows already there, and an index that already exists is
+   * not created again. A migration that fails part way is then simply applied again on the next
+   * start.
+   *
+   * @param connection The database connection.
+   * @param migration The migration to apply.
+   * @throws SQLException If one of the statements fails, or existing rows block the migration.
+   */
+  void apply(Connection connection, Migration migration) throws SQLException {
+    if (migration.getConflictQuery() != null) {
+      List<String> conflicts = new ArrayList<>();
+      PreparedStatement conflictQuery = connection.prepareStatement(migration.getConflictQuery());
+      ResultSet conflictResultSet = conflictQuery.executeQuery();
+      while (conflictResultSet.next()) {
+        conflicts.add(conflictResultSet.getString(1));
+      }
+      if (!conflicts.isEmpty()) {
+        throw new SQLException(
+            "Migration "
+                + migration.getVersion()
+                + " ("
+                + migration.getDescription()
+                + ") is blocked by existing rows; resolve these first: "
+                + String.join(", ", conflicts));
+      }
+    }
+
+    for (String sql : migration.getStatements()) {
+      String[] index = indexCreatedBy(sql);
+      if (index != null && indexExists(connection, index[0], index[1])) {
+        continue;
+      }
+      Statement statement = connection.createStatement();
+      statement.executeUpdate(sql);
+    }
+
+    PreparedStatement recordVersion =
+        connection.prepareStatement(
+            "insert into schema_version (version, description) values (?, ?)");
+    recordVersion.setInt(1, migration.getVersion());
+    recordVersion.setString(2, migration.getDescription());
+    recordVersion.executeUpdate();
+  }
+
+  /**
+   * Returns the index a statement creates. MySQL has no "CREATE INDEX IF NOT EXISTS", so these
+   * statements are skipped instead when the index is already there.
+   *
+   * @param sql The statement.
+   * @return The table and index name, or null if the statement does not create an index.
+   */
+  static String[] indexCreatedBy(String sql) {
+    Matcher createIndex = CREATE_INDEX.matcher(sql);
+    if (createIndex.lookingAt()) {
+      return new String[] {createIndex.group(2), createIndex.group(1)};
+    }
+    Matcher addUnique = ADD_UNIQUE.matcher(sql);
+    if (addUnique.lookingAt()) {
+      return new String[] {addUnique.group(1), addUnique.group(2)};
+    }
+    return null;
+  }
+
+  /**
+   * Checks whether a table in the current schema has an index.
+   *
+   * @param connection The database connection.
+   * @param table The table.
+   * @param index The index name.
+   * @return True if the index exists.
+   * @throws SQLException If there is an issue with the SQL operations.
+   */
+  private boolean indexExists(Connection connection, String table, String index)
+      throws SQLException {
+    PreparedStatement indexQuery =
+        connection.prepareStatement(
+            "select 1 from information_schema.statistics where table_schema = database() and table_name = ? and index_name = ? limit 1");
+    indexQuery.setString(1, table);
+    indexQuery.setString(2, index);
+    return indexQuery.executeQuery().next();
+  }
+}
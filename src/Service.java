@@ -1,7 +1,9 @@
 import java.io.IOException;
 import java.sql.Connection;
 import java.sql.PreparedStatement;
+import java.sql.ResultSet;
 import java.sql.SQLException;
+import java.sql.Statement;
 
 /** Represents a service that can be available at a shelter or a camp. */
 public class Service {
@@ -18,6 +20,17 @@ public class Service {
     return this.inspectionFrequency;
   }
 
+  private int serviceID = Constants.SERVICE_NOT_FOUND;
+
+  /**
+   * Returns the ID of the service once it has been defined.
+   *
+   * @return The service ID, or {@code Constants.SERVICE_NOT_FOUND} before a successful definition.
+   */
+  public int getServiceID() {
+    return this.serviceID;
+  }
+
   /**
    * Creates a new service with the specified name and inspection frequency.
    *
@@ -45,12 +58,18 @@ public class Service {
       connection = DatabaseManager.getConnection();
 
       /* If service does not exist, add service */
-      if (helperMethod.isServiceExists(serviceName) == Constants.SERVICE_NOT_FOUND) {
+      int existingServiceID = helperMethod.isServiceExists(serviceName);
+      if (existingServiceID == Constants.SERVICE_NOT_FOUND) {
         PreparedStatement insertService =
-            connection.prepareStatement("insert into service (name, frequency) values (?, ?)");
+            connection.prepareStatement(
+                "insert into service (name, frequency) values (?, ?)",
+                Statement.RETURN_GENERATED_KEYS);
         insertService.setString(1, serviceName);
         insertService.setInt(2, inspectionFrequency);
         insertService.executeUpdate();
+        ResultSet generatedKeys = insertService.getGeneratedKeys();
+        generatedKeys.next();
+        serviceID = generatedKeys.getInt(1);
       }
       /* If service exists, update the frequency */
       else {
@@ -59,6 +78,7 @@ public class Service {
         updateService.setInt(1, inspectionFrequency);
         updateService.setString(2, serviceName);
         updateService.executeUpdate();
+        serviceID = existingServiceID;
       }
     } catch (SQLException sqlException) {
       throw new SQLException(sqlException.getMessage());
@@ -0,0 +1,13 @@
+/** A handle to a service defined in the system. */
+public class ServiceHandle extends EntityHandle {
+
+  /**
+   * Creates a handle for a service.
+   *
+   * @param id The service id.
+   * @param name The name of the service.
+   */
+  public ServiceHandle(int id, String name) {
+    super(id, name);
+  }
+}
@@ -1,6 +1,8 @@
 import java.io.IOException;
 import java.sql.*;
 import java.sql.Date;
+import java.time.LocalDate;
+import java.time.YearMonth;
 import java.util.*;
 
 /**
@@ -22,6 +24,17 @@ public class Shelter implements Locatable {
     return maxCapacity;
   }
 
+  private int shelterID = Constants.SHELTER_NOT_FOUND;
+
+  /**
+   * Returns the ID of the shelter once it has been defined.
+   *
+   * @return the shelter ID, or {@code Constants.SHELTER_NOT_FOUND} before a successful definition.
+   */
+  public int getShelterID() {
+    return shelterID;
+  }
+
   private String staffInCharge;
   private int fundsReceived;
 
@@ -83,16 +96,21 @@ public class Shelter implements Locatable {
       }
 
       /* If shelter does not exist, add shelter */
-      if (helperMethod.isShelterExists(name) == Constants.SHELTER_NOT_FOUND) {
+      int existingShelterID = helperMethod.isShelterExists(name);
+      if (existingShelterID == Constants.SHELTER_NOT_FOUND) {
         PreparedStatement insertShelter =
             connection.prepareStatement(
-                "insert into shelter (name, locationX, locationY, capacity, staff_in_charge) values (?, ?, ?, ?, ?)");
+                "insert into shelter (name, locationX, locationY, capacity, staff_in_charge) values (?, ?, ?, ?, ?)",
+                Statement.RETURN_GENERATED_KEYS);
         insertShelter.setString(1, name);
         insertShelter.setInt(2, getLocation().getX());
         insertShelter.setInt(3, getLocation().getY());
         insertShelter.setInt(4, maxCapacity);
         insertShelter.setString(5, staffInCharge);
         insertShelter.executeUpdate();
+        ResultSet generatedKeys = insertShelter.getGeneratedKeys();
+        generatedKeys.next();
+        shelterID = generatedKeys.getInt(1);
       }
       /* If shelter exists, update the details */
       else {
@@ -105,7 +123,13 @@ public class Shelter implements Locatable {
         updateShelter.setString(4, staffInCharge);
         updateShelter.setString(5, name);
         updateShelter.executeUpdate();
+        shelterID = existingShelterID;
       }
+      /* The steps above commit one by one, as the shelter lookup reads through its own connection */
+      WriteWatermark.getInstance().recordWrite(connection, ReportCache.Source.SHELTERS);
+
+      /* A new capacity or location changes every report that involves the shelter */
+      ReportCache.getInstance().invalidate(ReportCache.Source.SHELTERS);
     } catch (SQLException sqlException) {
       throw new SQLException(sqlException.getMessage());
     } catch (IOException ioException) {
@@ -131,6 +155,11 @@ public class Shelter implements Locatable {
    */
   public Set<String> shelterAtCapacity(int threshold)
       throws SQLException, IOException, ClassNotFoundException {
+    OccupancyColumnStore occupancyStore = OccupancyColumnStore.getInstance();
+    if (occupancyStore.isCurrent()) {
+      return shelterAtCapacityFromStore(occupancyStore, threshold);
+    }
+
     Set<String> result = new HashSet<>();
 
     try {
@@ -146,9 +175,19 @@ public class Shelter implements Locatable {
                     AND sor.occupancy >= s.capacity * ?""");
       shelterAtCapacity.setDouble(1, threshold / 100.00);
       ResultSet shelterCapacityResultSet = shelterAtCapacity.executeQuery();
+      ReportStageEvent collectStage = ReportStageEvent.start("shelterAtCapacity", "collectResults");
       while (shelterCapacityResultSet.next()) {
         result.add(shelterCapacityResultSet.getString("name"));
       }
+      collectStage.commit();
+
+      Map<String, int[]> archivedOnly = new HashMap<>();
+      addArchivedOnlyShelters(connection, archivedOnly);
+      for (Map.Entry<String, int[]> entry : archivedOnly.entrySet()) {
+        if (entry.getValue()[0] >= entry.getValue()[1] * (threshold / 100.00)) {
+          result.add(entry.getKey());
+        }
+      }
     } catch (SQLException sqlException) {
       throw new SQLException(sqlException.getMessage());
     } catch (IOException ioException) {
@@ -163,6 +202,168 @@ public class Shelter implements Locatable {
     return result;
   }
 
+  /**
+   * Retrieves, for each of several thresholds, the shelters at or above that occupancy percentage.
+   * The latest occupancy of every shelter is read once and each threshold is checked against it.
+   *
+   * @param thresholds the occupancy thresholds as percentages.
+   * @return each threshold mapped to the set of shelter names meeting it, in threshold order.
+   * @throws SQLException if a SQL error occurs.
+   * @throws IOException if an I/O error occurs.
+   * @throws ClassNotFoundException if the required class is not found.
+   */
+  public Map<Integer, Set<String>> shelterAtCapacity(List<Integer> thresholds)
+      throws SQLException, IOException, ClassNotFoundException {
+    ReportStageEvent loadStage = ReportStageEvent.start("shelterAtCapacity", "loadLatestOccupancy");
+    Map<String, int[]> latestOccupancies = getLatestOccupancies();
+    loadStage.commit();
+
+    Map<Integer, Set<String>> result = new TreeMap<>();
+    for (int threshold : thresholds) {
+      result.put(threshold, new HashSet<>());
+    }
+
+    ReportStageEvent scanStage = ReportStageEvent.start("shelterAtCapacity", "checkThresholds");
+    for (Map.Entry<String, int[]> entry : latestOccupancies.entrySet()) {
+      int occupancy = entry.getValue()[0];
+      int capacity = entry.getValue()[1];
+      for (Map.Entry<Integer, Set<String>> threshold : result.entrySet()) {
+        if (occupancy >= capacity * (threshold.getKey() / 100.00)) {
+          threshold.getValue().add(entry.getKey());
+        }
+      }
+    }
+    scanStage.commit();
+
+    return result;
+  }
+
+  /**
+   * Groups the shelters into utilization bands by their latest occupancy, in one pass. A shelter
+   * in band b is using at least b and less than b + bandWidth percent of its capacity; a full
+   * shelter is in band 100 when bandWidth divides 100.
+   *
+   * @param bandWidth the width of each band in percentage points.
+   * @return the lower bound of each band mapped to the shelters in it; empty bands are left out.
+   * @throws SQLException if a SQL error occurs.
+   * @throws IOException if an I/O error occurs.
+   * @throws ClassNotFoundException if the required class is not found.
+   */
+  public Map<Integer, Set<String>> capacityBands(int bandWidth)
+      throws SQLException, IOException, ClassNotFoundException {
+    ReportStageEvent loadStage = ReportStageEvent.start("capacityBands", "loadLatestOccupancy");
+    Map<String, int[]> latestOccupancies = getLatestOccupancies();
+    loadStage.commit();
+
+    Map<Integer, Set<String>> result = new TreeMap<>();
+    ReportStageEvent scanStage = ReportStageEvent.start("capacityBands", "assignBands");
+    for (Map.Entry<String, int[]> entry : latestOccupancies.entrySet()) {
+      /* Whole percentages, so a shelter in band b also meets every integer threshold up to b */
+      int percent = (int) (entry.getValue()[0] * 100L / entry.getValue()[1]);
+      result
+          .computeIfAbsent(percent / bandWidth * bandWidth, k -> new HashSet<>())
+          .add(entry.getKey());
+    }
+    scanStage.commit();
+
+    return result;
+  }
+
+  /**
+   * Retrieves the latest occupancy and the capacity of every shelter that has an occupancy record,
+   * from the column store when it is ready and otherwise with one query plus the archive.
+   *
+   * @return shelter name mapped to its latest occupancy and its capacity.
+   * @throws SQLException if a SQL error occurs.
+   * @throws IOException if an I/O error occurs.
+   * @throws ClassNotFoundException if the required class is not found.
+   */
+  private Map<String, int[]> getLatestOccupancies()
+      throws SQLException, IOException, ClassNotFoundException {
+    Map<String, int[]> result = new HashMap<>();
+
+    OccupancyColumnStore occupancyStore = OccupancyColumnStore.getInstance();
+    if (occupancyStore.isCurrent()) {
+      for (Map.Entry<Integer, Shelter> entry : getShelterDirectory().entrySet()) {
+        Pair<LocalDate, Integer> latest = occupancyStore.latestOccupancy(entry.getKey());
+        if (latest != null) {
+          result.put(
+              entry.getValue().getName(),
+              new int[] {latest.getValue(), entry.getValue().getMaxCapacity()});
+        }
+      }
+      return result;
+    }
+
+    try {
+      connection = DatabaseManager.getConnection();
+
+      PreparedStatement latestOccupancies =
+          connection.prepareStatement(
+              """
+                  SELECT s.name, s.capacity, sor.occupancy
+                  FROM shelter s
+                           JOIN shelter_occupancy_record sor ON s.shelter_id = sor.shelter_id
+                  WHERE sor.date = (SELECT MAX(date) FROM shelter_occupancy_record WHERE shelter_id = s.shelter_id)""");
+      ResultSet latestOccupanciesResultSet = latestOccupancies.executeQuery();
+      while (latestOccupanciesResultSet.next()) {
+        result.put(
+            latestOccupanciesResultSet.getString("name"),
+            new int[] {
+              latestOccupanciesResultSet.getInt("occupancy"),
+              latestOccupanciesResultSet.getInt("capacity")
+            });
+      }
+
+      addArchivedOnlyShelters(connection, result);
+    } catch (SQLException sqlException) {
+      throw new SQLException(sqlException.getMessage());
+    } catch (IOException ioException) {
+      throw new IOException(ioException.getMessage());
+    } catch (ClassNotFoundException classNotFoundException) {
+      throw new ClassNotFoundException(classNotFoundException.getMessage());
+    } finally {
+      /* Ensure the connection is closed */
+      DatabaseManager.closeConnection(connection);
+    }
+
+    return result;
+  }
+
+  /**
+   * Adds the latest occupancy and the capacity of every shelter whose records have all been
+   * archived, which the queries over shelter_occupancy_record do not see. Nothing is added while
+   * the archive is closed.
+   *
+   * @param connection the open connection to read the shelters with.
+   * @param result shelter name mapped to its latest occupancy and its capacity, added to.
+   * @throws SQLException if a SQL error occurs.
+   * @throws IOException if the archive cannot be read.
+   */
+  private void addArchivedOnlyShelters(Connection connection, Map<String, int[]> result)
+      throws SQLException, IOException {
+    OccupancyArchive occupancyArchive = OccupancyArchive.getInstance();
+    if (!occupancyArchive.isOpen()) {
+      return;
+    }
+    PreparedStatement archivedOnlyShelters =
+        connection.prepareStatement(
+            """
+                SELECT s.shelter_id, s.name, s.capacity
+                FROM shelter s
+                WHERE NOT EXISTS (SELECT 1 FROM shelter_occupancy_record sor WHERE sor.shelter_id = s.shelter_id)""");
+    ResultSet archivedOnlySheltersResultSet = archivedOnlyShelters.executeQuery();
+    while (archivedOnlySheltersResultSet.next()) {
+      Pair<LocalDate, Integer> latest =
+          occupancyArchive.latestOccupancy(archivedOnlySheltersResultSet.getInt("shelter_id"));
+      if (latest != null) {
+        result.put(
+            archivedOnlySheltersResultSet.getString("name"),
+            new int[] {latest.getValue(), archivedOnlySheltersResultSet.getInt("capacity")});
+      }
+    }
+  }
+
   /**
    * Retrieves the names of shelters with occupancy variance meeting specified criteria.
    *
@@ -174,8 +375,18 @@ public class Shelter implements Locatable {
    * @throws IOException if an I/O error occurs.
    * @throws ClassNotFoundException if the required class is not found.
    */
-  public Set<String> occupancyVariance(String startDate, String endDate, int threshold)
+  public Set<String> occupancyVariance(LocalDate startDate, LocalDate endDate, int threshold)
       throws SQLException, IOException, ClassNotFoundException {
+    OccupancyColumnStore occupancyStore = OccupancyColumnStore.getInstance();
+    if (occupancyStore.isCurrent()) {
+      return occupancyVarianceFromStore(occupancyStore, startDate, endDate, threshold);
+    }
+    OccupancyArchive occupancyArchive = OccupancyArchive.getInstance();
+    if (occupancyArchive.isOpen()
+        && occupancyArchive.hasYearsBetween(startDate.getYear(), endDate.getYear())) {
+      return occupancyVarianceWithArchive(occupancyArchive, startDate, endDate, threshold);
+    }
+
     Set<String> result = new HashSet<>();
 
     try {
@@ -197,9 +408,432 @@ public class Shelter implements Locatable {
       shelterOccupancyVariance.setDate(2, Date.valueOf(endDate));
       shelterOccupancyVariance.setDouble(3, threshold / 100.00);
       ResultSet shelterOccupancyVarianceResultSet = shelterOccupancyVariance.executeQuery();
+      ReportStageEvent collectStage = ReportStageEvent.start("occupancyVariance", "collectResults");
       while (shelterOccupancyVarianceResultSet.next()) {
         result.add(shelterOccupancyVarianceResultSet.getString("name"));
       }
+      collectStage.commit();
+    } catch (SQLException sqlException) {
+      throw new SQLException(sqlException.getMessage());
+    } catch (IOException ioException) {
+      throw new IOException(ioException.getMessage());
+    } catch (ClassNotFoundException classNotFoundException) {
+      throw new ClassNotFoundException(classNotFoundException.getMessage());
+    } finally {
+      /* Ensure the connection is closed */
+      DatabaseManager.closeConnection(connection);
+    }
+
+    return result;
+  }
+
+  /**
+   * Retrieves, for each of many date windows, the names of shelters whose occupancy variance in
+   * that window meets the threshold. The records covering all the windows are read in one pass
+   * into a daily series per shelter, and the range of every window is then taken from that series.
+   *
+   * @param windows the start and end date of each window, both included.
+   * @param threshold the occupancy variance threshold as a percentage.
+   * @return for each window, in the given order, the set of shelter names meeting the criteria.
+   * @throws SQLException if a SQL error occurs.
+   * @throws IOException if an I/O error occurs.
+   * @throws ClassNotFoundException if the required class is not found.
+   */
+  public List<Set<String>> occupancyVariance(
+      List<Pair<LocalDate, LocalDate>> windows, int threshold)
+      throws SQLException, IOException, ClassNotFoundException {
+    List<Set<String>> result = new ArrayList<>();
+    for (int window = 0; window < windows.size(); window++) {
+      result.add(new HashSet<>());
+    }
+
+    /* Every window is expressed as day offsets into one series covering all of them */
+    LocalDate firstDate = LocalDate.MAX;
+    LocalDate lastDate = LocalDate.MIN;
+    for (Pair<LocalDate, LocalDate> window : windows) {
+      if (!window.getValue().isBefore(window.getKey())) {
+        firstDate = window.getKey().isBefore(firstDate) ? window.getKey() : firstDate;
+        lastDate = window.getValue().isAfter(lastDate) ? window.getValue() : lastDate;
+      }
+    }
+    if (firstDate.isAfter(lastDate)) {
+      return result;
+    }
+    long firstEpochDay = firstDate.toEpochDay();
+    int[] firstDays = new int[windows.size()];
+    int[] lastDays = new int[windows.size()];
+    for (int window = 0; window < windows.size(); window++) {
+      firstDays[window] = (int) (windows.get(window).getKey().toEpochDay() - firstEpochDay);
+      lastDays[window] = (int) (windows.get(window).getValue().toEpochDay() - firstEpochDay);
+    }
+
+    ReportStageEvent loadStage = ReportStageEvent.start("occupancyVariance", "loadSeries");
+    Map<Integer, Shelter> shelterDirectory = getShelterDirectory();
+    Map<Integer, int[]> seriesByShelter = getOccupancySeries(shelterDirectory, firstDate, lastDate);
+    loadStage.commit();
+
+    ReportStageEvent windowStage = ReportStageEvent.start("occupancyVariance", "computeWindows");
+    for (Map.Entry<Integer, int[]> series : seriesByShelter.entrySet()) {
+      Shelter shelter = shelterDirectory.get(series.getKey());
+      int[][] occupancyRanges = WindowRanges.compute(series.getValue(), firstDays, lastDays);
+      for (int window = 0; window < occupancyRanges.length; window++) {
+        int[] occupancyRange = occupancyRanges[window];
+        if (occupancyRange != null
+            && (occupancyRange[1] - occupancyRange[0]) / (double) shelter.maxCapacity
+                >= threshold / 100.00) {
+          result.get(window).add(shelter.getName());
+        }
+      }
+    }
+    windowStage.commit();
+
+    return result;
+  }
+
+  /**
+   * Retrieves a percentile of each shelter's occupancy between two dates. The whole months in the
+   * range are answered by merging their sketches from the occupancy sketch store, without reading
+   * the records; the days of a partly covered first or last month, or the whole range when the
+   * store is not open, are read from the records and added to the merged sketches.
+   *
+   * @param startDate the first day of the range.
+   * @param endDate the last day of the range.
+   * @param percentile the percentile, from 0 to 100; 50 is the median.
+   * @return shelter names mapped to the occupancy at the percentile; shelters without records in
+   *     the range are left out.
+   * @throws SQLException if a SQL error occurs.
+   * @throws IOException if an I/O error occurs.
+   * @throws ClassNotFoundException if the required class is not found.
+   */
+  public Map<String, Integer> occupancyPercentile(
+      LocalDate startDate, LocalDate endDate, int percentile)
+      throws SQLException, IOException, ClassNotFoundException {
+    Map<String, Integer> result = new HashMap<>();
+    if (endDate.isBefore(startDate)) {
+      return result;
+    }
+
+    ReportStageEvent mergeStage = ReportStageEvent.start("occupancyPercentile", "mergeSketches");
+    OccupancySketchStore sketchStore = OccupancySketchStore.getInstance();
+    Map<Integer, KllSketch> sketchesByShelter = new HashMap<>();
+    List<Pair<LocalDate, LocalDate>> recordRanges = new ArrayList<>();
+    YearMonth firstMonth =
+        startDate.getDayOfMonth() == 1
+            ? YearMonth.from(startDate)
+            : YearMonth.from(startDate).plusMonths(1);
+    YearMonth lastMonth =
+        endDate.getDayOfMonth() == endDate.lengthOfMonth()
+            ? YearMonth.from(endDate)
+            : YearMonth.from(endDate).minusMonths(1);
+    if (!lastMonth.isBefore(firstMonth) && sketchStore.isCurrent()) {
+      sketchesByShelter = sketchStore.merge(firstMonth, lastMonth);
+      if (startDate.isBefore(firstMonth.atDay(1))) {
+        recordRanges.add(new Pair<>(startDate, firstMonth.atDay(1).minusDays(1)));
+      }
+      if (endDate.isAfter(lastMonth.atEndOfMonth())) {
+        recordRanges.add(new Pair<>(lastMonth.atEndOfMonth().plusDays(1), endDate));
+      }
+    } else {
+      recordRanges.add(new Pair<>(startDate, endDate));
+    }
+    mergeStage.commit();
+
+    Map<Integer, Shelter> shelterDirectory = null;
+    if (!recordRanges.isEmpty()) {
+      ReportStageEvent loadStage = ReportStageEvent.start("occupancyPercentile", "loadRecords");
+      shelterDirectory = getShelterDirectory();
+      for (Pair<LocalDate, LocalDate> recordRange : recordRanges) {
+        Map<Integer, int[]> seriesByShelter =
+            getOccupancySeries(shelterDirectory, recordRange.getKey(), recordRange.getValue());
+        for (Map.Entry<Integer, int[]> series : seriesByShelter.entrySet()) {
+          KllSketch sketch =
+              sketchesByShelter.computeIfAbsent(series.getKey(), k -> new KllSketch());
+          for (int occupancy : series.getValue()) {
+            if (occupancy != WindowRanges.MISSING) {
+              sketch.update(occupancy);
+            }
+          }
+        }
+      }
+      loadStage.commit();
+    }
+
+    for (Map.Entry<Integer, KllSketch> sketch : sketchesByShelter.entrySet()) {
+      String name = sketchStore.getName(sketch.getKey());
+      if (name == null) {
+        /* A shelter defined after the store was opened */
+        if (shelterDirectory == null) {
+          shelterDirectory = getShelterDirectory();
+        }
+        Shelter shelter = shelterDirectory.get(sketch.getKey());
+        if (shelter == null) {
+          continue;
+        }
+        name = shelter.getName();
+        sketchStore.putName(sketch.getKey(), name);
+      }
+      Integer value = sketch.getValue().quantile(percentile / 100.0);
+      if (value != null) {
+        result.put(name, value);
+      }
+    }
+
+    return result;
+  }
+
+  /**
+   * Reads the occupancy records of every shelter between two dates into one dense daily series per
+   * shelter, from the column store when it is ready and otherwise from the database and the
+   * archive.
+   *
+   * @param shelterDirectory the shelters to read, by ID.
+   * @param startDate the first day of the series.
+   * @param endDate the last day of the series.
+   * @return shelter ID mapped to its occupancy on each day, {@link WindowRanges#MISSING} for days
+   *     without a record; shelters without records in the range are left out.
+   * @throws SQLException if a SQL error occurs.
+   * @throws IOException if an I/O error occurs.
+   * @throws ClassNotFoundException if the required class is not found.
+   */
+  private Map<Integer, int[]> getOccupancySeries(
+      Map<Integer, Shelter> shelterDirectory, LocalDate startDate, LocalDate endDate)
+      throws SQLException, IOException, ClassNotFoundException {
+    Map<Integer, int[]> result = new HashMap<>();
+    long firstEpochDay = startDate.toEpochDay();
+    int length = (int) (endDate.toEpochDay() - firstEpochDay + 1);
+    OccupancyVisitor collector =
+        (shelterID, date, occupancy) -> {
+          if (shelterDirectory.containsKey(shelterID)) {
+            int[] series =
+                result.computeIfAbsent(
+                    shelterID,
+                    k -> {
+                      int[] empty = new int[length];
+                      Arrays.fill(empty, WindowRanges.MISSING);
+                      return empty;
+                    });
+            series[(int) (date.toEpochDay() - firstEpochDay)] = occupancy;
+          }
+        };
+
+    OccupancyColumnStore occupancyStore = OccupancyColumnStore.getInstance();
+    if (occupancyStore.isCurrent()) {
+      for (int shelterID : shelterDirectory.keySet()) {
+        occupancyStore.scan(shelterID, startDate, endDate, collector);
+      }
+      return result;
+    }
+
+    OccupancyArchive occupancyArchive = OccupancyArchive.getInstance();
+    if (occupancyArchive.isOpen()
+        && occupancyArchive.hasYearsBetween(startDate.getYear(), endDate.getYear())) {
+      for (int shelterID : shelterDirectory.keySet()) {
+        occupancyArchive.scan(shelterID, startDate, endDate, collector);
+      }
+    }
+
+    try {
+      connection = DatabaseManager.getConnection();
+
+      PreparedStatement occupancySeries =
+          connection.prepareStatement(
+              """
+                  SELECT shelter_id, date, occupancy
+                  FROM shelter_occupancy_record
+                  WHERE date BETWEEN ? AND ?""");
+      occupancySeries.setDate(1, Date.valueOf(startDate));
+      occupancySeries.setDate(2, Date.valueOf(endDate));
+      ResultSet occupancySeriesResultSet = occupancySeries.executeQuery();
+      while (occupancySeriesResultSet.next()) {
+        collector.visit(
+            occupancySeriesResultSet.getInt("shelter_id"),
+            occupancySeriesResultSet.getDate("date").toLocalDate(),
+            occupancySeriesResultSet.getInt("occupancy"));
+      }
+    } catch (SQLException sqlException) {
+      throw new SQLException(sqlException.getMessage());
+    } catch (IOException ioException) {
+      throw new IOException(ioException.getMessage());
+    } catch (ClassNotFoundException classNotFoundException) {
+      throw new ClassNotFoundException(classNotFoundException.getMessage());
+    } finally {
+      /* Ensure the connection is closed */
+      DatabaseManager.closeConnection(connection);
+    }
+
+    return result;
+  }
+
+  /**
+   * Answers shelterAtCapacity from the occupancy column store. Only the small shelter table is read
+   * over JDBC; the latest occupancy of each shelter comes from its mapped segments.
+   *
+   * @param occupancyStore the ready occupancy column store.
+   * @param threshold the occupancy threshold as a percentage.
+   * @return a set of shelter names meeting the specified criteria.
+   * @throws SQLException if a SQL error occurs.
+   * @throws IOException if an I/O error occurs.
+   * @throws ClassNotFoundException if the required class is not found.
+   */
+  private Set<String> shelterAtCapacityFromStore(OccupancyColumnStore occupancyStore, int threshold)
+      throws SQLException, IOException, ClassNotFoundException {
+    Set<String> result = new HashSet<>();
+    Map<Integer, Shelter> shelterDirectory = getShelterDirectory();
+
+    ReportStageEvent scanStage = ReportStageEvent.start("shelterAtCapacity", "scanColumnStore");
+    for (Map.Entry<Integer, Shelter> entry : shelterDirectory.entrySet()) {
+      Shelter shelter = entry.getValue();
+      Pair<LocalDate, Integer> latest = occupancyStore.latestOccupancy(entry.getKey());
+      if (latest != null && latest.getValue() >= shelter.maxCapacity * (threshold / 100.00)) {
+        result.add(shelter.getName());
+      }
+    }
+    scanStage.commit();
+
+    return result;
+  }
+
+  /**
+   * Answers occupancyVariance from the occupancy column store. Only the small shelter table is
+   * read over JDBC; the occupancy range of each shelter comes from its mapped segments.
+   *
+   * @param occupancyStore the ready occupancy column store.
+   * @param startDate the start date for the occupancy records.
+   * @param endDate the end date for the occupancy records.
+   * @param threshold the occupancy variance threshold as a percentage.
+   * @return a set of shelter names meeting the specified criteria.
+   * @throws SQLException if a SQL error occurs.
+   * @throws IOException if an I/O error occurs.
+   * @throws ClassNotFoundException if the required class is not found.
+   */
+  private Set<String> occupancyVarianceFromStore(
+      OccupancyColumnStore occupancyStore, LocalDate startDate, LocalDate endDate, int threshold)
+      throws SQLException, IOException, ClassNotFoundException {
+    Set<String> result = new HashSet<>();
+    Map<Integer, Shelter> shelterDirectory = getShelterDirectory();
+
+    ReportStageEvent scanStage = ReportStageEvent.start("occupancyVariance", "scanColumnStore");
+    for (Map.Entry<Integer, Shelter> entry : shelterDirectory.entrySet()) {
+      Shelter shelter = entry.getValue();
+      int[] occupancyRange = occupancyStore.occupancyRange(entry.getKey(), startDate, endDate);
+      if (occupancyRange != null
+          && (occupancyRange[1] - occupancyRange[0]) / (double) shelter.maxCapacity
+              >= threshold / 100.00) {
+        result.add(shelter.getName());
+      }
+    }
+    scanStage.commit();
+
+    return result;
+  }
+
+  /**
+   * Answers occupancyVariance when the range reaches into archived years, by merging the occupancy
+   * range of the records still in the database with the range read from the archive.
+   *
+   * @param occupancyArchive the open occupancy archive.
+   * @param startDate the start date for the occupancy records.
+   * @param endDate the end date for the occupancy records.
+   * @param threshold the occupancy variance threshold as a percentage.
+   * @return a set of shelter names meeting the specified criteria.
+   * @throws SQLException if a SQL error occurs.
+   * @throws IOException if an I/O error occurs.
+   * @throws ClassNotFoundException if the required class is not found.
+   */
+  private Set<String> occupancyVarianceWithArchive(
+      OccupancyArchive occupancyArchive, LocalDate startDate, LocalDate endDate, int threshold)
+      throws SQLException, IOException, ClassNotFoundException {
+    Set<String> result = new HashSet<>();
+    Map<Integer, Shelter> shelterDirectory = getShelterDirectory();
+    Map<Integer, int[]> occupancyRanges = new HashMap<>();
+
+    try {
+      connection = DatabaseManager.getConnection();
+
+      PreparedStatement hotOccupancyRanges =
+          connection.prepareStatement(
+              """
+                  SELECT shelter_id, MAX(occupancy) AS max_occupancy, MIN(occupancy) AS min_occupancy
+                  FROM shelter_occupancy_record
+                  WHERE date BETWEEN ? AND ?
+                  GROUP BY shelter_id""");
+      hotOccupancyRanges.setDate(1, Date.valueOf(startDate));
+      hotOccupancyRanges.setDate(2, Date.valueOf(endDate));
+      ResultSet hotOccupancyRangesResultSet = hotOccupancyRanges.executeQuery();
+      while (hotOccupancyRangesResultSet.next()) {
+        occupancyRanges.put(
+            hotOccupancyRangesResultSet.getInt("shelter_id"),
+            new int[] {
+              hotOccupancyRangesResultSet.getInt("min_occupancy"),
+              hotOccupancyRangesResultSet.getInt("max_occupancy")
+            });
+      }
+    } catch (SQLException sqlException) {
+      throw new SQLException(sqlException.getMessage());
+    } catch (IOException ioException) {
+      throw new IOException(ioException.getMessage());
+    } catch (ClassNotFoundException classNotFoundException) {
+      throw new ClassNotFoundException(classNotFoundException.getMessage());
+    } finally {
+      /* Ensure the connection is closed */
+      DatabaseManager.closeConnection(connection);
+    }
+
+    ReportStageEvent mergeStage = ReportStageEvent.start("occupancyVariance", "mergeArchive");
+    for (Map.Entry<Integer, Shelter> entry : shelterDirectory.entrySet()) {
+      int[] hotRange = occupancyRanges.get(entry.getKey());
+      int[] archivedRange = occupancyArchive.occupancyRange(entry.getKey(), startDate, endDate);
+      if (hotRange == null && archivedRange == null) {
+        continue;
+      }
+      int min =
+          Math.min(
+              hotRange == null ? Integer.MAX_VALUE : hotRange[0],
+              archivedRange == null ? Integer.MAX_VALUE : archivedRange[0]);
+      int max =
+          Math.max(
+              hotRange == null ? Integer.MIN_VALUE : hotRange[1],
+              archivedRange == null ? Integer.MIN_VALUE : archivedRange[1]);
+      if ((max - min) / (double) entry.getValue().maxCapacity >= threshold / 100.00) {
+        result.add(entry.getValue().getName());
+      }
+    }
+    mergeStage.commit();
+
+    return result;
+  }
+
+  /**
+   * Retrieves every shelter with its name, location and capacity, keyed by shelter ID.
+   *
+   * @return a map of shelter IDs to shelters.
+   * @throws SQLException if a SQL error occurs.
+   * @throws IOException if an I/O error occurs.
+   * @throws ClassNotFoundException if the required class is not found.
+   */
+  private Map<Integer, Shelter> getShelterDirectory()
+      throws SQLException, IOException, ClassNotFoundException {
+    Map<Integer, Shelter> result = new HashMap<>();
+    try {
+      connection = DatabaseManager.getConnection();
+
+      PreparedStatement getShelterDirectory =
+          connection.prepareStatement(
+              "SELECT shelter_id, name, locationX, locationY, capacity FROM shelter;");
+      ResultSet shelterDirectoryResultSet = getShelterDirectory.executeQuery();
+      while (shelterDirectoryResultSet.next()) {
+        Point point =
+            new Point(
+                shelterDirectoryResultSet.getInt("locationX"),
+                shelterDirectoryResultSet.getInt("locationY"));
+        result.put(
+            shelterDirectoryResultSet.getInt("shelter_id"),
+            new Shelter(
+                shelterDirectoryResultSet.getString("name"),
+                point,
+                shelterDirectoryResultSet.getInt("capacity"),
+                null));
+      }
     } catch (SQLException sqlException) {
       throw new SQLException(sqlException.getMessage());
     } catch (IOException ioException) {
@@ -227,14 +861,19 @@ public class Shelter implements Locatable {
    * @throws ClassNotFoundException if the required class is not found.
    */
   public Set<String> underfundedShelter(
-      String startDate, String endDate, int distance, int threshold)
+      LocalDate startDate, LocalDate endDate, int distance, int threshold)
       throws SQLException, IOException, ClassNotFoundException {
 
     /* Fetching donors which made a donation in the given range */
+    ReportStageEvent loadDonorsStage = ReportStageEvent.start("underfundedShelter", "loadDonors");
     List<Donor> donors = getAllDonors(startDate, endDate);
+    loadDonorsStage.commit();
 
     /* Getting all shelters */
+    ReportStageEvent loadSheltersStage =
+        ReportStageEvent.start("underfundedShelter", "loadShelters");
     List<Shelter> shelters = getAllShelters(startDate, endDate);
+    loadSheltersStage.commit();
 
     Map<Donor, List<Shelter>> donorShelterMap = new HashMap<>();
     Map<Shelter, Integer> sheltersCalculatedDonationMap = new HashMap<>();
@@ -247,6 +886,7 @@ public class Shelter implements Locatable {
     }
 
     /* Adding shelters only which are within the range or the nearest shelters */
+    ReportStageEvent assignStage = ReportStageEvent.start("underfundedShelter", "assignShelters");
     for (Donor donor : donors) {
       List<Shelter> shelterList = new ArrayList<>();
       for (Shelter shelter : shelters) {
@@ -263,13 +903,15 @@ public class Shelter implements Locatable {
 
       donorShelterMap.put(donor, shelterList);
     }
+    assignStage.commit();
 
     /* Calculate funds for each shelter */
+    ReportStageEvent allocateStage = ReportStageEvent.start("underfundedShelter", "allocateFunds");
     for (Map.Entry<Donor, List<Shelter>> entry : donorShelterMap.entrySet()) {
       Donor donor = entry.getKey();
       List<Shelter> sheltersWithinRange = entry.getValue();
 
-      int totalFunds = donor.getDonation();
+      long totalFunds = donor.getDonation();
 
       /* Calculate the total capacity of all shelters */
       int totalCapacity = sheltersWithinRange.stream().mapToInt(s -> s.maxCapacity).sum();
@@ -287,11 +929,15 @@ public class Shelter implements Locatable {
       }
     }
 
+    allocateStage.commit();
+
+    ReportStageEvent rankStage = ReportStageEvent.start("underfundedShelter", "rankShelters");
     sortedUnderfundedShelters = getSortedUnderfundedShelters(sheltersCalculatedDonationMap);
 
     for (int i = 0; i < Math.min(threshold, sortedUnderfundedShelters.size()); i++) {
       result.add(sortedUnderfundedShelters.get(i).getName());
     }
+    rankStage.commit();
 
     return result;
   }
@@ -306,8 +952,13 @@ public class Shelter implements Locatable {
    * @throws IOException if an I/O error occurs.
    * @throws ClassNotFoundException if the required class is not found.
    */
-  private List<Donor> getAllDonors(String startDate, String endDate)
+  private List<Donor> getAllDonors(LocalDate startDate, LocalDate endDate)
       throws SQLException, IOException, ClassNotFoundException {
+    DonationIndex donationIndex = DonationIndex.getInstance();
+    if (donationIndex.isCurrent()) {
+      return donationIndex.donorTotals(startDate, endDate);
+    }
+
     List<Donor> result = new ArrayList<>();
     try {
       connection = DatabaseManager.getConnection();
@@ -326,8 +977,8 @@ public class Shelter implements Locatable {
                    GROUP BY d.donor_id;
                    """);
 
-      getAllDonors.setString(1, startDate);
-      getAllDonors.setString(2, endDate);
+      getAllDonors.setDate(1, Date.valueOf(startDate));
+      getAllDonors.setDate(2, Date.valueOf(endDate));
       ResultSet donorsResultSet = getAllDonors.executeQuery();
       while (donorsResultSet.next()) {
         String name = donorsResultSet.getString("donor_name");
@@ -335,7 +986,7 @@ public class Shelter implements Locatable {
             new Point(
                 donorsResultSet.getInt("donor_locationX"),
                 donorsResultSet.getInt("donor_locationY"));
-        int donation = donorsResultSet.getInt("total_donation");
+        long donation = donorsResultSet.getLong("total_donation");
         Donor donor = new Donor(name, point, null, null);
         donor.setDonation(donation);
         result.add(donor);
@@ -356,6 +1007,9 @@ public class Shelter implements Locatable {
 
   /**
    * Retrieves a list of shelters with their total funds received within a specified date range.
+   * The range is rewritten into whole months, read from the monthly rollup, plus boundary days,
+   * read from the daily rollup, so the cost follows shelters times months rather than the number
+   * of disbursements.
    *
    * @param startDate the start date for the fund disbursement records.
    * @param endDate the end date for the fund disbursement records.
@@ -364,7 +1018,7 @@ public class Shelter implements Locatable {
    * @throws IOException if an I/O error occurs.
    * @throws ClassNotFoundException if the required class is not found.
    */
-  private List<Shelter> getAllShelters(String startDate, String endDate)
+  private List<Shelter> getAllShelters(LocalDate startDate, LocalDate endDate)
       throws SQLException, IOException, ClassNotFoundException {
     List<Shelter> result = new ArrayList<>();
     try {
@@ -373,20 +1027,29 @@ public class Shelter implements Locatable {
       PreparedStatement getAllShelters =
           connection.prepareStatement(
               """
-                    SELECT s.name                      AS shelter_name,
-                           s.locationX                 AS shelter_locationX,
-                           s.locationY                 AS shelter_locationY,
-                           s.capacity                  AS shelter_capacity,
-                           COALESCE(SUM(dfr.funds), 0) AS total_funds_received
+                    SELECT s.name                         AS shelter_name,
+                           s.locationX                    AS shelter_locationX,
+                           s.locationY                    AS shelter_locationY,
+                           s.capacity                     AS shelter_capacity,
+                           COALESCE(funding.total_funds, 0) AS total_funds_received
                     FROM shelter s
                              LEFT JOIN
-                         disburse_fund_record dfr ON s.shelter_id = dfr.shelter_id
-                            AND dfr.date BETWEEN ? AND ?
-                    GROUP BY s.shelter_id;
+                         (SELECT shelter_id, SUM(funds) AS total_funds
+                          FROM (SELECT shelter_id, funds FROM disburse_fund_daily WHERE date BETWEEN ? AND ?
+                                UNION ALL
+                                SELECT shelter_id, funds FROM disburse_fund_monthly WHERE month BETWEEN ? AND ?
+                                UNION ALL
+                                SELECT shelter_id, funds FROM disburse_fund_daily WHERE date BETWEEN ? AND ?) AS parts
+                          GROUP BY shelter_id) AS funding ON s.shelter_id = funding.shelter_id;
                     """);
 
-      getAllShelters.setString(1, startDate);
-      getAllShelters.setString(2, endDate);
+      RollupRange rollupRange = RollupRange.of(startDate, endDate);
+      getAllShelters.setDate(1, Date.valueOf(rollupRange.getHeadStart()));
+      getAllShelters.setDate(2, Date.valueOf(rollupRange.getHeadEnd()));
+      getAllShelters.setDate(3, Date.valueOf(rollupRange.getFirstMonth()));
+      getAllShelters.setDate(4, Date.valueOf(rollupRange.getLastMonth()));
+      getAllShelters.setDate(5, Date.valueOf(rollupRange.getTailStart()));
+      getAllShelters.setDate(6, Date.valueOf(rollupRange.getTailEnd()));
       ResultSet sheltersResultSet = getAllShelters.executeQuery();
       while (sheltersResultSet.next()) {
         String name = sheltersResultSet.getString("shelter_name");
@@ -0,0 +1,13 @@
+/** A handle to a shelter defined in the system. */
+public class ShelterHandle extends EntityHandle {
+
+  /**
+   * Creates a handle for a shelter.
+   *
+   * @param id The shelter id.
+   * @param name The name of the shelter.
+   */
+  public ShelterHandle(int id, String name) {
+    super(id, name);
+  }
+}
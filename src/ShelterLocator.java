@@ -0,0 +1,458 @@
+import java.io.IOException;
+import java.sql.Connection;
+import java.sql.Date;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.time.LocalDate;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.PriorityQueue;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * ShelterLocator answers which shelters nearest to a point have a free bed right now. Shelter
+ * locations are kept in a k-d tree, split alternately on x and y, and a query walks it nearest
+ * side first, keeping the best k matches in a bounded heap and skipping every subtree that cannot
+ * beat the k-th; shelters that are full or do not offer the requested services are passed over on
+ * the way. Free beds are read from the {@link BedAvailabilityService} when it is running, so held
+ * reservations count, and otherwise from the capacity and latest occupancy declaration.
+ *
+ * <p>The tree is immutable and replaced as a whole, so queries never wait for writers. Shelters
+ * added or moved since it was built are kept in a short list that queries scan, and the tree is
+ * rebuilt once that list outgrows about twice the square root of the number of shelters.
+ *
+ * <p>At start every shelter, its latest declaration and its services are read once. After that
+ * only the shelter definitions, declarations and service links published on the feed reach the
+ * locator, and the feed carries the writes of this process; shelters added or moved by another
+ * process are not seen until it is started again, or reloaded as a snapshot load does. Free beds
+ * read from the running {@link BedAvailabilityService} still catch up with other processes'
+ * declarations at its next reconcile.
+ */
+public class ShelterLocator implements OccupancyListener {
+  private static final ShelterLocator INSTANCE = new ShelterLocator();
+
+  private static final int MIN_UNINDEXED = 32;
+
+  /* Nearest first; names break ties as the reports sort them */
+  private static final Comparator<Candidate> NEAREST =
+      Comparator.<Candidate>comparingLong(candidate -> candidate.distanceSquared)
+          .thenComparing(candidate -> candidate.name, String.CASE_INSENSITIVE_ORDER)
+          .thenComparing(candidate -> candidate.name);
+
+  /* Keyed by lower-case name, as the shelter table compares names case-insensitively */
+  private final Map<String, Site> sites = new ConcurrentHashMap<>();
+  private volatile Index index = new Index(new Placement[0], new Placement[0], 0);
+  private volatile boolean started = false;
+
+  private ShelterLocator() {}
+
+  /**
+   * Returns the locator shared by the whole process.
+   *
+   * @return The shelter locator.
+   */
+  public static ShelterLocator getInstance() {
+    return INSTANCE;
+  }
+
+  /**
+   * Checks if the locator is following the writes.
+   *
+   * @return True once the locator has been started.
+   */
+  public boolean isStarted() {
+    return started;
+  }
+
+  /**
+   * Loads every shelter and its services, builds the tree and subscribes to the feed.
+   *
+   * @throws SQLException If there is an issue with the SQL operations.
+   * @throws IOException If there is an issue with input/output operations.
+   * @throws ClassNotFoundException If the required class is not found during database operations.
+   */
+  public synchronized void start() throws SQLException, IOException, ClassNotFoundException {
+    load();
+    OccupancyFeed.getInstance().register(this);
+    started = true;
+  }
+
+  /** Unsubscribes from the feed; the tree is kept until the next start. */
+  public synchronized void stop() {
+    OccupancyFeed.getInstance().unregister(this);
+    started = false;
+  }
+
+  /**
+   * Reloads every shelter from the database if the locator is started, after the tables have been
+   * replaced underneath it.
+   *
+   * @throws SQLException If there is an issue with the SQL operations.
+   * @throws IOException If there is an issue with input/output operations.
+   * @throws ClassNotFoundException If the required class is not found during database operations.
+   */
+  public synchronized void reload() throws SQLException, IOException, ClassNotFoundException {
+    if (started) {
+      load();
+    }
+  }
+
+  /**
+   * Returns the shelters nearest to a location that have a free bed and offer every given service.
+   *
+   * @param location Where the beds are needed.
+   * @param count The most shelters to return.
+   * @param services The services the shelters must offer; empty for any.
+   * @return Shelter names with their free beds, nearest first.
+   */
+  public List<Pair<String, Integer>> nearestAvailable(
+      Point location, int count, Set<String> services) {
+    Set<String> required = new HashSet<>();
+    for (String service : services) {
+      required.add(keyOf(service));
+    }
+    Search search = new Search(location, count, required);
+
+    Index current = index;
+    search.walk(current.tree, 0, current.tree.length, 0);
+    for (Placement placement : current.unindexed) {
+      search.consider(placement);
+    }
+
+    List<Candidate> nearest = new ArrayList<>(search.best);
+    nearest.sort(NEAREST);
+    List<Pair<String, Integer>> result = new ArrayList<>();
+    for (Candidate candidate : nearest) {
+      result.add(new Pair<>(candidate.name, candidate.freeBeds));
+    }
+    return result;
+  }
+
+  @Override
+  public void occupancyDeclared(String shelterName, LocalDate date, int occupancy) {
+    Site site = sites.get(keyOf(shelterName));
+    if (site != null) {
+      site.declare(date, occupancy);
+    }
+  }
+
+  @Override
+  public synchronized void shelterDefined(String shelterName, Point location, int maxCapacity) {
+    Site site = sites.computeIfAbsent(keyOf(shelterName), key -> new Site(shelterName));
+    site.redefine(shelterName, maxCapacity);
+    place(site, location.getX(), location.getY());
+  }
+
+  @Override
+  public void serviceForShelter(String shelterName, String serviceName) {
+    Site site = sites.get(keyOf(shelterName));
+    if (site != null) {
+      site.services.add(keyOf(serviceName));
+    }
+  }
+
+  /**
+   * Puts a shelter at a location. A new or moved shelter goes to the unindexed list, its old
+   * placement is retired, and the tree is rebuilt when the list has grown too long.
+   *
+   * @param site The shelter.
+   * @param x The x coordinate.
+   * @param y The y coordinate.
+   */
+  private void place(Site site, int x, int y) {
+    Placement old = site.placement;
+    if (old != null && old.x == x && old.y == y) {
+      return;
+    }
+    Index current = index;
+    int retired = current.retired;
+    if (old != null) {
+      old.retired = true;
+      retired++;
+    }
+    site.placement = new Placement(site, x, y);
+
+    int limit = MIN_UNINDEXED + 2 * (int) Math.sqrt(current.tree.length);
+    if (current.unindexed.length + retired >= limit) {
+      rebuild();
+      return;
+    }
+    Placement[] unindexed = Arrays.copyOf(current.unindexed, current.unindexed.length + 1);
+    unindexed[unindexed.length - 1] = site.placement;
+    index = new Index(current.tree, unindexed, retired);
+  }
+
+  /** Builds a new tree over the current placement of every shelter. */
+  private void rebuild() {
+    List<Placement> placements = new ArrayList<>();
+    for (Site site : sites.values()) {
+      if (site.placement != null) {
+        placements.add(site.placement);
+      }
+    }
+    Placement[] tree = placements.toArray(new Placement[0]);
+    build(tree, 0, tree.length, 0);
+    index = new Index(tree, new Placement[0], 0);
+  }
+
+  /**
+   * Arranges a range so that its middle element splits the rest on the axis of its depth, and the
+   * halves on either side are arranged the same way one level down.
+   *
+   * @param tree The placements.
+   * @param from The first index of the range.
+   * @param to The index after the range.
+   * @param depth The depth of the range's root; even depths split on x, odd on y.
+   */
+  private static void build(Placement[] tree, int from, int to, int depth) {
+    if (to - from <= 1) {
+      return;
+    }
+    Arrays.sort(
+        tree,
+        from,
+        to,
+        depth % 2 == 0
+            ? Comparator.comparingInt((Placement placement) -> placement.x)
+            : Comparator.comparingInt((Placement placement) -> placement.y));
+    int middle = (from + to) >>> 1;
+    build(tree, from, middle, depth + 1);
+    build(tree, middle + 1, to, depth + 1);
+  }
+
+  /**
+   * Replaces every shelter with the ones in the database, with their latest declaration and
+   * services, and builds the tree over them.
+   *
+   * @throws SQLException If there is an issue with the SQL operations.
+   * @throws IOException If there is an issue with input/output operations.
+   * @throws ClassNotFoundException If the required class is not found during database operations.
+   */
+  private void load() throws SQLException, IOException, ClassNotFoundException {
+    Connection connection = null;
+    sites.clear();
+
+    try {
+      connection = DatabaseManager.getConnection();
+
+      PreparedStatement latestOccupancies =
+          connection.prepareStatement(
+              """
+                  SELECT s.name, s.locationX, s.locationY, s.capacity, sor.date, sor.occupancy
+                  FROM shelter s
+                  LEFT JOIN shelter_occupancy_record sor ON sor.shelter_id = s.shelter_id
+                    AND sor.date = (SELECT MAX(date) FROM shelter_occupancy_record WHERE shelter_id = s.shelter_id)""");
+      ResultSet latestOccupanciesResultSet = latestOccupancies.executeQuery();
+      while (latestOccupanciesResultSet.next()) {
+        String name = latestOccupanciesResultSet.getString("name");
+        Site site = new Site(name);
+        site.redefine(name, latestOccupanciesResultSet.getInt("capacity"));
+        Date latestDate = latestOccupanciesResultSet.getDate("date");
+        if (latestDate != null) {
+          site.declare(latestDate.toLocalDate(), latestOccupanciesResultSet.getInt("occupancy"));
+        }
+        site.placement =
+            new Placement(
+                site,
+                latestOccupanciesResultSet.getInt("locationX"),
+                latestOccupanciesResultSet.getInt("locationY"));
+        sites.put(keyOf(name), site);
+      }
+
+      PreparedStatement shelterServices =
+          connection.prepareStatement(
+              """
+                  SELECT s.name AS shelter_name, sv.name AS service_name
+                  FROM service_for_shelter sfs
+                  JOIN shelter s ON s.shelter_id = sfs.shelter_id
+                  JOIN service sv ON sv.service_id = sfs.service_id""");
+      ResultSet shelterServicesResultSet = shelterServices.executeQuery();
+      while (shelterServicesResultSet.next()) {
+        Site site = sites.get(keyOf(shelterServicesResultSet.getString("shelter_name")));
+        if (site != null) {
+          site.services.add(keyOf(shelterServicesResultSet.getString("service_name")));
+        }
+      }
+    } catch (SQLException sqlException) {
+      throw new SQLException(sqlException.getMessage());
+    } catch (IOException ioException) {
+      throw new IOException(ioException.getMessage());
+    } catch (ClassNotFoundException classNotFoundException) {
+      throw new ClassNotFoundException(classNotFoundException.getMessage());
+    } finally {
+      /* Ensure the connection is closed */
+      DatabaseManager.closeConnection(connection);
+    }
+
+    rebuild();
+  }
+
+  /**
+   * Returns the key a shelter or service name is stored under.
+   *
+   * @param name The name.
+   * @return The lower-case name.
+   */
+  private static String keyOf(String name) {
+    return name.toLowerCase(Locale.ROOT);
+  }
+
+  /** What the locator knows of one shelter, whichever placement it is at. */
+  private static class Site {
+    private volatile String name;
+    private final Set<String> services = ConcurrentHashMap.newKeySet();
+    private volatile Placement placement;
+    private int capacity;
+    private LocalDate latestDate;
+    private int occupancy;
+    private volatile int freeBeds;
+
+    private Site(String name) {
+      this.name = name;
+    }
+
+    private synchronized void declare(LocalDate date, int declaredOccupancy) {
+      /* A declaration for an earlier date describes the past */
+      if (latestDate != null && date.isBefore(latestDate)) {
+        return;
+      }
+      latestDate = date;
+      occupancy = declaredOccupancy;
+      freeBeds = capacity - occupancy;
+    }
+
+    private synchronized void redefine(String shelterName, int maxCapacity) {
+      name = shelterName;
+      capacity = maxCapacity;
+      freeBeds = capacity - occupancy;
+    }
+  }
+
+  /** A shelter at one location; retired when the shelter moves, until the tree is rebuilt. */
+  private static class Placement {
+    private final Site site;
+    private final int x;
+    private final int y;
+    private volatile boolean retired = false;
+
+    private Placement(Site site, int x, int y) {
+      this.site = site;
+      this.x = x;
+      this.y = y;
+    }
+  }
+
+  /** The tree, the placements added since it was built and the count of retired ones in it. */
+  private static class Index {
+    private final Placement[] tree;
+    private final Placement[] unindexed;
+    private final int retired;
+
+    private Index(Placement[] tree, Placement[] unindexed, int retired) {
+      this.tree = tree;
+      this.unindexed = unindexed;
+      this.retired = retired;
+    }
+  }
+
+  /** A shelter that matches a query, with its distance from the query point. */
+  private static class Candidate {
+    private final String name;
+    private final long distanceSquared;
+    private final int freeBeds;
+
+    private Candidate(String name, long distanceSquared, int freeBeds) {
+      this.name = name;
+      this.distanceSquared = distanceSquared;
+      this.freeBeds = freeBeds;
+    }
+  }
+
+  /** One nearest-neighbour query, holding its best k matches with the farthest on top. */
+  private static class Search {
+    private final long x;
+    private final long y;
+    private final int count;
+    private final Set<String> services;
+    private final BedAvailabilityService beds = BedAvailabilityService.getInstance();
+    private final boolean live = beds.isStarted();
+    private final PriorityQueue<Candidate> best;
+
+    private Search(Point location, int count, Set<String> services) {
+      this.x = location.getX();
+      this.y = location.getY();
+      this.count = count;
+      this.services = services;
+      this.best = new PriorityQueue<>(count + 1, Collections.reverseOrder(NEAREST));
+    }
+
+    /**
+     * Visits a range of the tree: its root, then the half on the query point's side, then the
+     * other half only if the splitting line is no farther than the k-th match so far.
+     */
+    private void walk(Placement[] tree, int from, int to, int depth) {
+      if (from >= to) {
+        return;
+      }
+      int middle = (from + to) >>> 1;
+      Placement root = tree[middle];
+      consider(root);
+
+      long offset = depth % 2 == 0 ? x - root.x : y - root.y;
+      if (offset < 0) {
+        walk(tree, from, middle, depth + 1);
+      } else {
+        walk(tree, middle + 1, to, depth + 1);
+      }
+      if (best.size() < count || offset * offset <= best.peek().distanceSquared) {
+        if (offset < 0) {
+          walk(tree, middle + 1, to, depth + 1);
+        } else {
+          walk(tree, from, middle, depth + 1);
+        }
+      }
+    }
+
+    private void consider(Placement placement) {
+      if (placement.retired) {
+        return;
+      }
+      long distanceSquared =
+          (x - placement.x) * (x - placement.x) + (y - placement.y) * (y - placement.y);
+      /* Cheapest test first: most shelters are too far to matter */
+      if (best.size() >= count && distanceSquared > best.peek().distanceSquared) {
+        return;
+      }
+      Site site = placement.site;
+      if (!site.services.containsAll(services)) {
+        return;
+      }
+      int freeBeds = freeBeds(site);
+      if (freeBeds <= 0) {
+        return;
+      }
+      best.add(new Candidate(site.name, distanceSquared, freeBeds));
+      if (best.size() > count) {
+        best.poll();
+      }
+    }
+
+    private int freeBeds(Site site) {
+      if (live) {
+        Integer available = beds.getAvailableBeds(site.name);
+        if (available != null) {
+          return available;
+        }
+      }
+      return site.freeBeds;
+    }
+  }
+}
@@ -0,0 +1,193 @@
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.ResultSetMetaData;
+import java.sql.SQLException;
+import java.time.Instant;
+import java.util.Map;
+import java.util.logging.FileHandler;
+import java.util.logging.Formatter;
+import java.util.logging.Level;
+import java.util.logging.LogRecord;
+import java.util.logging.Logger;
+
+/**
+ * SlowQueryLog records every statement that takes longer than the configured threshold, together
+ * with its bound parameters and, optionally, its EXPLAIN plan. The plan is captured on a connection
+ * of its own: the slow statement's connection may still be streaming its result set, and MySQL
+ * runs nothing else on a connection until that result set is read to the end or closed. The
+ * entries go to a size-rotated local log file so missing indexes can be found without a profiler.
+ *
+ * <p>Settings in "config.prop": {@code slowQuery.enabled}, {@code slowQuery.thresholdMillis},
+ * {@code slowQuery.explain}, {@code slowQuery.logFile}, {@code slowQuery.logFileLimitBytes} and
+ * {@code slowQuery.logFileCount}.
+ */
+public class SlowQueryLog {
+  private static final boolean ENABLED = ConfigurationManager.getBoolean("slowQuery.enabled", false);
+  private static final long THRESHOLD_NANOS =
+      ConfigurationManager.getLong("slowQuery.thresholdMillis", 500) * 1_000_000L;
+  private static final boolean EXPLAIN = ConfigurationManager.getBoolean("slowQuery.explain", true);
+
+  private static Logger logger = null;
+
+  /* Private ensures that nobody can access the constructor of the method and if somehow they do, we will throw an exception as a double safety check */
+  private SlowQueryLog() {
+    throw new AssertionError("SlowQueryLog class should not be instantiated.");
+  }
+
+  /**
+   * Checks if slow statements are being recorded.
+   *
+   * @return True if the slow-query log is switched on.
+   */
+  public static boolean isEnabled() {
+    return ENABLED;
+  }
+
+  /**
+   * Records a statement if its execution time crossed the threshold.
+   *
+   * @param sql The statement text.
+   * @param parameters The bound parameters keyed by their index.
+   * @param elapsedNanos The execution time of the statement.
+   */
+  public static void record(String sql, Map<Integer, Object> parameters, long elapsedNanos) {
+    if (!ENABLED || sql == null || elapsedNanos < THRESHOLD_NANOS) {
+      return;
+    }
+
+    Logger slowQueryLogger = getLogger();
+    if (slowQueryLogger != null) {
+      slowQueryLogger.warning(describe(sql, parameters, elapsedNanos));
+    }
+  }
+
+  /**
+   * Builds the log entry of a slow statement.
+   *
+   * @param sql The statement text.
+   * @param parameters The bound parameters keyed by their index.
+   * @param elapsedNanos The execution time of the statement.
+   * @return The entry, with the plan if "slowQuery.explain" is on and the statement has one.
+   */
+  static String describe(String sql, Map<Integer, Object> parameters, long elapsedNanos) {
+    StringBuilder entry = new StringBuilder();
+    entry.append(String.format("%.3f ms%n", elapsedNanos / 1_000_000.0));
+    entry.append("SQL: ").append(sql.strip().replaceAll("\\s+", " ")).append(System.lineSeparator());
+    entry.append("Parameters: ").append(parameters).append(System.lineSeparator());
+
+    if (EXPLAIN && isExplainable(sql)) {
+      entry.append("Plan:").append(System.lineSeparator());
+      try {
+        appendPlan(entry, sql, parameters);
+      } catch (SQLException | IOException | ClassNotFoundException exception) {
+        entry.append("\tEXPLAIN failed: ").append(exception.getMessage());
+      }
+    }
+    return entry.toString();
+  }
+
+  /**
+   * Runs EXPLAIN for the statement with the same parameters on a connection of its own and appends
+   * the plan rows.
+   *
+   * @param entry The log entry being built.
+   * @param sql The statement text.
+   * @param parameters The bound parameters keyed by their index.
+   * @throws SQLException If the plan cannot be retrieved.
+   * @throws IOException If there is an issue with input/output operations.
+   * @throws ClassNotFoundException If the required class is not found during database operations.
+   */
+  private static void appendPlan(StringBuilder entry, String sql, Map<Integer, Object> parameters)
+      throws SQLException, IOException, ClassNotFoundException {
+    Connection connection = null;
+
+    try {
+      connection = DatabaseManager.getConnection();
+
+      PreparedStatement explain = connection.prepareStatement("EXPLAIN " + sql.strip());
+      for (Map.Entry<Integer, Object> parameter : parameters.entrySet()) {
+        explain.setObject(parameter.getKey(), parameter.getValue());
+      }
+      ResultSet plan = explain.executeQuery();
+      ResultSetMetaData metaData = plan.getMetaData();
+      int columns = metaData.getColumnCount();
+
+      entry.append('\t');
+      for (int column = 1; column <= columns; column++) {
+        entry.append(metaData.getColumnLabel(column)).append(column < columns ? " | " : "");
+      }
+      entry.append(System.lineSeparator());
+
+      while (plan.next()) {
+        entry.append('\t');
+        for (int column = 1; column <= columns; column++) {
+          entry.append(plan.getString(column)).append(column < columns ? " | " : "");
+        }
+        entry.append(System.lineSeparator());
+      }
+    } finally {
+      /* Ensure the connection is closed */
+      DatabaseManager.closeConnection(connection);
+    }
+  }
+
+  /**
+   * Checks if MySQL can explain the statement.
+   *
+   * @param sql The statement text.
+   * @return True for select, insert, update and delete statements.
+   */
+  private static boolean isExplainable(String sql) {
+    String statement = sql.stripLeading().toLowerCase();
+    return statement.startsWith("select")
+        || statement.startsWith("insert")
+        || statement.startsWith("update")
+        || statement.startsWith("delete");
+  }
+
+  /**
+   * Creates the rotating file logger on first use.
+   *
+   * @return The logger, or null if the log file cannot be opened.
+   */
+  private static synchronized Logger getLogger() {
+    if (logger == null) {
+      String pattern = ConfigurationManager.getString("slowQuery.logFile", "logs/slow-query-%g.log");
+      int limit = ConfigurationManager.getInt("slowQuery.logFileLimitBytes", 10 * 1024 * 1024);
+      int count = ConfigurationManager.getInt("slowQuery.logFileCount", 5);
+
+      try {
+        Path directory = Paths.get(pattern).toAbsolutePath().getParent();
+        if (directory != null) {
+          Files.createDirectories(directory);
+        }
+        FileHandler fileHandler = new FileHandler(pattern, limit, count, true);
+        fileHandler.setFormatter(
+            new Formatter() {
+              @Override
+              public String format(LogRecord record) {
+                return Instant.ofEpochMilli(record.getMillis())
+                    + " "
+                    + record.getMessage()
+                    + System.lineSeparator();
+              }
+            });
+
+        Logger slowQueryLogger = Logger.getLogger("homelesssupport.slowquery");
+        slowQueryLogger.setUseParentHandlers(false);
+        slowQueryLogger.setLevel(Level.ALL);
+        slowQueryLogger.addHandler(fileHandler);
+        logger = slowQueryLogger;
+      } catch (IOException ioException) {
+        /* The log is a diagnostic aid; failing to open it must never fail the query itself */
+        return null;
+      }
+    }
+    return logger;
+  }
+}
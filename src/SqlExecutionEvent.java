@@ -0,0 +1,22 @@
+import jdk.jfr.Category;
+import jdk.jfr.Description;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+
+/**
+ * Java Flight Recorder event emitted for every SQL statement executed through an {@link
+ * InstrumentedConnection}. For queries the event spans execution and fetching of the rows, so the
+ * row count is the number of rows actually read by the caller.
+ */
+@Name("homelesssupport.SqlExecution")
+@Label("SQL Execution")
+@Category({"Homeless Support", "Database"})
+@Description("Execution of a single SQL statement, including the rows it returned or changed")
+public class SqlExecutionEvent extends jdk.jfr.Event {
+
+  @Label("Statement")
+  String sql;
+
+  @Label("Row Count")
+  long rowCount;
+}
@@ -3,6 +3,7 @@ import java.sql.Connection;
 import java.sql.PreparedStatement;
 import java.sql.ResultSet;
 import java.sql.SQLException;
+import java.sql.Statement;
 import java.util.*;
 
 /**
@@ -16,6 +17,7 @@ public class Staff {
   private String manager;
   private HelperMethod helperMethod = new HelperMethod();
   private Connection connection = null;
+  private int staffID = Constants.STAFF_NOT_FOUND;
 
   /** Default constructor for the Staff class. */
   public Staff() {}
@@ -35,6 +37,15 @@ public class Staff {
     this.manager = manager;
   }
 
+  /**
+   * Returns the ID of the staff member once they have been added.
+   *
+   * @return the staff ID, or {@code Constants.STAFF_NOT_FOUND} before a successful addition.
+   */
+  public int getStaffID() {
+    return staffID;
+  }
+
   /**
    * Adds a new staff member or updates existing staff information in the system.
    *
@@ -65,13 +76,16 @@ public class Staff {
       if (staffID == Constants.STAFF_NOT_FOUND) {
         PreparedStatement insertStaff =
             connection.prepareStatement(
-                "insert into staff (name, is_volunteer, manager_id) values (?, ?, ?)");
+                "insert into staff (name, is_volunteer, manager_id) values (?, ?, ?)",
+                Statement.RETURN_GENERATED_KEYS);
         insertStaff.setString(1, name);
         insertStaff.setBoolean(2, volunteer);
         insertStaff.setInt(3, managerID);
         insertStaff.executeUpdate();
 
-        staffID = helperMethod.isStaffExists(name);
+        ResultSet generatedKeys = insertStaff.getGeneratedKeys();
+        generatedKeys.next();
+        staffID = generatedKeys.getInt(1);
         insertStaffForService(connection, staffID);
       }
       /* If staff already exists, update the information */
@@ -91,6 +105,7 @@ public class Staff {
 
         insertStaffForService(connection, staffID);
       }
+      this.staffID = staffID;
 
     } catch (SQLException sqlException) {
       throw new SQLException(sqlException.getMessage());
@@ -141,8 +156,12 @@ public class Staff {
       throws ClassNotFoundException, IOException, SQLException {
 
     Map<String, List<String>> result = new HashMap<>();
+    ReportStageEvent loadStage = ReportStageEvent.start("inspectionSchedule", "loadPairs");
     Map<Pair<String, String>, Service> staffServiceShelterMap = getAllStaffServiceShelterPairs();
+    loadStage.commit();
 
+    ReportStageEvent scheduleStage =
+        ReportStageEvent.start("inspectionSchedule", "scheduleServices");
     for (Pair<String, String> key : staffServiceShelterMap.keySet()) {
 
       /* Getting the name of the staff and creating an empty list of String for that staff */
@@ -155,12 +174,16 @@ public class Staff {
       /* Recursive call to schedule the service at a shelter by the staff starting from tomorrow (assuming services have been inspected for today) */
       scheduleService(result.get(staffName), key, service, scheduleDays, 1);
     }
+    scheduleStage.commit();
 
     /* Once the scheduling is done, now we want to check if the inspection matches the inspectLimit. And if not, we shift the inspection to earlier days */
+    ReportStageEvent shiftStage = ReportStageEvent.start("inspectionSchedule", "shiftPairs");
     try {
       shiftPairs(result, inspectLimit);
     } catch (IllegalArgumentException illegalArgumentException) {
       return null;
+    } finally {
+      shiftStage.commit();
     }
 
     return result;
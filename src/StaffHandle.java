@@ -0,0 +1,13 @@
+/** A handle to a staff defined in the system. */
+public class StaffHandle extends EntityHandle {
+
+  /**
+   * Creates a handle for a staff.
+   *
+   * @param id The staff id.
+   * @param name The name of the staff.
+   */
+  public StaffHandle(int id, String name) {
+    super(id, name);
+  }
+}
@@ -0,0 +1,450 @@
+import java.io.IOException;
+import java.sql.Connection;
+import java.sql.Date;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.time.LocalDate;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.TreeSet;
+
+/**
+ * VolatilityMonitor keeps a live ranking of the shelters whose occupancy moved the most over the
+ * last 7 and the last 30 days, fed by the occupancy declarations published on the {@link
+ * OccupancyFeed}. Volatility is measured as {@code occupancyVariance} measures it: the spread
+ * between the highest and lowest occupancy in the window, as a percentage of capacity.
+ *
+ * <p>For each shelter and window two monotonic deques of days hold the candidates for the maximum
+ * and the minimum, so a declaration in date order costs amortized constant time per window, and the
+ * ranking is a sorted set updated with it. The windows end on the latest date declared for any
+ * shelter; a shelter that stops reporting has its old days expire lazily, when the ranking reaches
+ * it. A declaration for an earlier day still inside the window rebuilds that shelter's deques from
+ * its per-day minimum and maximum of the last 30 days; older declarations are ignored.
+ *
+ * <p>At start the last 30 days of declarations are read once. After that only the declarations and
+ * shelter definitions published on the feed reach the monitor, and the feed carries the writes of
+ * this process; rows written by another process are not seen until the monitor is started again,
+ * or reloaded as a snapshot load does.
+ */
+public class VolatilityMonitor implements OccupancyListener {
+  /* The windows the monitor ranks, in days ending on the latest declared date */
+  private static final int[] WINDOW_DAYS = {7, 30};
+
+  private static final int HISTORY_DAYS = 30;
+
+  /* Highest volatility first; names break ties as the reports sort them */
+  private static final Comparator<Ranked> RANKING =
+      Comparator.<Ranked>comparingDouble(ranked -> -ranked.volatility)
+          .thenComparing(ranked -> ranked.name, String.CASE_INSENSITIVE_ORDER)
+          .thenComparing(ranked -> ranked.name);
+
+  /* Created after the constants its constructor reads */
+  private static final VolatilityMonitor INSTANCE = new VolatilityMonitor();
+
+  /* Keyed by lower-case name, as the shelter table compares names case-insensitively */
+  private final Map<String, ShelterWindows> shelters = new HashMap<>();
+  private final List<TreeSet<Ranked>> rankings = new ArrayList<>();
+  private int latestDay = Integer.MIN_VALUE;
+  private boolean started = false;
+
+  private VolatilityMonitor() {
+    for (int window = 0; window < WINDOW_DAYS.length; window++) {
+      rankings.add(new TreeSet<>(RANKING));
+    }
+  }
+
+  /**
+   * Returns the monitor shared by the whole process.
+   *
+   * @return The volatility monitor.
+   */
+  public static VolatilityMonitor getInstance() {
+    return INSTANCE;
+  }
+
+  /**
+   * Checks if the monitor is following the writes.
+   *
+   * @return True once the monitor has been started.
+   */
+  public synchronized boolean isStarted() {
+    return started;
+  }
+
+  /**
+   * Loads the capacities and the last 30 days of declarations and subscribes to the feed.
+   *
+   * @throws SQLException If there is an issue with the SQL operations.
+   * @throws IOException If there is an issue with input/output operations.
+   * @throws ClassNotFoundException If the required class is not found during database operations.
+   */
+  public synchronized void start() throws SQLException, IOException, ClassNotFoundException {
+    load();
+    OccupancyFeed.getInstance().register(this);
+    started = true;
+  }
+
+  /** Unsubscribes from the feed; the ranking is kept until the next start. */
+  public synchronized void stop() {
+    OccupancyFeed.getInstance().unregister(this);
+    started = false;
+  }
+
+  /**
+   * Reloads the monitor from the database if it is started, after the tables have been replaced
+   * underneath it.
+   *
+   * @throws SQLException If there is an issue with the SQL operations.
+   * @throws IOException If there is an issue with input/output operations.
+   * @throws ClassNotFoundException If the required class is not found during database operations.
+   */
+  public synchronized void reload() throws SQLException, IOException, ClassNotFoundException {
+    if (started) {
+      load();
+    }
+  }
+
+  /**
+   * Returns the most volatile shelters over one of the monitored windows.
+   *
+   * @param windowDays The length of the window, 7 or 30.
+   * @param count The number of shelters to return, not negative.
+   * @return Up to count shelter names with their volatility as a percentage of capacity, most
+   *     volatile first.
+   * @throws IllegalArgumentException If the window is not monitored or the count is negative.
+   */
+  public synchronized List<Pair<String, Double>> mostVolatile(int windowDays, int count) {
+    int window = windowIndex(windowDays);
+    if (window < 0 || count < 0) {
+      throw new IllegalArgumentException(
+          "Window of " + windowDays + " days or count of " + count + " is not valid");
+    }
+    TreeSet<Ranked> ranking = rankings.get(window);
+    List<Pair<String, Double>> result = new ArrayList<>();
+    List<Ranked> current = new ArrayList<>();
+
+    while (result.size() < count && !ranking.isEmpty()) {
+      Ranked top = ranking.pollFirst();
+      ShelterWindows shelterWindows = shelters.get(keyOf(top.name));
+      /* Days may have left the window since the shelter last declared; expiry only lowers it */
+      shelterWindows.expire(window, latestDay);
+      Ranked refreshed = shelterWindows.rank(window);
+      shelterWindows.ranked[window] = refreshed;
+      if (refreshed == null) {
+        continue;
+      }
+      if (refreshed.volatility == top.volatility) {
+        current.add(refreshed);
+        result.add(new Pair<>(refreshed.name, refreshed.volatility));
+      } else {
+        ranking.add(refreshed);
+      }
+    }
+    ranking.addAll(current);
+    return result;
+  }
+
+  @Override
+  public synchronized void occupancyDeclared(String shelterName, LocalDate date, int occupancy) {
+    ShelterWindows shelterWindows = shelters.get(keyOf(shelterName));
+    if (shelterWindows == null) {
+      return;
+    }
+    record(shelterWindows, (int) date.toEpochDay(), occupancy);
+  }
+
+  @Override
+  public synchronized void shelterDefined(String shelterName, int maxCapacity) {
+    ShelterWindows shelterWindows =
+        shelters.computeIfAbsent(keyOf(shelterName), key -> new ShelterWindows());
+    shelterWindows.name = shelterName;
+    shelterWindows.capacity = maxCapacity;
+    for (int window = 0; window < WINDOW_DAYS.length; window++) {
+      rerank(shelterWindows, window);
+    }
+  }
+
+  /**
+   * Adds one declaration to a shelter's windows and updates its place in every ranking.
+   *
+   * @param shelterWindows The shelter.
+   * @param day The epoch day of the declaration.
+   * @param occupancy The declared occupancy.
+   */
+  private void record(ShelterWindows shelterWindows, int day, int occupancy) {
+    latestDay = Math.max(latestDay, day);
+    if (day <= latestDay - HISTORY_DAYS) {
+      return;
+    }
+
+    boolean inOrder = day >= shelterWindows.latestDay;
+    shelterWindows.addToDay(day, occupancy);
+    for (int window = 0; window < WINDOW_DAYS.length; window++) {
+      if (inOrder) {
+        shelterWindows.expire(window, latestDay);
+        shelterWindows.push(window, day);
+      } else {
+        shelterWindows.rebuild(window, latestDay);
+      }
+      rerank(shelterWindows, window);
+    }
+  }
+
+  /**
+   * Replaces a shelter's entry in one ranking with its current volatility.
+   *
+   * @param shelterWindows The shelter.
+   * @param window The index of the window.
+   */
+  private void rerank(ShelterWindows shelterWindows, int window) {
+    TreeSet<Ranked> ranking = rankings.get(window);
+    if (shelterWindows.ranked[window] != null) {
+      ranking.remove(shelterWindows.ranked[window]);
+    }
+    shelterWindows.expire(window, latestDay);
+    shelterWindows.ranked[window] = shelterWindows.rank(window);
+    if (shelterWindows.ranked[window] != null) {
+      ranking.add(shelterWindows.ranked[window]);
+    }
+  }
+
+  /**
+   * Replaces the monitor's state with every shelter and its declarations from the 30 days up to
+   * the latest declared date.
+   *
+   * @throws SQLException If there is an issue with the SQL operations.
+   * @throws IOException If there is an issue with input/output operations.
+   * @throws ClassNotFoundException If the required class is not found during database operations.
+   */
+  private void load() throws SQLException, IOException, ClassNotFoundException {
+    Connection connection = null;
+    shelters.clear();
+    for (TreeSet<Ranked> ranking : rankings) {
+      ranking.clear();
+    }
+    latestDay = Integer.MIN_VALUE;
+
+    try {
+      connection = DatabaseManager.getConnection();
+
+      PreparedStatement allShelters =
+          connection.prepareStatement("SELECT shelter_id, name, capacity FROM shelter;");
+      ResultSet allSheltersResultSet = allShelters.executeQuery();
+      Map<Integer, ShelterWindows> sheltersByID = new HashMap<>();
+      while (allSheltersResultSet.next()) {
+        ShelterWindows shelterWindows = new ShelterWindows();
+        shelterWindows.name = allSheltersResultSet.getString("name");
+        shelterWindows.capacity = allSheltersResultSet.getInt("capacity");
+        shelters.put(keyOf(shelterWindows.name), shelterWindows);
+        sheltersByID.put(allSheltersResultSet.getInt("shelter_id"), shelterWindows);
+      }
+
+      PreparedStatement recentOccupancies =
+          connection.prepareStatement(
+              """
+                  SELECT shelter_id, date, occupancy
+                  FROM shelter_occupancy_record
+                  WHERE date > (SELECT DATE_SUB(MAX(date), INTERVAL ? DAY) FROM shelter_occupancy_record)
+                  ORDER BY date""");
+      recentOccupancies.setInt(1, HISTORY_DAYS);
+      ResultSet recentOccupanciesResultSet = recentOccupancies.executeQuery();
+      while (recentOccupanciesResultSet.next()) {
+        ShelterWindows shelterWindows =
+            sheltersByID.get(recentOccupanciesResultSet.getInt("shelter_id"));
+        Date date = recentOccupanciesResultSet.getDate("date");
+        if (shelterWindows != null) {
+          record(
+              shelterWindows,
+              (int) date.toLocalDate().toEpochDay(),
+              recentOccupanciesResultSet.getInt("occupancy"));
+        }
+      }
+    } catch (SQLException sqlException) {
+      throw new SQLException(sqlException.getMessage());
+    } catch (IOException ioException) {
+      throw new IOException(ioException.getMessage());
+    } catch (ClassNotFoundException classNotFoundException) {
+      throw new ClassNotFoundException(classNotFoundException.getMessage());
+    } finally {
+      /* Ensure the connection is closed */
+      DatabaseManager.closeConnection(connection);
+    }
+  }
+
+  /**
+   * Checks if the monitor ranks a window.
+   *
+   * @param windowDays The length of the window.
+   * @return True for the 7 and 30 day windows.
+   */
+  public static boolean isMonitoredWindow(int windowDays) {
+    return windowIndex(windowDays) >= 0;
+  }
+
+  /**
+   * Finds a monitored window by its length.
+   *
+   * @param windowDays The length of the window.
+   * @return Its index in WINDOW_DAYS, or -1 if it is not monitored.
+   */
+  private static int windowIndex(int windowDays) {
+    for (int window = 0; window < WINDOW_DAYS.length; window++) {
+      if (WINDOW_DAYS[window] == windowDays) {
+        return window;
+      }
+    }
+    return -1;
+  }
+
+  /**
+   * Returns the key a shelter name is stored under.
+   *
+   * @param shelterName The name.
+   * @return The lower-case name.
+   */
+  private static String keyOf(String shelterName) {
+    return shelterName.toLowerCase(Locale.ROOT);
+  }
+
+  /** One shelter's place in a ranking. */
+  private static class Ranked {
+    private final String name;
+    private final double volatility;
+
+    private Ranked(String name, double volatility) {
+      this.name = name;
+      this.volatility = volatility;
+    }
+  }
+
+  /**
+   * The last 30 days of one shelter as per-day minimum and maximum, and the deques of every window.
+   */
+  private static class ShelterWindows {
+    private String name;
+    private int capacity;
+    private int latestDay = Integer.MIN_VALUE;
+
+    /* Ring indexed by epoch day modulo HISTORY_DAYS; ringDays tells which day a slot holds */
+    private final int[] ringDays = new int[HISTORY_DAYS];
+    private final int[] dayMin = new int[HISTORY_DAYS];
+    private final int[] dayMax = new int[HISTORY_DAYS];
+
+    /* Days whose minimum increases along minDeques and whose maximum decreases along maxDeques */
+    private final List<ArrayDeque<Integer>> minDeques = new ArrayList<>();
+    private final List<ArrayDeque<Integer>> maxDeques = new ArrayList<>();
+    private final Ranked[] ranked = new Ranked[WINDOW_DAYS.length];
+
+    private ShelterWindows() {
+      Arrays.fill(ringDays, Integer.MIN_VALUE);
+      for (int window = 0; window < WINDOW_DAYS.length; window++) {
+        minDeques.add(new ArrayDeque<>());
+        maxDeques.add(new ArrayDeque<>());
+      }
+    }
+
+    /**
+     * Folds a declaration into the minimum and maximum of its day.
+     *
+     * @param day The epoch day.
+     * @param occupancy The declared occupancy.
+     */
+    private void addToDay(int day, int occupancy) {
+      int slot = Math.floorMod(day, HISTORY_DAYS);
+      if (ringDays[slot] != day) {
+        ringDays[slot] = day;
+        dayMin[slot] = occupancy;
+        dayMax[slot] = occupancy;
+      } else {
+        dayMin[slot] = Math.min(dayMin[slot], occupancy);
+        dayMax[slot] = Math.max(dayMax[slot], occupancy);
+      }
+      latestDay = Math.max(latestDay, day);
+    }
+
+    /**
+     * Pushes the newest day onto a window's deques. A day already at the tail is pushed again: its
+     * maximum can only have grown and its minimum only shrunk, so it pops its own old entry.
+     *
+     * @param window The index of the window.
+     * @param day The epoch day, not earlier than any day in the deques.
+     */
+    private void push(int window, int day) {
+      int slot = Math.floorMod(day, HISTORY_DAYS);
+      ArrayDeque<Integer> minDeque = minDeques.get(window);
+      while (!minDeque.isEmpty() && dayMinOf(minDeque.peekLast()) >= dayMin[slot]) {
+        minDeque.pollLast();
+      }
+      minDeque.addLast(day);
+      ArrayDeque<Integer> maxDeque = maxDeques.get(window);
+      while (!maxDeque.isEmpty() && dayMaxOf(maxDeque.peekLast()) <= dayMax[slot]) {
+        maxDeque.pollLast();
+      }
+      maxDeque.addLast(day);
+    }
+
+    /**
+     * Drops the days that have left a window.
+     *
+     * @param window The index of the window.
+     * @param endDay The last day of the window.
+     */
+    private void expire(int window, int endDay) {
+      int firstDay = endDay - WINDOW_DAYS[window] + 1;
+      ArrayDeque<Integer> minDeque = minDeques.get(window);
+      while (!minDeque.isEmpty() && minDeque.peekFirst() < firstDay) {
+        minDeque.pollFirst();
+      }
+      ArrayDeque<Integer> maxDeque = maxDeques.get(window);
+      while (!maxDeque.isEmpty() && maxDeque.peekFirst() < firstDay) {
+        maxDeque.pollFirst();
+      }
+    }
+
+    /**
+     * Refills a window's deques from the per-day ring after a declaration arrived out of order.
+     *
+     * @param window The index of the window.
+     * @param endDay The last day of the window.
+     */
+    private void rebuild(int window, int endDay) {
+      minDeques.get(window).clear();
+      maxDeques.get(window).clear();
+      for (int day = endDay - WINDOW_DAYS[window] + 1; day <= endDay; day++) {
+        if (ringDays[Math.floorMod(day, HISTORY_DAYS)] == day) {
+          push(window, day);
+        }
+      }
+    }
+
+    /**
+     * Computes the shelter's current entry in a ranking.
+     *
+     * @param window The index of the window.
+     * @return The entry, or null if the window holds no declaration or the capacity is unknown.
+     */
+    private Ranked rank(int window) {
+      ArrayDeque<Integer> minDeque = minDeques.get(window);
+      if (minDeque.isEmpty() || capacity <= 0) {
+        return null;
+      }
+      int spread = dayMaxOf(maxDeques.get(window).peekFirst()) - dayMinOf(minDeque.peekFirst());
+      return new Ranked(name, spread * 100.0 / capacity);
+    }
+
+    private int dayMinOf(int day) {
+      return dayMin[Math.floorMod(day, HISTORY_DAYS)];
+    }
+
+    private int dayMaxOf(int day) {
+      return dayMax[Math.floorMod(day, HISTORY_DAYS)];
+    }
+  }
+}
@@ -0,0 +1,110 @@
+import java.util.Arrays;
+import java.util.Comparator;
+
+/**
+ * WindowRanges finds the lowest and highest value of a dense daily series over many windows in one
+ * ordered pass. When the windows, ordered by their first day, also have non-decreasing last days,
+ * as tumbling and sliding windows do, two monotonic deques hold the candidate minimum and maximum:
+ * each day enters and leaves them once, however many windows overlap it. Windows that are not
+ * ordered that way are scanned one at a time.
+ */
+public class WindowRanges {
+  /** Marks a day of the series without a value. */
+  public static final int MISSING = -1;
+
+  /* Private ensures that nobody can access the constructor of the class */
+  private WindowRanges() {
+    throw new AssertionError("WindowRanges class should not be instantiated.");
+  }
+
+  /**
+   * Computes the lowest and highest value of the series inside each window.
+   *
+   * @param series The daily values, {@link #MISSING} for days without one.
+   * @param firstDays The first index of each window.
+   * @param lastDays The last index of each window, included.
+   * @return For each window, in the given order, its minimum and maximum as a two-element array,
+   *     or null if the window holds no value.
+   */
+  public static int[][] compute(int[] series, int[] firstDays, int[] lastDays) {
+    int windowCount = firstDays.length;
+    int[][] result = new int[windowCount][];
+
+    Integer[] order = new Integer[windowCount];
+    for (int window = 0; window < windowCount; window++) {
+      order[window] = window;
+    }
+    Arrays.sort(
+        order,
+        Comparator.<Integer>comparingInt(window -> firstDays[window])
+            .thenComparingInt(window -> lastDays[window]));
+
+    boolean slides = true;
+    for (int position = 1; position < windowCount && slides; position++) {
+      slides = lastDays[order[position]] >= lastDays[order[position - 1]];
+    }
+    if (!slides) {
+      for (int window = 0; window < windowCount; window++) {
+        result[window] = scan(series, firstDays[window], lastDays[window]);
+      }
+      return result;
+    }
+
+    /* Indices into the series; values along minDeque increase and along maxDeque decrease */
+    int[] minDeque = new int[series.length];
+    int[] maxDeque = new int[series.length];
+    int minHead = 0, minTail = 0, maxHead = 0, maxTail = 0;
+    int nextDay = 0;
+
+    for (int window : order) {
+      int firstDay = Math.max(firstDays[window], 0);
+      int lastDay = Math.min(lastDays[window], series.length - 1);
+
+      for (; nextDay <= lastDay; nextDay++) {
+        int value = series[nextDay];
+        if (value == MISSING) {
+          continue;
+        }
+        while (minTail > minHead && series[minDeque[minTail - 1]] >= value) {
+          minTail--;
+        }
+        minDeque[minTail++] = nextDay;
+        while (maxTail > maxHead && series[maxDeque[maxTail - 1]] <= value) {
+          maxTail--;
+        }
+        maxDeque[maxTail++] = nextDay;
+      }
+      while (minHead < minTail && minDeque[minHead] < firstDay) {
+        minHead++;
+      }
+      while (maxHead < maxTail && maxDeque[maxHead] < firstDay) {
+        maxHead++;
+      }
+
+      if (firstDay <= lastDay && minHead < minTail) {
+        result[window] = new int[] {series[minDeque[minHead]], series[maxDeque[maxHead]]};
+      }
+    }
+    return result;
+  }
+
+  /**
+   * Scans one window directly.
+   *
+   * @param series The daily values.
+   * @param firstDay The first index of the window.
+   * @param lastDay The last index of the window, included.
+   * @return The minimum and maximum, or null if the window holds no value.
+   */
+  private static int[] scan(int[] series, int firstDay, int lastDay) {
+    int min = Integer.MAX_VALUE;
+    int max = Integer.MIN_VALUE;
+    for (int day = Math.max(firstDay, 0); day <= Math.min(lastDay, series.length - 1); day++) {
+      if (series[day] != MISSING) {
+        min = Math.min(min, series[day]);
+        max = Math.max(max, series[day]);
+      }
+    }
+    return max == Integer.MIN_VALUE ? null : new int[] {min, max};
+  }
+}
@@ -0,0 +1,222 @@
+import java.io.IOException;
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.util.ArrayList;
+import java.util.EnumMap;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.UUID;
+
+/**
+ * WriteWatermark lets the in-process stores and caches notice rows written by other processes: a
+ * second server, a command-line import or a snapshot load. Every write path counts its change in
+ * the write_watermark table within the transaction that makes it, in a row keyed by the kind of
+ * data and the writing process. A store notes the total of the other processes' counters when it
+ * is built and compares it again before it answers; a different total means the rows it mirrors
+ * changed behind its back.
+ *
+ * <p>A process only ever updates its own rows, named after a random run ID, so it never has to
+ * tell its own writes from the others' and writers in different processes never wait on each
+ * other. Threads of one process spread their updates over a few rows for the same reason. Rows of
+ * runs that have not written for a week are folded into one retired row at startup, which leaves
+ * every total unchanged.
+ */
+public class WriteWatermark {
+  private static final WriteWatermark INSTANCE = new WriteWatermark();
+
+  private static final String RETIRED_WRITER = "retired";
+  private static final int WRITER_SLOTS = 4;
+  private static final int IDLE_DAYS = 7;
+
+  private final String runID = UUID.randomUUID().toString();
+
+  private WriteWatermark() {}
+
+  /**
+   * Returns the watermark shared by the whole process.
+   *
+   * @return The write watermark.
+   */
+  public static WriteWatermark getInstance() {
+    return INSTANCE;
+  }
+
+  /**
+   * Counts one write of this process. Called within the transaction that makes the write, so the
+   * count is committed or rolled back together with it.
+   *
+   * @param connection The connection of the write.
+   * @param source The kind of data written.
+   * @throws SQLException If there is an issue with the SQL operations.
+   */
+  public void recordWrite(Connection connection, ReportCache.Source source) throws SQLException {
+    try (PreparedStatement countWrite =
+        connection.prepareStatement(
+            "insert into write_watermark (source, writer, version) values (?, ?, 1) on duplicate key update version = version + 1;")) {
+      countWrite.setString(1, source.name());
+      countWrite.setString(2, runID + "/" + Thread.currentThread().getId() % WRITER_SLOTS);
+      countWrite.executeUpdate();
+    }
+  }
+
+  /**
+   * Returns the number of writes other processes, including earlier runs of this one, have made
+   * to a kind of data. The number only grows; a store built at one value is stale at any other.
+   *
+   * @param source The kind of data.
+   * @return The total of the other processes' counters.
+   * @throws SQLException If there is an issue with the SQL operations.
+   * @throws IOException If there is an issue with input/output operations.
+   * @throws ClassNotFoundException If the required class is not found during database operations.
+   */
+  public long otherWrites(ReportCache.Source source)
+      throws SQLException, IOException, ClassNotFoundException {
+    return otherWrites().get(source);
+  }
+
+  /**
+   * Returns the number of writes other processes have made to each kind of data, read in one
+   * query.
+   *
+   * @return The total of the other processes' counters for every kind of data.
+   * @throws SQLException If there is an issue with the SQL operations.
+   * @throws IOException If there is an issue with input/output operations.
+   * @throws ClassNotFoundException If the required class is not found during database operations.
+   */
+  public Map<ReportCache.Source, Long> otherWrites()
+      throws SQLException, IOException, ClassNotFoundException {
+    return totals(false);
+  }
+
+  /**
+   * Returns the number of writes every process, this one included, has made to each kind of data.
+   * A store saved at shutdown is stamped with it and compared with {@link #otherWrites()} when the
+   * next run opens it.
+   *
+   * @return The total of all counters for every kind of data.
+   * @throws SQLException If there is an issue with the SQL operations.
+   * @throws IOException If there is an issue with input/output operations.
+   * @throws ClassNotFoundException If the required class is not found during database operations.
+   */
+  public Map<ReportCache.Source, Long> allWrites()
+      throws SQLException, IOException, ClassNotFoundException {
+    return totals(true);
+  }
+
+  /**
+   * Folds the rows of runs that have not written for a week into the retired row of their kind of
+   * data, in one transaction, so the table does not grow with every run and no total changes.
+   *
+   * @throws SQLException If there is an issue with the SQL operations.
+   * @throws IOException If there is an issue with input/output operations.
+   * @throws ClassNotFoundException If the required class is not found during database operations.
+   */
+  public void retireIdleWriters() throws SQLException, IOException, ClassNotFoundException {
+    Connection connection = null;
+
+    try {
+      connection = DatabaseManager.getConnection();
+      connection.setAutoCommit(false);
+
+      PreparedStatement idleWriters =
+          connection.prepareStatement(
+              "select source, writer, version from write_watermark where writer <> ? and updated_on < now() - interval "
+                  + IDLE_DAYS
+                  + " day for update;");
+      idleWriters.setString(1, RETIRED_WRITER);
+      ResultSet idleWritersResultSet = idleWriters.executeQuery();
+      Map<String, Long> retiredVersions = new HashMap<>();
+      List<String[]> retiredRows = new ArrayList<>();
+      while (idleWritersResultSet.next()) {
+        String source = idleWritersResultSet.getString("source");
+        retiredRows.add(new String[] {source, idleWritersResultSet.getString("writer")});
+        retiredVersions.merge(source, idleWritersResultSet.getLong("version"), Long::sum);
+      }
+      if (retiredRows.isEmpty()) {
+        connection.commit();
+        return;
+      }
+
+      PreparedStatement deleteWriter =
+          connection.prepareStatement(
+              "delete from write_watermark where source = ? and writer = ?;");
+      for (String[] retiredRow : retiredRows) {
+        deleteWriter.setString(1, retiredRow[0]);
+        deleteWriter.setString(2, retiredRow[1]);
+        deleteWriter.addBatch();
+      }
+      deleteWriter.executeBatch();
+
+      PreparedStatement addRetired =
+          connection.prepareStatement(
+              "insert into write_watermark (source, writer, version) values (?, ?, ?) on duplicate key update version = version + values(version);");
+      for (Map.Entry<String, Long> retiredVersion : retiredVersions.entrySet()) {
+        addRetired.setString(1, retiredVersion.getKey());
+        addRetired.setString(2, RETIRED_WRITER);
+        addRetired.setLong(3, retiredVersion.getValue());
+        addRetired.addBatch();
+      }
+      addRetired.executeBatch();
+      connection.commit();
+    } catch (SQLException sqlException) {
+      DatabaseManager.rollback(connection);
+      throw new SQLException(sqlException.getMessage());
+    } catch (IOException ioException) {
+      throw new IOException(ioException.getMessage());
+    } catch (ClassNotFoundException classNotFoundException) {
+      throw new ClassNotFoundException(classNotFoundException.getMessage());
+    } finally {
+      /* Ensure the connection is closed */
+      DatabaseManager.closeConnection(connection);
+    }
+  }
+
+  /**
+   * Adds up the counters of every kind of data.
+   *
+   * @param includingThisProcess False to leave out the rows of this run.
+   * @return The total for every kind of data, zero where there is no row.
+   * @throws SQLException If there is an issue with the SQL operations.
+   * @throws IOException If there is an issue with input/output operations.
+   * @throws ClassNotFoundException If the required class is not found during database operations.
+   */
+  private Map<ReportCache.Source, Long> totals(boolean includingThisProcess)
+      throws SQLException, IOException, ClassNotFoundException {
+    Connection connection = null;
+    Map<ReportCache.Source, Long> totals = new EnumMap<>(ReportCache.Source.class);
+    for (ReportCache.Source source : ReportCache.Source.values()) {
+      totals.put(source, 0L);
+    }
+
+    try {
+      connection = DatabaseManager.getConnection();
+
+      PreparedStatement sourceTotals =
+          connection.prepareStatement(
+              "select source, sum(version) from write_watermark where writer not like ? group by source;");
+      /* No writer name starts with an empty run ID, so the pattern then keeps every row */
+      sourceTotals.setString(1, (includingThisProcess ? "" : runID) + "/%");
+      ResultSet sourceTotalsResultSet = sourceTotals.executeQuery();
+      while (sourceTotalsResultSet.next()) {
+        for (ReportCache.Source source : ReportCache.Source.values()) {
+          if (source.name().equals(sourceTotalsResultSet.getString(1))) {
+            totals.put(source, sourceTotalsResultSet.getLong(2));
+          }
+        }
+      }
+      return totals;
+    } catch (SQLException sqlException) {
+      throw new SQLException(sqlException.getMessage());
+    } catch (IOException ioException) {
+      throw new IOException(ioException.getMessage());
+    } catch (ClassNotFoundException classNotFoundException) {
+      throw new ClassNotFoundException(classNotFoundException.getMessage());
+    } finally {
+      /* Ensure the connection is closed */
+      DatabaseManager.closeConnection(connection);
+    }
+  }
+}
@@ -0,0 +1,94 @@
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class BulkImporterTest {
+    private static final String[] PROGRAM =
+            {"donor_id", "donor_name", "program_id", "program_name"};
+    private static final String[] SHELTER = {"shelter_id", "name", "capacity"};
+
+    private final FakeDatabase database = new FakeDatabase();
+    private Path input;
+    private Path rejects;
+
+    @BeforeEach
+    public void createFiles() throws IOException {
+        input = Files.createTempFile("import", ".csv");
+        rejects = Files.createTempFile("rejects", ".csv");
+        database.answer("from donor d", PROGRAM, new Object[] {1, "Acme", 11, "Meals"})
+                .answer("from shelter;", SHELTER, new Object[] {7, "Harbor", 50})
+                .install();
+    }
+
+    @AfterEach
+    public void deleteFiles() throws IOException {
+        FakeDatabase.uninstall();
+        Files.deleteIfExists(input);
+        Files.deleteIfExists(rejects);
+    }
+
+    @Test
+    public void invalidLinesAreRejectedWithTheirReason() throws Exception {
+        Files.write(input, List.of(
+                "donor,program,date,donation",
+                "Acme,Meals,2023-03-01,100",
+                "Nobody,Meals,2023-03-01,100",
+                "Acme,Meals,2023-03-01,lots",
+                "Acme,Meals,2023-13-01,100"), StandardCharsets.UTF_8);
+
+        BulkImporter.ImportSummary summary = new BulkImporter()
+                .importFile(BulkImporter.ImportKind.DONATION, input, rejects);
+
+        assertEquals(1, summary.getRowsImported());
+        assertEquals(3, summary.getRowsRejected());
+        String rejected = Files.readString(rejects, StandardCharsets.UTF_8);
+        assertTrue(rejected.contains("3,\"Unknown donor\""), rejected);
+        assertTrue(rejected.contains("4,\"Amount is not a number\""), rejected);
+        assertTrue(rejected.contains("5,\"Missing name or invalid date\""), rejected);
+        FakeDatabase.Execution insert =
+                database.executions("insert into receive_donation_record").get(0);
+        assertEquals(java.sql.Date.valueOf("2023-03-01"), insert.parameter(1));
+        assertEquals(List.of(100, 1, 11), insert.parameters.subList(1, 4));
+    }
+
+    @Test
+    public void everyBatchCountsItsWriteBeforeCommitting() throws Exception {
+        Files.write(input, List.of(
+                "Harbor,2023-03-01,500",
+                "Harbor,2023-03-02,600"), StandardCharsets.UTF_8);
+
+        new BulkImporter().importFile(BulkImporter.ImportKind.DISBURSEMENT, input, rejects);
+
+        List<FakeDatabase.Execution> counted = database.executions("insert into write_watermark");
+        assertEquals(database.commits.get(), counted.size());
+        assertEquals("DISBURSEMENTS", counted.get(0).parameter(1));
+        List<FakeDatabase.Execution> executions = database.executions();
+        assertTrue(executions.indexOf(database.executions("insert into disburse_fund_monthly")
+                .get(0)) < executions.indexOf(counted.get(0)));
+    }
+
+    @Test
+    public void occupancyAboveCapacityIsRejected() throws Exception {
+        Files.write(input, List.of(
+                "shelter,date,occupancy",
+                "Harbor,2023-03-01,40",
+                "Harbor,2023-03-02,51"), StandardCharsets.UTF_8);
+
+        BulkImporter.ImportSummary summary = new BulkImporter()
+                .importFile(BulkImporter.ImportKind.OCCUPANCY, input, rejects);
+
+        assertEquals(1, summary.getRowsImported());
+        assertTrue(Files.readString(rejects, StandardCharsets.UTF_8)
+                .contains("Occupancy exceeds the shelter capacity"));
+        assertEquals("OCCUPANCY",
+                database.executions("insert into write_watermark").get(0).parameter(1));
+    }
+}
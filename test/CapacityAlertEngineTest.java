@@ -0,0 +1,98 @@
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.sql.Date;
+import java.time.LocalDate;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Map;
+import java.util.NavigableMap;
+import java.util.TreeMap;
+import java.util.stream.Stream;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class CapacityAlertEngineTest {
+    private static final LocalDate DAY = LocalDate.of(2023, 5, 2);
+    private static final String[] LATEST =
+            {"shelter_id", "name", "capacity", "date", "occupancy"};
+
+    private final FakeDatabase database = new FakeDatabase();
+    private final List<CapacityAlert> alerts = new ArrayList<>();
+    private Path directory;
+    private OccupancyArchive occupancyArchive;
+    private CapacityAlertEngine engine;
+
+    @BeforeEach
+    public void createEngine() throws IOException {
+        directory = Files.createTempDirectory("capacity-alerts");
+        occupancyArchive = new OccupancyArchive(directory);
+        engine = new CapacityAlertEngine(occupancyArchive);
+        engine.addRule(new CapacityRule("Nearly full", 90, 80));
+        engine.addListener(alerts::add);
+    }
+
+    @AfterEach
+    public void stopEngine() throws IOException {
+        engine.stop();
+        FakeDatabase.uninstall();
+        try (Stream<Path> files = Files.walk(directory)) {
+            for (Path file : (Iterable<Path>) files.sorted(Comparator.reverseOrder())::iterator) {
+                Files.delete(file);
+            }
+        }
+    }
+
+    @Test
+    public void namesDifferingInCaseOrAccentsReachTheSameShelter() throws Exception {
+        start(new Object[] {7, "José House", 100, Date.valueOf(DAY), 50});
+
+        engine.occupancyDeclared("JOSE HOUSE", DAY.plusDays(1), 95);
+
+        assertEquals(1, alerts.size());
+        assertEquals(CapacityAlert.Kind.CROSSED, alerts.get(0).getKind());
+        assertEquals("José House", alerts.get(0).getShelterName());
+    }
+
+    @Test
+    public void shelterWithOnlyArchivedRecordsIsSeededFromTheArchive() throws Exception {
+        NavigableMap<Integer, TreeMap<Integer, Integer>> records = new TreeMap<>();
+        records.put(2021, new TreeMap<>(Map.of(1, 40, 200, 95)));
+        occupancyArchive.writeArchive(7, records);
+        occupancyArchive.open();
+        start(new Object[] {7, "Harbor", 100, null, null});
+
+        /* Older than the archived declaration */
+        engine.occupancyDeclared("Harbor", LocalDate.ofYearDay(2021, 100), 10);
+        assertTrue(alerts.isEmpty());
+
+        engine.occupancyDeclared("Harbor", DAY, 50);
+        assertEquals(1, alerts.size());
+        assertEquals(CapacityAlert.Kind.RECOVERED, alerts.get(0).getKind());
+    }
+
+    @Test
+    public void newShelterIsFollowedUnderItsID() throws Exception {
+        start();
+        database.answer("from shelter where name", new String[] {"name", "shelter_id"},
+                new Object[] {"Annex", 9});
+
+        engine.shelterDefined("Annex", 10);
+        engine.occupancyDeclared("annex", DAY, 10);
+        engine.shelterDefined("Nowhere", 10);
+        engine.occupancyDeclared("Nowhere", DAY, 10);
+
+        assertEquals(1, alerts.size());
+        assertEquals("Annex", alerts.get(0).getShelterName());
+    }
+
+    private void start(Object[]... shelters) throws Exception {
+        database.answer("left join shelter_occupancy_record", LATEST, shelters).install();
+        engine.start();
+    }
+}
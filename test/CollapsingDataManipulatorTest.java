@@ -0,0 +1,101 @@
+import org.junit.jupiter.api.Test;
+
+import java.lang.reflect.Proxy;
+import java.sql.SQLException;
+import java.util.HashSet;
+import java.util.Set;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicReference;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class CollapsingDataManipulatorTest {
+    private final CountDownLatch started = new CountDownLatch(1);
+    private final CountDownLatch release = new CountDownLatch(1);
+    private final AtomicInteger executions = new AtomicInteger();
+
+    @Test
+    public void followerReceivesTheLeadersRuntimeException() throws Exception {
+        IllegalArgumentException failure = new IllegalArgumentException("Bad threshold");
+
+        Throwable[] thrown = runLeaderAndFollower(failure);
+
+        assertSame(failure, thrown[0]);
+        assertSame(failure, thrown[1]);
+        assertEquals(1, executions.get());
+    }
+
+    @Test
+    public void followerReceivesTheLeadersError() throws Exception {
+        StackOverflowError failure = new StackOverflowError();
+
+        Throwable[] thrown = runLeaderAndFollower(failure);
+
+        assertSame(failure, thrown[0]);
+        assertSame(failure, thrown[1]);
+    }
+
+    @Test
+    public void checkedFailureKeepsItsTypeAndMessage() throws Exception {
+        Throwable[] thrown = runLeaderAndFollower(new SQLException("Lost connection"));
+
+        assertEquals(SQLException.class, thrown[1].getClass());
+        assertEquals("Lost connection", thrown[1].getMessage());
+    }
+
+    @Test
+    public void successfulResultIsCopiedForEveryCaller() throws Exception {
+        CollapsingDataManipulator manipulator = new CollapsingDataManipulator(delegate(null));
+        release.countDown();
+
+        Set<String> first = manipulator.shelterAtCapacity(90);
+        first.add("Changed");
+
+        assertEquals(Set.of("Harbor"), manipulator.shelterAtCapacity(90));
+    }
+
+    /* Runs shelterAtCapacity(90) twice at once and returns what each caller threw */
+    private Throwable[] runLeaderAndFollower(Throwable failure) throws Exception {
+        CollapsingDataManipulator manipulator = new CollapsingDataManipulator(delegate(failure));
+        AtomicReference<Throwable> leaderFailure = new AtomicReference<>();
+        AtomicReference<Throwable> followerFailure = new AtomicReference<>();
+        Thread leader = caller(manipulator, leaderFailure);
+        leader.start();
+        started.await();
+        Thread follower = caller(manipulator, followerFailure);
+        follower.start();
+        while (follower.getState() != Thread.State.WAITING) {
+            Thread.sleep(5);
+        }
+        release.countDown();
+        leader.join();
+        follower.join();
+        return new Throwable[] {leaderFailure.get(), followerFailure.get()};
+    }
+
+    private Thread caller(CollapsingDataManipulator manipulator,
+            AtomicReference<Throwable> failure) {
+        return new Thread(() -> {
+            try {
+                manipulator.shelterAtCapacity(90);
+            } catch (Throwable throwable) {
+                failure.set(throwable);
+            }
+        });
+    }
+
+    private DataManipulator delegate(Throwable failure) {
+        return (DataManipulator) Proxy.newProxyInstance(
+                DataManipulator.class.getClassLoader(), new Class<?>[] {DataManipulator.class},
+                (instance, method, args) -> {
+                    executions.incrementAndGet();
+                    started.countDown();
+                    release.await();
+                    if (failure != null) {
+                        throw failure;
+                    }
+                    return new HashSet<>(Set.of("Harbor"));
+                });
+    }
+}
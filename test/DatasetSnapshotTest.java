@@ -0,0 +1,94 @@
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Map;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class DatasetSnapshotTest {
+    private final FakeDatabase database = new FakeDatabase();
+    private Path snapshotFile;
+
+    @BeforeEach
+    public void createFile() throws IOException {
+        snapshotFile = Files.createTempFile("dataset", ".snapshot");
+        database.install();
+    }
+
+    @AfterEach
+    public void deleteFile() throws IOException {
+        FakeDatabase.uninstall();
+        Files.deleteIfExists(snapshotFile);
+    }
+
+    @Test
+    public void tablesAreEmptiedInsideTheLoadTransaction() throws Exception {
+        writeSnapshot(new byte[] {5, 'M', 'e', 'a', 'l', 's', 14});
+
+        Map<String, Long> rowCounts = new DatasetSnapshot().load(snapshotFile);
+
+        assertEquals(Map.of("service", 1L), rowCounts);
+        assertTrue(database.executions("truncate").isEmpty());
+        List<FakeDatabase.Execution> executions = database.executions();
+        int delete = executions.indexOf(database.executions("DELETE FROM service").get(0));
+        FakeDatabase.Execution insert = database.executions("INSERT INTO service").get(0);
+        assertTrue(delete < executions.indexOf(insert));
+        assertEquals(List.of("Meals", 7L), insert.parameters);
+    }
+
+    @Test
+    public void loadCountsAWriteForEveryKindOfData() throws Exception {
+        writeSnapshot(new byte[] {5, 'M', 'e', 'a', 'l', 's', 14});
+
+        new DatasetSnapshot().load(snapshotFile);
+
+        List<FakeDatabase.Execution> counted = database.executions("insert into write_watermark");
+        assertEquals(ReportCache.Source.values().length, counted.size());
+        for (ReportCache.Source source : ReportCache.Source.values()) {
+            assertTrue(counted.stream().anyMatch(count -> source.name().equals(count.parameter(1))),
+                    source.name());
+        }
+    }
+
+    @Test
+    public void overlongVarintIsRefused() throws Exception {
+        /* The length of the name never ends */
+        byte[] row = new byte[11];
+        Arrays.fill(row, (byte) 0x80);
+        writeSnapshot(row);
+
+        IOException exception = assertThrows(IOException.class,
+                () -> new DatasetSnapshot().load(snapshotFile));
+        assertTrue(exception.getMessage().contains("Varint"), exception.getMessage());
+        assertEquals(0, database.commits.get());
+        assertEquals(1, database.rollbacks.get());
+    }
+
+    /* One service table of (name TEXT, inspection_frequency INTEGER) holding one encoded row */
+    private void writeSnapshot(byte[] values) throws IOException {
+        try (DataOutputStream out = new DataOutputStream(Files.newOutputStream(snapshotFile))) {
+            out.writeInt(0x48534E50);
+            out.writeInt(1);
+            out.writeInt(0);
+            out.writeInt(1);
+            out.writeUTF("service");
+            out.writeShort(2);
+            out.writeUTF("name");
+            out.writeByte(4);
+            out.writeUTF("inspection_frequency");
+            out.writeByte(1);
+            out.writeByte(1);
+            /* Null bitmap: both columns present */
+            out.writeByte(0);
+            out.write(values);
+            out.writeByte(0);
+        }
+    }
+}
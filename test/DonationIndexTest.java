@@ -0,0 +1,119 @@
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+
+import java.time.LocalDate;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicLong;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class DonationIndexTest {
+    private static final LocalDate DAY = LocalDate.of(2023, 4, 1);
+    private static final String[] DONOR = {"name", "locationX", "locationY"};
+    private static final String[] DONATION = {"donor_name", "program_name", "date", "donation"};
+
+    private final FakeDatabase database = new FakeDatabase();
+    private final List<Object[]> donors = new ArrayList<>();
+    private final List<Object[]> donations = new ArrayList<>();
+    private final AtomicLong otherWrites = new AtomicLong();
+
+    @AfterEach
+    public void uninstallDatabase() {
+        FakeDatabase.uninstall();
+    }
+
+    @Test
+    public void namesMatchTheWayTheColumnCollationDoes() throws Exception {
+        donor("José");
+        donation("José", "Food Bank", DAY, 100);
+        DonationIndex donationIndex = rebuild();
+
+        donationIndex.recordDonation("JOSE", "food bank", DAY.plusDays(1), 50);
+
+        assertTrue(donationIndex.isLoaded());
+        assertEquals(Map.of("José", Map.of("Food Bank", 150L)),
+                donationIndex.programTotals(DAY, DAY.plusDays(1)));
+    }
+
+    @Test
+    public void reportsComeOutInCollationOrder() throws Exception {
+        for (String name : List.of("Zoe", "Émile", "adam", "Eve")) {
+            donor(name);
+            donation(name, "Shelter Fund", DAY, 10);
+        }
+        DonationIndex donationIndex = rebuild();
+
+        assertEquals(List.of("adam", "Émile", "Eve", "Zoe"),
+                new ArrayList<>(donationIndex.programTotals(DAY, DAY).keySet()));
+        assertEquals(4, donationIndex.donorTotals(DAY, DAY).size());
+    }
+
+    @Test
+    public void largeTotalsAreNotTruncated() throws Exception {
+        donor("Foundation");
+        donation("Foundation", "Endowment", DAY, Integer.MAX_VALUE);
+        donation("Foundation", "Endowment", DAY.plusDays(1), Integer.MAX_VALUE);
+        DonationIndex donationIndex = rebuild();
+
+        List<Donor> totals = donationIndex.donorTotals(DAY, DAY.plusDays(1));
+        assertEquals(2L * Integer.MAX_VALUE, totals.get(0).getDonation());
+    }
+
+    @Test
+    public void donationForAnUnknownDonorUnloadsTheIndex() throws Exception {
+        donor("Known");
+        DonationIndex donationIndex = rebuild();
+
+        donationIndex.recordDonation("Stranger", "Fund", DAY, 5);
+        assertFalse(donationIndex.isLoaded());
+    }
+
+    @Test
+    public void importByAnotherProcessRebuildsBeforeTheNextReport() throws Exception {
+        donor("Acme");
+        donation("Acme", "Meals", DAY, 100);
+        DonationIndex donationIndex = rebuild();
+        assertTrue(donationIndex.isCurrent());
+
+        donation("Acme", "Meals", DAY, 250);
+        otherWrites.incrementAndGet();
+
+        assertTrue(donationIndex.isCurrent());
+        assertEquals(Map.of("Acme", Map.of("Meals", 350L)), donationIndex.programTotals(DAY, DAY));
+    }
+
+    @Test
+    public void writesOfThisProcessKeepTheIndex() throws Exception {
+        donor("Acme");
+        DonationIndex donationIndex = rebuild();
+
+        donationIndex.recordDonation("Acme", "Meals", DAY, 40);
+
+        assertTrue(donationIndex.isCurrent());
+        assertEquals(1, database.executions("join receive_donation_record").size());
+        assertEquals(Map.of("Acme", Map.of("Meals", 40L)), donationIndex.programTotals(DAY, DAY));
+    }
+
+    private void donor(String name) {
+        donors.add(new Object[] {name, 1, 2});
+    }
+
+    private void donation(String donor, String program, LocalDate date, int amount) {
+        donations.add(new Object[] {donor, program, date, amount});
+    }
+
+    private DonationIndex rebuild() throws Exception {
+        database.answer("from donor;", DONOR, parameters -> new ArrayList<>(donors))
+                .answer("join receive_donation_record", DONATION,
+                        parameters -> new ArrayList<>(donations))
+                .answer("from write_watermark", new String[] {"source", "total"},
+                        parameters -> List.<Object[]>of(
+                                new Object[] {"DONATIONS", otherWrites.get()}))
+                .install();
+        DonationIndex donationIndex = DonationIndex.getInstance();
+        donationIndex.rebuild();
+        return donationIndex;
+    }
+}
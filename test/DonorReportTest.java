@@ -0,0 +1,114 @@
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import java.io.PrintWriter;
+import java.io.StringWriter;
+import java.sql.Date;
+import java.sql.SQLException;
+import java.time.LocalDate;
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class DonorReportTest {
+    private static final String[] DONATION = {"donor_name", "program_name", "date", "donation"};
+    private static final Pair<LocalDate, LocalDate> JANUARY =
+            new Pair<>(LocalDate.of(2023, 1, 1), LocalDate.of(2023, 1, 31));
+    private static final Pair<LocalDate, LocalDate> FEBRUARY =
+            new Pair<>(LocalDate.of(2023, 2, 1), LocalDate.of(2023, 2, 28));
+    private static final Pair<LocalDate, LocalDate> QUARTER =
+            new Pair<>(LocalDate.of(2023, 1, 1), LocalDate.of(2023, 3, 31));
+
+    private final FakeDatabase database = new FakeDatabase();
+    private final HomelessSupport homelessSupport = new HomelessSupport();
+
+    @BeforeEach
+    public void installDatabase() {
+        database.answer("from donor;", new String[] {"name", "locationX", "locationY"},
+                        new Object[] {"Acme", 1, 2}, new Object[] {"Zenith", 3, 4})
+                .answer("join receive_donation_record", DONATION,
+                        new Object[] {"Acme", "Meals", Date.valueOf("2023-01-10"), 100},
+                        new Object[] {"Acme", "Meals", Date.valueOf("2023-02-10"), 50},
+                        new Object[] {"Zenith", "Beds", Date.valueOf("2023-03-05"), 7})
+                .install();
+    }
+
+    @AfterEach
+    public void uninstallDatabase() {
+        FakeDatabase.uninstall();
+    }
+
+    @Test
+    public void overlappingPeriodsShareOneReadOfTheSpan() throws Exception {
+        unloadDonationIndex();
+
+        List<String> sections = report(JANUARY, FEBRUARY, QUARTER);
+
+        assertEquals(List.of(
+                "Acme\n\tMeals\t100\n",
+                "Acme\n\tMeals\t50\n",
+                "Acme\n\tMeals\t150\n\nZenith\n\tBeds\t7\n"), sections);
+        List<FakeDatabase.Execution> reads = database.executions("between");
+        assertEquals(1, reads.size());
+        assertEquals(List.of(Date.valueOf("2023-01-01"), Date.valueOf("2023-03-31")),
+                reads.get(0).parameters);
+    }
+
+    @Test
+    public void loadedIndexWritesTheSameSectionsWithoutReading() throws Exception {
+        DonationIndex.getInstance().rebuild();
+
+        List<String> sections = report(JANUARY, FEBRUARY, QUARTER);
+
+        assertEquals(List.of(
+                "Acme\n\tMeals\t100\n",
+                "Acme\n\tMeals\t50\n",
+                "Acme\n\tMeals\t150\n\nZenith\n\tBeds\t7\n"), sections);
+        assertTrue(database.executions("between").isEmpty());
+    }
+
+    @Test
+    public void sharedStreamNamesEveryPeriod() throws Exception {
+        unloadDonationIndex();
+        StringWriter out = new StringWriter();
+
+        try (PrintWriter outstream = new PrintWriter(out)) {
+            homelessSupport.donorReport(List.of(JANUARY, FEBRUARY), List.of(outstream));
+        }
+
+        assertEquals("2023-01-01 to 2023-01-31\nAcme\n\tMeals\t100\n\n"
+                + "2023-02-01 to 2023-02-28\nAcme\n\tMeals\t50\n", unix(out));
+    }
+
+    @SafeVarargs
+    private List<String> report(Pair<LocalDate, LocalDate>... periods) throws Exception {
+        List<StringWriter> outs = new ArrayList<>();
+        List<PrintWriter> outstreams = new ArrayList<>();
+        for (int period = 0; period < periods.length; period++) {
+            StringWriter out = new StringWriter();
+            outs.add(out);
+            outstreams.add(new PrintWriter(out, true));
+        }
+        homelessSupport.donorReport(List.of(periods), outstreams);
+
+        List<String> sections = new ArrayList<>();
+        for (StringWriter out : outs) {
+            sections.add(unix(out));
+        }
+        return sections;
+    }
+
+    /* An index whose rebuild fails is not loaded, so the reports read the records */
+    private void unloadDonationIndex() {
+        FakeDatabase failing = new FakeDatabase().fail("from donor;", "Lost connection");
+        failing.install();
+        assertThrows(SQLException.class, () -> DonationIndex.getInstance().rebuild());
+        database.install();
+    }
+
+    private static String unix(StringWriter out) {
+        return out.toString().replace(System.lineSeparator(), "\n");
+    }
+}
@@ -0,0 +1,96 @@
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+
+import java.sql.SQLException;
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class EntityLookupCoalescerTest {
+    private static final String[] STAFF = {"name", "staff_id"};
+    private static final EntityLookupCoalescer.Kind KIND = EntityLookupCoalescer.Kind.STAFF;
+
+    private final FakeDatabase database = new FakeDatabase();
+    private final EntityLookupCoalescer lookupCoalescer = EntityLookupCoalescer.getInstance();
+
+    @AfterEach
+    public void uninstallDatabase() {
+        FakeDatabase.uninstall();
+    }
+
+    @Test
+    public void idleLookupIsQueriedAtOnce() throws Exception {
+        database.answer("from staff where name", STAFF, new Object[] {"Dana", 7}).install();
+
+        assertEquals(7, lookupCoalescer.lookup(KIND, "DANA"));
+        assertEquals(Constants.STAFF_NOT_FOUND, lookupCoalescer.lookup(KIND, "Nobody"));
+        assertEquals(2, database.executions("from staff where name").size());
+    }
+
+    @Test
+    public void lookupsArrivingDuringAQueryShareOneBatch() throws Exception {
+        CountDownLatch release = new CountDownLatch(1);
+        AtomicInteger queries = new AtomicInteger();
+        database.answer("from staff where name", STAFF, parameters -> {
+            if (queries.getAndIncrement() == 0) {
+                try {
+                    release.await();
+                } catch (InterruptedException interruptedException) {
+                    Thread.currentThread().interrupt();
+                }
+            }
+            return List.<Object[]>of(new Object[] {"Dana", 7}, new Object[] {"Lee", 8});
+        }).install();
+
+        Map<String, Integer> found = new ConcurrentHashMap<>();
+        List<Thread> callers = new ArrayList<>();
+        for (String name : List.of("Dana", "Lee", "Lee", "Dana")) {
+            Thread caller = new Thread(() -> {
+                try {
+                    found.merge(name, lookupCoalescer.lookup(KIND, name), (first, second) ->
+                            first.equals(second) ? first : -2);
+                } catch (Exception exception) {
+                    found.put(name, -3);
+                }
+            });
+            callers.add(caller);
+            caller.start();
+            if (callers.size() == 1) {
+                while (queries.get() == 0) {
+                    Thread.sleep(1);
+                }
+            }
+        }
+        for (Thread caller : callers) {
+            while (caller.getState() != Thread.State.WAITING) {
+                Thread.sleep(1);
+            }
+        }
+        release.countDown();
+        for (Thread caller : callers) {
+            caller.join();
+        }
+
+        assertEquals(Map.of("Dana", 7, "Lee", 8), found);
+        List<FakeDatabase.Execution> executions = database.executions("from staff where name");
+        assertEquals(2, executions.size());
+        assertEquals(Set.of("Dana", "Lee"), new HashSet<>(executions.get(1).parameters));
+        assertEquals(2, executions.get(1).parameters.size());
+    }
+
+    @Test
+    public void failedQueryIsRethrownWithItsType() {
+        database.fail("from staff where name", "Lost connection").install();
+
+        SQLException exception =
+                assertThrows(SQLException.class, () -> lookupCoalescer.lookup(KIND, "Dana"));
+        assertEquals("Lost connection", exception.getMessage());
+    }
+}
@@ -0,0 +1,338 @@
+import java.lang.reflect.InvocationHandler;
+import java.lang.reflect.Proxy;
+import java.sql.Connection;
+import java.sql.Date;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.ResultSetMetaData;
+import java.sql.SQLException;
+import java.sql.Types;
+import java.time.LocalDate;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.Locale;
+import java.util.TreeMap;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Function;
+
+/**
+ * A stand-in for the database in unit tests. Statements are recorded with their parameters, and
+ * queries are answered by the first script whose fragment the SQL contains; queries without a
+ * script return no rows. Installing it routes DatabaseManager.getConnection() here.
+ */
+class FakeDatabase {
+    /** One executed statement, or one row of a batch. */
+    static final class Execution {
+        final String sql;
+        final List<Object> parameters;
+        /* The fetch size set on the statement, or null */
+        final Integer fetchSize;
+
+        Execution(String sql, List<Object> parameters) {
+            this(sql, parameters, null);
+        }
+
+        Execution(String sql, List<Object> parameters, Integer fetchSize) {
+            this.sql = sql;
+            this.parameters = parameters;
+            this.fetchSize = fetchSize;
+        }
+
+        Object parameter(int index) {
+            return parameters.get(index - 1);
+        }
+
+        @Override
+        public String toString() {
+            return sql + " " + parameters;
+        }
+    }
+
+    private static final class Script {
+        final String fragment;
+        final String[] columns;
+        final Function<List<Object>, List<Object[]>> rows;
+        final String failure;
+
+        Script(String fragment, String[] columns, Function<List<Object>, List<Object[]>> rows,
+                String failure) {
+            this.fragment = fragment.toLowerCase(Locale.ROOT);
+            this.columns = columns;
+            this.rows = rows;
+            this.failure = failure;
+        }
+    }
+
+    private final List<Script> scripts = Collections.synchronizedList(new ArrayList<>());
+    private final List<Execution> executions = Collections.synchronizedList(new ArrayList<>());
+    private final AtomicInteger nextKey = new AtomicInteger(1_000);
+    final AtomicInteger connections = new AtomicInteger();
+    final AtomicInteger commits = new AtomicInteger();
+    final AtomicInteger rollbacks = new AtomicInteger();
+
+    /** Answers queries containing the fragment with fixed rows. */
+    FakeDatabase answer(String fragment, String[] columns, Object[]... rows) {
+        List<Object[]> fixed = Arrays.asList(rows);
+        return answer(fragment, columns, parameters -> fixed);
+    }
+
+    /** Answers queries containing the fragment with rows computed from the parameters. */
+    FakeDatabase answer(String fragment, String[] columns,
+            Function<List<Object>, List<Object[]>> rows) {
+        scripts.add(0, new Script(fragment, columns, rows, null));
+        return this;
+    }
+
+    /** Fails every statement containing the fragment. */
+    FakeDatabase fail(String fragment, String message) {
+        scripts.add(0, new Script(fragment, new String[0], null, message));
+        return this;
+    }
+
+    void install() {
+        DatabaseManager.connectionSource = this::connection;
+    }
+
+    static void uninstall() {
+        DatabaseManager.connectionSource = null;
+    }
+
+    List<Execution> executions() {
+        synchronized (executions) {
+            return new ArrayList<>(executions);
+        }
+    }
+
+    /** Returns the executions whose SQL contains the fragment. */
+    List<Execution> executions(String fragment) {
+        String lowerFragment = fragment.toLowerCase(Locale.ROOT);
+        List<Execution> matching = new ArrayList<>();
+        for (Execution execution : executions()) {
+            if (execution.sql.toLowerCase(Locale.ROOT).contains(lowerFragment)) {
+                matching.add(execution);
+            }
+        }
+        return matching;
+    }
+
+    Connection connection() {
+        connections.incrementAndGet();
+        boolean[] autoCommit = {true};
+        return proxy(Connection.class, (instance, method, args) -> {
+            switch (method.getName()) {
+                case "prepareStatement":
+                    return statement((String) args[0]);
+                case "createStatement":
+                    return statement(null);
+                case "getAutoCommit":
+                    return autoCommit[0];
+                case "setAutoCommit":
+                    autoCommit[0] = (Boolean) args[0];
+                    return null;
+                case "commit":
+                    commits.incrementAndGet();
+                    return null;
+                case "rollback":
+                    rollbacks.incrementAndGet();
+                    return null;
+                case "isClosed":
+                    return false;
+                case "unwrap":
+                    return instance;
+                default:
+                    return defaultValue(method.getReturnType());
+            }
+        });
+    }
+
+    private PreparedStatement statement(String preparedSql) {
+        TreeMap<Integer, Object> parameters = new TreeMap<>();
+        List<Execution> batch = new ArrayList<>();
+        ResultSet[] generatedKeys = {resultSet(new String[] {"id"}, List.of())};
+        Integer[] fetchSize = {null};
+        return proxy(PreparedStatement.class, (instance, method, args) -> {
+            String name = method.getName();
+            if (name.equals("setFetchSize")) {
+                fetchSize[0] = (Integer) args[0];
+                return null;
+            }
+            if (name.startsWith("set") && args != null && args.length >= 2
+                    && args[0] instanceof Integer) {
+                parameters.put((Integer) args[0], name.equals("setNull") ? null : args[1]);
+                return null;
+            }
+            String sql = args != null && args.length > 0 && args[0] instanceof String
+                    ? (String) args[0] : preparedSql;
+            switch (name) {
+                case "executeQuery":
+                    return query(record(sql, parameters, fetchSize[0]));
+                case "executeUpdate":
+                case "execute":
+                    Execution execution = record(sql, parameters, fetchSize[0]);
+                    failIfScripted(execution);
+                    generatedKeys[0] = resultSet(new String[] {"id"},
+                            List.<Object[]>of(new Object[] {nextKey.getAndIncrement()}));
+                    return name.equals("execute") ? Boolean.FALSE : (Object) 1;
+                case "addBatch":
+                    batch.add(new Execution(sql, new ArrayList<>(parameters.values())));
+                    return null;
+                case "executeBatch":
+                    int[] counts = new int[batch.size()];
+                    for (Execution row : batch) {
+                        executions.add(row);
+                        failIfScripted(row);
+                    }
+                    Arrays.fill(counts, 1);
+                    batch.clear();
+                    return counts;
+                case "getGeneratedKeys":
+                    return generatedKeys[0];
+                case "clearParameters":
+                    parameters.clear();
+                    return null;
+                default:
+                    return defaultValue(method.getReturnType());
+            }
+        });
+    }
+
+    private Execution record(String sql, TreeMap<Integer, Object> parameters,
+            Integer fetchSize) {
+        Execution execution = new Execution(sql, new ArrayList<>(parameters.values()), fetchSize);
+        executions.add(execution);
+        return execution;
+    }
+
+    private void failIfScripted(Execution execution) throws SQLException {
+        Script script = scriptFor(execution.sql);
+        if (script != null && script.failure != null) {
+            throw new SQLException(script.failure);
+        }
+    }
+
+    private ResultSet query(Execution execution) throws SQLException {
+        failIfScripted(execution);
+        Script script = scriptFor(execution.sql);
+        if (script == null) {
+            return resultSet(new String[0], List.of());
+        }
+        return resultSet(script.columns, script.rows.apply(execution.parameters));
+    }
+
+    private Script scriptFor(String sql) {
+        String lower = sql.toLowerCase(Locale.ROOT);
+        synchronized (scripts) {
+            for (Script script : scripts) {
+                if (lower.contains(script.fragment)) {
+                    return script;
+                }
+            }
+        }
+        return null;
+    }
+
+    private static ResultSet resultSet(String[] columns, List<Object[]> rows) {
+        int[] row = {-1};
+        boolean[] wasNull = {false};
+        return proxy(ResultSet.class, (instance, method, args) -> {
+            String name = method.getName();
+            if (name.equals("next")) {
+                return ++row[0] < rows.size();
+            }
+            if (name.equals("wasNull")) {
+                return wasNull[0];
+            }
+            if (name.equals("getMetaData")) {
+                return metaData(columns);
+            }
+            if (!name.startsWith("get") || args == null || args.length == 0) {
+                return defaultValue(method.getReturnType());
+            }
+            int column = args[0] instanceof Integer
+                    ? (Integer) args[0] : columnIndex(columns, (String) args[0]);
+            Object value = rows.get(row[0])[column - 1];
+            wasNull[0] = value == null;
+            return convert(value, method.getReturnType());
+        });
+    }
+
+    /* Column names as scripted; every column reads as text */
+    private static ResultSetMetaData metaData(String[] columns) {
+        return proxy(ResultSetMetaData.class, (instance, method, args) -> {
+            switch (method.getName()) {
+                case "getColumnCount":
+                    return columns.length;
+                case "getColumnName":
+                case "getColumnLabel":
+                    return columns[(Integer) args[0] - 1];
+                case "getColumnType":
+                    return Types.VARCHAR;
+                default:
+                    return defaultValue(method.getReturnType());
+            }
+        });
+    }
+
+    private static int columnIndex(String[] columns, String label) throws SQLException {
+        for (int column = 0; column < columns.length; column++) {
+            if (columns[column].equalsIgnoreCase(label)) {
+                return column + 1;
+            }
+        }
+        throw new SQLException("No column " + label);
+    }
+
+    private static Object convert(Object value, Class<?> type) {
+        if (value == null) {
+            return defaultValue(type);
+        }
+        if (type == int.class) {
+            return ((Number) value).intValue();
+        }
+        if (type == long.class) {
+            return ((Number) value).longValue();
+        }
+        if (type == double.class) {
+            return ((Number) value).doubleValue();
+        }
+        if (type == boolean.class) {
+            return value instanceof Boolean ? value : ((Number) value).intValue() != 0;
+        }
+        if (type == String.class) {
+            return String.valueOf(value);
+        }
+        if (type == Date.class && value instanceof LocalDate) {
+            return Date.valueOf((LocalDate) value);
+        }
+        return value;
+    }
+
+    private static Object defaultValue(Class<?> type) {
+        if (type == boolean.class) {
+            return false;
+        }
+        if (type == int.class || type == long.class || type == double.class) {
+            return convert(0, type);
+        }
+        return null;
+    }
+
+    private static <T> T proxy(Class<T> type, InvocationHandler handler) {
+        InvocationHandler withIdentity = (instance, method, args) -> {
+            switch (method.getName()) {
+                case "equals":
+                    return args.length == 1 && instance == args[0];
+                case "hashCode":
+                    return System.identityHashCode(instance);
+                case "toString":
+                    return "Fake" + type.getSimpleName();
+                default:
+                    return handler.invoke(instance, method, args);
+            }
+        };
+        return type.cast(Proxy.newProxyInstance(
+                FakeDatabase.class.getClassLoader(), new Class<?>[] {type}, withIdentity));
+    }
+}
@@ -0,0 +1,94 @@
+import org.junit.jupiter.api.Test;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.time.LocalDate;
+import java.util.Random;
+import java.util.TreeMap;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class FenwickTreeTest {
+    private static final long BASE_DAY = LocalDate.of(2023, 1, 1).toEpochDay();
+
+    @Test
+    public void emptyTreeSumsToZero() {
+        FenwickTree fenwickTree = new FenwickTree();
+        assertEquals(0, fenwickTree.sumUpTo(BASE_DAY));
+        assertEquals(0, fenwickTree.rangeSum(BASE_DAY - 10, BASE_DAY + 10));
+    }
+
+    @Test
+    public void rangeSumMatchesAddedAmounts() {
+        FenwickTree fenwickTree = new FenwickTree();
+        fenwickTree.add(BASE_DAY, 100);
+        fenwickTree.add(BASE_DAY + 1, 20);
+        fenwickTree.add(BASE_DAY + 1, 5);
+        fenwickTree.add(BASE_DAY + 30, 7);
+
+        assertEquals(125, fenwickTree.rangeSum(BASE_DAY, BASE_DAY + 1));
+        assertEquals(25, fenwickTree.rangeSum(BASE_DAY + 1, BASE_DAY + 29));
+        assertEquals(132, fenwickTree.sumUpTo(BASE_DAY + 365));
+        assertEquals(0, fenwickTree.rangeSum(BASE_DAY + 2, BASE_DAY + 29));
+        assertEquals(0, fenwickTree.rangeSum(BASE_DAY + 1, BASE_DAY));
+    }
+
+    @Test
+    public void growsInBothDirectionsWithoutLosingAmounts() {
+        FenwickTree fenwickTree = new FenwickTree();
+        fenwickTree.add(BASE_DAY, 1);
+        /* Far beyond the initial capacity on either side, several times over */
+        fenwickTree.add(BASE_DAY + 5_000, 2);
+        fenwickTree.add(BASE_DAY - 3_000, 4);
+        fenwickTree.add(BASE_DAY + 40_000, 8);
+        fenwickTree.add(BASE_DAY - 20_000, 16);
+
+        assertEquals(31, fenwickTree.sumUpTo(BASE_DAY + 40_000));
+        assertEquals(16, fenwickTree.sumUpTo(BASE_DAY - 20_000));
+        assertEquals(0, fenwickTree.sumUpTo(BASE_DAY - 20_001));
+        assertEquals(1, fenwickTree.rangeSum(BASE_DAY, BASE_DAY));
+        assertEquals(7, fenwickTree.rangeSum(BASE_DAY - 3_000, BASE_DAY + 5_000));
+        assertEquals(31, fenwickTree.sumUpTo(BASE_DAY + 1_000_000));
+    }
+
+    @Test
+    public void matchesBruteForceOverRandomDays() {
+        Random random = new Random(30);
+        FenwickTree fenwickTree = new FenwickTree();
+        TreeMap<Long, Long> amounts = new TreeMap<>();
+        for (int donation = 0; donation < 5_000; donation++) {
+            long day = BASE_DAY + random.nextInt(20_000) - 10_000;
+            long amount = 1 + random.nextInt(1_000);
+            fenwickTree.add(day, amount);
+            amounts.merge(day, amount, Long::sum);
+        }
+
+        for (int query = 0; query < 500; query++) {
+            long from = BASE_DAY + random.nextInt(24_000) - 12_000;
+            long to = from + random.nextInt(3_000);
+            long expected = amounts.subMap(from, true, to, true).values().stream()
+                    .mapToLong(Long::longValue).sum();
+            assertEquals(expected, fenwickTree.rangeSum(from, to), from + ".." + to);
+        }
+    }
+
+    @Test
+    public void survivesSerialization() throws IOException {
+        FenwickTree fenwickTree = new FenwickTree();
+        fenwickTree.add(BASE_DAY, 10);
+        fenwickTree.add(BASE_DAY - 2_000, 3);
+
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        fenwickTree.writeTo(new DataOutputStream(bytes));
+        FenwickTree restored = FenwickTree.readFrom(
+                new DataInputStream(new ByteArrayInputStream(bytes.toByteArray())));
+
+        assertEquals(13, restored.sumUpTo(BASE_DAY));
+        assertEquals(3, restored.rangeSum(BASE_DAY - 2_000, BASE_DAY - 1));
+        restored.add(BASE_DAY + 9_000, 1);
+        assertEquals(14, restored.sumUpTo(BASE_DAY + 9_000));
+    }
+}
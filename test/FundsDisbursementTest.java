@@ -0,0 +1,55 @@
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+
+import java.sql.Date;
+import java.time.LocalDate;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class FundsDisbursementTest {
+    private final FakeDatabase database = new FakeDatabase();
+
+    @AfterEach
+    public void uninstallDatabase() {
+        FakeDatabase.uninstall();
+    }
+
+    @Test
+    public void recordAndBothRollupsAreWrittenInOneTransaction() throws Exception {
+        database.install();
+
+        assertTrue(new FundsDisbursement(new ShelterHandle(31, "Harbor"), LocalDate.of(2024, 2, 29),
+                700).disburseFunds());
+
+        assertEquals(List.of(31, Date.valueOf("2024-02-29"), 700),
+                database.executions("insert into disburse_fund_daily").get(0).parameters);
+        assertEquals(List.of(31, Date.valueOf("2024-02-01"), 700),
+                database.executions("insert into disburse_fund_monthly").get(0).parameters);
+        assertEquals(1, database.commits.get());
+    }
+
+    @Test
+    public void disbursementCountsItsWriteBeforeCommitting() throws Exception {
+        database.install();
+
+        new FundsDisbursement(new ShelterHandle(31, "Harbor"), LocalDate.of(2024, 3, 5), 10)
+                .disburseFunds();
+
+        FakeDatabase.Execution counted = database.executions("insert into write_watermark").get(0);
+        assertEquals("DISBURSEMENTS", counted.parameter(1));
+        List<FakeDatabase.Execution> executions = database.executions();
+        assertTrue(executions.indexOf(database.executions("insert into disburse_fund_monthly")
+                .get(0)) < executions.indexOf(counted));
+    }
+
+    @Test
+    public void failedRollupRollsBackTheRecord() {
+        database.fail("insert into disburse_fund_monthly", "Deadlock found").install();
+
+        assertThrows(Exception.class, () -> new FundsDisbursement(
+                new ShelterHandle(31, "Harbor"), LocalDate.of(2024, 3, 5), 10).disburseFunds());
+        assertEquals(0, database.commits.get());
+        assertEquals(1, database.rollbacks.get());
+    }
+}
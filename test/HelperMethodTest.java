@@ -0,0 +1,33 @@
+import org.junit.jupiter.api.Test;
+
+import java.time.LocalDate;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class HelperMethodTest {
+    private final HelperMethod helperMethod = new HelperMethod();
+
+    @Test
+    public void leapYearsFollowTheGregorianRules() {
+        assertTrue(helperMethod.isLeapYear("2024-03-01"));
+        assertTrue(helperMethod.isLeapYear("2000-01-01"));
+        assertFalse(helperMethod.isLeapYear("1900-01-01"));
+        assertFalse(helperMethod.isLeapYear("2023-12-31"));
+    }
+
+    @Test
+    public void missingOrMalformedDatesAreNotLeapYears() {
+        assertFalse(helperMethod.isLeapYear(null));
+        assertFalse(helperMethod.isLeapYear(""));
+        assertFalse(helperMethod.isLeapYear("2024-02-30"));
+        assertFalse(helperMethod.isLeapYear("not a date"));
+    }
+
+    @Test
+    public void datesAreParsedOnceInTheSystemFormat() {
+        assertEquals(LocalDate.of(2024, 2, 29), helperMethod.parseDate("2024-02-29"));
+        assertNull(helperMethod.parseDate("2023-13-01"));
+        assertTrue(helperMethod.isDateInvalid("2023-12-1x"));
+        assertFalse(helperMethod.isDateInvalid("2023-12-01"));
+    }
+}
@@ -0,0 +1,86 @@
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class HomelessSupportTest {
+    private final FakeDatabase database = new FakeDatabase();
+    private final HomelessSupport homelessSupport = new HomelessSupport();
+
+    @BeforeEach
+    public void installDatabase() {
+        database.install();
+    }
+
+    @AfterEach
+    public void uninstallDatabase() {
+        FakeDatabase.uninstall();
+    }
+
+    @Test
+    public void newServiceHandleCarriesTheGeneratedKey() throws Exception {
+        ServiceHandle service = homelessSupport.defineServiceWithHandle("Meals", 7);
+
+        assertEquals(1_000, service.getId());
+        assertEquals(1, database.executions("from service where name").size());
+    }
+
+    @Test
+    public void redefinedServiceKeepsItsID() throws Exception {
+        database.answer("from service where name", new String[] {"name", "service_id"},
+                new Object[] {"Meals", 42});
+
+        ServiceHandle service = homelessSupport.defineServiceWithHandle("Meals", 14);
+
+        assertEquals(42, service.getId());
+        assertEquals(1, database.executions("update service set frequency").size());
+    }
+
+    @Test
+    public void donorHandleTakesTheProgramKeysFromTheInserts() throws Exception {
+        DonorHandle donor = homelessSupport.defineDonorWithHandle(
+                "Acme", new Point(1, 2), "acme@example.org", Set.of("Meals"));
+
+        assertEquals(1_000, donor.getId());
+        assertEquals(Map.of("Meals", 1_001), donor.getProgramIds());
+        assertTrue(database.executions("from funding_program").isEmpty());
+    }
+
+    @Test
+    public void shelterHandleCarriesTheKeyAndCountsTheWrite() throws Exception {
+        database.answer("from staff where name", new String[] {"name", "staff_id"},
+                new Object[] {"Dana", 3});
+
+        ShelterHandle shelter =
+                homelessSupport.defineShelterWithHandle("Harbor", new Point(4, 5), 50, "Dana");
+
+        assertEquals(1_000, shelter.getId());
+        assertEquals("SHELTERS",
+                database.executions("insert into write_watermark").get(0).parameter(1));
+    }
+
+    @Test
+    public void staleHandleIsRefusedWithoutInserting() throws Exception {
+        database.answer("handles_exist", new String[] {"handles_exist"}, new Object[] {false});
+
+        assertFalse(homelessSupport.serviceForShelter(
+                new ShelterHandle(5, "Harbor"), new ServiceHandle(9, "Meals")));
+        assertTrue(database.executions("insert into service_for_shelter").isEmpty());
+    }
+
+    @Test
+    public void liveHandlesAreMapped() throws Exception {
+        database.answer("handles_exist", new String[] {"handles_exist"}, new Object[] {true});
+
+        assertTrue(homelessSupport.serviceForShelter(
+                new ShelterHandle(5, "Harbor"), new ServiceHandle(9, "Meals")));
+        FakeDatabase.Execution insert =
+                database.executions("insert into service_for_shelter").get(0);
+        assertEquals(List.of(9, 5), insert.parameters);
+    }
+}
@@ -0,0 +1,102 @@
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import jdk.jfr.Recording;
+import jdk.jfr.consumer.RecordedEvent;
+import jdk.jfr.consumer.RecordingFile;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.time.LocalDate;
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class InstrumentedConnectionTest {
+    private final FakeDatabase database = new FakeDatabase();
+    private final Recording recording = new Recording();
+    private Path dump;
+
+    @BeforeEach
+    public void startRecording() throws IOException {
+        dump = Files.createTempFile("events", ".jfr");
+        database.answer("from shelter where capacity", new String[] {"name"},
+                new Object[] {"Harbor"}, new Object[] {"Annex"}, new Object[] {"Haven"})
+                .install();
+        recording.enable(SqlExecutionEvent.class).withoutThreshold();
+        recording.enable(ReportStageEvent.class).withoutThreshold();
+        recording.start();
+    }
+
+    @AfterEach
+    public void closeRecording() throws IOException {
+        recording.close();
+        FakeDatabase.uninstall();
+        Files.deleteIfExists(dump);
+    }
+
+    @Test
+    public void queryEventCountsTheRowsTheCallerRead() throws Exception {
+        try (Connection connection = InstrumentedConnection.wrap(database.connection())) {
+            PreparedStatement query =
+                    connection.prepareStatement("select name from shelter where capacity > ?");
+            query.setInt(1, 10);
+            ResultSet names = query.executeQuery();
+            while (names.next()) {
+                assertNotNull(names.getString("name"));
+            }
+            connection.prepareStatement("update shelter set capacity = 5").executeUpdate();
+        }
+
+        List<RecordedEvent> events = events("homelesssupport.SqlExecution");
+        assertEquals(2, events.size());
+        assertEquals("select name from shelter where capacity > ?", events.get(0).getString("sql"));
+        assertEquals(3, events.get(0).getLong("rowCount"));
+        assertEquals(1, events.get(1).getLong("rowCount"));
+    }
+
+    @Test
+    public void unfinishedQueryEndsWithItsConnection() throws Exception {
+        Connection connection = InstrumentedConnection.wrap(database.connection());
+        ResultSet names = connection.createStatement()
+                .executeQuery("select name from shelter where capacity > 0");
+        names.next();
+
+        assertTrue(events("homelesssupport.SqlExecution").isEmpty());
+        connection.close();
+        List<RecordedEvent> events = events("homelesssupport.SqlExecution");
+        assertEquals(1, events.size());
+        assertEquals(1, events.get(0).getLong("rowCount"));
+    }
+
+    @Test
+    public void reportStagesAreRecordedUnderTheirReport() throws Exception {
+        LocalDate day = LocalDate.of(2023, 1, 5);
+        new Shelter().occupancyPercentile(day, day.plusDays(3), 50);
+
+        List<String> stages = new ArrayList<>();
+        for (RecordedEvent event : events("homelesssupport.ReportStage")) {
+            assertEquals("occupancyPercentile", event.getString("report"));
+            stages.add(event.getString("stage"));
+        }
+        assertEquals(List.of("mergeSketches", "loadRecords"), stages);
+    }
+
+    private List<RecordedEvent> events(String type) throws IOException {
+        recording.dump(dump);
+        List<RecordedEvent> events = new ArrayList<>();
+        for (RecordedEvent event : RecordingFile.readAllEvents(dump)) {
+            if (event.getEventType().getName().equals(type)) {
+                events.add(event);
+            }
+        }
+        events.sort((first, second) -> first.getStartTime().compareTo(second.getStartTime()));
+        return events;
+    }
+}
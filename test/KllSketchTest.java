@@ -0,0 +1,115 @@
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Random;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class KllSketchTest {
+    /* The documented error is about 1.7% of the count; the margin absorbs the random offsets */
+    private static final double RANK_TOLERANCE = 0.03;
+    private static final double[] FRACTIONS = {0.01, 0.1, 0.25, 0.5, 0.75, 0.9, 0.99};
+
+    @Test
+    public void emptySketchHasNoQuantile() {
+        KllSketch kllSketch = new KllSketch();
+
+        assertEquals(0, kllSketch.getCount());
+        assertNull(kllSketch.quantile(0.5));
+    }
+
+    @Test
+    public void smallStreamIsExact() {
+        KllSketch kllSketch = new KllSketch();
+        List<Integer> values = shuffled(1, KllSketch.DEFAULT_K - 1, new Random(48));
+        values.forEach(kllSketch::update);
+
+        assertEquals(KllSketch.DEFAULT_K - 1, kllSketch.getCount());
+        assertEquals(1, kllSketch.quantile(0));
+        assertEquals(100, kllSketch.quantile(100.0 / (KllSketch.DEFAULT_K - 1)));
+        assertEquals(KllSketch.DEFAULT_K - 1, kllSketch.quantile(1));
+    }
+
+    @Test
+    public void rankErrorStaysWithinBoundOnLargeStream() {
+        int count = 200_000;
+        KllSketch kllSketch = new KllSketch();
+        shuffled(1, count, new Random(480)).forEach(kllSketch::update);
+
+        assertEquals(count, kllSketch.getCount());
+        assertRanksWithinTolerance(kllSketch, count);
+    }
+
+    @Test
+    public void sortedStreamStaysWithinBound() {
+        int count = 100_000;
+        KllSketch kllSketch = new KllSketch();
+        for (int value = count; value >= 1; value--) {
+            kllSketch.update(value);
+        }
+
+        assertRanksWithinTolerance(kllSketch, count);
+    }
+
+    @Test
+    public void mergedSketchesCoverTheWholeSpan() {
+        int count = 120_000;
+        List<Integer> values = shuffled(1, count, new Random(4800));
+        KllSketch merged = new KllSketch();
+        for (int part = 0; part < 6; part++) {
+            KllSketch partSketch = new KllSketch();
+            values.subList(part * count / 6, (part + 1) * count / 6).forEach(partSketch::update);
+            merged.merge(partSketch);
+        }
+
+        assertEquals(count, merged.getCount());
+        assertRanksWithinTolerance(merged, count);
+    }
+
+    @Test
+    public void survivesSerialization() {
+        KllSketch kllSketch = new KllSketch(64);
+        shuffled(-5_000, 5_000, new Random(48_000)).forEach(kllSketch::update);
+
+        KllSketch restored = KllSketch.fromBytes(kllSketch.toBytes());
+        assertEquals(kllSketch.getCount(), restored.getCount());
+        for (double fraction : FRACTIONS) {
+            assertEquals(kllSketch.quantile(fraction), restored.quantile(fraction));
+        }
+    }
+
+    @Test
+    public void truncatedBytesAreRejected() {
+        KllSketch kllSketch = new KllSketch();
+        for (int value = 0; value < 1_000; value++) {
+            kllSketch.update(value);
+        }
+        byte[] bytes = kllSketch.toBytes();
+        byte[] truncated = new byte[bytes.length - 3];
+        System.arraycopy(bytes, 0, truncated, 0, truncated.length);
+
+        assertThrows(IllegalArgumentException.class, () -> KllSketch.fromBytes(truncated));
+        assertThrows(IllegalArgumentException.class, () -> new KllSketch(2));
+    }
+
+    /* With the values 1..count the true rank of a value is the value itself */
+    private static void assertRanksWithinTolerance(KllSketch kllSketch, int count) {
+        for (double fraction : FRACTIONS) {
+            int value = kllSketch.quantile(fraction);
+            double rankError = Math.abs(value - fraction * count) / count;
+            assertTrue(rankError <= RANK_TOLERANCE,
+                    "quantile " + fraction + " returned " + value + ", rank error " + rankError);
+        }
+    }
+
+    private static List<Integer> shuffled(int first, int last, Random random) {
+        List<Integer> values = new ArrayList<>();
+        for (int value = first; value <= last; value++) {
+            values.add(value);
+        }
+        Collections.shuffle(values, random);
+        return values;
+    }
+}
@@ -0,0 +1,161 @@
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.LocalDate;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.stream.Stream;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class MutationJournalTest {
+    private static final LocalDate DAY = LocalDate.of(2023, 6, 1);
+    private static final String TABLE = "receive_donation_record";
+
+    private final FakeDatabase database = new FakeDatabase();
+    private final AtomicLong tableRows = new AtomicLong();
+    private Path directory;
+
+    @BeforeEach
+    public void createJournal() throws IOException {
+        directory = Files.createTempDirectory("mutation-journal");
+        database.answer("count(*)", new String[] {"count"},
+                parameters -> List.<Object[]>of(new Object[] {tableRows.get()}))
+                .install();
+    }
+
+    @AfterEach
+    public void deleteJournal() throws IOException {
+        FakeDatabase.uninstall();
+        try (Stream<Path> files = Files.walk(directory)) {
+            for (Path file : (Iterable<Path>) files.sorted(Comparator.reverseOrder())::iterator) {
+                Files.delete(file);
+            }
+        }
+    }
+
+    @Test
+    public void replayRestoresTheCheckpointAndTheEventsAfterIt() throws Exception {
+        DonationLog written = new DonationLog();
+        MutationJournal journal = open(written);
+        receive(journal, written, "Acme", 100);
+        journal.checkpoint();
+        receive(journal, written, "Acme", 40);
+        receive(journal, written, "Zenith", 7);
+
+        DonationLog restored = new DonationLog();
+        assertTrue(open(restored).replay());
+        assertEquals(written.donations, restored.donations);
+        assertEquals(2, restored.applied);
+    }
+
+    @Test
+    public void rowWrittenWithoutTheJournalRefusesTheReplay() throws Exception {
+        DonationLog written = new DonationLog();
+        MutationJournal journal = open(written);
+        journal.checkpoint();
+        receive(journal, written, "Acme", 100);
+        tableRows.incrementAndGet();
+
+        assertFalse(open(new DonationLog()).replay());
+    }
+
+    @Test
+    public void concurrentAppendsAreAllOnDiskInOrder() throws Exception {
+        DonationLog written = new DonationLog();
+        MutationJournal journal = open(written);
+        journal.checkpoint();
+        List<Thread> writers = new ArrayList<>();
+        for (int writer = 0; writer < 4; writer++) {
+            Thread thread = new Thread(() -> {
+                for (int donation = 0; donation < 50; donation++) {
+                    journal.append(MutationEvent.receiveDonation("Acme", "Meals", DAY, 1));
+                }
+            });
+            writers.add(thread);
+            thread.start();
+        }
+        for (Thread thread : writers) {
+            thread.join();
+        }
+        tableRows.addAndGet(200);
+
+        DonationLog restored = new DonationLog();
+        assertTrue(open(restored).replay());
+        assertEquals(200, restored.applied);
+        for (int index = 1; index < restored.sequences.size(); index++) {
+            assertEquals(restored.sequences.get(index - 1) + 1, restored.sequences.get(index));
+        }
+    }
+
+    private MutationJournal open(DonationLog readModel) throws IOException {
+        MutationJournal journal = new MutationJournal(directory);
+        journal.register(readModel);
+        journal.open();
+        return journal;
+    }
+
+    private void receive(MutationJournal journal, DonationLog readModel, String donor, int amount) {
+        MutationEvent event = MutationEvent.receiveDonation(donor, "Meals", DAY, amount);
+        journal.append(event);
+        readModel.apply(event);
+        tableRows.incrementAndGet();
+    }
+
+    /* A read model that keeps the donations it was given */
+    private static class DonationLog implements ReadModel {
+        private final List<String> donations = new ArrayList<>();
+        private final List<Long> sequences = new ArrayList<>();
+        private int applied;
+
+        @Override
+        public String getSnapshotName() {
+            return "donationLog";
+        }
+
+        @Override
+        public Set<String> getSourceTables() {
+            return Set.of(TABLE);
+        }
+
+        @Override
+        public Map<String, Integer> rowsAdded(MutationEvent event) {
+            return Map.of(TABLE, 1);
+        }
+
+        @Override
+        public void apply(MutationEvent event) {
+            donations.add(event.getText(0) + "=" + event.getNumber(1));
+            sequences.add(event.getSequence());
+            applied++;
+        }
+
+        @Override
+        public void writeSnapshot(DataOutputStream out) throws IOException {
+            out.writeInt(donations.size());
+            for (String donation : donations) {
+                out.writeUTF(donation);
+            }
+        }
+
+        @Override
+        public void readSnapshot(DataInputStream in) throws IOException {
+            donations.clear();
+            int count = in.readInt();
+            for (int index = 0; index < count; index++) {
+                donations.add(in.readUTF());
+            }
+            applied = 0;
+        }
+    }
+}
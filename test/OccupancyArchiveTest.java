@@ -0,0 +1,124 @@
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.LocalDate;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Map;
+import java.util.NavigableMap;
+import java.util.Random;
+import java.util.TreeMap;
+import java.util.stream.Stream;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class OccupancyArchiveTest {
+    private Path directory;
+    private OccupancyArchive occupancyArchive;
+
+    @BeforeEach
+    public void createArchive() throws IOException {
+        directory = Files.createTempDirectory("occupancy-archive");
+        occupancyArchive = new OccupancyArchive(directory);
+    }
+
+    @AfterEach
+    public void deleteArchive() throws IOException {
+        try (Stream<Path> files = Files.walk(directory)) {
+            for (Path file : (Iterable<Path>) files.sorted(Comparator.reverseOrder())::iterator) {
+                Files.delete(file);
+            }
+        }
+    }
+
+    @Test
+    public void recordsSurviveTheRoundTrip() throws IOException {
+        Random random = new Random(33);
+        NavigableMap<Integer, TreeMap<Integer, Integer>> records = new TreeMap<>();
+        for (int year = 2019; year <= 2022; year++) {
+            TreeMap<Integer, Integer> days = new TreeMap<>();
+            for (int day = 1; day <= LocalDate.ofYearDay(year, 1).lengthOfYear(); day++) {
+                /* Gaps, repeated values, large jumps both ways and multi-byte varints */
+                if (random.nextInt(4) != 0) {
+                    days.put(day, random.nextInt(3) == 0 ? 0 : random.nextInt(100_000));
+                }
+            }
+            records.put(year, days);
+        }
+        occupancyArchive.writeArchive(7, records);
+        occupancyArchive.open();
+
+        List<String> scanned = new ArrayList<>();
+        occupancyArchive.scan(7, LocalDate.MIN, LocalDate.MAX,
+                (shelterID, date, occupancy) -> scanned.add(date + "=" + occupancy));
+        List<String> expected = new ArrayList<>();
+        records.forEach((year, days) -> days.forEach((day, occupancy) ->
+                expected.add(LocalDate.ofYearDay(year, day) + "=" + occupancy)));
+        assertEquals(expected, scanned);
+
+        for (int year = 2019; year <= 2022; year++) {
+            assertTrue(occupancyArchive.isArchived(7, year));
+        }
+        assertFalse(occupancyArchive.isArchived(7, 2023));
+        assertFalse(occupancyArchive.isArchived(8, 2020));
+
+        int lastDay = records.get(2022).lastKey();
+        Pair<LocalDate, Integer> latest = occupancyArchive.latestOccupancy(7);
+        assertEquals(LocalDate.ofYearDay(2022, lastDay), latest.getKey());
+        assertEquals(records.get(2022).get(lastDay), latest.getValue());
+    }
+
+    @Test
+    public void scanStopsAtTheRangeBounds() throws IOException {
+        NavigableMap<Integer, TreeMap<Integer, Integer>> records = new TreeMap<>();
+        records.put(2021, new TreeMap<>(Map.of(1, 10, 100, 60, 365, 30)));
+        records.put(2022, new TreeMap<>(Map.of(1, 20, 200, 90)));
+        occupancyArchive.writeArchive(3, records);
+        occupancyArchive.open();
+
+        assertArrayEquals(new int[] {20, 60}, occupancyArchive.occupancyRange(
+                3, LocalDate.ofYearDay(2021, 2), LocalDate.ofYearDay(2022, 199)));
+        assertArrayEquals(new int[] {10, 90}, occupancyArchive.occupancyRange(
+                3, LocalDate.of(2020, 1, 1), LocalDate.of(2023, 1, 1)));
+        assertNull(occupancyArchive.occupancyRange(
+                3, LocalDate.ofYearDay(2021, 2), LocalDate.ofYearDay(2021, 99)));
+    }
+
+    @Test
+    public void corruptBlockFailsItsChecksum() throws IOException {
+        NavigableMap<Integer, TreeMap<Integer, Integer>> records = new TreeMap<>();
+        TreeMap<Integer, Integer> days = new TreeMap<>();
+        for (int day = 1; day <= 365; day++) {
+            days.put(day, day * 3);
+        }
+        records.put(2021, days);
+        occupancyArchive.writeArchive(5, records);
+
+        /* Flip one bit in the last byte, which belongs to the year's block */
+        Path archive = directory.resolve("5.arc");
+        try (RandomAccessFile file = new RandomAccessFile(archive.toFile(), "rw")) {
+            file.seek(file.length() - 1);
+            int last = file.read();
+            file.seek(file.length() - 1);
+            file.write(last ^ 0x01);
+        }
+        occupancyArchive.open();
+
+        IOException corrupt =
+                assertThrows(IOException.class, () -> occupancyArchive.latestOccupancy(5));
+        assertTrue(corrupt.getMessage().contains("Corrupt"), corrupt.getMessage());
+    }
+
+    @Test
+    public void foreignFileIsRejectedOnOpen() throws IOException {
+        Files.write(directory.resolve("9.arc"), new byte[] {1, 2, 3, 4, 5, 6, 7, 8, 9});
+
+        assertThrows(IOException.class, () -> occupancyArchive.open());
+    }
+}
@@ -0,0 +1,104 @@
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.LocalDate;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.stream.Stream;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class OccupancyColumnStoreTest {
+    private static final LocalDate DAY = LocalDate.of(2023, 5, 10);
+    private static final String[] RECORD = {"shelter_id", "date", "occupancy"};
+    private static final String TABLE_SCAN = "from shelter_occupancy_record order by";
+
+    private final FakeDatabase database = new FakeDatabase();
+    private final List<Object[]> rows = new ArrayList<>();
+    private final AtomicLong otherWrites = new AtomicLong();
+    private Path directory;
+    private OccupancyColumnStore occupancyStore;
+
+    @BeforeEach
+    public void createStore() throws IOException {
+        directory = Files.createTempDirectory("occupancy-store");
+        occupancyStore = new OccupancyColumnStore(directory);
+        database.answer(TABLE_SCAN, RECORD, parameters -> new ArrayList<>(rows))
+                .answer("count(*)", new String[] {"count"},
+                        parameters -> List.<Object[]>of(new Object[] {rows.size()}))
+                .answer("from write_watermark", new String[] {"source", "total"},
+                        parameters -> List.<Object[]>of(
+                                new Object[] {"OCCUPANCY", otherWrites.get()}))
+                .install();
+    }
+
+    @AfterEach
+    public void deleteStore() throws IOException {
+        occupancyStore.close();
+        FakeDatabase.uninstall();
+        try (Stream<Path> files = Files.walk(directory)) {
+            for (Path file : (Iterable<Path>) files.sorted(Comparator.reverseOrder())::iterator) {
+                Files.delete(file);
+            }
+        }
+    }
+
+    @Test
+    public void rebuildStreamsTheTable() throws Exception {
+        rows.add(new Object[] {4, DAY, 30});
+        rows.add(new Object[] {4, DAY.plusDays(1), 35});
+        occupancyStore.open();
+
+        assertTrue(occupancyStore.isCurrent());
+        assertEquals(Integer.MIN_VALUE, database.executions(TABLE_SCAN).get(0).fetchSize);
+        assertArrayEquals(new int[] {30, 35},
+                occupancyStore.occupancyRange(4, DAY, DAY.plusDays(1)));
+    }
+
+    @Test
+    public void writeOfAnotherProcessRebuildsBeforeAnswering() throws Exception {
+        rows.add(new Object[] {4, DAY, 30});
+        occupancyStore.open();
+
+        rows.add(new Object[] {4, DAY.plusDays(1), 80});
+        otherWrites.incrementAndGet();
+
+        assertTrue(occupancyStore.isCurrent());
+        assertEquals(2, database.executions(TABLE_SCAN).size());
+        assertEquals(DAY.plusDays(1), occupancyStore.latestOccupancy(4).getKey());
+    }
+
+    @Test
+    public void writesOfThisProcessAreMirroredWithoutRebuilding() throws Exception {
+        rows.add(new Object[] {4, DAY, 30});
+        occupancyStore.open();
+
+        occupancyStore.record(4, DAY.plusDays(1), 45);
+
+        assertTrue(occupancyStore.isCurrent());
+        assertEquals(1, database.executions(TABLE_SCAN).size());
+        assertTrue(occupancyStore.isRecorded(4, DAY.plusDays(1)));
+    }
+
+    @Test
+    public void cleanShutdownIsReusedWhileNoOneElseWrote() throws Exception {
+        rows.add(new Object[] {4, DAY, 30});
+        occupancyStore.open();
+        occupancyStore.close();
+
+        occupancyStore.open();
+        assertEquals(1, database.executions(TABLE_SCAN).size());
+        assertTrue(occupancyStore.isRecorded(4, DAY));
+        occupancyStore.close();
+
+        otherWrites.incrementAndGet();
+        occupancyStore.open();
+        assertEquals(2, database.executions(TABLE_SCAN).size());
+    }
+}
@@ -0,0 +1,89 @@
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+
+import java.time.LocalDate;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class OccupancyRecordTest {
+    private static final ShelterHandle HARBOR = new ShelterHandle(29, "Harbor");
+    private static final String[] COUNT = {"record_count"};
+    private static final String[] CAPACITY = {"capacity"};
+
+    private final FakeDatabase database = new FakeDatabase();
+
+    @AfterEach
+    public void uninstallDatabase() {
+        FakeDatabase.uninstall();
+    }
+
+    @Test
+    public void recordAndCounterAreWrittenInOneTransaction() throws Exception {
+        database.answer("from shelter_occupancy_year_count", COUNT, new Object[] {10})
+                .answer("select capacity", CAPACITY, new Object[] {50})
+                .install();
+
+        assertTrue(new OccupancyRecord(HARBOR, LocalDate.of(2023, 6, 1), 40)
+                .declareShelterOccupancy());
+
+        List<String> statements = database.executions().stream()
+                .map(execution -> execution.sql).toList();
+        int ensure = indexOf(statements, "insert into shelter_occupancy_year_count");
+        int lock = indexOf(statements, "select record_count from shelter_occupancy_year_count");
+        int insert = indexOf(statements, "insert into shelter_occupancy_record");
+        int increment = indexOf(statements, "update shelter_occupancy_year_count");
+        assertTrue(ensure < lock && lock < insert && insert < increment, statements.toString());
+        assertTrue(database.executions("for update").get(0).sql.contains("where shelter_id = ?"));
+        assertEquals(List.of(29, 2023),
+                database.executions("update shelter_occupancy_year_count").get(0).parameters);
+        assertEquals(1, database.commits.get());
+        assertTrue(database.executions("count(*)").isEmpty());
+    }
+
+    @Test
+    public void fullYearIsRejectedWithoutInserting() throws Exception {
+        database.answer("from shelter_occupancy_year_count", COUNT, new Object[] {366})
+                .answer("select capacity", CAPACITY, new Object[] {50})
+                .install();
+
+        assertFalse(new OccupancyRecord(HARBOR, LocalDate.of(2023, 12, 31), 10)
+                .declareShelterOccupancy());
+        assertTrue(database.executions("insert into shelter_occupancy_record").isEmpty());
+        assertEquals(0, database.commits.get());
+        assertEquals(1, database.rollbacks.get());
+    }
+
+    @Test
+    public void leapYearAllowsOneMoreRecord() throws Exception {
+        database.answer("from shelter_occupancy_year_count", COUNT, new Object[] {366})
+                .answer("select capacity", CAPACITY, new Object[] {50})
+                .install();
+
+        assertTrue(new OccupancyRecord(HARBOR, LocalDate.of(2024, 12, 31), 10)
+                .declareShelterOccupancy());
+        assertEquals(1, database.executions("insert into shelter_occupancy_record").size());
+    }
+
+    @Test
+    public void occupancyAboveCapacityIsRolledBack() throws Exception {
+        database.answer("from shelter_occupancy_year_count", COUNT, new Object[] {3})
+                .answer("select capacity", CAPACITY, new Object[] {50})
+                .install();
+
+        assertFalse(new OccupancyRecord(HARBOR, LocalDate.of(2023, 2, 1), 51)
+                .declareShelterOccupancy());
+        assertTrue(database.executions("update shelter_occupancy_year_count").isEmpty());
+        assertEquals(1, database.rollbacks.get());
+    }
+
+    private static int indexOf(List<String> statements, String prefix) {
+        for (int position = 0; position < statements.size(); position++) {
+            if (statements.get(position).startsWith(prefix)) {
+                return position;
+            }
+        }
+        fail("No statement starting with " + prefix + " in " + statements);
+        return -1;
+    }
+}
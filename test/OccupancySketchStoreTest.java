@@ -0,0 +1,112 @@
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.sql.Date;
+import java.time.LocalDate;
+import java.time.YearMonth;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.stream.Stream;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class OccupancySketchStoreTest {
+    private static final LocalDate DAY = LocalDate.of(2023, 3, 10);
+    private static final YearMonth MONTH = YearMonth.from(DAY);
+
+    private final FakeDatabase database = new FakeDatabase();
+    private final List<Object[]> records = new ArrayList<>();
+    private final List<Object[]> persisted = new ArrayList<>();
+    private final AtomicLong otherWrites = new AtomicLong();
+    private Path directory;
+
+    @BeforeEach
+    public void installDatabase() throws IOException {
+        directory = Files.createTempDirectory("occupancy-sketches");
+        database.answer("from shelter;", new String[] {"shelter_id", "name"},
+                        new Object[] {1, "Harbor"})
+                .answer("from shelter_occupancy_record", new String[] {"shelter_id", "date",
+                        "occupancy"}, parameters -> new ArrayList<>(records))
+                .answer("from shelter_occupancy_sketch", new String[] {"shelter_id", "month",
+                        "sketch"}, parameters -> new ArrayList<>(persisted))
+                .answer("from write_watermark", new String[] {"source", "total"},
+                        parameters -> List.<Object[]>of(
+                                new Object[] {"OCCUPANCY", otherWrites.get()}))
+                .install();
+    }
+
+    @AfterEach
+    public void deleteMarker() throws IOException {
+        FakeDatabase.uninstall();
+        try (Stream<Path> files = Files.walk(directory)) {
+            for (Path file : (Iterable<Path>) files.sorted(Comparator.reverseOrder())::iterator) {
+                Files.delete(file);
+            }
+        }
+    }
+
+    @Test
+    public void declarationsAreNotPersistedWhileTheStoreIsClosed() throws Exception {
+        assertFalse(OccupancySketchStore.getInstance().isReady());
+
+        OccupancySketchStore.persist(database.connection(),
+                Map.of(OccupancySketchStore.shelterMonth(1, DAY), List.of(20)));
+
+        assertTrue(database.executions("shelter_occupancy_sketch").isEmpty());
+    }
+
+    @Test
+    public void cleanShutdownLetsTheNextStartLoadTheTable() throws Exception {
+        record(20);
+        OccupancySketchStore sketchStore = new OccupancySketchStore(directory);
+        sketchStore.open();
+        assertEquals(1, database.executions("from shelter_occupancy_record").size());
+        sketchStore.close();
+
+        persisted.add(new Object[] {1, Date.valueOf(MONTH.atDay(1)), sketch(20, 30)});
+        OccupancySketchStore reopened = new OccupancySketchStore(directory);
+        reopened.open();
+
+        assertEquals(1, database.executions("from shelter_occupancy_record").size());
+        assertEquals(2, reopened.merge(MONTH, MONTH).get(1).getCount());
+    }
+
+    @Test
+    public void writesOfAnotherProcessAreBuiltAgainFromTheRecords() throws Exception {
+        record(20);
+        OccupancySketchStore sketchStore = new OccupancySketchStore(directory);
+        sketchStore.open();
+        sketchStore.close();
+
+        /* Written while no store was open, so the table missed it */
+        record(30);
+        otherWrites.incrementAndGet();
+        OccupancySketchStore reopened = new OccupancySketchStore(directory);
+        reopened.open();
+        assertEquals(2, reopened.merge(MONTH, MONTH).get(1).getCount());
+
+        record(40);
+        otherWrites.incrementAndGet();
+        assertTrue(reopened.isCurrent());
+        assertEquals(3, reopened.merge(MONTH, MONTH).get(1).getCount());
+    }
+
+    private void record(int occupancy) {
+        records.add(new Object[] {1, Date.valueOf(DAY), occupancy});
+    }
+
+    private static byte[] sketch(int... occupancies) {
+        KllSketch sketch = new KllSketch();
+        for (int occupancy : occupancies) {
+            sketch.update(occupancy);
+        }
+        return sketch.toBytes();
+    }
+}
@@ -0,0 +1,107 @@
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.sql.SQLException;
+import java.time.LocalDate;
+import java.util.Comparator;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.stream.Stream;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class OccupancyWriteBehindTest {
+    private static final LocalDate DAY = LocalDate.of(2023, 8, 14);
+    private static final String[] RECORDED = {"recorded", "last_sequence"};
+
+    private final FakeDatabase database = new FakeDatabase();
+    private final AtomicInteger flusherFailures = new AtomicInteger();
+    private Path directory;
+    private OccupancyWriteBehind writeBehind;
+
+    @BeforeEach
+    public void startBuffer() throws Exception {
+        directory = Files.createTempDirectory("write-behind");
+        database.answer("journal_watermark", new String[] {"last_sequence"}, new Object[] {0})
+                .answer("from shelter_occupancy_year_count", new String[] {"record_count",
+                        "last_sequence"}, parameters -> List.<Object[]>of(
+                                new Object[] {0, watermark()}))
+                .answer("from shelter where name", new String[] {"shelter_id", "capacity"},
+                        new Object[] {5, 50})
+                .answer("from shelter_occupancy_record", RECORDED,
+                        parameters -> List.<Object[]>of(new Object[] {0, watermark()}));
+        database.install();
+        writeBehind = new OccupancyWriteBehind(directory);
+        writeBehind.start();
+    }
+
+    @AfterEach
+    public void closeBuffer() throws IOException {
+        writeBehind.close();
+        FakeDatabase.uninstall();
+        try (Stream<Path> files = Files.walk(directory)) {
+            for (Path file : (Iterable<Path>) files.sorted(Comparator.reverseOrder())::iterator) {
+                Files.delete(file);
+            }
+        }
+    }
+
+    /* The highest sequence the flusher committed, as the journal_watermark row would hold it */
+    private long watermark() {
+        List<FakeDatabase.Execution> updates = database.executions("update journal_watermark");
+        return updates.isEmpty() ? 0 : (Long) updates.get(updates.size() - 1).parameter(1);
+    }
+
+    @Test
+    public void dayAlreadyInTheTableIsRefusedWithoutTheColumnStore() throws Exception {
+        database.answer("from shelter_occupancy_record", RECORDED, new Object[] {1, 0L});
+
+        assertFalse(OccupancyColumnStore.getInstance().isReady());
+        assertFalse(writeBehind.declare("Harbor", DAY, 20));
+        assertEquals(0, Files.size(directory.resolve("occupancy.journal")));
+    }
+
+    @Test
+    public void dayStillWaitingIsRefused() throws Exception {
+        assertTrue(writeBehind.declare("Harbor", DAY, 20));
+        assertFalse(writeBehind.declare("Harbor", DAY, 25));
+        assertTrue(writeBehind.declare("Harbor", DAY.plusDays(1), 25));
+
+        writeBehind.flush();
+        assertEquals(2, database.executions("insert into shelter_occupancy_record").size());
+    }
+
+    @Test
+    public void uncheckableDayIsNotAcknowledged() throws Exception {
+        database.fail("from shelter_occupancy_record", "Lost connection");
+
+        assertThrows(SQLException.class, () -> writeBehind.declare("Harbor", DAY, 20));
+        assertEquals(0, Files.size(directory.resolve("occupancy.journal")));
+    }
+
+    @Test
+    public void flusherOutlivesAnUncheckedFailure() throws Exception {
+        DatabaseManager.connectionSource = () -> {
+            if (Thread.currentThread().getName().equals("occupancy-write-behind")
+                    && flusherFailures.getAndIncrement() == 0) {
+                throw new IllegalStateException("Pool exhausted");
+            }
+            return database.connection();
+        };
+        assertTrue(writeBehind.declare("Harbor", DAY, 20));
+        while (flusherFailures.get() == 0) {
+            Thread.sleep(10);
+        }
+
+        /* Wakes the flusher from its retry wait */
+        writeBehind.flush();
+        assertEquals(1, database.executions("insert into shelter_occupancy_record").size());
+        assertTrue(writeBehind.declare("Harbor", DAY.plusDays(1), 20));
+        writeBehind.flush();
+        assertEquals(2, database.executions("insert into shelter_occupancy_record").size());
+    }
+}
@@ -0,0 +1,102 @@
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.LocalDate;
+import java.util.Comparator;
+import java.util.EnumSet;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.stream.Stream;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class ReportCacheTest {
+    private static final LocalDate START = LocalDate.of(2023, 1, 1);
+    private static final LocalDate END = LocalDate.of(2023, 1, 31);
+
+    private final FakeDatabase database = new FakeDatabase();
+    private final Map<String, Long> otherWrites = new ConcurrentHashMap<>();
+    private Path directory;
+    private ReportCache reportCache;
+
+    @BeforeEach
+    public void openCache() throws Exception {
+        directory = Files.createTempDirectory("report-cache");
+        database.answer("from write_watermark", new String[] {"source", "total"},
+                parameters -> otherWrites.entrySet().stream()
+                        .map(write -> new Object[] {write.getKey(), write.getValue()})
+                        .toList())
+                .install();
+        reportCache = new ReportCache(directory);
+    }
+
+    @AfterEach
+    public void deleteCache() throws IOException {
+        reportCache.close();
+        FakeDatabase.uninstall();
+        try (Stream<Path> files = Files.walk(directory)) {
+            for (Path file : (Iterable<Path>) files.sorted(Comparator.reverseOrder())::iterator) {
+                Files.delete(file);
+            }
+        }
+    }
+
+    @Test
+    public void writeOfAnotherProcessDropsTheEntriesOfItsSource() throws Exception {
+        reportCache.open();
+        put("donorReport", ReportCache.Source.DONATIONS);
+        put("occupancyVariance", ReportCache.Source.OCCUPANCY);
+
+        otherWrites.put("DONATIONS", 3L);
+
+        assertNull(reportCache.getNames("donorReport"));
+        assertEquals(Set.of("Harbor"), reportCache.getNames("occupancyVariance"));
+    }
+
+    @Test
+    public void lookupsWithoutOtherWritesKeepTheEntries() throws Exception {
+        otherWrites.put("DONATIONS", 3L);
+        reportCache.open();
+        put("donorReport", ReportCache.Source.DONATIONS);
+
+        assertEquals(Set.of("Harbor"), reportCache.getNames("donorReport"));
+        assertEquals(Set.of("Harbor"), reportCache.getNames("donorReport"));
+        assertEquals(3, database.executions("from write_watermark").size());
+    }
+
+    @Test
+    public void resultReadBeforeAnotherProcessWroteIsNotStored() throws Exception {
+        reportCache.open();
+        long readGeneration = reportCache.getGeneration();
+
+        otherWrites.put("OCCUPANCY", 1L);
+        assertNull(reportCache.getNames("occupancyVariance"));
+        reportCache.putNames("occupancyVariance", START, END,
+                EnumSet.of(ReportCache.Source.OCCUPANCY), readGeneration, Set.of("Harbor"));
+
+        assertNull(reportCache.getNames("occupancyVariance"));
+    }
+
+    @Test
+    public void databaseWithoutSchemaVersionLeavesTheCacheClosed() throws Exception {
+        database.fail("schema_version", "Table 'schema_version' doesn't exist");
+
+        reportCache.open();
+
+        assertFalse(reportCache.covers(END));
+        assertNull(reportCache.getNames("donorReport"));
+        try (Stream<Path> files = Files.list(directory)) {
+            assertEquals(0, files.count());
+        }
+    }
+
+    private void put(String key, ReportCache.Source source) throws IOException {
+        reportCache.putNames(key, START, END, EnumSet.of(source), reportCache.getGeneration(),
+                Set.of("Harbor"));
+    }
+}
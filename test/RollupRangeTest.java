@@ -0,0 +1,87 @@
+import org.junit.jupiter.api.Test;
+
+import java.time.LocalDate;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class RollupRangeTest {
+
+    @Test
+    public void splitsIntoHeadMonthsAndTail() {
+        RollupRange rollupRange =
+                RollupRange.of(LocalDate.of(2023, 1, 15), LocalDate.of(2023, 4, 10));
+
+        assertEquals(LocalDate.of(2023, 1, 15), rollupRange.getHeadStart());
+        assertEquals(LocalDate.of(2023, 1, 31), rollupRange.getHeadEnd());
+        assertEquals(LocalDate.of(2023, 2, 1), rollupRange.getFirstMonth());
+        assertEquals(LocalDate.of(2023, 3, 1), rollupRange.getLastMonth());
+        assertEquals(LocalDate.of(2023, 4, 1), rollupRange.getTailStart());
+        assertEquals(LocalDate.of(2023, 4, 10), rollupRange.getTailEnd());
+    }
+
+    @Test
+    public void wholeMonthsLeaveHeadAndTailEmpty() {
+        RollupRange rollupRange =
+                RollupRange.of(LocalDate.of(2024, 2, 1), LocalDate.of(2024, 3, 31));
+
+        assertTrue(rollupRange.getHeadEnd().isBefore(rollupRange.getHeadStart()));
+        assertEquals(LocalDate.of(2024, 2, 1), rollupRange.getFirstMonth());
+        assertEquals(LocalDate.of(2024, 3, 1), rollupRange.getLastMonth());
+        assertTrue(rollupRange.getTailEnd().isBefore(rollupRange.getTailStart()));
+    }
+
+    @Test
+    public void leapDayEndsFebruary() {
+        RollupRange rollupRange =
+                RollupRange.of(LocalDate.of(2024, 1, 20), LocalDate.of(2024, 2, 29));
+
+        assertEquals(LocalDate.of(2024, 1, 31), rollupRange.getHeadEnd());
+        assertEquals(LocalDate.of(2024, 2, 1), rollupRange.getFirstMonth());
+        assertEquals(LocalDate.of(2024, 2, 1), rollupRange.getLastMonth());
+        assertTrue(rollupRange.getTailEnd().isBefore(rollupRange.getTailStart()));
+    }
+
+    @Test
+    public void rangeWithoutAWholeMonthUsesDaysOnly() {
+        RollupRange rollupRange =
+                RollupRange.of(LocalDate.of(2023, 5, 10), LocalDate.of(2023, 6, 20));
+
+        assertEquals(LocalDate.of(2023, 5, 10), rollupRange.getHeadStart());
+        assertEquals(LocalDate.of(2023, 6, 20), rollupRange.getHeadEnd());
+        assertTrue(rollupRange.getFirstMonth().isAfter(rollupRange.getLastMonth()));
+        assertTrue(rollupRange.getTailEnd().isBefore(rollupRange.getTailStart()));
+    }
+
+    @Test
+    public void partsCoverEveryDayExactlyOnce() {
+        LocalDate first = LocalDate.of(2023, 11, 1);
+        for (int startOffset = 0; startOffset < 80; startOffset += 3) {
+            for (int length = 0; length < 140; length += 7) {
+                LocalDate start = first.plusDays(startOffset);
+                LocalDate end = start.plusDays(length);
+                RollupRange rollupRange = RollupRange.of(start, end);
+
+                LocalDate day = start.minusDays(2);
+                for (; !day.isAfter(end.plusDays(2)); day = day.plusDays(1)) {
+                    int covered = 0;
+                    if (within(day, rollupRange.getHeadStart(), rollupRange.getHeadEnd())) {
+                        covered++;
+                    }
+                    LocalDate month = day.withDayOfMonth(1);
+                    if (within(month, rollupRange.getFirstMonth(), rollupRange.getLastMonth())) {
+                        covered++;
+                    }
+                    if (within(day, rollupRange.getTailStart(), rollupRange.getTailEnd())) {
+                        covered++;
+                    }
+                    int expected = within(day, start, end) ? 1 : 0;
+                    assertEquals(expected, covered, day + " in " + rollupRange);
+                }
+            }
+        }
+    }
+
+    private static boolean within(LocalDate day, LocalDate first, LocalDate last) {
+        return !day.isBefore(first) && !day.isAfter(last);
+    }
+}
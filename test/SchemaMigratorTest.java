@@ -0,0 +1,155 @@
+import org.junit.jupiter.api.Test;
+
+import java.lang.reflect.Proxy;
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Locale;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class SchemaMigratorTest {
+    private final List<String> executed = new ArrayList<>();
+    private List<String> conflictingNames = List.of();
+    private boolean indexExists = false;
+
+    @Test
+    public void versionsFollowOneAnother() {
+        for (int position = 0; position < SchemaMigrator.MIGRATIONS.size(); position++) {
+            assertEquals(position + 1, SchemaMigrator.MIGRATIONS.get(position).getVersion());
+        }
+        assertEquals(SchemaMigrator.MIGRATIONS.size(), SchemaMigrator.getLatestVersion());
+    }
+
+    @Test
+    public void everyStatementCanRunAgain() {
+        for (Migration migration : SchemaMigrator.MIGRATIONS) {
+            for (String sql : migration.getStatements()) {
+                String statement = sql.strip().toUpperCase(Locale.ROOT);
+                if (statement.startsWith("CREATE TABLE")) {
+                    assertTrue(statement.startsWith("CREATE TABLE IF NOT EXISTS"), sql);
+                } else if (statement.startsWith("INSERT")) {
+                    assertTrue(statement.startsWith("INSERT IGNORE")
+                            || statement.contains("ON DUPLICATE KEY UPDATE"), sql);
+                } else {
+                    assertNotNull(SchemaMigrator.indexCreatedBy(sql), sql);
+                }
+            }
+        }
+    }
+
+    @Test
+    public void uniqueIndexesCheckForDuplicatesFirst() {
+        for (Migration migration : SchemaMigrator.MIGRATIONS) {
+            boolean addsUnique = migration.getStatements().stream()
+                    .anyMatch(sql -> sql.toUpperCase(Locale.ROOT).contains(" UNIQUE "));
+            if (addsUnique) {
+                assertNotNull(migration.getConflictQuery(), migration.toString());
+            }
+        }
+    }
+
+    @Test
+    public void findsTheIndexAStatementCreates() {
+        assertArrayEquals(new String[] {"shelter", "uq_shelter_name"},
+                SchemaMigrator.indexCreatedBy(
+                        "ALTER TABLE shelter ADD CONSTRAINT uq_shelter_name UNIQUE (name)"));
+        assertArrayEquals(new String[] {"disburse_fund_daily", "idx_daily_date"},
+                SchemaMigrator.indexCreatedBy(
+                        "create index idx_daily_date on disburse_fund_daily (date)"));
+        assertNull(SchemaMigrator.indexCreatedBy("CREATE TABLE IF NOT EXISTS t (id INT)"));
+    }
+
+    @Test
+    public void duplicateNamesBlockTheMigrationAndAreReported() {
+        conflictingNames = List.of("Harbor House", "Hope");
+        Migration migration = SchemaMigrator.MIGRATIONS.get(0);
+
+        SQLException blocked = assertThrows(SQLException.class,
+                () -> new SchemaMigrator().apply(fakeConnection(), migration));
+        assertTrue(blocked.getMessage().contains("Harbor House, Hope"), blocked.getMessage());
+        assertEquals(List.of(migration.getConflictQuery()), executed);
+    }
+
+    @Test
+    public void existingIndexIsNotCreatedAgain() throws SQLException {
+        indexExists = true;
+        Migration migration = SchemaMigrator.MIGRATIONS.get(0);
+
+        new SchemaMigrator().apply(fakeConnection(), migration);
+        assertFalse(executed.contains(migration.getStatements().get(0)));
+        assertTrue(executed.get(executed.size() - 1).startsWith("insert into schema_version"));
+    }
+
+    @Test
+    public void missingIndexIsCreated() throws SQLException {
+        Migration migration = SchemaMigrator.MIGRATIONS.get(1);
+
+        new SchemaMigrator().apply(fakeConnection(), migration);
+        assertTrue(executed.contains(migration.getStatements().get(0)));
+    }
+
+    /* Records every statement; queries answer from the fields above */
+    private Connection fakeConnection() {
+        return proxy(Connection.class, (method, args) -> {
+            switch (method) {
+                case "prepareStatement":
+                    return fakeStatement((String) args[0]);
+                case "createStatement":
+                    return fakeStatement(null);
+                default:
+                    return null;
+            }
+        });
+    }
+
+    private PreparedStatement fakeStatement(String preparedSql) {
+        return proxy(PreparedStatement.class, (method, args) -> {
+            String sql = args != null && args.length > 0 && args[0] instanceof String
+                    ? (String) args[0] : preparedSql;
+            switch (method) {
+                case "executeQuery":
+                    executed.add(sql);
+                    if (sql.contains("information_schema")) {
+                        return fakeResultSet(indexExists ? List.of("1") : List.of());
+                    }
+                    return fakeResultSet(conflictingNames);
+                case "executeUpdate":
+                    executed.add(sql);
+                    return 0;
+                default:
+                    return null;
+            }
+        });
+    }
+
+    private static ResultSet fakeResultSet(List<String> rows) {
+        Iterator<String> remaining = rows.iterator();
+        String[] current = new String[1];
+        return proxy(ResultSet.class, (method, args) -> {
+            switch (method) {
+                case "next":
+                    boolean hasNext = remaining.hasNext();
+                    current[0] = hasNext ? remaining.next() : null;
+                    return hasNext;
+                case "getString":
+                    return current[0];
+                default:
+                    return null;
+            }
+        });
+    }
+
+    private interface Handler {
+        Object handle(String method, Object[] args) throws Exception;
+    }
+
+    private static <T> T proxy(Class<T> type, Handler handler) {
+        return type.cast(Proxy.newProxyInstance(type.getClassLoader(), new Class<?>[] {type},
+                (instance, method, args) -> handler.handle(method.getName(), args)));
+    }
+}
@@ -0,0 +1,114 @@
+import org.junit.jupiter.api.Test;
+
+import java.time.LocalDate;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Deque;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class ShelterBedsTest {
+    private static final LocalDate TODAY = LocalDate.of(2024, 3, 1);
+
+    @Test
+    public void reservationsStopAtTheFreeBeds() {
+        BedAvailabilityService.ShelterBeds shelterBeds = shelterWithFreeBeds(100, 60);
+
+        assertEquals(40, shelterBeds.available());
+        assertTrue(shelterBeds.tryReserve(30));
+        assertFalse(shelterBeds.tryReserve(11));
+        assertTrue(shelterBeds.tryReserve(10));
+        assertFalse(shelterBeds.tryReserve(1));
+        assertEquals(0, shelterBeds.available());
+    }
+
+    @Test
+    public void releaseReturnsBedsAndCheckInKeepsThemTaken() {
+        BedAvailabilityService.ShelterBeds shelterBeds = shelterWithFreeBeds(10, 0);
+        assertTrue(shelterBeds.tryReserve(4));
+        assertTrue(shelterBeds.tryReserve(6));
+
+        shelterBeds.settle(4, false);
+        assertEquals(4, shelterBeds.available());
+        shelterBeds.settle(6, true);
+        assertEquals(4, shelterBeds.available());
+        assertFalse(shelterBeds.tryReserve(5));
+    }
+
+    @Test
+    public void declarationsKeepHeldReservations() {
+        BedAvailabilityService.ShelterBeds shelterBeds = shelterWithFreeBeds(50, 20);
+        assertTrue(shelterBeds.tryReserve(10));
+
+        shelterBeds.declare(TODAY.plusDays(1), 35);
+        assertEquals(5, shelterBeds.available());
+        /* A declaration for an earlier date is ignored */
+        shelterBeds.declare(TODAY, 0);
+        assertEquals(5, shelterBeds.available());
+        shelterBeds.redefine("Harbor", 60);
+        assertEquals(15, shelterBeds.available());
+        shelterBeds.declare(TODAY.plusDays(2), 60);
+        assertEquals(0, shelterBeds.available());
+        assertFalse(shelterBeds.tryReserve(1));
+    }
+
+    @Test
+    public void concurrentReservationsNeverOversubscribe() throws Exception {
+        int freeBeds = 50;
+        BedAvailabilityService.ShelterBeds shelterBeds = shelterWithFreeBeds(100, 100 - freeBeds);
+        AtomicInteger held = new AtomicInteger();
+        AtomicInteger granted = new AtomicInteger();
+        ExecutorService executor = Executors.newFixedThreadPool(8);
+        try {
+            List<Future<?>> workers = new ArrayList<>();
+            for (int worker = 0; worker < 8; worker++) {
+                Random random = new Random(49 + worker);
+                workers.add(executor.submit(() -> {
+                    Deque<Integer> mine = new ArrayDeque<>();
+                    for (int attempt = 0; attempt < 50_000; attempt++) {
+                        int beds = 1 + random.nextInt(3);
+                        if (shelterBeds.tryReserve(beds)) {
+                            granted.incrementAndGet();
+                            int nowHeld = held.addAndGet(beds);
+                            assertTrue(nowHeld <= freeBeds, "oversubscribed: " + nowHeld);
+                            mine.add(beds);
+                        }
+                        if (mine.size() > 3) {
+                            int released = mine.remove();
+                            held.addAndGet(-released);
+                            shelterBeds.settle(released, false);
+                        }
+                    }
+                    for (int released : mine) {
+                        held.addAndGet(-released);
+                        shelterBeds.settle(released, false);
+                    }
+                    return null;
+                }));
+            }
+            for (Future<?> worker : workers) {
+                worker.get();
+            }
+        } finally {
+            executor.shutdown();
+        }
+
+        assertTrue(granted.get() > 0);
+        assertEquals(freeBeds, shelterBeds.available());
+    }
+
+    private static BedAvailabilityService.ShelterBeds shelterWithFreeBeds(
+            int capacity, int occupancy) {
+        BedAvailabilityService.ShelterBeds shelterBeds =
+                new BedAvailabilityService.ShelterBeds("Harbor");
+        shelterBeds.redefine("Harbor", capacity);
+        shelterBeds.declare(TODAY, occupancy);
+        return shelterBeds;
+    }
+}
@@ -0,0 +1,63 @@
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class ShelterCapacityTest {
+    private static final String LATEST = "join shelter_occupancy_record sor on s.shelter_id";
+
+    private final FakeDatabase database = new FakeDatabase();
+    private final HomelessSupport homelessSupport = new HomelessSupport();
+
+    @BeforeEach
+    public void installDatabase() {
+        database.answer(LATEST, new String[] {"name", "capacity", "occupancy"},
+                new Object[] {"Harbor", 100, 95}, new Object[] {"Annex", 50, 25},
+                new Object[] {"Haven", 10, 0}, new Object[] {"Lodge", 40, 40})
+                .install();
+    }
+
+    @AfterEach
+    public void uninstallDatabase() {
+        FakeDatabase.uninstall();
+    }
+
+    @Test
+    public void everyThresholdIsAnsweredFromOneRead() throws Exception {
+        Map<Integer, Set<String>> atCapacity =
+                homelessSupport.shelterAtCapacity(List.of(90, 50, 0));
+
+        assertEquals(Map.of(
+                0, Set.of("Harbor", "Annex", "Haven", "Lodge"),
+                50, Set.of("Harbor", "Annex", "Lodge"),
+                90, Set.of("Harbor", "Lodge")), atCapacity);
+        assertEquals(List.of(0, 50, 90), List.copyOf(atCapacity.keySet()));
+        assertEquals(1, database.executions(LATEST).size());
+    }
+
+    @Test
+    public void bandsAgreeWithTheThresholds() throws Exception {
+        Map<Integer, Set<String>> bands = homelessSupport.capacityBands(25);
+
+        assertEquals(Map.of(
+                0, Set.of("Haven"),
+                50, Set.of("Annex"),
+                75, Set.of("Harbor"),
+                100, Set.of("Lodge")), bands);
+        assertEquals(1, database.executions(LATEST).size());
+    }
+
+    @Test
+    public void invalidThresholdsAndBandWidthsAreRefused() throws Exception {
+        assertNull(homelessSupport.shelterAtCapacity(List.of(50, 101)));
+        assertNull(homelessSupport.shelterAtCapacity(List.of()));
+        assertNull(homelessSupport.capacityBands(0));
+        assertNull(homelessSupport.capacityBands(101));
+        assertTrue(database.executions().isEmpty());
+    }
+}
@@ -0,0 +1,111 @@
+import org.junit.jupiter.api.Test;
+
+import java.time.LocalDate;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Random;
+import java.util.Set;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/* The locator is a singleton, so each test keeps its shelters in a region of its own */
+class ShelterLocatorTest {
+    private static final LocalDate TODAY = LocalDate.of(2024, 3, 1);
+    private static final int REGION = 100_000;
+
+    @Test
+    public void nearestMatchesBruteForce() {
+        ShelterLocator shelterLocator = ShelterLocator.getInstance();
+        Random random = new Random(50);
+        int shelters = 5_000;
+        int[][] locations = new int[shelters][];
+        int[] freeBeds = new int[shelters];
+        boolean[] medical = new boolean[shelters];
+        for (int shelter = 0; shelter < shelters; shelter++) {
+            locations[shelter] = new int[] {random.nextInt(REGION), random.nextInt(REGION)};
+            define(shelterLocator, "Near" + shelter, locations[shelter], 20);
+            int occupancy = random.nextInt(21);
+            shelterLocator.occupancyDeclared("Near" + shelter, TODAY, occupancy);
+            freeBeds[shelter] = 20 - occupancy;
+            if (random.nextInt(4) == 0) {
+                shelterLocator.serviceForShelter("Near" + shelter, "Medical");
+                medical[shelter] = true;
+            }
+        }
+        /* Moved shelters sit in the unindexed list until the tree is rebuilt */
+        for (int move = 0; move < 300; move++) {
+            int shelter = random.nextInt(shelters);
+            locations[shelter] = new int[] {random.nextInt(REGION), random.nextInt(REGION)};
+            define(shelterLocator, "Near" + shelter, locations[shelter], 20);
+        }
+
+        for (int query = 0; query < 300; query++) {
+            int[] location = {random.nextInt(REGION), random.nextInt(REGION)};
+            boolean needsMedical = query % 2 == 0;
+            List<Pair<String, Integer>> nearest = shelterLocator.nearestAvailable(
+                    new Point(location[0], location[1]), 5,
+                    needsMedical ? Set.of("medical") : Set.of());
+
+            List<long[]> expected = new ArrayList<>();
+            for (int shelter = 0; shelter < shelters; shelter++) {
+                if (freeBeds[shelter] > 0 && (!needsMedical || medical[shelter])) {
+                    expected.add(new long[] {distance(location, locations[shelter]), shelter});
+                }
+            }
+            expected.sort(Comparator.comparingLong(candidate -> candidate[0]));
+
+            assertEquals(5, nearest.size());
+            for (int rank = 0; rank < 5; rank++) {
+                /* Names may differ between shelters at the same distance */
+                int shelter = Integer.parseInt(nearest.get(rank).getKey().substring(4));
+                assertEquals(expected.get(rank)[0], distance(location, locations[shelter]),
+                        "query " + query + ", rank " + rank);
+                assertEquals(freeBeds[shelter], nearest.get(rank).getValue());
+                assertTrue(!needsMedical || medical[shelter]);
+            }
+        }
+    }
+
+    @Test
+    public void fullSheltersAreSkippedUntilBedsFreeUp() {
+        ShelterLocator shelterLocator = ShelterLocator.getInstance();
+        int[] origin = {5 * REGION, 5 * REGION};
+        define(shelterLocator, "Full", new int[] {origin[0] + 1, origin[1]}, 10);
+        shelterLocator.occupancyDeclared("Full", TODAY, 10);
+        define(shelterLocator, "Open", new int[] {origin[0] + 50, origin[1]}, 10);
+        shelterLocator.occupancyDeclared("Open", TODAY, 7);
+
+        Point point = new Point(origin[0], origin[1]);
+        List<Pair<String, Integer>> nearest = shelterLocator.nearestAvailable(point, 1, Set.of());
+        assertEquals("Open", nearest.get(0).getKey());
+        assertEquals(3, nearest.get(0).getValue());
+
+        shelterLocator.occupancyDeclared("Full", TODAY.plusDays(1), 8);
+        nearest = shelterLocator.nearestAvailable(point, 2, Set.of());
+        assertEquals("Full", nearest.get(0).getKey());
+        assertEquals(2, nearest.get(0).getValue());
+        assertEquals("Open", nearest.get(1).getKey());
+    }
+
+    @Test
+    public void unofferedServiceFindsNothing() {
+        ShelterLocator shelterLocator = ShelterLocator.getInstance();
+        define(shelterLocator, "Plain", new int[] {9 * REGION, 9 * REGION}, 10);
+        shelterLocator.occupancyDeclared("Plain", TODAY, 0);
+
+        assertTrue(shelterLocator.nearestAvailable(
+                new Point(9 * REGION, 9 * REGION), 3, Set.of("No Such Service")).isEmpty());
+    }
+
+    private static void define(
+            ShelterLocator shelterLocator, String name, int[] location, int capacity) {
+        shelterLocator.shelterDefined(name, new Point(location[0], location[1]), capacity);
+    }
+
+    private static long distance(int[] from, int[] to) {
+        long dx = from[0] - to[0];
+        long dy = from[1] - to[1];
+        return dx * dx + dy * dy;
+    }
+}
@@ -0,0 +1,61 @@
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import java.sql.Connection;
+import java.util.List;
+import java.util.Map;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class SlowQueryLogTest {
+    private static final String SQL = "select * from shelter where name = ?";
+    private static final long SLOW = 600_000_000L;
+
+    private final FakeDatabase database = new FakeDatabase();
+
+    @BeforeEach
+    public void installDatabase() {
+        database.install();
+    }
+
+    @AfterEach
+    public void uninstallDatabase() {
+        FakeDatabase.uninstall();
+    }
+
+    @Test
+    public void planIsCapturedOnAConnectionOfItsOwn() {
+        database.answer("explain select", new String[] {"id", "table", "key"},
+                new Object[] {"1", "shelter", "name"});
+        /* Still streaming the slow statement's rows */
+        Connection statementConnection = database.connection();
+
+        String entry = SlowQueryLog.describe(SQL, Map.of(1, "Harbor"), SLOW);
+
+        assertNotNull(statementConnection);
+        assertEquals(2, database.connections.get());
+        List<FakeDatabase.Execution> explains = database.executions("EXPLAIN select");
+        assertEquals(List.of("Harbor"), explains.get(0).parameters);
+        assertTrue(entry.contains("id | table | key"), entry);
+        assertTrue(entry.contains("1 | shelter | name"), entry);
+    }
+
+    @Test
+    public void failedPlanIsNotedInTheEntry() {
+        database.fail("explain select", "Access denied");
+
+        String entry = SlowQueryLog.describe(SQL, Map.of(1, "Harbor"), SLOW);
+
+        assertTrue(entry.contains("SQL: " + SQL), entry);
+        assertTrue(entry.contains("EXPLAIN failed: Access denied"), entry);
+    }
+
+    @Test
+    public void statementWithoutAPlanOpensNoConnection() {
+        String entry = SlowQueryLog.describe("commit", Map.of(), SLOW);
+
+        assertEquals(0, database.connections.get());
+        assertFalse(entry.contains("Plan:"), entry);
+    }
+}
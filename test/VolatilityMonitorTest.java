@@ -0,0 +1,68 @@
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+
+import java.sql.Date;
+import java.time.LocalDate;
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class VolatilityMonitorTest {
+    private static final LocalDate DAY = LocalDate.of(2023, 9, 1);
+    private static final String[] SHELTER = {"shelter_id", "name", "capacity"};
+    private static final String[] RECORD = {"shelter_id", "date", "occupancy"};
+
+    private final FakeDatabase database = new FakeDatabase();
+    private final VolatilityMonitor volatilityMonitor = VolatilityMonitor.getInstance();
+
+    @AfterEach
+    public void stopMonitor() {
+        volatilityMonitor.stop();
+        FakeDatabase.uninstall();
+    }
+
+    @Test
+    public void rankingsFollowTheirOwnWindows() throws Exception {
+        database.answer("from shelter;", SHELTER, new Object[] {1, "Harbor", 100},
+                new Object[] {2, "Annex", 100})
+                .answer("from shelter_occupancy_record", RECORD,
+                        record(1, 0, 10), record(2, 19, 50), record(1, 20, 90), record(2, 20, 70))
+                .install();
+        volatilityMonitor.start();
+
+        assertEquals(List.of("Annex=20.0", "Harbor=0.0"), top(7, 2));
+        assertEquals(List.of("Harbor=80.0"), top(30, 1));
+
+        volatilityMonitor.occupancyDeclared("HARBOR", DAY.plusDays(21), 5);
+        assertEquals(List.of("Harbor=85.0"), top(7, 1));
+    }
+
+    @Test
+    public void unmonitoredWindowOrNegativeCountIsRefused() {
+        assertThrows(IllegalArgumentException.class, () -> volatilityMonitor.mostVolatile(14, 3));
+        assertThrows(IllegalArgumentException.class, () -> volatilityMonitor.mostVolatile(7, -1));
+        assertEquals(List.of(), volatilityMonitor.mostVolatile(30, 0));
+    }
+
+    @Test
+    public void reportRequestOutsideTheWindowsIsEmpty() throws Exception {
+        HomelessSupport homelessSupport = new HomelessSupport();
+
+        assertEquals(List.of(), homelessSupport.mostVolatileShelters(14, 3));
+        assertEquals(List.of(), homelessSupport.mostVolatileShelters(7, 0));
+        assertNull(homelessSupport.mostVolatileShelters(7, 3));
+    }
+
+    private List<String> top(int windowDays, int count) {
+        List<String> ranking = new ArrayList<>();
+        for (Pair<String, Double> ranked : volatilityMonitor.mostVolatile(windowDays, count)) {
+            ranking.add(ranked.getKey() + "=" + ranked.getValue());
+        }
+        return ranking;
+    }
+
+    private static Object[] record(int shelterID, int day, int occupancy) {
+        return new Object[] {shelterID, Date.valueOf(DAY.plusDays(day)), occupancy};
+    }
+}
@@ -0,0 +1,91 @@
+import org.junit.jupiter.api.Test;
+
+import java.util.Random;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class WindowRangesTest {
+    private static final int M = WindowRanges.MISSING;
+
+    @Test
+    public void slidingWindowsMatchTheirMinimumAndMaximum() {
+        int[] series = {5, 3, 8, M, 1, 9, 2};
+        int[][] ranges =
+                WindowRanges.compute(series, new int[] {0, 1, 2, 4}, new int[] {2, 4, 5, 6});
+
+        assertArrayEquals(new int[] {3, 8}, ranges[0]);
+        assertArrayEquals(new int[] {1, 8}, ranges[1]);
+        assertArrayEquals(new int[] {1, 9}, ranges[2]);
+        assertArrayEquals(new int[] {1, 9}, ranges[3]);
+    }
+
+    @Test
+    public void windowWithoutRecordsHasNoRange() {
+        int[] series = {4, M, M, 6};
+        int[][] ranges = WindowRanges.compute(series, new int[] {1, 0}, new int[] {2, 3});
+
+        assertNull(ranges[0]);
+        assertArrayEquals(new int[] {4, 6}, ranges[1]);
+    }
+
+    @Test
+    public void windowsAreClippedToTheSeries() {
+        int[] series = {7, 2, 5};
+        int[][] ranges = WindowRanges.compute(series, new int[] {-3, 2, 5}, new int[] {0, 9, 8});
+
+        assertArrayEquals(new int[] {7, 7}, ranges[0]);
+        assertArrayEquals(new int[] {5, 5}, ranges[1]);
+        assertNull(ranges[2]);
+    }
+
+    @Test
+    public void nestedWindowsFallBackToScanning() {
+        int[] series = {1, 9, 4, 6, 2};
+        /* The second window ends before the first, so the deques cannot slide */
+        int[][] ranges = WindowRanges.compute(series, new int[] {0, 2}, new int[] {4, 3});
+
+        assertArrayEquals(new int[] {1, 9}, ranges[0]);
+        assertArrayEquals(new int[] {4, 6}, ranges[1]);
+    }
+
+    @Test
+    public void matchesBruteForceOverRandomWindows() {
+        Random random = new Random(43);
+        for (int round = 0; round < 200; round++) {
+            int[] series = new int[1 + random.nextInt(400)];
+            for (int day = 0; day < series.length; day++) {
+                series[day] = random.nextInt(5) == 0 ? M : random.nextInt(1_000);
+            }
+            int windows = 1 + random.nextInt(30);
+            int[] firstDays = new int[windows];
+            int[] lastDays = new int[windows];
+            for (int window = 0; window < windows; window++) {
+                firstDays[window] = random.nextInt(series.length + 20) - 10;
+                lastDays[window] = firstDays[window] + random.nextInt(60) - 5;
+            }
+
+            int[][] ranges = WindowRanges.compute(series, firstDays, lastDays);
+            for (int window = 0; window < windows; window++) {
+                assertArrayEquals(
+                        bruteForce(series, firstDays[window], lastDays[window]),
+                        ranges[window],
+                        "round " + round + ", days " + firstDays[window] + ".." + lastDays[window]);
+            }
+        }
+    }
+
+    private static int[] bruteForce(int[] series, int firstDay, int lastDay) {
+        int[] range = null;
+        for (int day = firstDay; day <= lastDay; day++) {
+            if (day < 0 || day >= series.length || series[day] == M) {
+                continue;
+            }
+            if (range == null) {
+                range = new int[] {series[day], series[day]};
+            }
+            range[0] = Math.min(range[0], series[day]);
+            range[1] = Math.max(range[1], series[day]);
+        }
+        return range;
+    }
+}